@@ -0,0 +1,98 @@
+package org.elasticsearch.index.mapper.htable.builder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Tables built per second by {@link ParallelBulkWriter} from an input in memory, the output is discarded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HtableBuilderBenchmark {
+    private static final int NUM_RECORDS = 10000;
+
+    @Param({"chain", "sorted", "blocked"})
+    public String format;
+
+    @Param({"csv", "json"})
+    public String inputFormat;
+
+    @Param({"10", "100"})
+    public int tableSize;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private String input;
+    private ParallelBulkWriter writer;
+
+    @Setup
+    public void setup() {
+        InputFormat parsedInputFormat = InputFormat.valueOf(inputFormat.toUpperCase(Locale.ROOT));
+        writer = new ParallelBulkWriter(new HtableTableBuilder(HtableFieldMapper.ValueType.FLOAT,
+                                                               Collections.<String, Object>singletonMap("format", format)),
+                                        parsedInputFormat, "ranks", ParallelBulkWriter.Action.INDEX, threads, 100);
+
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            if (parsedInputFormat == InputFormat.CSV) {
+                for (int j = 0; j < tableSize; j++) {
+                    builder.append(i).append(',').append(random.nextInt(100000)).append(',')
+                        .append(random.nextFloat()).append('\n');
+                }
+            } else {
+                StringBuilder keys = new StringBuilder();
+                StringBuilder values = new StringBuilder();
+                for (int j = 0; j < tableSize; j++) {
+                    keys.append(j == 0 ? "" : ",").append(random.nextInt(100000));
+                    values.append(j == 0 ? "" : ",").append(random.nextFloat());
+                }
+                builder.append("{\"_id\":\"").append(i).append("\",\"ranks\":{\"keys\":[").append(keys)
+                    .append("],\"values\":[").append(values).append("]}}\n");
+            }
+        }
+        input = builder.toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_RECORDS)
+    public ParallelBulkWriter.Stats build() throws IOException {
+        return writer.write(new BufferedReader(new StringReader(input)), new NullOutputStream());
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.elasticsearch.index.mapper.htable.builder;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+
+
+/**
+ * Builds tables from CSV or JSON lines and writes them as a bulk request body:
+ * <pre>
+ * htable-builder --field ranks --value_type float --format_params '{"format": "blocked"}' \
+ *     --input_format csv --input ranks.csv --output ranks.bulk
+ * </pre>
+ * Options:
+ * <ul>
+ *     <li>{@code field} - name of the htable field, required</li>
+ *     <li>{@code value_type}, {@code format_params} - the same as in the mapping of the field</li>
+ *     <li>{@code input_format} - {@code csv} or {@code json}, see {@link InputFormat}</li>
+ *     <li>{@code action} - {@code index} or {@code update}, see {@link ParallelBulkWriter.Action}</li>
+ *     <li>{@code input}, {@code output} - files, standard input and output by default</li>
+ *     <li>{@code threads} - number of building threads, all cores by default</li>
+ *     <li>{@code batch_size} - number of records built by a thread at once</li>
+ * </ul>
+ */
+public class HtableBuilderCli {
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String fieldName = options.remove("field");
+        if (fieldName == null) {
+            throw new IllegalArgumentException("[field] is required");
+        }
+        HtableFieldMapper.ValueType valueType = HtableFieldMapper.ValueType.valueOf(
+            option(options, "value_type", HtableFieldMapper.Defaults.VALUE_TYPE.toString()).toUpperCase(Locale.ROOT));
+        Map<String, Object> formatParams = null;
+        String formatParamsOption = options.remove("format_params");
+        if (formatParamsOption != null) {
+            formatParams = XContentHelper.convertToMap(new BytesArray(formatParamsOption), false).v2();
+        }
+        InputFormat inputFormat = InputFormat.valueOf(option(options, "input_format", "json").toUpperCase(Locale.ROOT));
+        ParallelBulkWriter.Action action = ParallelBulkWriter.Action.valueOf(
+            option(options, "action", "index").toUpperCase(Locale.ROOT));
+        int threads = Integer.parseInt(option(options, "threads",
+                                              Integer.toString(Runtime.getRuntime().availableProcessors())));
+        int batchSize = Integer.parseInt(option(options, "batch_size", "1000"));
+        String input = options.remove("input");
+        String output = options.remove("output");
+        if (!options.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + options.keySet());
+        }
+
+        ParallelBulkWriter writer = new ParallelBulkWriter(new HtableTableBuilder(valueType, formatParams),
+                                                           inputFormat, fieldName, action, threads, batchSize);
+        long startTime = System.nanoTime();
+        ParallelBulkWriter.Stats stats;
+        try (InputStream in = input == null ? System.in : Files.newInputStream(Paths.get(input));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+             OutputStream out = new BufferedOutputStream(output == null ? System.out : Files.newOutputStream(Paths.get(output)))) {
+            stats = writer.write(reader, out);
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.err.println(String.format(Locale.ROOT, "built %d tables with %d entries (%d bytes) in %.1fs, %.0f tables/s",
+                                         stats.records(), stats.entries(), stats.tableBytes(), seconds,
+                                         stats.records() / seconds));
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.remove(name);
+        return value == null ? defaultValue : value;
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected [--<option> <value>] but got [" + args[i] + "]");
+            }
+            options.put(args[i].substring(2).replace('-', '_'), args[++i]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,67 @@
+package org.elasticsearch.index.mapper.htable.builder;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.zip.CRC32;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableFormat;
+import org.elasticsearch.index.mapper.htable.HtableHeader;
+import org.elasticsearch.index.mapper.htable.HtableWriter;
+
+
+/**
+ * Builds tables exactly as {@link HtableFieldMapper} does for a field with the same {@code value_type}
+ * and {@code format_params}, so they can be indexed as serialized tables. Instances are thread safe.
+ */
+public class HtableTableBuilder {
+    private final HtableFieldMapper.ValueType valueType;
+    private final HtableFormat format;
+    private final HtableWriter writer;
+
+    public HtableTableBuilder(HtableFieldMapper.ValueType valueType, @Nullable Map<String, Object> formatParams) {
+        this.valueType = valueType;
+        this.format = HtableFormat.fromParams(formatParams);
+        this.format.validateParams(formatParams);
+        this.writer = format.writer(valueType, formatParams);
+    }
+
+    public HtableFieldMapper.ValueType valueType() {
+        return valueType;
+    }
+
+    public HtableFormat format() {
+        return format;
+    }
+
+    /**
+     * Returns the table with its {@link HtableHeader}.
+     *
+     * @param entries values encoded by {@link HtableFieldMapper.ValueType#encode(Number)}
+     */
+    public byte[] build(SortedMap<Long, byte[]> entries) {
+        return HtableHeader.write(format, valueType, writer.dump(entries));
+    }
+
+    /**
+     * Writes the field as a serialized table with the declarations the mapper checks it against.
+     */
+    public XContentBuilder writeField(XContentBuilder builder, String fieldName, byte[] table) throws IOException {
+        return builder.startObject(fieldName)
+            .field("table", table)
+            .field("format", format.formatName())
+            .field("value_type", valueType.toString().toLowerCase(Locale.ROOT))
+            .field("crc32", crc32(table))
+            .endObject();
+    }
+
+    public static long crc32(byte[] table) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(table, 0, table.length);
+        return crc32.getValue();
+    }
+}
@@ -0,0 +1,122 @@
+package org.elasticsearch.index.mapper.htable.builder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+
+
+/**
+ * Formats of the input lines. Lines of a record are collected by the reading thread
+ * and parsed by the building threads.
+ */
+public enum InputFormat {
+    /**
+     * {@code id,key,value} rows, the rows of a document must follow each other.
+     */
+    CSV {
+        @Override
+        public String recordId(String line) {
+            int comma = line.indexOf(',');
+            if (comma < 0) {
+                throw new IllegalArgumentException("Expected [id,key,value] but got [" + line + "]");
+            }
+            return line.substring(0, comma);
+        }
+
+        @Override
+        public Record parse(List<String> lines, String fieldName, HtableFieldMapper.ValueType valueType) {
+            SortedMap<Long, byte[]> entries = new TreeMap<>();
+            String id = null;
+            for (String line : lines) {
+                int first = line.indexOf(',');
+                int second = line.indexOf(',', first + 1);
+                if (first < 0 || second < 0) {
+                    throw new IllegalArgumentException("Expected [id,key,value] but got [" + line + "]");
+                }
+                id = line.substring(0, first);
+                long key = Long.parseLong(line.substring(first + 1, second).trim());
+                entries.put(key, valueType.encode(parseNumber(line.substring(second + 1).trim(), valueType)));
+            }
+            return new Record(id, entries);
+        }
+    },
+    /**
+     * One document per line with the field in the same form as in the source:
+     * {@code {"_id": "1", "ranks": {"keys": [1, 2], "values": [0.5, 1.5]}}}
+     */
+    JSON {
+        @Override
+        public String recordId(String line) {
+            return null;
+        }
+
+        @Override
+        public Record parse(List<String> lines, String fieldName, HtableFieldMapper.ValueType valueType) throws IOException {
+            String line = lines.get(0);
+            String id = null;
+            SortedMap<Long, byte[]> entries = new TreeMap<>();
+            try (XContentParser parser = JsonXContent.jsonXContent.createParser(line)) {
+                if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+                    throw new IllegalArgumentException("Expected an object but got [" + line + "]");
+                }
+                XContentParser.Token token;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token != XContentParser.Token.FIELD_NAME) {
+                        continue;
+                    }
+                    String currentName = parser.currentName();
+                    token = parser.nextToken();
+                    if (currentName.equals("_id")) {
+                        id = parser.text();
+                    } else if (currentName.equals(fieldName)) {
+                        entries = HtableFieldMapper.parseEntries(parser, valueType.parser());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            if (id == null) {
+                throw new IllegalArgumentException("[_id] is missing in [" + line + "]");
+            }
+            return new Record(id, entries);
+        }
+    };
+
+    /**
+     * Lines with the same non-null id belong to the same record, a {@code null} id means a record per line.
+     */
+    public abstract String recordId(String line);
+
+    public abstract Record parse(List<String> lines, String fieldName, HtableFieldMapper.ValueType valueType)
+        throws IOException;
+
+    static Number parseNumber(String value, HtableFieldMapper.ValueType valueType) {
+        switch (valueType) {
+            case FLOAT:
+            case DOUBLE:
+                return Double.parseDouble(value);
+            default:
+                try {
+                    // keeps the precision of long values
+                    return Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(value);
+                }
+        }
+    }
+
+    public static class Record {
+        public final String id;
+        public final SortedMap<Long, byte[]> entries;
+
+        Record(String id, SortedMap<Long, byte[]> entries) {
+            this.id = id;
+            this.entries = entries;
+        }
+    }
+}
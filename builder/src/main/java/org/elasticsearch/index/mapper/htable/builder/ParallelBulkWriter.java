@@ -0,0 +1,200 @@
+package org.elasticsearch.index.mapper.htable.builder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+
+/**
+ * Reads records, builds their tables on all threads and writes them as bulk requests in the order of the input.
+ * The reading thread only splits the input into records, parsing and building is done in batches by the pool.
+ */
+public class ParallelBulkWriter {
+    public enum Action {
+        /**
+         * Indexes documents which only have the field.
+         */
+        INDEX,
+        /**
+         * Replaces the field of existing documents with partial updates.
+         */
+        UPDATE
+    }
+
+    private final HtableTableBuilder tableBuilder;
+    private final InputFormat inputFormat;
+    private final String fieldName;
+    private final Action action;
+    private final int threads;
+    private final int batchSize;
+
+    public ParallelBulkWriter(HtableTableBuilder tableBuilder, InputFormat inputFormat, String fieldName,
+                              Action action, int threads, int batchSize) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("[threads] must be positive");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("[batch_size] must be positive");
+        }
+        this.tableBuilder = tableBuilder;
+        this.inputFormat = inputFormat;
+        this.fieldName = fieldName;
+        this.action = action;
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    public Stats write(BufferedReader input, OutputStream output) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<Batch>> pending = new ArrayDeque<>();
+        Stats stats = new Stats();
+        try {
+            List<List<String>> records = new ArrayList<>(batchSize);
+            List<String> record = null;
+            String recordId = null;
+            String line;
+            while ((line = input.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String id = inputFormat.recordId(line);
+                if (record == null || id == null || !id.equals(recordId)) {
+                    if (record != null) {
+                        records.add(record);
+                        if (records.size() == batchSize) {
+                            submit(executor, pending, records, output, stats);
+                            records = new ArrayList<>(batchSize);
+                        }
+                    }
+                    record = new ArrayList<>();
+                    recordId = id;
+                }
+                record.add(line);
+            }
+            if (record != null) {
+                records.add(record);
+            }
+            if (!records.isEmpty()) {
+                submit(executor, pending, records, output, stats);
+            }
+            while (!pending.isEmpty()) {
+                writeBatch(pending.poll(), output, stats);
+            }
+            output.flush();
+            return stats;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submit(ExecutorService executor, Deque<Future<Batch>> pending, final List<List<String>> records,
+                        OutputStream output, Stats stats) throws IOException {
+        pending.add(executor.submit(new Callable<Batch>() {
+            @Override
+            public Batch call() throws IOException {
+                return build(records);
+            }
+        }));
+        // bounds the memory of built batches when the output is slower than the pool
+        if (pending.size() > 2 * threads) {
+            writeBatch(pending.poll(), output, stats);
+        }
+    }
+
+    private void writeBatch(Future<Batch> future, OutputStream output, Stats stats) throws IOException {
+        Batch batch;
+        try {
+            batch = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building tables", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        batch.bytes.writeTo(output);
+        stats.records += batch.records;
+        stats.entries += batch.entries;
+        stats.tableBytes += batch.tableBytes;
+    }
+
+    Batch build(List<List<String>> records) throws IOException {
+        Batch batch = new Batch();
+        for (List<String> lines : records) {
+            InputFormat.Record record = inputFormat.parse(lines, fieldName, tableBuilder.valueType());
+            byte[] table = tableBuilder.build(record.entries);
+
+            XContentBuilder actionLine = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject(action == Action.INDEX ? "index" : "update")
+                        .field("_id", record.id)
+                    .endObject()
+                .endObject();
+            actionLine.bytes().writeTo(batch.bytes);
+            batch.bytes.write('\n');
+
+            XContentBuilder sourceLine = XContentFactory.jsonBuilder().startObject();
+            if (action == Action.UPDATE) {
+                sourceLine.startObject("doc");
+            }
+            tableBuilder.writeField(sourceLine, fieldName, table);
+            if (action == Action.UPDATE) {
+                sourceLine.endObject();
+            }
+            sourceLine.endObject().bytes().writeTo(batch.bytes);
+            batch.bytes.write('\n');
+
+            batch.records++;
+            batch.entries += record.entries.size();
+            batch.tableBytes += table.length;
+        }
+        return batch;
+    }
+
+    static class Batch {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int records;
+        long entries;
+        long tableBytes;
+    }
+
+    public static class Stats {
+        long records;
+        long entries;
+        long tableBytes;
+
+        public long records() {
+            return records;
+        }
+
+        public long entries() {
+            return entries;
+        }
+
+        /**
+         * Size of the built tables without the base64 encoding.
+         */
+        public long tableBytes() {
+            return tableBytes;
+        }
+    }
+}
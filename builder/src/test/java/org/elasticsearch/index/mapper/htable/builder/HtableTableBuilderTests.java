@@ -0,0 +1,108 @@
+package org.elasticsearch.index.mapper.htable.builder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.DocumentMapperParser;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+
+
+public class HtableTableBuilderTests extends ESSingleNodeTestCase {
+    public void testBulkOutputIsIndexedAsParsedTables() throws Exception {
+        String format = randomFrom("chain", "trie", "sorted", "lazy_chain", "blocked");
+        String valueType = randomFrom("short", "int", "float", "double");
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("ranks")
+                            .field("type", "htable")
+                            .field("value_type", valueType)
+                            .startObject("format_params")
+                                .field("format", format)
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        DocumentMapper mapper = mapperParser.parse(mapping);
+
+        int numDocs = between(1, 50);
+        StringBuilder csv = new StringBuilder();
+        StringBuilder json = new StringBuilder();
+        BytesRef[] expected = new BytesRef[numDocs];
+        for (int i = 0; i < numDocs; i++) {
+            int numEntries = between(1, 20);
+            XContentBuilder source = XContentFactory.jsonBuilder().startObject().field("_id", "doc" + i)
+                .startObject("ranks").startArray("keys");
+            long[] keys = new long[numEntries];
+            int[] values = new int[numEntries];
+            for (int j = 0; j < numEntries; j++) {
+                keys[j] = randomLong();
+                values[j] = between(0, 1000);
+                source.value(keys[j]);
+                csv.append("doc").append(i).append(',').append(keys[j]).append(',').append(values[j]).append('\n');
+            }
+            source.endArray().startArray("values");
+            for (int j = 0; j < numEntries; j++) {
+                source.value(values[j]);
+            }
+            source.endArray().endObject().endObject();
+            json.append(source.string()).append('\n');
+
+            XContentBuilder docSource = XContentFactory.jsonBuilder().startObject().startObject("ranks")
+                .field("keys", keys).field("values", values).endObject().endObject();
+            expected[i] = mapper.parse("test", "product", "doc" + i, docSource.bytes()).rootDoc().getBinaryValue("ranks");
+        }
+
+        boolean useCsv = randomBoolean();
+        ParallelBulkWriter writer = new ParallelBulkWriter(
+            new HtableTableBuilder(HtableFieldMapper.ValueType.valueOf(valueType.toUpperCase(Locale.ROOT)),
+                                   Collections.<String, Object>singletonMap("format", format)),
+            useCsv ? InputFormat.CSV : InputFormat.JSON, "ranks", ParallelBulkWriter.Action.INDEX,
+            between(1, 4), between(1, 10));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ParallelBulkWriter.Stats stats = writer.write(new BufferedReader(new StringReader((useCsv ? csv : json).toString())),
+                                                      output);
+        assertEquals(numDocs, stats.records());
+
+        String[] lines = new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(2 * numDocs, lines.length);
+        for (int i = 0; i < numDocs; i++) {
+            Map<String, Object> actionLine = XContentHelper.convertToMap(new BytesArray(lines[2 * i]), false).v2();
+            @SuppressWarnings("unchecked")
+            Map<String, Object> index = (Map<String, Object>) actionLine.get("index");
+            assertEquals("doc" + i, index.get("_id"));
+            BytesRef indexed = mapper.parse("test", "product", "doc" + i, new BytesArray(lines[2 * i + 1]))
+                .rootDoc().getBinaryValue("ranks");
+            assertEquals(expected[i], indexed);
+        }
+    }
+
+    public void testInvalidInput() throws Exception {
+        ParallelBulkWriter writer = new ParallelBulkWriter(
+            new HtableTableBuilder(HtableFieldMapper.ValueType.FLOAT, null),
+            InputFormat.CSV, "ranks", ParallelBulkWriter.Action.UPDATE, 2, 1);
+        try {
+            writer.write(new BufferedReader(new StringReader("1,2,0.5\n1,x,0.5\n")), new ByteArrayOutputStream());
+            fail("expected NumberFormatException");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.elasticsearch.index.codec.htable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Random access to binary doc values of the default codec vs {@link HtableCodec}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class BinaryDocValuesBenchmark {
+    private static final String FIELD_NAME = "ranks";
+    private static final int NUM_LOOKUPS = 1 << 12;
+
+    @Param({"default", "htable"})
+    public String codec;
+
+    @Param({"64", "1024", "16384"})
+    public int avgValueSize;
+
+    @Param({"100000"})
+    public int numDocs;
+
+    private Path indexPath;
+    private Directory directory;
+    private DirectoryReader reader;
+    private BinaryDocValues docValues;
+    private int[] docIds;
+    private int lookup;
+
+    @Setup
+    public void setup() throws IOException {
+        indexPath = Files.createTempDirectory("htable-benchmark");
+        directory = new MMapDirectory(indexPath);
+        IndexWriterConfig config = new IndexWriterConfig(null);
+        config.setCodec(codec.equals(HtableCodec.NAME) ? new HtableCodec() : Codec.getDefault());
+        Random random = new Random(42);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            for (int i = 0; i < numDocs; i++) {
+                byte[] value = new byte[1 + random.nextInt(2 * avgValueSize)];
+                random.nextBytes(value);
+                Document doc = new Document();
+                doc.add(new BinaryDocValuesField(FIELD_NAME, new BytesRef(value)));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        reader = DirectoryReader.open(directory);
+        docValues = reader.leaves().get(0).reader().getBinaryDocValues(FIELD_NAME);
+
+        docIds = new int[NUM_LOOKUPS];
+        for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = random.nextInt(numDocs);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        IOUtils.close(reader, directory);
+        IOUtils.rm(indexPath);
+    }
+
+    private int nextDocId() {
+        lookup = (lookup + 1) & (NUM_LOOKUPS - 1);
+        return docIds[lookup];
+    }
+
+    @Benchmark
+    public BytesRef get() {
+        return docValues.get(nextDocId());
+    }
+
+    // reading of a fixed size table header is the first step of every lookup
+    @Benchmark
+    public long readHeader() throws IOException {
+        int docId = nextDocId();
+        if (docValues instanceof HtableBinaryDocValues) {
+            HtableBinaryDocValues htableDocValues = (HtableBinaryDocValues) docValues;
+            return htableDocValues.values().readByte(htableDocValues.offset(docId));
+        }
+        BytesRef value = docValues.get(docId);
+        return value.bytes[value.offset];
+    }
+}
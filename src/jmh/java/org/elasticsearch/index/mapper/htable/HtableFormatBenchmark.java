@@ -0,0 +1,102 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.util.BytesRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Writing of the tables and lookups of present and missing keys in heap tables of every format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class HtableFormatBenchmark {
+    private static final int NUM_LOOKUPS = 1 << 12;
+
+    @Param({"chain", "trie", "sorted", "lazy_chain", "blocked"})
+    public String format;
+
+    @Param({"byte", "float", "double"})
+    public String valueType;
+
+    @Param({"10", "1000", "100000"})
+    public int numEntries;
+
+    /**
+     * {@code uniform} keys are random longs, {@code sequential} keys are even numbers starting from zero.
+     */
+    @Param({"uniform", "sequential"})
+    public String keys;
+
+    private HtableWriter writer;
+    private SortedMap<Long, byte[]> entries;
+    private HtableReader reader;
+    private long[] hitKeys;
+    private long[] missKeys;
+    private int lookup;
+
+    @Setup
+    public void setup() {
+        HtableFormat htableFormat = HtableFormat.fromName(format);
+        HtableFieldMapper.ValueType type = HtableFieldMapper.ValueType.valueOf(valueType.toUpperCase(Locale.ROOT));
+        boolean sequential = keys.equals("sequential");
+        Random random = new Random(42);
+
+        entries = new TreeMap<>();
+        for (long i = 0; entries.size() < numEntries; i++) {
+            byte[] value = new byte[type.size];
+            random.nextBytes(value);
+            entries.put(sequential ? 2 * i : random.nextLong(), value);
+        }
+        writer = htableFormat.writer(type, null);
+        reader = htableFormat.reader(type, new BytesRef(writer.dump(entries)));
+
+        Long[] allKeys = entries.keySet().toArray(new Long[entries.size()]);
+        hitKeys = new long[NUM_LOOKUPS];
+        missKeys = new long[NUM_LOOKUPS];
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            hitKeys[i] = allKeys[random.nextInt(allKeys.length)];
+            long missKey;
+            do {
+                missKey = sequential ? 2L * random.nextInt(numEntries) + 1 : random.nextLong();
+            } while (entries.containsKey(missKey));
+            missKeys[i] = missKey;
+        }
+    }
+
+    @Benchmark
+    public byte[] dump() {
+        return writer.dump(entries);
+    }
+
+    @Benchmark
+    public long getValueOffsetHit() {
+        lookup = (lookup + 1) & (NUM_LOOKUPS - 1);
+        return reader.getValueOffset(hitKeys[lookup]);
+    }
+
+    @Benchmark
+    public long getValueOffsetMiss() {
+        lookup = (lookup + 1) & (NUM_LOOKUPS - 1);
+        return reader.getValueOffset(missKeys[lookup]);
+    }
+}
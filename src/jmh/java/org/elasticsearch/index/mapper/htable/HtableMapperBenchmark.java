@@ -0,0 +1,74 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Parsing of a source field into a table as it is done by {@link HtableFieldMapper#parseCreateField}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class HtableMapperBenchmark {
+    @Param({"chain", "trie", "sorted", "lazy_chain", "blocked"})
+    public String format;
+
+    @Param({"byte", "float"})
+    public String valueType;
+
+    @Param({"10", "1000", "100000"})
+    public int numEntries;
+
+    private HtableFieldMapper.ValueParser valueParser;
+    private HtableWriter writer;
+    private BytesReference source;
+
+    @Setup
+    public void setup() throws IOException {
+        HtableFieldMapper.ValueType type = HtableFieldMapper.ValueType.valueOf(valueType.toUpperCase(Locale.ROOT));
+        valueParser = type.parser();
+        writer = HtableFormat.fromName(format).writer(type, null);
+
+        Random random = new Random(42);
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject().startArray("keys");
+        for (int i = 0; i < numEntries; i++) {
+            builder.value(random.nextLong());
+        }
+        builder.endArray().startArray("values");
+        for (int i = 0; i < numEntries; i++) {
+            builder.value(random.nextInt(128));
+        }
+        source = builder.endArray().endObject().bytes();
+    }
+
+    @Benchmark
+    public byte[] parseCreateField() throws IOException {
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(source)) {
+            parser.nextToken();
+            return writer.dump(HtableFieldMapper.parseEntries(parser, valueParser));
+        }
+    }
+}
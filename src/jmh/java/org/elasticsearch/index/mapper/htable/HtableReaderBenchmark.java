@@ -0,0 +1,93 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Lookups in a memory mapped table for the formats that can be probed in place.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class HtableReaderBenchmark {
+    private static final int NUM_LOOKUPS = 1 << 12;
+
+    @Param({"sorted", "lazy_chain", "blocked"})
+    public String format;
+
+    @Param({"100", "10000", "1000000"})
+    public int numEntries;
+
+    private Path indexPath;
+    private Directory directory;
+    private IndexInput input;
+    private DirectHtableReader reader;
+    private long[] keys;
+    private int lookup;
+
+    @Setup
+    public void setup() throws IOException {
+        HtableFormat htableFormat = HtableFormat.fromName(format);
+        Random random = new Random(42);
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        while (entries.size() < numEntries) {
+            entries.put(random.nextLong(), new byte[HtableFieldMapper.ValueType.FLOAT.size]);
+        }
+        byte[] data = htableFormat.writer(HtableFieldMapper.ValueType.FLOAT, null).dump(entries);
+
+        indexPath = Files.createTempDirectory("htable-benchmark");
+        directory = new MMapDirectory(indexPath);
+        try (IndexOutput output = directory.createOutput("htable", IOContext.DEFAULT)) {
+            output.writeBytes(data, data.length);
+        }
+        input = directory.openInput("htable", IOContext.DEFAULT);
+        reader = htableFormat.directReader(HtableFieldMapper.ValueType.FLOAT);
+        reader.reset(input.randomAccessSlice(0, input.length()), 0, data.length);
+
+        Long[] allKeys = entries.keySet().toArray(new Long[entries.size()]);
+        keys = new long[NUM_LOOKUPS];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = allKeys[random.nextInt(allKeys.length)];
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        IOUtils.close(input, directory);
+        IOUtils.rm(indexPath);
+    }
+
+    @Benchmark
+    public float get() {
+        lookup = (lookup + 1) & (NUM_LOOKUPS - 1);
+        return reader.getFloat(reader.getValueOffset(keys[lookup]));
+    }
+}
@@ -0,0 +1,98 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Bucket scan of {@code lazy_chain} tables: keys interleaved with values and read one by one
+ * vs keys stored separately and copied at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class LazyChainScanBenchmark {
+    private static final int NUM_LOOKUPS = 1 << 12;
+
+    @Param({"interleaved", "split"})
+    public String layout;
+
+    @Param({"8", "32", "128"})
+    public int fillingRatio;
+
+    @Param({"100000"})
+    public int numEntries;
+
+    private Path indexPath;
+    private Directory directory;
+    private IndexInput input;
+    private DirectHtableReader reader;
+    private long[] keys;
+    private int lookup;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        while (entries.size() < numEntries) {
+            entries.put(random.nextLong(), new byte[HtableFieldMapper.ValueType.FLOAT.size]);
+        }
+        LazyChainHtable.Layout bucketLayout = LazyChainHtable.Layout.fromName(layout);
+        byte[] data = new LazyChainHtable.Writer(HtableFieldMapper.ValueType.FLOAT.size, fillingRatio, 0, bucketLayout)
+            .dump(entries);
+
+        indexPath = Files.createTempDirectory("htable-benchmark");
+        directory = new MMapDirectory(indexPath);
+        try (IndexOutput output = directory.createOutput("htable", IOContext.DEFAULT)) {
+            output.writeBytes(data, data.length);
+        }
+        input = directory.openInput("htable", IOContext.DEFAULT);
+        reader = new LazyChainHtable.Reader(HtableFieldMapper.ValueType.FLOAT.size);
+        reader.reset(input.randomAccessSlice(0, input.length()), 0, data.length);
+
+        Long[] allKeys = entries.keySet().toArray(new Long[entries.size()]);
+        keys = new long[NUM_LOOKUPS];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = allKeys[random.nextInt(allKeys.length)];
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        IOUtils.close(input, directory);
+        IOUtils.rm(indexPath);
+    }
+
+    @Benchmark
+    public float get() {
+        lookup = (lookup + 1) & (NUM_LOOKUPS - 1);
+        return reader.getFloat(reader.getValueOffset(keys[lookup]));
+    }
+}
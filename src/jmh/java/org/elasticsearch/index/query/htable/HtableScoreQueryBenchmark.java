@@ -0,0 +1,128 @@
+package org.elasticsearch.index.query.htable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.common.lucene.search.function.FunctionScoreQuery;
+import org.elasticsearch.index.codec.htable.HtableCodec;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableFormat;
+import org.elasticsearch.index.mapper.htable.HtableWriter;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueFunction;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueTransform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Top 10 documents of a segment scored by {@code htable_score} query (blocks of documents)
+ * and by {@code function_score} query with {@code htable_value} function (one document at a time).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class HtableScoreQueryBenchmark {
+    private static final String FIELD_NAME = "ranks";
+
+    @Param({"chain", "lazy_chain"})
+    public String format;
+
+    @Param({"100"})
+    public int tableSize;
+
+    @Param({"100000"})
+    public int numDocs;
+
+    private Path indexPath;
+    private Directory directory;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+    private Query htableScoreQuery;
+    private Query functionScoreQuery;
+
+    @Setup
+    public void setup() throws IOException {
+        HtableFieldMapper.HtableFieldType fieldType = new HtableFieldMapper.HtableFieldType();
+        fieldType.setNames(new MappedFieldType.Names(FIELD_NAME));
+        fieldType.setValueType(HtableFieldMapper.ValueType.FLOAT);
+        fieldType.setDataFormatParams(Collections.<String, Object>singletonMap("format", format));
+        HtableWriter writer = HtableFormat.fromName(format).writer(fieldType.valueType(), null);
+
+        indexPath = Files.createTempDirectory("htable-benchmark");
+        directory = new MMapDirectory(indexPath);
+        IndexWriterConfig config = new IndexWriterConfig(null);
+        config.setCodec(new HtableCodec());
+        Random random = new Random(42);
+        try (IndexWriter indexWriter = new IndexWriter(directory, config)) {
+            for (int i = 0; i < numDocs; i++) {
+                // about half of the documents contain the key
+                SortedMap<Long, byte[]> entries = new TreeMap<>();
+                while (entries.size() < tableSize) {
+                    byte[] value = new byte[fieldType.valueType().size];
+                    value[0] = (byte) random.nextInt();
+                    entries.put((long) random.nextInt(2 * tableSize), value);
+                }
+                Document doc = new Document();
+                doc.add(new BinaryDocValuesField(FIELD_NAME, new BytesRef(writer.dump(entries))));
+                indexWriter.addDocument(doc);
+            }
+            indexWriter.forceMerge(1);
+        }
+        reader = DirectoryReader.open(directory);
+        searcher = new IndexSearcher(reader);
+        searcher.setQueryCache(null);
+
+        htableScoreQuery = new HtableScoreQuery(new MatchAllDocsQuery(), fieldType, 1, 0.0f, HtableValueTransform.IDENTITY, null);
+        functionScoreQuery = new FunctionScoreQuery(new MatchAllDocsQuery(),
+                                                    new HtableValueFunction(fieldType, 1, 0.0, HtableValueTransform.IDENTITY));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        IOUtils.close(reader, directory);
+        IOUtils.rm(indexPath);
+    }
+
+    @Benchmark
+    public TopDocs htableScore() throws IOException {
+        return searcher.search(htableScoreQuery, 10);
+    }
+
+    @Benchmark
+    public TopDocs functionScore() throws IOException {
+        return searcher.search(functionScoreQuery, 10);
+    }
+}
@@ -0,0 +1,119 @@
+package org.elasticsearch.script.htable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.index.codec.htable.HtableCodec;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableFormat;
+import org.elasticsearch.index.mapper.htable.HtableKey;
+import org.elasticsearch.index.mapper.htable.HtableStats;
+import org.elasticsearch.index.mapper.htable.HtableWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * {@link HtableGetScript#runAsFloat()} over a segment of a real index, one document per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class HtableGetScriptBenchmark {
+    private static final String FIELD_NAME = "ranks";
+
+    @Param({"default", "htable"})
+    public String codec;
+
+    @Param({"chain", "sorted", "lazy_chain", "blocked"})
+    public String format;
+
+    @Param({"10", "1000"})
+    public int tableSize;
+
+    @Param({"10000"})
+    public int numDocs;
+
+    private Path indexPath;
+    private Directory directory;
+    private DirectoryReader reader;
+    private HtableGetScript script;
+    private int maxDoc;
+
+    @Setup
+    public void setup() throws IOException {
+        HtableFieldMapper.HtableFieldType fieldType = new HtableFieldMapper.HtableFieldType();
+        fieldType.setValueType(HtableFieldMapper.ValueType.FLOAT);
+        fieldType.setDataFormatParams(Collections.<String, Object>singletonMap("format", format));
+        HtableWriter writer = HtableFormat.fromName(format).writer(fieldType.valueType(), null);
+
+        indexPath = Files.createTempDirectory("htable-benchmark");
+        directory = new MMapDirectory(indexPath);
+        IndexWriterConfig config = new IndexWriterConfig(null);
+        config.setCodec(codec.equals(HtableCodec.NAME) ? new HtableCodec() : Codec.getDefault());
+        Random random = new Random(42);
+        try (IndexWriter indexWriter = new IndexWriter(directory, config)) {
+            for (int i = 0; i < numDocs; i++) {
+                // about half of the documents contain the key
+                SortedMap<Long, byte[]> entries = new TreeMap<>();
+                while (entries.size() < tableSize) {
+                    entries.put((long) random.nextInt(2 * tableSize), new byte[fieldType.valueType().size]);
+                }
+                Document doc = new Document();
+                doc.add(new BinaryDocValuesField(FIELD_NAME, new BytesRef(writer.dump(entries))));
+                indexWriter.addDocument(doc);
+            }
+            indexWriter.forceMerge(1);
+        }
+        reader = DirectoryReader.open(directory);
+        LeafReader leafReader = reader.leaves().get(0).reader();
+        maxDoc = leafReader.maxDoc();
+
+        script = new HtableGetScript(FIELD_NAME, HtableKey.of(1L), 0, 0.0f, new HtableStats());
+        script.setFieldType(fieldType);
+        script.setLeafReader(leafReader);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        IOUtils.close(reader, directory);
+        IOUtils.rm(indexPath);
+    }
+
+    @Benchmark
+    public float runAsFloat() {
+        int docId = script.docId + 1;
+        script.docId = docId == maxDoc ? 0 : docId;
+        return script.runAsFloat();
+    }
+}
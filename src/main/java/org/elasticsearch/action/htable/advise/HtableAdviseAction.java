@@ -0,0 +1,24 @@
+package org.elasticsearch.action.htable.advise;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+
+public class HtableAdviseAction extends Action<HtableAdviseRequest, HtableAdviseResponse, HtableAdviseRequestBuilder> {
+    public static final HtableAdviseAction INSTANCE = new HtableAdviseAction();
+    public static final String NAME = "indices:monitor/htable/advise";
+
+    private HtableAdviseAction() {
+        super(NAME);
+    }
+
+    @Override
+    public HtableAdviseResponse newResponse() {
+        return new HtableAdviseResponse();
+    }
+
+    @Override
+    public HtableAdviseRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new HtableAdviseRequestBuilder(client, this);
+    }
+}
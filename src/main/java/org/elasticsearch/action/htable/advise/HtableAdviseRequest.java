@@ -0,0 +1,107 @@
+package org.elasticsearch.action.htable.advise;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.single.shard.SingleShardRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.mapper.htable.HtableFormatAdvisor;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+
+public class HtableAdviseRequest extends SingleShardRequest<HtableAdviseRequest> {
+    public static final int DEFAULT_SAMPLE_SIZE = 1000;
+
+    private String field;
+    private int shard = 0;
+    private int sampleSize = DEFAULT_SAMPLE_SIZE;
+    private double sizeTolerance = HtableFormatAdvisor.DEFAULT_SIZE_TOLERANCE;
+
+    public HtableAdviseRequest() {
+    }
+
+    public HtableAdviseRequest(String index, String field) {
+        super(index);
+        this.field = field;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public HtableAdviseRequest field(String field) {
+        this.field = field;
+        return this;
+    }
+
+    public int shard() {
+        return shard;
+    }
+
+    public HtableAdviseRequest shard(int shard) {
+        this.shard = shard;
+        return this;
+    }
+
+    public int sampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Maximum number of tables to sample from the shard.
+     */
+    public HtableAdviseRequest sampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+        return this;
+    }
+
+    public double sizeTolerance() {
+        return sizeTolerance;
+    }
+
+    /**
+     * How much bigger than the smallest candidate the recommended format is allowed to be.
+     */
+    public HtableAdviseRequest sizeTolerance(double sizeTolerance) {
+        this.sizeTolerance = sizeTolerance;
+        return this;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = validateNonNullIndex();
+        if (field == null) {
+            validationException = addValidationError("field is missing", validationException);
+        }
+        if (shard < 0) {
+            validationException = addValidationError("shard must be non negative", validationException);
+        }
+        if (sampleSize <= 0) {
+            validationException = addValidationError("sample_size must be positive", validationException);
+        }
+        if (sizeTolerance < 0) {
+            validationException = addValidationError("size_tolerance must be non negative", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        field = in.readString();
+        shard = in.readVInt();
+        sampleSize = in.readVInt();
+        sizeTolerance = in.readDouble();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(field);
+        out.writeVInt(shard);
+        out.writeVInt(sampleSize);
+        out.writeDouble(sizeTolerance);
+    }
+}
@@ -0,0 +1,31 @@
+package org.elasticsearch.action.htable.advise;
+
+import org.elasticsearch.action.support.single.shard.SingleShardOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+
+public class HtableAdviseRequestBuilder extends SingleShardOperationRequestBuilder<HtableAdviseRequest, HtableAdviseResponse, HtableAdviseRequestBuilder> {
+    public HtableAdviseRequestBuilder(ElasticsearchClient client, HtableAdviseAction action) {
+        super(client, action, new HtableAdviseRequest());
+    }
+
+    public HtableAdviseRequestBuilder setField(String field) {
+        request.field(field);
+        return this;
+    }
+
+    public HtableAdviseRequestBuilder setShard(int shard) {
+        request.shard(shard);
+        return this;
+    }
+
+    public HtableAdviseRequestBuilder setSampleSize(int sampleSize) {
+        request.sampleSize(sampleSize);
+        return this;
+    }
+
+    public HtableAdviseRequestBuilder setSizeTolerance(double sizeTolerance) {
+        request.sizeTolerance(sizeTolerance);
+        return this;
+    }
+}
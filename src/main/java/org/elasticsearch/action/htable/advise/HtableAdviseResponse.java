@@ -0,0 +1,62 @@
+package org.elasticsearch.action.htable.advise;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.mapper.htable.HtableFormatAdvice;
+
+
+public class HtableAdviseResponse extends ActionResponse implements ToXContent {
+    private String index;
+    private int shard;
+    private HtableFormatAdvice advice;
+
+    HtableAdviseResponse() {
+    }
+
+    HtableAdviseResponse(String index, int shard, HtableFormatAdvice advice) {
+        this.index = index;
+        this.shard = shard;
+        this.advice = advice;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public HtableFormatAdvice getAdvice() {
+        return advice;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        index = in.readString();
+        shard = in.readVInt();
+        advice = HtableFormatAdvice.readFormatAdvice(in);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(index);
+        out.writeVInt(shard);
+        advice.writeTo(out);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("index", index);
+        builder.field("shard", shard);
+        advice.toXContent(builder, params);
+        return builder;
+    }
+}
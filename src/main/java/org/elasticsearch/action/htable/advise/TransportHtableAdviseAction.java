@@ -0,0 +1,134 @@
+package org.elasticsearch.action.htable.advise;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.single.shard.TransportSingleShardAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.routing.ShardsIterator;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableFormatAdvisor;
+import org.elasticsearch.index.mapper.htable.HtableHeader;
+import org.elasticsearch.index.mapper.internal.SourceFieldMapper;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.search.lookup.SourceLookup;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+
+/**
+ * Samples the tables of an htable field on a single shard and runs {@link HtableFormatAdvisor} over them.
+ * The tables are taken from the document source so that formats which cannot be read back can be simulated too.
+ */
+public class TransportHtableAdviseAction extends TransportSingleShardAction<HtableAdviseRequest, HtableAdviseResponse> {
+    private final IndicesService indicesService;
+
+    @Inject
+    public TransportHtableAdviseAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                       TransportService transportService, IndicesService indicesService,
+                                       ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(settings, HtableAdviseAction.NAME, threadPool, clusterService, transportService,
+              actionFilters, indexNameExpressionResolver, HtableAdviseRequest.class, ThreadPool.Names.MANAGEMENT);
+        this.indicesService = indicesService;
+    }
+
+    @Override
+    protected HtableAdviseResponse shardOperation(HtableAdviseRequest request, ShardId shardId) {
+        IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
+        MappedFieldType fieldType = indexService.mapperService().smartNameFieldType(request.field());
+        if (!(fieldType instanceof HtableFieldMapper.HtableFieldType)) {
+            throw new IllegalArgumentException("Field [" + request.field() + "] is not of [htable] type");
+        }
+        HtableFormatAdvisor advisor = new HtableFormatAdvisor(fieldType.names().fullName(),
+                                                              (HtableFieldMapper.HtableFieldType) fieldType);
+        IndexShard indexShard = indexService.shardSafe(shardId.id());
+        try (Engine.Searcher searcher = indexShard.acquireSearcher("htable_advise")) {
+            sample(searcher.reader(), fieldType, advisor, request.sampleSize());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to sample field [" + request.field() + "] on " + shardId, e);
+        }
+        return new HtableAdviseResponse(shardId.getIndex(), shardId.id(), advisor.advise(request.sizeTolerance()));
+    }
+
+    private static void sample(IndexReader reader, MappedFieldType fieldType, HtableFormatAdvisor advisor, int sampleSize)
+        throws IOException
+    {
+        String fieldName = fieldType.names().fullName();
+        String indexName = fieldType.names().indexName();
+        int step = Math.max(1, reader.maxDoc() / sampleSize);
+        for (LeafReaderContext context : reader.leaves()) {
+            LeafReader leafReader = context.reader();
+            BinaryDocValues docValues = leafReader.getBinaryDocValues(indexName);
+            if (docValues == null) {
+                continue;
+            }
+            NumericDocValues headerMarks = HtableHeader.marks(leafReader, indexName);
+            Bits liveDocs = leafReader.getLiveDocs();
+            int firstDoc = (step - context.docBase % step) % step;
+            for (int docId = firstDoc; docId < leafReader.maxDoc(); docId += step) {
+                if (advisor.numTables() >= sampleSize) {
+                    return;
+                }
+                if (liveDocs != null && !liveDocs.get(docId)) {
+                    continue;
+                }
+                BytesRef data = docValues.get(docId);
+                if (data.length == 0) {
+                    continue;
+                }
+                Document document = leafReader.document(docId);
+                BytesRef source = document.getBinaryValue(SourceFieldMapper.NAME);
+                if (source == null) {
+                    continue;
+                }
+                Map<String, Object> sourceMap = SourceLookup.sourceAsMap(new BytesArray(source));
+                Object value = XContentMapValues.extractValue(fieldName, sourceMap);
+                if (value == null) {
+                    continue;
+                }
+                if (!(value instanceof Map)) {
+                    // serialized table
+                    advisor.addTable(data, HtableHeader.hasHeader(headerMarks, docId));
+                    continue;
+                }
+                advisor.addTable(XContentFactory.jsonBuilder().value(value).bytes(), data.length);
+            }
+        }
+    }
+
+    @Override
+    protected HtableAdviseResponse newResponse() {
+        return new HtableAdviseResponse();
+    }
+
+    @Override
+    protected boolean resolveIndex(HtableAdviseRequest request) {
+        return true;
+    }
+
+    @Override
+    protected ShardsIterator shards(ClusterState state, InternalRequest request) {
+        return clusterService.operationRouting().getShards(state, request.concreteIndex(), request.request().shard(), null);
+    }
+}
@@ -0,0 +1,24 @@
+package org.elasticsearch.action.htable.patch;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+
+public class HtableBulkPatchAction extends Action<HtableBulkPatchRequest, HtableBulkPatchResponse, HtableBulkPatchRequestBuilder> {
+    public static final HtableBulkPatchAction INSTANCE = new HtableBulkPatchAction();
+    public static final String NAME = "indices:data/write/htable/bulk_patch";
+
+    private HtableBulkPatchAction() {
+        super(NAME);
+    }
+
+    @Override
+    public HtableBulkPatchResponse newResponse() {
+        return new HtableBulkPatchResponse();
+    }
+
+    @Override
+    public HtableBulkPatchRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new HtableBulkPatchRequestBuilder(client, this);
+    }
+}
@@ -0,0 +1,233 @@
+package org.elasticsearch.action.htable.patch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.single.instance.InstanceShardOperationRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+
+/**
+ * Patches or replaces the tables of many documents of an index. The items are grouped by shard
+ * and every group is written with a single bulk request from the primary shard.
+ */
+public class HtableBulkPatchRequest extends InstanceShardOperationRequest<HtableBulkPatchRequest> {
+    private String field;
+    private List<HtablePatchRequest> items = new ArrayList<>();
+    private int retryOnConflict = 0;
+    private boolean refresh = false;
+
+    public HtableBulkPatchRequest() {
+    }
+
+    public HtableBulkPatchRequest(String index, String field) {
+        super(index);
+        this.field = field;
+    }
+
+    int shardId() {
+        return shardId;
+    }
+
+    HtableBulkPatchRequest shardId(int shardId) {
+        this.shardId = shardId;
+        return this;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public HtableBulkPatchRequest field(String field) {
+        this.field = field;
+        return this;
+    }
+
+    public List<HtablePatchRequest> items() {
+        return items;
+    }
+
+    /**
+     * Adds an item, its patch or table has to be set on the returned request.
+     * The index and the field of the item are taken from this request.
+     */
+    public HtablePatchRequest add(String type, String id) {
+        HtablePatchRequest item = new HtablePatchRequest(index, type, id, field);
+        items.add(item);
+        return item;
+    }
+
+    HtableBulkPatchRequest add(HtablePatchRequest item) {
+        items.add(item);
+        return this;
+    }
+
+    /**
+     * Parses items from:
+     * <pre>
+     * {
+     *     "docs": [
+     *         {"_type": "product", "_id": "1", "patch": {"set": {"keys": [1], "values": [2.5]}}},
+     *         {"_type": "product", "_id": "2", "_routing": "a", "table": "&lt;base64 encoded table&gt;"}
+     *     ]
+     * }
+     * </pre>
+     */
+    public HtableBulkPatchRequest add(String defaultType, BytesReference content) throws IOException {
+        try (XContentParser parser = XContentHelper.createParser(content)) {
+            XContentParser.Token token;
+            String currentFieldName = null;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT && token != null) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    currentFieldName = parser.currentName();
+                } else if (token == XContentParser.Token.START_ARRAY && "docs".equals(currentFieldName)) {
+                    while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                        if (parser.currentToken() != XContentParser.Token.START_OBJECT) {
+                            throw new IllegalArgumentException("docs array element should include an object");
+                        }
+                        parseItem(parser, defaultType);
+                    }
+                } else if (token != XContentParser.Token.START_OBJECT) {
+                    throw new IllegalArgumentException("Unknown parameter [" + currentFieldName + "]");
+                }
+            }
+        }
+        return this;
+    }
+
+    private void parseItem(XContentParser parser, String defaultType) throws IOException {
+        HtablePatchRequest item = new HtablePatchRequest(index, defaultType, null, field);
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if ("patch".equals(currentFieldName) && token == XContentParser.Token.START_OBJECT) {
+                XContentBuilder patch = XContentFactory.contentBuilder(parser.contentType());
+                patch.copyCurrentStructure(parser);
+                item.patch(patch);
+            } else if (token.isValue()) {
+                if ("_type".equals(currentFieldName)) {
+                    item.type(parser.text());
+                } else if ("_id".equals(currentFieldName)) {
+                    item.id(parser.text());
+                } else if ("_routing".equals(currentFieldName)) {
+                    item.routing(parser.text());
+                } else if ("_parent".equals(currentFieldName)) {
+                    item.parent(parser.text());
+                } else if ("table".equals(currentFieldName)) {
+                    item.table(new BytesArray(parser.binaryValue()));
+                } else {
+                    throw new IllegalArgumentException("Unknown parameter [" + currentFieldName + "] of a doc");
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown parameter [" + currentFieldName + "] of a doc");
+            }
+        }
+        items.add(item);
+    }
+
+    public int retryOnConflict() {
+        return retryOnConflict;
+    }
+
+    /**
+     * How many times to retry an item if its document was changed between reading and writing the table.
+     */
+    public HtableBulkPatchRequest retryOnConflict(int retryOnConflict) {
+        this.retryOnConflict = retryOnConflict;
+        return this;
+    }
+
+    public boolean refresh() {
+        return refresh;
+    }
+
+    public HtableBulkPatchRequest refresh(boolean refresh) {
+        this.refresh = refresh;
+        return this;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = super.validate();
+        if (field == null) {
+            validationException = addValidationError("field is missing", validationException);
+        }
+        if (items.isEmpty()) {
+            validationException = addValidationError("no documents to patch", validationException);
+        }
+        for (int i = 0; i < items.size(); i++) {
+            HtablePatchRequest item = items.get(i);
+            if (item.type() == null) {
+                validationException = addValidationError("type is missing for doc " + i, validationException);
+            }
+            if (item.id() == null) {
+                validationException = addValidationError("id is missing for doc " + i, validationException);
+            }
+            if (item.patch() == null && item.table() == null) {
+                validationException = addValidationError("patch or table is missing for doc " + i, validationException);
+            }
+        }
+        if (retryOnConflict < 0) {
+            validationException = addValidationError("retry_on_conflict must be non negative", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        field = in.readString();
+        int size = in.readVInt();
+        items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            HtablePatchRequest item = new HtablePatchRequest(index, in.readString(), in.readString(), field);
+            item.routing(in.readOptionalString());
+            item.parent(in.readOptionalString());
+            if (in.readBoolean()) {
+                item.patch(in.readBytesReference());
+            }
+            if (in.readBoolean()) {
+                item.table(in.readBytesReference());
+            }
+            items.add(item);
+        }
+        retryOnConflict = in.readVInt();
+        refresh = in.readBoolean();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(field);
+        out.writeVInt(items.size());
+        for (HtablePatchRequest item : items) {
+            out.writeString(item.type());
+            out.writeString(item.id());
+            out.writeOptionalString(item.routing());
+            out.writeOptionalString(item.parent());
+            out.writeBoolean(item.patch() != null);
+            if (item.patch() != null) {
+                out.writeBytesReference(item.patch());
+            }
+            out.writeBoolean(item.table() != null);
+            if (item.table() != null) {
+                out.writeBytesReference(item.table());
+            }
+        }
+        out.writeVInt(retryOnConflict);
+        out.writeBoolean(refresh);
+    }
+}
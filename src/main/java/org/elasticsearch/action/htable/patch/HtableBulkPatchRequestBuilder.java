@@ -0,0 +1,38 @@
+package org.elasticsearch.action.htable.patch;
+
+import org.elasticsearch.action.support.single.instance.InstanceShardOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+
+public class HtableBulkPatchRequestBuilder extends InstanceShardOperationRequestBuilder<HtableBulkPatchRequest, HtableBulkPatchResponse, HtableBulkPatchRequestBuilder> {
+    public HtableBulkPatchRequestBuilder(ElasticsearchClient client, HtableBulkPatchAction action) {
+        super(client, action, new HtableBulkPatchRequest());
+    }
+
+    public HtableBulkPatchRequestBuilder setField(String field) {
+        request.field(field);
+        return this;
+    }
+
+    public HtableBulkPatchRequestBuilder addPatch(String type, String id, XContentBuilder patch) {
+        request.add(type, id).patch(patch);
+        return this;
+    }
+
+    public HtableBulkPatchRequestBuilder addTable(String type, String id, BytesReference table) {
+        request.add(type, id).table(table);
+        return this;
+    }
+
+    public HtableBulkPatchRequestBuilder setRetryOnConflict(int retryOnConflict) {
+        request.retryOnConflict(retryOnConflict);
+        return this;
+    }
+
+    public HtableBulkPatchRequestBuilder setRefresh(boolean refresh) {
+        request.refresh(refresh);
+        return this;
+    }
+}
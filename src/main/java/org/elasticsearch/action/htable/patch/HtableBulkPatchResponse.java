@@ -0,0 +1,152 @@
+package org.elasticsearch.action.htable.patch;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+
+public class HtableBulkPatchResponse extends ActionResponse implements ToXContent {
+    private Item[] items;
+
+    HtableBulkPatchResponse() {
+    }
+
+    HtableBulkPatchResponse(Item[] items) {
+        this.items = items;
+    }
+
+    /**
+     * Results in the order of the items of the request.
+     */
+    public Item[] getItems() {
+        return items;
+    }
+
+    public boolean hasFailures() {
+        for (Item item : items) {
+            if (item.isFailed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        items = new Item[in.readVInt()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item();
+            items[i].readFrom(in);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(items.length);
+        for (Item item : items) {
+            item.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("errors", hasFailures());
+        builder.startArray("items");
+        for (Item item : items) {
+            builder.startObject();
+            item.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endArray();
+        return builder;
+    }
+
+    public static class Item implements Streamable, ToXContent {
+        private String type;
+        private String id;
+        private long version;
+        private int entries;
+        private String failure;
+
+        Item() {
+        }
+
+        Item(String type, String id, long version, int entries) {
+            this.type = type;
+            this.id = id;
+            this.version = version;
+            this.entries = entries;
+        }
+
+        Item(String type, String id, String failure) {
+            this.type = type;
+            this.id = id;
+            this.failure = failure;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Number of entries in the patched table.
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        public boolean isFailed() {
+            return failure != null;
+        }
+
+        public String getFailure() {
+            return failure;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            type = in.readString();
+            id = in.readString();
+            version = in.readLong();
+            entries = in.readVInt();
+            failure = in.readOptionalString();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(type);
+            out.writeString(id);
+            out.writeLong(version);
+            out.writeVInt(entries);
+            out.writeOptionalString(failure);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("type", type);
+            builder.field("id", id);
+            if (failure != null) {
+                builder.field("error", failure);
+            } else {
+                builder.field("version", version);
+                builder.field("entries", entries);
+            }
+            return builder;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.elasticsearch.action.htable.patch;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+
+public class HtablePatchAction extends Action<HtablePatchRequest, HtablePatchResponse, HtablePatchRequestBuilder> {
+    public static final HtablePatchAction INSTANCE = new HtablePatchAction();
+    public static final String NAME = "indices:data/write/htable/patch";
+
+    private HtablePatchAction() {
+        super(NAME);
+    }
+
+    @Override
+    public HtablePatchResponse newResponse() {
+        return new HtablePatchResponse();
+    }
+
+    @Override
+    public HtablePatchRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new HtablePatchRequestBuilder(client, this);
+    }
+}
@@ -0,0 +1,199 @@
+package org.elasticsearch.action.htable.patch;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.single.instance.InstanceShardOperationRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.mapper.htable.HtablePatch;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+
+public class HtablePatchRequest extends InstanceShardOperationRequest<HtablePatchRequest> {
+    private String type;
+    private String id;
+    private String routing;
+    private String parent;
+    private String field;
+    private BytesReference patch;
+    private BytesReference table;
+    private int retryOnConflict = 0;
+    private boolean refresh = false;
+
+    public HtablePatchRequest() {
+    }
+
+    public HtablePatchRequest(String index, String type, String id, String field) {
+        super(index);
+        this.type = type;
+        this.id = id;
+        this.field = field;
+    }
+
+    public String type() {
+        return type;
+    }
+
+    public HtablePatchRequest type(String type) {
+        this.type = type;
+        return this;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public HtablePatchRequest id(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public String routing() {
+        return routing;
+    }
+
+    public HtablePatchRequest routing(String routing) {
+        this.routing = routing;
+        return this;
+    }
+
+    public String parent() {
+        return parent;
+    }
+
+    /**
+     * The parent id is used as the routing if the routing is not set.
+     */
+    public HtablePatchRequest parent(String parent) {
+        this.parent = parent;
+        if (routing == null) {
+            routing = parent;
+        }
+        return this;
+    }
+
+    int shardId() {
+        return shardId;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public HtablePatchRequest field(String field) {
+        this.field = field;
+        return this;
+    }
+
+    public BytesReference patch() {
+        return patch;
+    }
+
+    /**
+     * The changes of the table as described in {@link HtablePatch}.
+     */
+    public HtablePatchRequest patch(BytesReference patch) {
+        this.patch = patch;
+        return this;
+    }
+
+    public HtablePatchRequest patch(XContentBuilder patch) {
+        return patch(patch.bytes());
+    }
+
+    public BytesReference table() {
+        return table;
+    }
+
+    /**
+     * The serialized table that replaces the current one, the patch if any is applied to it.
+     */
+    public HtablePatchRequest table(BytesReference table) {
+        this.table = table;
+        return this;
+    }
+
+    public int retryOnConflict() {
+        return retryOnConflict;
+    }
+
+    /**
+     * How many times to retry if the document was changed between reading and writing the table.
+     */
+    public HtablePatchRequest retryOnConflict(int retryOnConflict) {
+        this.retryOnConflict = retryOnConflict;
+        return this;
+    }
+
+    public boolean refresh() {
+        return refresh;
+    }
+
+    public HtablePatchRequest refresh(boolean refresh) {
+        this.refresh = refresh;
+        return this;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = super.validate();
+        if (type == null) {
+            validationException = addValidationError("type is missing", validationException);
+        }
+        if (id == null) {
+            validationException = addValidationError("id is missing", validationException);
+        }
+        if (field == null) {
+            validationException = addValidationError("field is missing", validationException);
+        }
+        if (patch == null && table == null) {
+            validationException = addValidationError("patch or table is missing", validationException);
+        }
+        if (retryOnConflict < 0) {
+            validationException = addValidationError("retry_on_conflict must be non negative", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        type = in.readString();
+        id = in.readString();
+        routing = in.readOptionalString();
+        parent = in.readOptionalString();
+        field = in.readString();
+        if (in.readBoolean()) {
+            patch = in.readBytesReference();
+        }
+        if (in.readBoolean()) {
+            table = in.readBytesReference();
+        }
+        retryOnConflict = in.readVInt();
+        refresh = in.readBoolean();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(type);
+        out.writeString(id);
+        out.writeOptionalString(routing);
+        out.writeOptionalString(parent);
+        out.writeString(field);
+        out.writeBoolean(patch != null);
+        if (patch != null) {
+            out.writeBytesReference(patch);
+        }
+        out.writeBoolean(table != null);
+        if (table != null) {
+            out.writeBytesReference(table);
+        }
+        out.writeVInt(retryOnConflict);
+        out.writeBoolean(refresh);
+    }
+}
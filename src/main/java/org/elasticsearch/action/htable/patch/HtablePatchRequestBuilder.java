@@ -0,0 +1,52 @@
+package org.elasticsearch.action.htable.patch;
+
+import org.elasticsearch.action.support.single.instance.InstanceShardOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+
+public class HtablePatchRequestBuilder extends InstanceShardOperationRequestBuilder<HtablePatchRequest, HtablePatchResponse, HtablePatchRequestBuilder> {
+    public HtablePatchRequestBuilder(ElasticsearchClient client, HtablePatchAction action) {
+        super(client, action, new HtablePatchRequest());
+    }
+
+    public HtablePatchRequestBuilder setType(String type) {
+        request.type(type);
+        return this;
+    }
+
+    public HtablePatchRequestBuilder setId(String id) {
+        request.id(id);
+        return this;
+    }
+
+    public HtablePatchRequestBuilder setRouting(String routing) {
+        request.routing(routing);
+        return this;
+    }
+
+    public HtablePatchRequestBuilder setParent(String parent) {
+        request.parent(parent);
+        return this;
+    }
+
+    public HtablePatchRequestBuilder setField(String field) {
+        request.field(field);
+        return this;
+    }
+
+    public HtablePatchRequestBuilder setPatch(XContentBuilder patch) {
+        request.patch(patch);
+        return this;
+    }
+
+    public HtablePatchRequestBuilder setRetryOnConflict(int retryOnConflict) {
+        request.retryOnConflict(retryOnConflict);
+        return this;
+    }
+
+    public HtablePatchRequestBuilder setRefresh(boolean refresh) {
+        request.refresh(refresh);
+        return this;
+    }
+}
@@ -0,0 +1,82 @@
+package org.elasticsearch.action.htable.patch;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+
+public class HtablePatchResponse extends ActionResponse implements ToXContent {
+    private String index;
+    private String type;
+    private String id;
+    private long version;
+    private int entries;
+
+    HtablePatchResponse() {
+    }
+
+    HtablePatchResponse(String index, String type, String id, long version, int entries) {
+        this.index = index;
+        this.type = type;
+        this.id = id;
+        this.version = version;
+        this.entries = entries;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Number of entries in the patched table.
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        index = in.readString();
+        type = in.readString();
+        id = in.readString();
+        version = in.readLong();
+        entries = in.readVInt();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(index);
+        out.writeString(type);
+        out.writeString(id);
+        out.writeLong(version);
+        out.writeVInt(entries);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("index", index);
+        builder.field("type", type);
+        builder.field("id", id);
+        builder.field("version", version);
+        builder.field("entries", entries);
+        return builder;
+    }
+}
@@ -0,0 +1,189 @@
+package org.elasticsearch.action.htable.patch;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.ParsedDocument;
+import org.elasticsearch.index.mapper.SourceToParse;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableHeader;
+import org.elasticsearch.index.mapper.htable.HtablePatch;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.translog.Translog;
+
+
+/**
+ * Index request that writes a document back with its table patched or replaced.
+ * The current table is decoded from the doc values, or from the source of a document that is not refreshed yet,
+ * so only the entries of the patch are parsed, and the document is indexed again from its source
+ * with the new table in binary form.
+ * The version of the read document guards against concurrent changes.
+ */
+final class PreparedPatch {
+    final IndexRequest indexRequest;
+    final int numEntries;
+
+    private PreparedPatch(IndexRequest indexRequest, int numEntries) {
+        this.indexRequest = indexRequest;
+        this.numEntries = numEntries;
+    }
+
+    /**
+     * Must be called on the primary shard of the document.
+     */
+    static PreparedPatch prepare(IndexService indexService, ShardId shardId, HtablePatchRequest request) {
+        IndexShard indexShard = indexService.shardSafe(shardId.id());
+        MappedFieldType fieldType = indexService.mapperService().smartNameFieldType(request.field());
+        if (!(fieldType instanceof HtableFieldMapper.HtableFieldType)) {
+            throw new IllegalArgumentException("Field [" + request.field() + "] is not of [htable] type");
+        }
+        HtableFieldMapper.HtableFieldType htableFieldType = (HtableFieldMapper.HtableFieldType) fieldType;
+        if (htableFieldType.format().directReader(htableFieldType.valueSize()) == null) {
+            throw new IllegalArgumentException("Format [" + htableFieldType.format().formatName() + "] of field ["
+                                               + request.field() + "] does not support patches");
+        }
+        HtablePatch patch = null;
+        if (request.patch() != null) {
+            try (XContentParser parser = XContentHelper.createParser(request.patch())) {
+                patch = HtablePatch.parse(parser, htableFieldType);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Failed to parse patch", e);
+            }
+        }
+
+        Term uid = new Term(UidFieldMapper.NAME, Uid.createUidAsBytes(request.type(), request.id()));
+        Engine.GetResult get = indexShard.get(new Engine.Get(true, uid));
+        try {
+            if (!get.exists()) {
+                throw new DocumentMissingException(shardId, request.type(), request.id());
+            }
+            BytesReference source;
+            SortedMap<Long, byte[]> entries = new TreeMap<>();
+            if (get.docIdAndVersion() == null) {
+                // the document is only in the translog, the table is decoded from its source,
+                // which holds the serialized table after the first patch
+                Translog.Source translogSource = get.source();
+                source = translogSource.source;
+                if (request.table() == null) {
+                    entries = translogEntries(indexService, htableFieldType, request, translogSource);
+                }
+            } else {
+                Versions.DocIdAndVersion docIdAndVersion = get.docIdAndVersion();
+                LeafReader reader = docIdAndVersion.context.reader();
+                FieldsVisitor fieldsVisitor = new FieldsVisitor(true);
+                reader.document(docIdAndVersion.docId, fieldsVisitor);
+                source = fieldsVisitor.source();
+                if (source != null && request.table() == null) {
+                    BinaryDocValues docValues = reader.getBinaryDocValues(htableFieldType.names().indexName());
+                    if (docValues != null) {
+                        BytesRef table = docValues.get(docIdAndVersion.docId);
+                        if (table.length > 0) {
+                            boolean hasHeader = HtableHeader.hasHeader(
+                                HtableHeader.marks(reader, htableFieldType.names().indexName()), docIdAndVersion.docId);
+                            entries = htableFieldType.entries(table, hasHeader);
+                        }
+                    }
+                }
+            }
+            if (source == null) {
+                throw new IllegalArgumentException("Document [" + request.id() + "] cannot be patched without [_source]");
+            }
+            if (request.table() != null) {
+                entries = htableFieldType.entries(request.table().toBytesRef());
+            }
+            byte[] value;
+            if (patch == null) {
+                // the new table is already serialized
+                value = request.table().toBytes();
+            } else {
+                // written with the format of the mapping whatever the format of the current table is
+                patch.apply(entries, htableFieldType.valueType());
+                value = htableFieldType.withHeader(htableFieldType.format()
+                                                       .writer(htableFieldType.valueSize(), htableFieldType.dataFormatParams())
+                                                       .dump(entries));
+            }
+
+            IndexRequest indexRequest = new IndexRequest(shardId.getIndex(), request.type(), request.id())
+                .routing(request.routing())
+                .parent(request.parent())
+                .source(patchedSource(source, htableFieldType.names().fullName(), value))
+                .version(get.version())
+                .versionType(VersionType.INTERNAL)
+                .refresh(request.refresh());
+            return new PreparedPatch(indexRequest, entries.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read document [" + request.id() + "]", e);
+        } finally {
+            get.release();
+        }
+    }
+
+    /**
+     * Decodes the table of a document that is not refreshed yet by parsing its source with the mapping,
+     * the same way as the table in its doc values was built.
+     */
+    private static SortedMap<Long, byte[]> translogEntries(IndexService indexService, HtableFieldMapper.HtableFieldType fieldType,
+                                                           HtablePatchRequest request, Translog.Source translogSource) {
+        String indexName = fieldType.names().indexName();
+        ParsedDocument doc = indexService.mapperService().documentMapper(request.type())
+            .parse(SourceToParse.source(translogSource.source)
+                       .index(indexService.index().name())
+                       .type(request.type())
+                       .id(request.id())
+                       .routing(translogSource.routing)
+                       .parent(translogSource.parent));
+        BytesRef table = doc.rootDoc().getBinaryValue(indexName);
+        if (table == null || table.length == 0) {
+            return new TreeMap<>();
+        }
+        IndexableField mark = doc.rootDoc().getField(HtableHeader.fieldName(indexName));
+        return fieldType.entries(table, mark != null && mark.numericValue().longValue() != 0);
+    }
+
+    /**
+     * Replaces the value of the field in the source with the serialized table, keeping the content type of the source.
+     * The other fields are written back as they are parsed, so their formatting is not preserved.
+     */
+    private static BytesReference patchedSource(BytesReference source, String fieldName, byte[] table) throws IOException {
+        Tuple<XContentType, Map<String, Object>> sourceAndType = XContentHelper.convertToMap(source, true);
+        Map<String, Object> object = sourceAndType.v2();
+        String[] path = fieldName.split("\\.");
+        for (int i = 0; i < path.length - 1; i++) {
+            Object child = object.get(path[i]);
+            if (!(child instanceof Map)) {
+                child = new HashMap<String, Object>();
+                object.put(path[i], child);
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> childObject = (Map<String, Object>) child;
+            object = childObject;
+        }
+        object.put(path[path.length - 1], table);
+        return XContentFactory.contentBuilder(sourceAndType.v1()).map(sourceAndType.v2()).bytes();
+    }
+}
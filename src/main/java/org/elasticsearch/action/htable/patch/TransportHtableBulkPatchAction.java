@@ -0,0 +1,116 @@
+package org.elasticsearch.action.htable.patch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.RoutingMissingException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.HandledTransportAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+
+/**
+ * Groups the items of {@link HtableBulkPatchRequest} by shard and sends every group
+ * to {@link TransportHtableShardBulkPatchAction}.
+ */
+public class TransportHtableBulkPatchAction extends HandledTransportAction<HtableBulkPatchRequest, HtableBulkPatchResponse> {
+    private final ClusterService clusterService;
+    private final TransportHtableShardBulkPatchAction shardBulkPatchAction;
+
+    @Inject
+    public TransportHtableBulkPatchAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                          TransportService transportService,
+                                          TransportHtableShardBulkPatchAction shardBulkPatchAction,
+                                          ActionFilters actionFilters,
+                                          IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(settings, HtableBulkPatchAction.NAME, threadPool, transportService,
+              actionFilters, indexNameExpressionResolver, HtableBulkPatchRequest.class);
+        this.clusterService = clusterService;
+        this.shardBulkPatchAction = shardBulkPatchAction;
+    }
+
+    @Override
+    protected void doExecute(HtableBulkPatchRequest request, final ActionListener<HtableBulkPatchResponse> listener) {
+        ClusterState state = clusterService.state();
+        String concreteIndex = indexNameExpressionResolver.concreteSingleIndex(state, request);
+        final List<HtablePatchRequest> items = request.items();
+        final HtableBulkPatchResponse.Item[] results = new HtableBulkPatchResponse.Item[items.size()];
+
+        Map<ShardId, List<Integer>> slotsByShard = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            HtablePatchRequest item = items.get(i);
+            try {
+                item.routing(state.metaData().resolveIndexRouting(item.routing(), request.index()));
+                if (item.routing() == null && state.getMetaData().routingRequired(concreteIndex, item.type())) {
+                    throw new RoutingMissingException(concreteIndex, item.type(), item.id());
+                }
+                ShardId shardId = clusterService.operationRouting()
+                    .indexShards(state, concreteIndex, item.type(), item.id(), item.routing())
+                    .shardId();
+                List<Integer> slots = slotsByShard.get(shardId);
+                if (slots == null) {
+                    slots = new ArrayList<>();
+                    slotsByShard.put(shardId, slots);
+                }
+                slots.add(i);
+            } catch (Exception e) {
+                results[i] = new HtableBulkPatchResponse.Item(item.type(), item.id(), ExceptionsHelper.detailedMessage(e));
+            }
+        }
+        if (slotsByShard.isEmpty()) {
+            listener.onResponse(new HtableBulkPatchResponse(results));
+            return;
+        }
+
+        final AtomicInteger pendingShards = new AtomicInteger(slotsByShard.size());
+        for (Map.Entry<ShardId, List<Integer>> shardSlots : slotsByShard.entrySet()) {
+            final List<Integer> slots = shardSlots.getValue();
+            HtableBulkPatchRequest shardRequest = new HtableBulkPatchRequest(concreteIndex, request.field())
+                .shardId(shardSlots.getKey().id())
+                .retryOnConflict(request.retryOnConflict())
+                .refresh(request.refresh())
+                .timeout(request.timeout());
+            for (int slot : slots) {
+                shardRequest.add(items.get(slot));
+            }
+            shardBulkPatchAction.execute(shardRequest, new ActionListener<HtableBulkPatchResponse>() {
+                @Override
+                public void onResponse(HtableBulkPatchResponse response) {
+                    HtableBulkPatchResponse.Item[] shardResults = response.getItems();
+                    for (int j = 0; j < shardResults.length; j++) {
+                        results[slots.get(j)] = shardResults[j];
+                    }
+                    onShardDone();
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    String failure = ExceptionsHelper.detailedMessage(e);
+                    for (int slot : slots) {
+                        HtablePatchRequest item = items.get(slot);
+                        results[slot] = new HtableBulkPatchResponse.Item(item.type(), item.id(), failure);
+                    }
+                    onShardDone();
+                }
+
+                private void onShardDone() {
+                    if (pendingShards.decrementAndGet() == 0) {
+                        listener.onResponse(new HtableBulkPatchResponse(results));
+                    }
+                }
+            });
+        }
+    }
+}
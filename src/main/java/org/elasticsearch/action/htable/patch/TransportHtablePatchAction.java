@@ -0,0 +1,120 @@
+package org.elasticsearch.action.htable.patch;
+
+import java.util.Collections;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRunnable;
+import org.elasticsearch.action.RoutingMissingException;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.index.TransportIndexAction;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.TransportActions;
+import org.elasticsearch.action.support.single.instance.TransportInstanceSingleOperationAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.routing.PlainShardIterator;
+import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.mapper.htable.HtablePatch;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+
+/**
+ * Applies an {@link HtablePatch} to the table of a single document on its primary shard, see {@link PreparedPatch}.
+ */
+public class TransportHtablePatchAction extends TransportInstanceSingleOperationAction<HtablePatchRequest, HtablePatchResponse> {
+    private final IndicesService indicesService;
+    private final TransportIndexAction indexAction;
+
+    @Inject
+    public TransportHtablePatchAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                      TransportService transportService, IndicesService indicesService,
+                                      TransportIndexAction indexAction, ActionFilters actionFilters,
+                                      IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(settings, HtablePatchAction.NAME, threadPool, clusterService, transportService,
+              actionFilters, indexNameExpressionResolver, HtablePatchRequest.class);
+        this.indicesService = indicesService;
+        this.indexAction = indexAction;
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.INDEX;
+    }
+
+    @Override
+    protected HtablePatchResponse newResponse() {
+        return new HtablePatchResponse();
+    }
+
+    @Override
+    protected boolean retryOnFailure(Throwable e) {
+        return TransportActions.isShardNotAvailableException(e);
+    }
+
+    @Override
+    protected boolean resolveRequest(ClusterState state, HtablePatchRequest request, ActionListener<HtablePatchResponse> listener) {
+        request.routing(state.metaData().resolveIndexRouting(request.routing(), request.index()));
+        if (request.routing() == null && state.getMetaData().routingRequired(request.concreteIndex(), request.type())) {
+            throw new RoutingMissingException(request.concreteIndex(), request.type(), request.id());
+        }
+        return true;
+    }
+
+    @Override
+    protected ShardIterator shards(ClusterState state, HtablePatchRequest request) {
+        ShardIterator shardIterator = clusterService.operationRouting()
+            .indexShards(state, request.concreteIndex(), request.type(), request.id(), request.routing());
+        ShardRouting shard;
+        while ((shard = shardIterator.nextOrNull()) != null) {
+            if (shard.primary()) {
+                return new PlainShardIterator(shardIterator.shardId(), Collections.singletonList(shard));
+            }
+        }
+        return new PlainShardIterator(shardIterator.shardId(), Collections.<ShardRouting>emptyList());
+    }
+
+    @Override
+    protected void shardOperation(HtablePatchRequest request, ActionListener<HtablePatchResponse> listener) {
+        shardOperation(request, listener, 0);
+    }
+
+    private void shardOperation(final HtablePatchRequest request, final ActionListener<HtablePatchResponse> listener,
+                                final int retryCount) {
+        IndexService indexService = indicesService.indexServiceSafe(request.concreteIndex());
+        final PreparedPatch prepared = PreparedPatch.prepare(indexService,
+                                                             new ShardId(request.concreteIndex(), request.shardId()),
+                                                             request);
+        indexAction.execute(prepared.indexRequest, new ActionListener<IndexResponse>() {
+            @Override
+            public void onResponse(IndexResponse response) {
+                listener.onResponse(new HtablePatchResponse(response.getIndex(), response.getType(), response.getId(),
+                                                            response.getVersion(), prepared.numEntries));
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                e = ExceptionsHelper.unwrapCause(e);
+                if (e instanceof VersionConflictEngineException && retryCount < request.retryOnConflict()) {
+                    threadPool.executor(executor()).execute(new ActionRunnable<HtablePatchResponse>(listener) {
+                        @Override
+                        protected void doRun() {
+                            shardOperation(request, listener, retryCount + 1);
+                        }
+                    });
+                    return;
+                }
+                listener.onFailure(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,155 @@
+package org.elasticsearch.action.htable.patch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRunnable;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.bulk.TransportBulkAction;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.TransportActions;
+import org.elasticsearch.action.support.single.instance.TransportInstanceSingleOperationAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+
+/**
+ * Prepares the items of a shard of {@link HtableBulkPatchRequest} on the primary shard
+ * and writes all of them with a single bulk request.
+ * Items that conflict with a concurrent change are prepared and written again.
+ */
+public class TransportHtableShardBulkPatchAction
+    extends TransportInstanceSingleOperationAction<HtableBulkPatchRequest, HtableBulkPatchResponse>
+{
+    public static final String ACTION_NAME = HtableBulkPatchAction.NAME + "[s]";
+
+    private final IndicesService indicesService;
+    private final TransportBulkAction bulkAction;
+
+    @Inject
+    public TransportHtableShardBulkPatchAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                               TransportService transportService, IndicesService indicesService,
+                                               TransportBulkAction bulkAction, ActionFilters actionFilters,
+                                               IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(settings, ACTION_NAME, threadPool, clusterService, transportService,
+              actionFilters, indexNameExpressionResolver, HtableBulkPatchRequest.class);
+        this.indicesService = indicesService;
+        this.bulkAction = bulkAction;
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.BULK;
+    }
+
+    @Override
+    protected HtableBulkPatchResponse newResponse() {
+        return new HtableBulkPatchResponse();
+    }
+
+    @Override
+    protected boolean retryOnFailure(Throwable e) {
+        return TransportActions.isShardNotAvailableException(e);
+    }
+
+    @Override
+    protected boolean resolveRequest(ClusterState state, HtableBulkPatchRequest request,
+                                     ActionListener<HtableBulkPatchResponse> listener) {
+        // the routing of the items is resolved by TransportHtableBulkPatchAction
+        return true;
+    }
+
+    @Override
+    protected ShardIterator shards(ClusterState state, HtableBulkPatchRequest request) {
+        return state.routingTable().index(request.concreteIndex()).shard(request.shardId()).primaryShardIt();
+    }
+
+    @Override
+    protected void shardOperation(HtableBulkPatchRequest request, ActionListener<HtableBulkPatchResponse> listener) {
+        shardOperation(request, new HtableBulkPatchResponse.Item[request.items().size()], listener, 0);
+    }
+
+    private void shardOperation(final HtableBulkPatchRequest request, final HtableBulkPatchResponse.Item[] results,
+                                final ActionListener<HtableBulkPatchResponse> listener, final int retryCount) {
+        IndexService indexService = indicesService.indexServiceSafe(request.concreteIndex());
+        ShardId shardId = new ShardId(request.concreteIndex(), request.shardId());
+        BulkRequest bulkRequest = new BulkRequest();
+        bulkRequest.refresh(request.refresh());
+        bulkRequest.timeout(request.timeout());
+        final List<Integer> slots = new ArrayList<>();
+        final List<Integer> numEntries = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            HtablePatchRequest item = request.items().get(i);
+            item.index(request.concreteIndex());
+            item.field(request.field());
+            try {
+                PreparedPatch prepared = PreparedPatch.prepare(indexService, shardId, item);
+                bulkRequest.add(prepared.indexRequest);
+                slots.add(i);
+                numEntries.add(prepared.numEntries);
+            } catch (Exception e) {
+                results[i] = new HtableBulkPatchResponse.Item(item.type(), item.id(), ExceptionsHelper.detailedMessage(e));
+            }
+        }
+        if (bulkRequest.numberOfActions() == 0) {
+            listener.onResponse(new HtableBulkPatchResponse(results));
+            return;
+        }
+
+        bulkAction.executeBulk(bulkRequest, new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(BulkResponse response) {
+                boolean retry = false;
+                BulkItemResponse[] itemResponses = response.getItems();
+                for (int j = 0; j < itemResponses.length; j++) {
+                    BulkItemResponse itemResponse = itemResponses[j];
+                    int slot = slots.get(j);
+                    if (!itemResponse.isFailed()) {
+                        results[slot] = new HtableBulkPatchResponse.Item(itemResponse.getType(), itemResponse.getId(),
+                                                                         itemResponse.getVersion(), numEntries.get(j));
+                    } else if (ExceptionsHelper.unwrapCause(itemResponse.getFailure().getCause())
+                               instanceof VersionConflictEngineException
+                               && retryCount < request.retryOnConflict()) {
+                        // left empty to be prepared again from the new version of the document
+                        retry = true;
+                    } else {
+                        results[slot] = new HtableBulkPatchResponse.Item(itemResponse.getType(), itemResponse.getId(),
+                                                                         itemResponse.getFailureMessage());
+                    }
+                }
+                if (retry) {
+                    threadPool.executor(executor()).execute(new ActionRunnable<HtableBulkPatchResponse>(listener) {
+                        @Override
+                        protected void doRun() {
+                            shardOperation(request, results, listener, retryCount + 1);
+                        }
+                    });
+                    return;
+                }
+                listener.onResponse(new HtableBulkPatchResponse(results));
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,24 @@
+package org.elasticsearch.action.htable.stats;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+
+public class HtableStatsAction extends Action<HtableStatsRequest, HtableStatsResponse, HtableStatsRequestBuilder> {
+    public static final HtableStatsAction INSTANCE = new HtableStatsAction();
+    public static final String NAME = "cluster:monitor/htable/stats";
+
+    private HtableStatsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public HtableStatsResponse newResponse() {
+        return new HtableStatsResponse();
+    }
+
+    @Override
+    public HtableStatsRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new HtableStatsRequestBuilder(client, this);
+    }
+}
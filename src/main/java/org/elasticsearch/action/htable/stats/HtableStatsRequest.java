@@ -0,0 +1,44 @@
+package org.elasticsearch.action.htable.stats;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+
+public class HtableStatsRequest extends BaseNodesRequest<HtableStatsRequest> {
+    private String[] fields = Strings.EMPTY_ARRAY;
+
+    public HtableStatsRequest() {
+    }
+
+    public HtableStatsRequest(String... nodesIds) {
+        super(nodesIds);
+    }
+
+    /**
+     * Field names or wildcard patterns to return statistics for, all the fields by default.
+     */
+    public HtableStatsRequest fields(String... fields) {
+        this.fields = fields;
+        return this;
+    }
+
+    public String[] fields() {
+        return fields;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        fields = in.readStringArray();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeStringArray(fields);
+    }
+}
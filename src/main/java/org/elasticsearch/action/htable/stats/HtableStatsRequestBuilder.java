@@ -0,0 +1,16 @@
+package org.elasticsearch.action.htable.stats;
+
+import org.elasticsearch.action.support.nodes.NodesOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+
+public class HtableStatsRequestBuilder extends NodesOperationRequestBuilder<HtableStatsRequest, HtableStatsResponse, HtableStatsRequestBuilder> {
+    public HtableStatsRequestBuilder(ElasticsearchClient client, HtableStatsAction action) {
+        super(client, action, new HtableStatsRequest());
+    }
+
+    public HtableStatsRequestBuilder setFields(String... fields) {
+        request.fields(fields);
+        return this;
+    }
+}
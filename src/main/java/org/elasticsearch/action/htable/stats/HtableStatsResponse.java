@@ -0,0 +1,52 @@
+package org.elasticsearch.action.htable.stats;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+
+public class HtableStatsResponse extends BaseNodesResponse<NodeHtableStats> implements ToXContent {
+    HtableStatsResponse() {
+    }
+
+    public HtableStatsResponse(ClusterName clusterName, NodeHtableStats[] nodes) {
+        super(clusterName, nodes);
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        nodes = new NodeHtableStats[in.readVInt()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new NodeHtableStats();
+            nodes[i].readFrom(in);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(nodes.length);
+        for (NodeHtableStats node : nodes) {
+            node.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("cluster_name", getClusterName().value());
+        builder.startObject("nodes");
+        for (NodeHtableStats node : nodes) {
+            builder.startObject(node.getNode().id());
+            node.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
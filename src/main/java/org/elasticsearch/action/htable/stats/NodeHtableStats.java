@@ -0,0 +1,60 @@
+package org.elasticsearch.action.htable.stats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.mapper.htable.HtableFieldStats;
+
+
+public class NodeHtableStats extends BaseNodeResponse implements ToXContent {
+    private List<HtableFieldStats> fields;
+
+    NodeHtableStats() {
+    }
+
+    public NodeHtableStats(DiscoveryNode node, List<HtableFieldStats> fields) {
+        super(node);
+        this.fields = fields;
+    }
+
+    public List<HtableFieldStats> getFields() {
+        return fields;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        fields = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            fields.add(HtableFieldStats.readFieldStats(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(fields.size());
+        for (HtableFieldStats fieldStats : fields) {
+            fieldStats.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("name", getNode().name());
+        builder.startObject("fields");
+        for (HtableFieldStats fieldStats : fields) {
+            fieldStats.toXContent(builder, params);
+        }
+        builder.endObject();
+        return builder;
+    }
+}
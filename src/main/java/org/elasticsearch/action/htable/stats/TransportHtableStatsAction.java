@@ -0,0 +1,92 @@
+package org.elasticsearch.action.htable.stats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.mapper.htable.HtableStats;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+
+public class TransportHtableStatsAction extends TransportNodesAction<HtableStatsRequest, HtableStatsResponse, TransportHtableStatsAction.NodeRequest, NodeHtableStats> {
+    private final HtableStats htableStats;
+
+    @Inject
+    public TransportHtableStatsAction(Settings settings, ClusterName clusterName, ThreadPool threadPool,
+                                      ClusterService clusterService, TransportService transportService,
+                                      ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver,
+                                      HtableStats htableStats) {
+        super(settings, HtableStatsAction.NAME, clusterName, threadPool, clusterService, transportService,
+              actionFilters, indexNameExpressionResolver, HtableStatsRequest.class, NodeRequest.class, ThreadPool.Names.MANAGEMENT);
+        this.htableStats = htableStats;
+    }
+
+    @Override
+    protected HtableStatsResponse newResponse(HtableStatsRequest request, AtomicReferenceArray responses) {
+        List<NodeHtableStats> nodes = new ArrayList<>();
+        for (int i = 0; i < responses.length(); i++) {
+            Object response = responses.get(i);
+            if (response instanceof NodeHtableStats) {
+                nodes.add((NodeHtableStats) response);
+            }
+        }
+        return new HtableStatsResponse(clusterName, nodes.toArray(new NodeHtableStats[nodes.size()]));
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(String nodeId, HtableStatsRequest request) {
+        return new NodeRequest(nodeId, request);
+    }
+
+    @Override
+    protected NodeHtableStats newNodeResponse() {
+        return new NodeHtableStats();
+    }
+
+    @Override
+    protected NodeHtableStats nodeOperation(NodeRequest request) {
+        return new NodeHtableStats(clusterService.localNode(), htableStats.stats(request.request.fields()));
+    }
+
+    @Override
+    protected boolean accumulateExceptions() {
+        return false;
+    }
+
+    public static class NodeRequest extends BaseNodeRequest {
+        HtableStatsRequest request;
+
+        public NodeRequest() {
+        }
+
+        NodeRequest(String nodeId, HtableStatsRequest request) {
+            super(request, nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new HtableStatsRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.elasticsearch.index.codec.htable;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.elasticsearch.common.Nullable;
+
+
+/**
+ * Binary doc values written by {@link HtableDocValuesFormat}.
+ * Besides copying the value into a {@link BytesRef} it allows to read the value in place
+ * using {@link #values()}, {@link #offset(int)} and {@link #length(int)}.
+ * The doc values of a table field also carry the {@link HtableKeyStats} of the segment.
+ */
+public final class HtableBinaryDocValues extends BinaryDocValues {
+    private final IndexInput valuesInput;
+    private final RandomAccessInput values;
+    private final LongValues starts;
+    private final LongValues lengths;
+    private final HtableKeyStats keyStats;
+    private final BytesRef term = new BytesRef();
+
+    HtableBinaryDocValues(IndexInput valuesInput, RandomAccessInput values, LongValues starts, LongValues lengths,
+                          @Nullable HtableKeyStats keyStats) {
+        this.valuesInput = valuesInput;
+        this.values = values;
+        this.starts = starts;
+        this.lengths = lengths;
+        this.keyStats = keyStats;
+    }
+
+    /**
+     * Values of all the documents, not shared with other instances so the readers of the tables
+     * can also seek it for bulk reads.
+     */
+    public RandomAccessInput values() {
+        return values;
+    }
+
+    public long offset(int docId) {
+        return starts.get(docId);
+    }
+
+    public int length(int docId) {
+        long length = lengths.get(docId);
+        return length == 0 ? 0 : (int) (length - 1);
+    }
+
+    public boolean exists(int docId) {
+        return lengths.get(docId) != 0;
+    }
+
+    @Nullable
+    HtableKeyStats keyStats() {
+        return keyStats;
+    }
+
+    @Override
+    public BytesRef get(int docId) {
+        int length = length(docId);
+        term.length = length;
+        if (length == 0) {
+            return term;
+        }
+        if (term.bytes.length < length) {
+            term.bytes = new byte[ArrayUtil.oversize(length, 1)];
+        }
+        try {
+            valuesInput.seek(starts.get(docId));
+            valuesInput.readBytes(term.bytes, 0, length);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return term;
+    }
+}
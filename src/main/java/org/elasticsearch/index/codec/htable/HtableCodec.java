@@ -0,0 +1,59 @@
+package org.elasticsearch.index.codec.htable;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.FilterCodec;
+import org.apache.lucene.codecs.lucene53.Lucene53Codec;
+import org.apache.lucene.codecs.perfield.PerFieldDocValuesFormat;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+
+
+/**
+ * Lucene codec that writes the doc values of hash table fields with {@link HtableDocValuesFormat},
+ * the other fields are written with the formats of the delegate codec.
+ * Enable it for an index with the {@code index.codec: htable} setting, {@link HtableCodecService} creates it
+ * for the mapping of the index.
+ */
+public class HtableCodec extends FilterCodec {
+    public static final String NAME = "htable";
+
+    private final DocValuesFormat htableDocValuesFormat;
+    private final DocValuesFormat docValuesFormat;
+
+    /**
+     * Reads the segments of the codec, the format of every field is recorded in the segment.
+     * Writes all the doc values with {@link HtableDocValuesFormat}.
+     */
+    public HtableCodec() {
+        this(new Lucene53Codec(), null, null);
+    }
+
+    /**
+     * @param htableFields tells the fields which doc values are written with {@link HtableDocValuesFormat},
+     *                     all the fields if {@code null}
+     * @param fieldTypes returns the field type of the mapping by the index name of the field,
+     *                   see {@link HtableDocValuesFormat#HtableDocValuesFormat(Function)}
+     */
+    public HtableCodec(final Lucene53Codec delegate, @Nullable final Predicate<String> htableFields,
+                       @Nullable Function<String, HtableFieldMapper.HtableFieldType> fieldTypes) {
+        super(NAME, delegate);
+        this.htableDocValuesFormat = new HtableDocValuesFormat(fieldTypes);
+        this.docValuesFormat = new PerFieldDocValuesFormat() {
+            @Override
+            public DocValuesFormat getDocValuesFormatForField(String field) {
+                if (htableFields == null || htableFields.apply(field)) {
+                    return htableDocValuesFormat;
+                }
+                return delegate.getDocValuesFormatForField(field);
+            }
+        };
+    }
+
+    @Override
+    public DocValuesFormat docValuesFormat() {
+        return docValuesFormat;
+    }
+}
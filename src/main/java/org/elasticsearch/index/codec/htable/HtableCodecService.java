@@ -0,0 +1,64 @@
+package org.elasticsearch.index.codec.htable;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.codec.CodecService;
+import org.elasticsearch.index.codec.PerFieldMappingPostingFormatCodec;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableHeader;
+import org.elasticsearch.index.settings.IndexSettingsService;
+
+
+/**
+ * Creates {@code htable} codec for the mapping of the index. The postings formats of the fields,
+ * for example of {@code completion} fields, are the ones of the default codec, and only the doc values
+ * of {@code htable} fields and their hidden fields are written with {@link HtableDocValuesFormat}.
+ */
+public class HtableCodecService extends CodecService {
+    private final Codec htableCodec;
+
+    @Inject
+    public HtableCodecService(Index index, IndexSettingsService indexSettingsService, final MapperService mapperService) {
+        super(index, indexSettingsService, mapperService);
+        this.htableCodec = new HtableCodec(
+            new PerFieldMappingPostingFormatCodec(Lucene50StoredFieldsFormat.Mode.BEST_SPEED, mapperService, logger),
+            new Predicate<String>() {
+                @Override
+                public boolean apply(String field) {
+                    return isHtableField(mapperService, field);
+                }
+            },
+            new Function<String, HtableFieldMapper.HtableFieldType>() {
+                @Override
+                public HtableFieldMapper.HtableFieldType apply(String field) {
+                    MappedFieldType fieldType = mapperService.indexName(field);
+                    return fieldType instanceof HtableFieldMapper.HtableFieldType ? (HtableFieldMapper.HtableFieldType) fieldType : null;
+                }
+            });
+    }
+
+    @Override
+    public Codec codec(String name) {
+        if (HtableCodec.NAME.equals(name)) {
+            return htableCodec;
+        }
+        return super.codec(name);
+    }
+
+    static boolean isHtableField(MapperService mapperService, String field) {
+        String tableField = field;
+        if (HtableKeyStats.isKeyStatsField(field)) {
+            tableField = HtableKeyStats.tableFieldName(field);
+        } else if (HtableHeader.isHeaderField(field)) {
+            tableField = HtableHeader.tableFieldName(field);
+        }
+        return mapperService.indexName(tableField) instanceof HtableFieldMapper.HtableFieldType;
+    }
+}
@@ -0,0 +1,376 @@
+package org.elasticsearch.index.codec.htable;
+
+import com.google.common.base.Function;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.DocValuesConsumer;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.packed.DirectWriter;
+import org.apache.lucene.util.packed.MonotonicBlockPackedWriter;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableHeader;
+import org.elasticsearch.index.mapper.htable.HtableMergeEncoder;
+
+import static org.elasticsearch.index.codec.htable.HtableDocValuesFormat.ADDRESSES_BLOCK_SIZE;
+import static org.elasticsearch.index.codec.htable.HtableDocValuesFormat.ALIGNED_LENGTH;
+import static org.elasticsearch.index.codec.htable.HtableDocValuesFormat.CACHE_LINE_SIZE;
+import static org.elasticsearch.index.codec.htable.HtableDocValuesFormat.PAGE_SIZE;
+
+
+class HtableDocValuesConsumer extends DocValuesConsumer {
+    private static final byte[] PADDING = new byte[PAGE_SIZE];
+
+    private final DocValuesConsumer delegate;
+    private final HtableMergeEncoder mergeEncoder;
+    private final boolean merging;
+    private final FieldInfos fieldInfos;
+    private final int maxDoc;
+    private final Function<String, HtableFieldMapper.HtableFieldType> fieldTypes;
+    // tables which header marks or key statistics entries come later, by field
+    private final Map<FieldInfo, Iterable<BytesRef>> deferredTables = new LinkedHashMap<>();
+    // by table field
+    private final Map<String, Iterable<Number>> headerMarks = new HashMap<>();
+    private final Map<String, FieldInfo> keyStatsFields = new LinkedHashMap<>();
+    private final Map<String, Iterable<BytesRef>> keyStatsEntries = new HashMap<>();
+    private IndexOutput data, meta;
+
+    HtableDocValuesConsumer(SegmentWriteState state, DocValuesConsumer delegate,
+                            @Nullable Function<String, HtableFieldMapper.HtableFieldType> fieldTypes) throws IOException {
+        this.delegate = delegate;
+        this.mergeEncoder = new HtableMergeEncoder(fieldTypes);
+        // the per field format writes the merged values through addBinaryField
+        this.merging = state.context.context == IOContext.Context.MERGE;
+        this.fieldInfos = state.fieldInfos;
+        this.maxDoc = state.segmentInfo.maxDoc();
+        this.fieldTypes = fieldTypes;
+        boolean success = false;
+        try {
+            String dataName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, HtableDocValuesFormat.DATA_EXTENSION);
+            data = state.directory.createOutput(dataName, state.context);
+            CodecUtil.writeIndexHeader(data, HtableDocValuesFormat.DATA_CODEC, HtableDocValuesFormat.VERSION_CURRENT,
+                                       state.segmentInfo.getId(), state.segmentSuffix);
+            String metaName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, HtableDocValuesFormat.META_EXTENSION);
+            meta = state.directory.createOutput(metaName, state.context);
+            CodecUtil.writeIndexHeader(meta, HtableDocValuesFormat.META_CODEC, HtableDocValuesFormat.VERSION_CURRENT,
+                                       state.segmentInfo.getId(), state.segmentSuffix);
+            success = true;
+        } finally {
+            if (!success) {
+                IOUtils.closeWhileHandlingException(this);
+            }
+        }
+    }
+
+    @Override
+    public void addNumericField(FieldInfo field, Iterable<Number> values) throws IOException {
+        delegate.addNumericField(field, values);
+        if (HtableHeader.isHeaderField(field.name)) {
+            // the flushed and merged values stay readable until the consumer is closed
+            headerMarks.put(HtableHeader.tableFieldName(field.name), values);
+        }
+    }
+
+    @Override
+    public void addBinaryField(FieldInfo field, Iterable<BytesRef> values) throws IOException {
+        if (HtableKeyStats.isKeyStatsField(field.name)) {
+            // the entries of the tables that the codec cannot decode, written after the tables
+            // without the entries of the tables that it decodes now
+            String tableField = HtableKeyStats.tableFieldName(field.name);
+            keyStatsFields.put(tableField, field);
+            keyStatsEntries.put(tableField, values);
+            return;
+        }
+        if ((merging && hasHeaderMarks(field)) || hasKeyStats(field)) {
+            // fields are added in the order of their numbers and the header and the key statistics fields
+            // are always added after their table, the table is written once they are known
+            deferredTables.put(field, values);
+            return;
+        }
+        writeBinaryField(field, values, true);
+    }
+
+    private boolean hasHeaderMarks(FieldInfo field) {
+        FieldInfo headerField = fieldInfos.fieldInfo(HtableHeader.fieldName(field.name));
+        return headerField != null && headerField.getDocValuesType() == DocValuesType.NUMERIC;
+    }
+
+    // the mapping enables the statistics, the hidden field tells it for the segments written without the mapping
+    private boolean hasKeyStats(FieldInfo field) {
+        FieldInfo keyStatsField = fieldInfos.fieldInfo(HtableKeyStats.fieldName(field.name));
+        if (keyStatsField != null && keyStatsField.getDocValuesType() == DocValuesType.BINARY) {
+            return true;
+        }
+        HtableFieldMapper.HtableFieldType fieldType = fieldTypes == null ? null : fieldTypes.apply(field.name);
+        return fieldType != null && fieldType.keyStats();
+    }
+
+    /**
+     * @param aligned tables are page and cache line aligned to be probed in place, the entries of the hidden field
+     *                are only read sequentially
+     */
+    private void writeBinaryField(FieldInfo field, Iterable<BytesRef> values, boolean aligned) throws IOException {
+        meta.writeVInt(field.number);
+        meta.writeByte(HtableDocValuesFormat.BINARY);
+
+        final long valuesOffset = data.getFilePointer();
+        PackedLongValues.Builder startsBuilder = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        // lengths are shifted by one so zero means that document has no value
+        PackedLongValues.Builder lengthsBuilder = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+        int maxLength = 0;
+        int count = 0;
+        for (BytesRef value : values) {
+            long start = data.getFilePointer();
+            if (value != null && value.length > 0) {
+                int pageOffset = (int) (start & (PAGE_SIZE - 1));
+                if (aligned && pageOffset != 0 && pageOffset + value.length > PAGE_SIZE) {
+                    data.writeBytes(PADDING, 0, PAGE_SIZE - pageOffset);
+                    start += PAGE_SIZE - pageOffset;
+                } else if (aligned && value.length >= ALIGNED_LENGTH && (pageOffset & (CACHE_LINE_SIZE - 1)) != 0) {
+                    int padding = CACHE_LINE_SIZE - (pageOffset & (CACHE_LINE_SIZE - 1));
+                    data.writeBytes(PADDING, 0, padding);
+                    start += padding;
+                }
+                data.writeBytes(value.bytes, value.offset, value.length);
+                maxLength = Math.max(maxLength, value.length);
+            }
+            startsBuilder.add(start - valuesOffset);
+            lengthsBuilder.add(value == null ? 0 : value.length + 1L);
+            count++;
+        }
+        meta.writeVInt(count);
+        meta.writeLong(valuesOffset);
+        meta.writeLong(data.getFilePointer() - valuesOffset);
+
+        meta.writeLong(data.getFilePointer());
+        meta.writeVInt(PackedInts.VERSION_CURRENT);
+        meta.writeVInt(ADDRESSES_BLOCK_SIZE);
+        MonotonicBlockPackedWriter startsWriter = new MonotonicBlockPackedWriter(data, ADDRESSES_BLOCK_SIZE);
+        PackedLongValues.Iterator startsIterator = startsBuilder.build().iterator();
+        while (startsIterator.hasNext()) {
+            startsWriter.add(startsIterator.next());
+        }
+        startsWriter.finish();
+
+        // values are iterated once, re-encoded tables are not built twice
+        final long lengthsOffset = data.getFilePointer();
+        int bitsPerLength = DirectWriter.unsignedBitsRequired(maxLength + 1L);
+        meta.writeLong(lengthsOffset);
+        meta.writeByte((byte) bitsPerLength);
+        DirectWriter lengthsWriter = DirectWriter.getInstance(data, count, bitsPerLength);
+        PackedLongValues.Iterator lengthsIterator = lengthsBuilder.build().iterator();
+        while (lengthsIterator.hasNext()) {
+            lengthsWriter.add(lengthsIterator.next());
+        }
+        lengthsWriter.finish();
+        meta.writeLong(data.getFilePointer() - lengthsOffset);
+    }
+
+    // only the tables marked as having a header are re-encoded, the others are of the mapping format
+    private Iterable<BytesRef> mergeEncoded(final String field, final Iterable<BytesRef> values,
+                                            final Iterable<Number> marks,
+                                            @Nullable final Iterable<BytesRef> keyStats) {
+        return new Iterable<BytesRef>() {
+            @Override
+            public Iterator<BytesRef> iterator() {
+                final Iterator<BytesRef> iterator = values.iterator();
+                final Iterator<Number> marksIterator = marks.iterator();
+                final Iterator<BytesRef> keyStatsIterator = keyStats == null ? null : keyStats.iterator();
+                return new Iterator<BytesRef>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public BytesRef next() {
+                        BytesRef value = iterator.next();
+                        Number mark = marksIterator.next();
+                        BytesRef entries = keyStatsIterator == null ? null : keyStatsIterator.next();
+                        if (value == null || value.length == 0 || mark == null || mark.longValue() == 0) {
+                            return value;
+                        }
+                        return mergeEncoder.encode(field, value, entries == null ? null : HtableKeyStats.keys(entries));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    // the tables with a header of the formats with a direct reader are decoded, the entries of the others
+    // are taken from the hidden field
+    private Iterable<BytesRef> collectKeyStats(final Iterable<BytesRef> values, @Nullable final Iterable<Number> marks,
+                                               @Nullable final Iterable<BytesRef> keyStats,
+                                               final HtableKeyStats.Builder stats, final FixedBitSet decoded) {
+        return new Iterable<BytesRef>() {
+            @Override
+            public Iterator<BytesRef> iterator() {
+                final Iterator<BytesRef> iterator = values.iterator();
+                final Iterator<Number> marksIterator = marks == null ? null : marks.iterator();
+                final Iterator<BytesRef> keyStatsIterator = keyStats == null ? null : keyStats.iterator();
+                return new Iterator<BytesRef>() {
+                    private int docId = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public BytesRef next() {
+                        BytesRef value = iterator.next();
+                        Number mark = marksIterator == null ? null : marksIterator.next();
+                        BytesRef entries = keyStatsIterator == null ? null : keyStatsIterator.next();
+                        if (value != null && value.length > 0 && stats.isComplete()) {
+                            BytesRef decodedEntries = mark == null || mark.longValue() == 0 ? null : mergeEncoder.keyStatsEntries(value);
+                            if (decodedEntries != null) {
+                                stats.add(decodedEntries);
+                                decoded.set(docId);
+                            } else {
+                                stats.add(entries == null || entries.length == 0 ? HtableKeyStats.UNKNOWN_ENTRIES : entries);
+                            }
+                        }
+                        docId++;
+                        return value;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    // the entries of the decoded tables are not kept, they were only passed by older mappers
+    private static Iterable<BytesRef> withoutDecoded(final Iterable<BytesRef> keyStats, final FixedBitSet decoded) {
+        return new Iterable<BytesRef>() {
+            @Override
+            public Iterator<BytesRef> iterator() {
+                final Iterator<BytesRef> iterator = keyStats.iterator();
+                return new Iterator<BytesRef>() {
+                    private int docId = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public BytesRef next() {
+                        BytesRef entries = iterator.next();
+                        return decoded.get(docId++) ? null : entries;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private void addKeyStats(FieldInfo field, HtableKeyStats stats) throws IOException {
+        meta.writeVInt(field.number);
+        meta.writeByte(HtableDocValuesFormat.KEY_STATS);
+        if (stats == null) {
+            meta.writeVInt(-1);
+            return;
+        }
+        meta.writeVInt(stats.size());
+        meta.writeByte(stats.kind());
+        long offset = data.getFilePointer();
+        stats.writeTo(data);
+        meta.writeLong(offset);
+        meta.writeLong(data.getFilePointer() - offset);
+    }
+
+    @Override
+    public void addSortedField(FieldInfo field, Iterable<BytesRef> values, Iterable<Number> docToOrd) throws IOException {
+        delegate.addSortedField(field, values, docToOrd);
+    }
+
+    @Override
+    public void addSortedNumericField(FieldInfo field, Iterable<Number> docToValueCount, Iterable<Number> values) throws IOException {
+        delegate.addSortedNumericField(field, docToValueCount, values);
+    }
+
+    @Override
+    public void addSortedSetField(FieldInfo field, Iterable<BytesRef> values, Iterable<Number> docToOrdCount, Iterable<Number> ords) throws IOException {
+        delegate.addSortedSetField(field, values, docToOrdCount, ords);
+    }
+
+    @Override
+    public void close() throws IOException {
+        boolean success = false;
+        try {
+            for (Map.Entry<FieldInfo, Iterable<BytesRef>> table : deferredTables.entrySet()) {
+                FieldInfo field = table.getKey();
+                String name = field.name;
+                Iterable<Number> marks = headerMarks.get(name);
+                Iterable<BytesRef> keyStats = keyStatsEntries.get(name);
+                Iterable<BytesRef> values = table.getValue();
+                if (merging && marks != null) {
+                    values = mergeEncoded(name, values, marks, keyStats);
+                }
+                if (!hasKeyStats(field)) {
+                    writeBinaryField(field, values, true);
+                    continue;
+                }
+                // the statistics of the tables as they are written, so of the merge format after a merge
+                HtableKeyStats.Builder stats = new HtableKeyStats.Builder();
+                FixedBitSet decoded = new FixedBitSet(maxDoc);
+                writeBinaryField(field, collectKeyStats(values, marks, keyStats, stats, decoded), true);
+                addKeyStats(field, stats.build(HtableKeyStats.MAX_KEYS_WITH_RANGES));
+                FieldInfo keyStatsField = keyStatsFields.remove(name);
+                if (keyStatsField != null) {
+                    writeBinaryField(keyStatsField, withoutDecoded(keyStats, decoded), false);
+                }
+            }
+            deferredTables.clear();
+            for (Map.Entry<String, FieldInfo> keyStatsField : keyStatsFields.entrySet()) {
+                writeBinaryField(keyStatsField.getValue(), keyStatsEntries.get(keyStatsField.getKey()), false);
+            }
+            keyStatsFields.clear();
+            if (meta != null) {
+                meta.writeVInt(-1);
+                CodecUtil.writeFooter(meta);
+            }
+            if (data != null) {
+                CodecUtil.writeFooter(data);
+            }
+            success = true;
+        } finally {
+            if (success) {
+                IOUtils.close(data, meta, delegate);
+            } else {
+                IOUtils.closeWhileHandlingException(data, meta, delegate);
+            }
+            data = meta = null;
+        }
+    }
+}
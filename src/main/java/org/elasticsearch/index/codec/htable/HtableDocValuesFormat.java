@@ -0,0 +1,74 @@
+package org.elasticsearch.index.codec.htable;
+
+import com.google.common.base.Function;
+
+import java.io.IOException;
+
+import org.apache.lucene.codecs.DocValuesConsumer;
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.codecs.lucene50.Lucene50DocValuesFormat;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+
+
+/**
+ * Doc values format that stores binary fields (hash tables) uncompressed and page aligned,
+ * so that a table can be probed in place on the memory mapped file. Large tables also start at a cache line.
+ * The statistics of the keys ({@link HtableKeyStats}) are computed from the tables the codec can decode
+ * and from the hidden fields with the entries of the other tables.
+ * All the other doc values types are delegated to the default Lucene format.
+ */
+public class HtableDocValuesFormat extends DocValuesFormat {
+    public static final String NAME = "Htable";
+
+    static final String DATA_CODEC = "HtableDocValuesData";
+    static final String DATA_EXTENSION = "hdvd";
+    static final String META_CODEC = "HtableDocValuesMetadata";
+    static final String META_EXTENSION = "hdvm";
+    static final int VERSION_START = 0;
+    static final int VERSION_KEY_STATS = 1;
+    static final int VERSION_KEY_COUNTS = 2;
+    static final int VERSION_CURRENT = VERSION_KEY_COUNTS;
+
+    static final byte BINARY = 0;
+    static final byte KEY_STATS = 1;
+
+    // tables no larger than a page never cross a page boundary
+    static final int PAGE_SIZE = 4096;
+    // larger tables start at a cache line so their layouts can align the parts read by a lookup
+    static final int CACHE_LINE_SIZE = 64;
+    static final int ALIGNED_LENGTH = 1024;
+    // tables are of very different sizes so use small blocks for the start addresses
+    static final int ADDRESSES_BLOCK_SIZE = 4096;
+
+    private final DocValuesFormat delegate = new Lucene50DocValuesFormat();
+    private final Function<String, HtableFieldMapper.HtableFieldType> fieldTypes;
+
+    public HtableDocValuesFormat() {
+        this(null);
+    }
+
+    /**
+     * @param fieldTypes returns the field type of the mapping by the index name of the field, the merges write
+     *                   the merge format with its parameters from the mapping and the statistics of the keys
+     *                   are computed for the fields with {@code key_stats}. Default parameters and the statistics
+     *                   of the fields with the hidden field only if {@code null}.
+     */
+    public HtableDocValuesFormat(@Nullable Function<String, HtableFieldMapper.HtableFieldType> fieldTypes) {
+        super(NAME);
+        this.fieldTypes = fieldTypes;
+    }
+
+    @Override
+    public DocValuesConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+        return new HtableDocValuesConsumer(state, delegate.fieldsConsumer(state), fieldTypes);
+    }
+
+    @Override
+    public DocValuesProducer fieldsProducer(SegmentReadState state) throws IOException {
+        return new HtableDocValuesProducer(state, delegate.fieldsProducer(state));
+    }
+}
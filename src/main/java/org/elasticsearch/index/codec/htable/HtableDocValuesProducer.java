@@ -0,0 +1,270 @@
+package org.elasticsearch.index.codec.htable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Accountables;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.DirectReader;
+import org.apache.lucene.util.packed.MonotonicBlockPackedReader;
+
+
+class HtableDocValuesProducer extends DocValuesProducer {
+    private final Map<String, BinaryEntry> binaries = new HashMap<>();
+    private final Map<String, KeyStatsEntry> keyStats = new HashMap<>();
+    private final Map<String, MonotonicBlockPackedReader> startsInstances = new HashMap<>();
+    private final Map<String, HtableKeyStats> keyStatsInstances = new HashMap<>();
+    private final AtomicLong ramBytesUsed;
+    private final int maxDoc;
+    private final DocValuesProducer delegate;
+    private IndexInput data;
+
+    HtableDocValuesProducer(SegmentReadState state, DocValuesProducer delegate) throws IOException {
+        this.delegate = delegate;
+        this.maxDoc = state.segmentInfo.maxDoc();
+        this.ramBytesUsed = new AtomicLong(RamUsageEstimator.shallowSizeOfInstance(getClass()));
+
+        boolean success = false;
+        try {
+            String metaName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, HtableDocValuesFormat.META_EXTENSION);
+            int version = -1;
+            try (ChecksumIndexInput in = state.directory.openChecksumInput(metaName, state.context)) {
+                Throwable priorE = null;
+                try {
+                    version = CodecUtil.checkIndexHeader(in, HtableDocValuesFormat.META_CODEC,
+                                                         HtableDocValuesFormat.VERSION_START, HtableDocValuesFormat.VERSION_CURRENT,
+                                                         state.segmentInfo.getId(), state.segmentSuffix);
+                    readFields(in, state.fieldInfos, version);
+                } catch (Throwable exception) {
+                    priorE = exception;
+                } finally {
+                    CodecUtil.checkFooter(in, priorE);
+                }
+            }
+
+            String dataName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, HtableDocValuesFormat.DATA_EXTENSION);
+            data = state.directory.openInput(dataName, state.context);
+            int dataVersion = CodecUtil.checkIndexHeader(data, HtableDocValuesFormat.DATA_CODEC,
+                                                         HtableDocValuesFormat.VERSION_START, HtableDocValuesFormat.VERSION_CURRENT,
+                                                         state.segmentInfo.getId(), state.segmentSuffix);
+            if (version != dataVersion) {
+                throw new CorruptIndexException("Format versions mismatch: meta=" + version + ", data=" + dataVersion, data);
+            }
+            CodecUtil.retrieveChecksum(data);
+            success = true;
+        } finally {
+            if (!success) {
+                IOUtils.closeWhileHandlingException(data, delegate);
+            }
+        }
+    }
+
+    private void readFields(IndexInput meta, FieldInfos infos, int version) throws IOException {
+        int fieldNumber = meta.readVInt();
+        while (fieldNumber != -1) {
+            FieldInfo info = infos.fieldInfo(fieldNumber);
+            if (info == null) {
+                throw new CorruptIndexException("Invalid field number: " + fieldNumber, meta);
+            }
+            byte type = meta.readByte();
+            if (type == HtableDocValuesFormat.BINARY) {
+                binaries.put(info.name, readBinaryEntry(meta));
+            } else if (type == HtableDocValuesFormat.KEY_STATS) {
+                keyStats.put(info.name, readKeyStatsEntry(meta, version));
+            } else {
+                throw new CorruptIndexException("Invalid entry type: " + type + " for field: " + info.name, meta);
+            }
+            fieldNumber = meta.readVInt();
+        }
+    }
+
+    private static BinaryEntry readBinaryEntry(IndexInput meta) throws IOException {
+        BinaryEntry entry = new BinaryEntry();
+        entry.count = meta.readVInt();
+        entry.valuesOffset = meta.readLong();
+        entry.valuesLength = meta.readLong();
+        entry.startsOffset = meta.readLong();
+        entry.packedIntsVersion = meta.readVInt();
+        entry.blockSize = meta.readVInt();
+        entry.lengthsOffset = meta.readLong();
+        entry.bitsPerLength = meta.readByte();
+        entry.lengthsLength = meta.readLong();
+        return entry;
+    }
+
+    private static KeyStatsEntry readKeyStatsEntry(IndexInput meta, int version) throws IOException {
+        KeyStatsEntry entry = new KeyStatsEntry();
+        entry.size = meta.readVInt();
+        if (entry.size >= 0) {
+            if (version >= HtableDocValuesFormat.VERSION_KEY_COUNTS) {
+                entry.kind = meta.readByte();
+                entry.hasDocCounts = true;
+            } else {
+                entry.kind = HtableKeyStats.RANGES;
+            }
+            entry.offset = meta.readLong();
+            entry.length = meta.readLong();
+        }
+        return entry;
+    }
+
+    @Override
+    public NumericDocValues getNumeric(FieldInfo field) throws IOException {
+        return delegate.getNumeric(field);
+    }
+
+    @Override
+    public BinaryDocValues getBinary(FieldInfo field) throws IOException {
+        BinaryEntry entry = binaries.get(field.name);
+        if (entry == null) {
+            return delegate.getBinary(field);
+        }
+        IndexInput valuesInput = data.slice("htable-values", entry.valuesOffset, entry.valuesLength);
+        KeyStatsEntry keyStatsEntry = keyStats.get(field.name);
+        return new HtableBinaryDocValues(valuesInput,
+                                         data.randomAccessSlice(entry.valuesOffset, entry.valuesLength),
+                                         getStartsInstance(field, entry),
+                                         getLengthsInstance(entry),
+                                         keyStatsEntry == null ? null : getKeyStatsInstance(field, keyStatsEntry));
+    }
+
+    private synchronized MonotonicBlockPackedReader getStartsInstance(FieldInfo field, BinaryEntry entry) throws IOException {
+        MonotonicBlockPackedReader starts = startsInstances.get(field.name);
+        if (starts == null) {
+            IndexInput startsInput = data.clone();
+            startsInput.seek(entry.startsOffset);
+            starts = MonotonicBlockPackedReader.of(startsInput, entry.packedIntsVersion, entry.blockSize, entry.count, false);
+            startsInstances.put(field.name, starts);
+            ramBytesUsed.addAndGet(starts.ramBytesUsed());
+        }
+        return starts;
+    }
+
+    private synchronized HtableKeyStats getKeyStatsInstance(FieldInfo field, KeyStatsEntry entry) throws IOException {
+        if (entry.size < 0) {
+            return null;
+        }
+        HtableKeyStats stats = keyStatsInstances.get(field.name);
+        if (stats == null) {
+            IndexInput keyStatsInput = data.slice("htable-key-stats", entry.offset, entry.length);
+            stats = HtableKeyStats.read(keyStatsInput, entry.size, entry.kind, entry.hasDocCounts);
+            keyStatsInstances.put(field.name, stats);
+            ramBytesUsed.addAndGet(stats.ramBytesUsed());
+        }
+        return stats;
+    }
+
+    private LongValues getLengthsInstance(BinaryEntry entry) throws IOException {
+        return DirectReader.getInstance(data.randomAccessSlice(entry.lengthsOffset, entry.lengthsLength), entry.bitsPerLength);
+    }
+
+    @Override
+    public SortedDocValues getSorted(FieldInfo field) throws IOException {
+        return delegate.getSorted(field);
+    }
+
+    @Override
+    public SortedNumericDocValues getSortedNumeric(FieldInfo field) throws IOException {
+        return delegate.getSortedNumeric(field);
+    }
+
+    @Override
+    public SortedSetDocValues getSortedSet(FieldInfo field) throws IOException {
+        return delegate.getSortedSet(field);
+    }
+
+    @Override
+    public Bits getDocsWithField(FieldInfo field) throws IOException {
+        BinaryEntry entry = binaries.get(field.name);
+        if (entry == null) {
+            return delegate.getDocsWithField(field);
+        }
+        final LongValues lengths = getLengthsInstance(entry);
+        return new Bits() {
+            @Override
+            public boolean get(int index) {
+                return lengths.get(index) != 0;
+            }
+
+            @Override
+            public int length() {
+                return maxDoc;
+            }
+        };
+    }
+
+    @Override
+    public void checkIntegrity() throws IOException {
+        CodecUtil.checksumEntireFile(data);
+        delegate.checkIntegrity();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed.get() + delegate.ramBytesUsed();
+    }
+
+    @Override
+    public synchronized Collection<Accountable> getChildResources() {
+        List<Accountable> resources = new ArrayList<>();
+        resources.addAll(Accountables.namedAccountables("starts field", startsInstances));
+        resources.addAll(Accountables.namedAccountables("key stats field", keyStatsInstances));
+        resources.add(Accountables.namedAccountable("delegate", delegate));
+        return Collections.unmodifiableList(resources);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOUtils.close(data, delegate);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(fields=" + binaries.size() + ",keyStats=" + keyStats.size() + ",delegate=" + delegate + ")";
+    }
+
+    static class BinaryEntry {
+        int count;
+        long valuesOffset;
+        long valuesLength;
+        long startsOffset;
+        int packedIntsVersion;
+        int blockSize;
+        long lengthsOffset;
+        byte bitsPerLength;
+        long lengthsLength;
+    }
+
+    static class KeyStatsEntry {
+        // -1 if the statistics are not available
+        int size;
+        byte kind;
+        boolean hasDocCounts;
+        long offset;
+        long length;
+    }
+}
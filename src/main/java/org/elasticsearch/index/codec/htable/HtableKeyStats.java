@@ -0,0 +1,417 @@
+package org.elasticsearch.index.codec.htable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import com.carrotsearch.hppc.LongIntHashMap;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.Nullable;
+
+
+/**
+ * Per segment statistics of the keys of a hash table field: the number of the documents with the key
+ * and the range of the values of every key. When the segment has more than {@link #MAX_KEYS_WITH_RANGES}
+ * distinct keys only a Bloom filter of the keys is kept.
+ * <p>
+ * {@link HtableDocValuesFormat} computes the statistics of the segment when the segment is flushed or merged
+ * and keeps them with the doc values of the tables. It decodes the tables with a header of the formats
+ * with a direct reader itself. The tables of the other formats, tuples and external values cannot be decoded
+ * without the mapping, so the mapper passes their entries in a hidden binary field (see {@link #fieldName(String)}
+ * and {@link #encode(long[], float[], int)}). The statistics are only rebuilt when merging, so the statistics
+ * of the merged segment do not include the deleted documents. Until then the ranges are bounds of the values
+ * of the live documents.
+ */
+public final class HtableKeyStats implements Accountable {
+    static final String FIELD_SUFFIX = "._key_stats";
+
+    private static final byte ENTRIES = 0;
+    private static final byte UNKNOWN = 1;
+
+    /**
+     * Marks the document which table entries are not known, for example when the table is passed as an external value.
+     * Statistics are not available for the segments with such documents.
+     */
+    public static final BytesRef UNKNOWN_ENTRIES = new BytesRef(new byte[]{UNKNOWN});
+
+    /**
+     * Segments with more distinct keys only have a Bloom filter of the keys,
+     * the ranges would take 20 bytes of the heap per key.
+     */
+    public static final int MAX_KEYS_WITH_RANGES = 1 << 18;
+
+    static final byte RANGES = 0;
+    static final byte BLOOM_FILTER = 1;
+
+    // about 1% of false positives
+    static final int BLOOM_FILTER_BITS_PER_KEY = 10;
+    static final int BLOOM_FILTER_HASHES = 7;
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(HtableKeyStats.class);
+
+    private final int size;
+    // sorted keys, null when there is only the Bloom filter
+    private final long[] keys;
+    // null for the segments written before the counts
+    private final int[] docCounts;
+    private final float[] minValues;
+    private final float[] maxValues;
+    private final long[] bloomFilter;
+
+    private HtableKeyStats(int size, long[] keys, int[] docCounts, float[] minValues, float[] maxValues, long[] bloomFilter) {
+        this.size = size;
+        this.keys = keys;
+        this.docCounts = docCounts;
+        this.minValues = minValues;
+        this.maxValues = maxValues;
+        this.bloomFilter = bloomFilter;
+    }
+
+    /**
+     * Name of the hidden binary field with the entries of the tables of the field that the codec cannot decode.
+     */
+    public static String fieldName(String field) {
+        return field + FIELD_SUFFIX;
+    }
+
+    static boolean isKeyStatsField(String name) {
+        return name.endsWith(FIELD_SUFFIX) && name.length() > FIELD_SUFFIX.length();
+    }
+
+    static String tableFieldName(String name) {
+        return name.substring(0, name.length() - FIELD_SUFFIX.length());
+    }
+
+    /**
+     * Encodes the first {@code count} entries of a table for the hidden field.
+     */
+    public static BytesRef encode(long[] keys, float[] values, int count) {
+        byte[] bytes = new byte[1 + 5 + count * 12];
+        ByteArrayDataOutput out = new ByteArrayDataOutput(bytes);
+        try {
+            out.writeByte(ENTRIES);
+            out.writeVInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(keys[i]);
+                out.writeInt(Float.floatToIntBits(values[i]));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode table entries", e);
+        }
+        return new BytesRef(bytes, 0, out.getPosition());
+    }
+
+    /**
+     * Returns the keys of the entries encoded by {@link #encode(long[], float[], int)}
+     * or {@code null} if the entries of the table are unknown.
+     */
+    @Nullable
+    static long[] keys(BytesRef encoded) {
+        if (encoded.length == 0 || encoded.bytes[encoded.offset] != ENTRIES) {
+            return null;
+        }
+        ByteArrayDataInput in = new ByteArrayDataInput(encoded.bytes, encoded.offset + 1, encoded.length - 1);
+        long[] keys = new long[in.readVInt()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = in.readLong();
+            in.skipBytes(4);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the statistics of the field in the segment or {@code null} if they are not available:
+     * the segment is not written by the htable codec, the statistics are not enabled for the field
+     * or some tables of the segment were indexed without their entries.
+     */
+    @Nullable
+    public static HtableKeyStats get(LeafReader reader, String field) throws IOException {
+        HtableKeyStats stats = get(reader.getBinaryDocValues(field));
+        if (stats != null) {
+            return stats;
+        }
+        // segments written before the statistics were kept with the tables
+        return get(reader.getBinaryDocValues(fieldName(field)));
+    }
+
+    @Nullable
+    private static HtableKeyStats get(@Nullable BinaryDocValues docValues) {
+        return docValues instanceof HtableBinaryDocValues ? ((HtableBinaryDocValues) docValues).keyStats() : null;
+    }
+
+    /**
+     * Returns the number of distinct keys in the segment.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns {@code false} if no table of the segment has the key.
+     * Can return {@code true} for an absent key when there is only the Bloom filter.
+     */
+    public boolean mayContain(long key) {
+        if (keys != null) {
+            return Arrays.binarySearch(keys, key) >= 0;
+        }
+        int mask = bloomFilter.length * 64 - 1;
+        long hash = mix(key);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < BLOOM_FILTER_HASHES; i++) {
+            int bit = (hash1 + i * hash2) & mask;
+            if ((bloomFilter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if there are the counts and the ranges of the keys.
+     */
+    public boolean hasRanges() {
+        return keys != null;
+    }
+
+    /**
+     * Returns the index of the key or {@code -1} if no table of the segment has the key.
+     * Only available when {@link #hasRanges()}.
+     */
+    public int find(long key) {
+        int index = Arrays.binarySearch(keys, key);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Returns the number of the documents with the key including deleted ones
+     * or {@code -1} if the segment was written without the counts.
+     */
+    public int docCount(int index) {
+        return docCounts == null ? -1 : docCounts[index];
+    }
+
+    public float minValue(int index) {
+        return minValues[index];
+    }
+
+    public float maxValue(int index) {
+        return maxValues[index];
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long ramBytesUsed = BASE_RAM_BYTES_USED;
+        if (keys != null) {
+            ramBytesUsed += RamUsageEstimator.sizeOf(keys) + RamUsageEstimator.sizeOf(minValues) + RamUsageEstimator.sizeOf(maxValues);
+        }
+        if (docCounts != null) {
+            ramBytesUsed += RamUsageEstimator.sizeOf(docCounts);
+        }
+        if (bloomFilter != null) {
+            ramBytesUsed += RamUsageEstimator.sizeOf(bloomFilter);
+        }
+        return ramBytesUsed;
+    }
+
+    // murmur3 finalizer
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    @Override
+    public Collection<Accountable> getChildResources() {
+        return Collections.emptyList();
+    }
+
+    byte kind() {
+        return keys != null ? RANGES : BLOOM_FILTER;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        if (keys == null) {
+            for (long bits : bloomFilter) {
+                out.writeLong(bits);
+            }
+            return;
+        }
+        for (long key : keys) {
+            out.writeLong(key);
+        }
+        for (int docCount : docCounts) {
+            out.writeInt(docCount);
+        }
+        for (float value : minValues) {
+            out.writeInt(Float.floatToIntBits(value));
+        }
+        for (float value : maxValues) {
+            out.writeInt(Float.floatToIntBits(value));
+        }
+    }
+
+    static HtableKeyStats read(IndexInput in, int size, byte kind, boolean hasDocCounts) throws IOException {
+        if (kind == BLOOM_FILTER) {
+            long[] bloomFilter = new long[(int) (in.length() >>> 3)];
+            for (int i = 0; i < bloomFilter.length; i++) {
+                bloomFilter[i] = in.readLong();
+            }
+            return new HtableKeyStats(size, null, null, null, null, bloomFilter);
+        }
+        long[] keys = new long[size];
+        int[] docCounts = hasDocCounts ? new int[size] : null;
+        float[] minValues = new float[size];
+        float[] maxValues = new float[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = in.readLong();
+        }
+        if (hasDocCounts) {
+            for (int i = 0; i < size; i++) {
+                docCounts[i] = in.readInt();
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            minValues[i] = Float.intBitsToFloat(in.readInt());
+        }
+        for (int i = 0; i < size; i++) {
+            maxValues[i] = Float.intBitsToFloat(in.readInt());
+        }
+        return new HtableKeyStats(size, keys, docCounts, minValues, maxValues, null);
+    }
+
+    /**
+     * Accumulates the statistics of the tables of a segment or of the merged segments.
+     */
+    static class Builder {
+        private final LongIntHashMap slots = new LongIntHashMap();
+        private long[] keys = new long[16];
+        private int[] docCounts = new int[16];
+        private float[] minValues = new float[16];
+        private float[] maxValues = new float[16];
+        private int size;
+        private boolean complete = true;
+        private final ByteArrayDataInput in = new ByteArrayDataInput();
+
+        /**
+         * Returns {@code false} once the entries of a table are unknown, the other entries are ignored after that.
+         */
+        boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Adds the entries encoded by {@link #encode(long[], float[], int)}.
+         */
+        void add(BytesRef encoded) {
+            if (!complete || encoded.length == 0) {
+                return;
+            }
+            in.reset(encoded.bytes, encoded.offset, encoded.length);
+            if (in.readByte() != ENTRIES) {
+                complete = false;
+                return;
+            }
+            int count = in.readVInt();
+            for (int i = 0; i < count; i++) {
+                add(in.readLong(), Float.intBitsToFloat(in.readInt()));
+            }
+        }
+
+        private void add(long key, float value) {
+            int index = slots.indexOf(key);
+            if (slots.indexExists(index)) {
+                int slot = slots.indexGet(index);
+                docCounts[slot]++;
+                minValues[slot] = Math.min(minValues[slot], value);
+                maxValues[slot] = Math.max(maxValues[slot], value);
+            } else {
+                if (size == keys.length) {
+                    int newLength = ArrayUtil.oversize(size + 1, RamUsageEstimator.NUM_BYTES_LONG);
+                    keys = Arrays.copyOf(keys, newLength);
+                    docCounts = Arrays.copyOf(docCounts, newLength);
+                    minValues = Arrays.copyOf(minValues, newLength);
+                    maxValues = Arrays.copyOf(maxValues, newLength);
+                }
+                keys[size] = key;
+                docCounts[size] = 1;
+                minValues[size] = value;
+                maxValues[size] = value;
+                slots.indexInsert(index, key, size);
+                size++;
+            }
+        }
+
+        /**
+         * Returns the statistics sorted by the keys or {@code null} if they are not available.
+         * Only the Bloom filter is built if there are more than {@code maxKeysWithRanges} keys.
+         */
+        @Nullable
+        HtableKeyStats build(int maxKeysWithRanges) {
+            if (!complete) {
+                return null;
+            }
+            if (size > maxKeysWithRanges) {
+                return new HtableKeyStats(size, null, null, null, null, bloomFilter());
+            }
+            final long[] sortedKeys = Arrays.copyOf(keys, size);
+            final int[] sortedDocCounts = Arrays.copyOf(docCounts, size);
+            final float[] sortedMinValues = Arrays.copyOf(minValues, size);
+            final float[] sortedMaxValues = Arrays.copyOf(maxValues, size);
+            new InPlaceMergeSorter() {
+                @Override
+                protected int compare(int i, int j) {
+                    return Long.compare(sortedKeys[i], sortedKeys[j]);
+                }
+
+                @Override
+                protected void swap(int i, int j) {
+                    long key = sortedKeys[i];
+                    sortedKeys[i] = sortedKeys[j];
+                    sortedKeys[j] = key;
+                    int docCount = sortedDocCounts[i];
+                    sortedDocCounts[i] = sortedDocCounts[j];
+                    sortedDocCounts[j] = docCount;
+                    float value = sortedMinValues[i];
+                    sortedMinValues[i] = sortedMinValues[j];
+                    sortedMinValues[j] = value;
+                    value = sortedMaxValues[i];
+                    sortedMaxValues[i] = sortedMaxValues[j];
+                    sortedMaxValues[j] = value;
+                }
+            }.sort(0, size);
+            return new HtableKeyStats(size, sortedKeys, sortedDocCounts, sortedMinValues, sortedMaxValues, null);
+        }
+
+        private long[] bloomFilter() {
+            long numBits = Math.max(64, Long.highestOneBit((long) size * BLOOM_FILTER_BITS_PER_KEY - 1) << 1);
+            long[] bloomFilter = new long[(int) Math.min(numBits >>> 6, 1 << 24)];
+            int mask = bloomFilter.length * 64 - 1;
+            for (int i = 0; i < size; i++) {
+                long hash = mix(keys[i]);
+                int hash1 = (int) hash;
+                int hash2 = (int) (hash >>> 32);
+                for (int j = 0; j < BLOOM_FILTER_HASHES; j++) {
+                    int bit = (hash1 + j * hash2) & mask;
+                    bloomFilter[bit >>> 6] |= 1L << bit;
+                }
+            }
+            return bloomFilter;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.SortedMap;
+
+
+/**
+ * Sorted entries partitioned into blocks of fixed size with a two-level fence index in front of them:
+ * <pre>
+ * int    number of entries
+ * int    number of entries in a block
+ * long[] top index: minimum key of every fence page
+ * long[8][] fence pages: minimum key of every block, a page takes a cache line
+ * long[][] keys of the blocks, the last block can be shorter
+ * byte[] values in the order of the keys
+ * </pre>
+ * Fence pages and blocks of keys start at a cache line. Offsets are aligned as if the table
+ * is preceded by its {@link HtableHeader}, {@code htable} codec starts large tables at a cache line.
+ * A lookup searches the top index, which shares the first cache line with the header for up to
+ * {@link #MAX_TOP_INDEX_IN_LINE} fence pages, then a single fence page and the keys of a single block.
+ */
+public class BlockedHtable {
+    public static final int DEFAULT_BLOCK_SIZE = 8;
+
+    static final int HEADER_SIZE = 8;
+    static final int KEY_SIZE = 8;
+    static final int CACHE_LINE_SIZE = 64;
+    static final int KEYS_PER_LINE = CACHE_LINE_SIZE / KEY_SIZE;
+    static final int MAX_TOP_INDEX_IN_LINE = (CACHE_LINE_SIZE - HtableHeader.SIZE - HEADER_SIZE) / KEY_SIZE;
+
+    static int numBlocks(int size, int blockSize) {
+        return (int) ((size + (long) blockSize - 1) / blockSize);
+    }
+
+    static int numPages(int numBlocks) {
+        return (numBlocks + KEYS_PER_LINE - 1) / KEYS_PER_LINE;
+    }
+
+    static long pagesOffset(int numPages) {
+        return align(HEADER_SIZE + (long) numPages * KEY_SIZE);
+    }
+
+    /**
+     * Bytes between the first keys of neighbouring blocks, so the keys of a block never cross a cache line
+     * if they fit into it.
+     */
+    static long blockStride(int blockSize) {
+        long blockKeysSize = (long) blockSize * KEY_SIZE;
+        if (blockKeysSize <= CACHE_LINE_SIZE) {
+            return Long.highestOneBit(blockKeysSize * 2 - 1);
+        }
+        return (blockKeysSize + CACHE_LINE_SIZE - 1) & -CACHE_LINE_SIZE;
+    }
+
+    /**
+     * Rounds up the offset in the table to a cache line of the stored value.
+     */
+    static long align(long offset) {
+        long valueOffset = offset + HtableHeader.SIZE;
+        return ((valueOffset + CACHE_LINE_SIZE - 1) & -CACHE_LINE_SIZE) - HtableHeader.SIZE;
+    }
+
+    public static class Writer implements HtableWriter {
+        private final int valueSize;
+        private final int blockSize;
+
+        public Writer(int valueSize) {
+            this(valueSize, DEFAULT_BLOCK_SIZE);
+        }
+
+        public Writer(int valueSize, int blockSize) {
+            if (blockSize < 1) {
+                throw new IllegalArgumentException("[block_size] must be positive; got [" + blockSize + "]");
+            }
+            this.valueSize = valueSize;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        public byte[] dump(SortedMap<Long, byte[]> entries) {
+            int size = entries.size();
+            int numBlocks = numBlocks(size, blockSize);
+            int numPages = numPages(numBlocks);
+            int pagesOffset = (int) pagesOffset(numPages);
+            int keysOffset = pagesOffset + numPages * CACHE_LINE_SIZE;
+            int blockStride = (int) blockStride(blockSize);
+            int valuesOffset = keysOffset + numBlocks * blockStride;
+            ByteBuffer buffer = ByteBuffer.allocate(valuesOffset + size * valueSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(size);
+            buffer.putInt(blockSize);
+
+            int i = 0;
+            for (Map.Entry<Long, byte[]> entry : entries.entrySet()) {
+                int block = i / blockSize;
+                int index = i - block * blockSize;
+                if (index == 0) {
+                    if (block % KEYS_PER_LINE == 0) {
+                        buffer.putLong(HEADER_SIZE + block / KEYS_PER_LINE * KEY_SIZE, entry.getKey());
+                    }
+                    buffer.putLong(pagesOffset + block * KEY_SIZE, entry.getKey());
+                }
+                buffer.putLong(keysOffset + block * blockStride + index * KEY_SIZE, entry.getKey());
+                buffer.position(valuesOffset + i * valueSize);
+                buffer.put(entry.getValue(), 0, valueSize);
+                i++;
+            }
+            return buffer.array();
+        }
+    }
+
+    public static class Reader extends DirectHtableReader {
+        private int size;
+        private int blockSize;
+        private int numBlocks;
+        private int numPages;
+        private long pagesOffset;
+        private long keysOffset;
+        private long blockStride;
+        private long valuesOffset;
+
+        public Reader(int valueSize) {
+            super(valueSize);
+        }
+
+        @Override
+        protected void readHeader() throws IOException {
+            size = readInt(0);
+            blockSize = readInt(4);
+            numBlocks = size <= 0 || blockSize <= 0 ? 0 : numBlocks(size, blockSize);
+            numPages = numPages(numBlocks);
+            pagesOffset = pagesOffset(numPages);
+            keysOffset = pagesOffset + (long) numPages * CACHE_LINE_SIZE;
+            blockStride = blockSize <= 0 ? 0 : blockStride(blockSize);
+            valuesOffset = keysOffset + numBlocks * blockStride;
+            addBytesRead(HEADER_SIZE);
+        }
+
+        @Override
+        protected long findValueOffset(long key) throws IOException {
+            int readKeys = 0;
+            // the last fence page which minimum key is not greater than the key
+            int low = 0;
+            int high = numPages - 1;
+            int page = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long minKey = readLong(HEADER_SIZE + (long) mid * KEY_SIZE);
+                readKeys++;
+                if (minKey <= key) {
+                    page = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (page < 0) {
+                addBytesRead((long) readKeys * KEY_SIZE);
+                return NOT_FOUND_OFFSET;
+            }
+
+            // the last block of the page which minimum key is not greater than the key,
+            // the first one is known from the top index
+            int block = page * KEYS_PER_LINE;
+            int lastBlock = Math.min(block + KEYS_PER_LINE, numBlocks) - 1;
+            while (block < lastBlock) {
+                long minKey = readLong(pagesOffset + (long) (block + 1) * KEY_SIZE);
+                readKeys++;
+                if (minKey > key) {
+                    break;
+                }
+                block++;
+            }
+
+            long blockStart = (long) block * blockSize;
+            int currentBlockSize = (int) Math.min(blockSize, size - blockStart);
+            long blockOffset = keysOffset + block * blockStride;
+            long valueOffset = NOT_FOUND_OFFSET;
+            for (int i = 0; i < currentBlockSize; i++) {
+                long blockKey = readLong(blockOffset + (long) i * KEY_SIZE);
+                readKeys++;
+                if (blockKey == key) {
+                    valueOffset = valuesOffset + (blockStart + i) * valueSize;
+                    break;
+                }
+                if (blockKey > key) {
+                    break;
+                }
+            }
+            addBytesRead((long) readKeys * KEY_SIZE);
+            return valueOffset;
+        }
+
+        @Override
+        protected void readEntries(SortedMap<Long, byte[]> entries) throws IOException {
+            if (blockSize < 1) {
+                throw new IllegalArgumentException("[block_size] must be positive; got [" + blockSize + "]");
+            }
+            checkLength(valuesOffset + (long) size * valueSize);
+            for (int block = 0; block < numBlocks; block++) {
+                long blockStart = (long) block * blockSize;
+                int currentBlockSize = (int) Math.min(blockSize, size - blockStart);
+                long blockOffset = keysOffset + block * blockStride;
+                long firstKey = readLong(blockOffset);
+                if (readLong(pagesOffset + (long) block * KEY_SIZE) != firstKey) {
+                    throw new IllegalArgumentException("Fence key of block [" + block + "] does not match its first key");
+                }
+                if (block % KEYS_PER_LINE == 0
+                    && readLong(HEADER_SIZE + (long) block / KEYS_PER_LINE * KEY_SIZE) != firstKey) {
+                    throw new IllegalArgumentException(
+                        "Top index key of fence page [" + block / KEYS_PER_LINE + "] does not match its first key");
+                }
+                for (int i = 0; i < currentBlockSize; i++) {
+                    long key = readLong(blockOffset + (long) i * KEY_SIZE);
+                    if (!entries.isEmpty() && key <= entries.lastKey()) {
+                        throw new IllegalArgumentException("Keys of blocked hash table are not in ascending order");
+                    }
+                    addEntry(entries, key, valuesOffset + (blockStart + i) * valueSize);
+                }
+            }
+        }
+    }
+}
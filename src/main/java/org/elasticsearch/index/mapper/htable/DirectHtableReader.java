@@ -0,0 +1,251 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+
+/**
+ * Reader that probes a hash table in place so only the touched bytes are read.
+ * The same instance can be reset to read tables of different documents.
+ * Tables are little-endian while {@link RandomAccessInput} is big-endian.
+ * Runs of bytes are copied at once with {@link #readBytes(long, byte[], int)} when the input is also
+ * an {@link IndexInput}, as the memory mapped inputs are.
+ * <p>
+ * Read bytes are counted once per probe and not per read: every format adds the bytes of its header
+ * when the reader is reset and the bytes a lookup searched through with {@link #addBytesRead(long)},
+ * the value of a found key is counted as read.
+ */
+public abstract class DirectHtableReader implements HtableReader {
+    protected final int valueSize;
+
+    private final BytesInput bytesInput = new BytesInput();
+    private RandomAccessInput input;
+    private long base;
+    private long bytesRead;
+    protected int length;
+    private byte[] floatBytes = BytesRef.EMPTY_BYTES;
+    private FloatBuffer floatBuffer = ByteBuffer.wrap(floatBytes).asFloatBuffer();
+
+    protected DirectHtableReader(int valueSize) {
+        this.valueSize = valueSize;
+    }
+
+    public DirectHtableReader reset(RandomAccessInput input, long offset, int length) {
+        this.input = input;
+        this.base = offset;
+        this.length = length;
+        try {
+            readHeader();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read hash table", e);
+        }
+        return this;
+    }
+
+    public DirectHtableReader reset(BytesRef data) {
+        bytesInput.bytes = data.bytes;
+        return reset(bytesInput, data.offset, data.length);
+    }
+
+    /**
+     * Returns the total number of bytes read by the lookups of this reader.
+     */
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Counts the bytes read by a lookup or by the header of a table, called once per lookup.
+     */
+    protected final void addBytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    protected abstract void readHeader() throws IOException;
+
+    protected abstract long findValueOffset(long key) throws IOException;
+
+    /**
+     * Adds all the entries of the table. Throws {@link IllegalArgumentException} if the table is malformed.
+     */
+    protected abstract void readEntries(SortedMap<Long, byte[]> entries) throws IOException;
+
+    /**
+     * Decodes all the entries of the table so it can be changed and written again.
+     * Throws {@link IllegalArgumentException} if the table is malformed.
+     */
+    public SortedMap<Long, byte[]> entries() {
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        try {
+            readEntries(entries);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read hash table", e);
+        }
+        return entries;
+    }
+
+    protected final void checkLength(long expectedLength) {
+        if (expectedLength != length) {
+            throw new IllegalArgumentException("Hash table must have " + expectedLength + " bytes; got " + length);
+        }
+    }
+
+    protected final void addEntry(SortedMap<Long, byte[]> entries, long key, long valueOffset) throws IOException {
+        byte[] value = new byte[valueSize];
+        for (int i = 0; i < valueSize; i++) {
+            value[i] = readByte(valueOffset + i);
+        }
+        if (entries.put(key, value) != null) {
+            throw new IllegalArgumentException("Hash table has duplicate key [" + key + "]");
+        }
+    }
+
+    @Override
+    public long getValueOffset(long key) {
+        try {
+            long valueOffset = findValueOffset(key);
+            if (valueOffset != NOT_FOUND_OFFSET) {
+                bytesRead += valueSize;
+            }
+            return valueOffset;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read hash table", e);
+        }
+    }
+
+    protected final byte readByte(long offset) throws IOException {
+        return input.readByte(base + offset);
+    }
+
+    protected final short readShort(long offset) throws IOException {
+        return Short.reverseBytes(input.readShort(base + offset));
+    }
+
+    protected final int readInt(long offset) throws IOException {
+        return Integer.reverseBytes(input.readInt(base + offset));
+    }
+
+    protected final long readLong(long offset) throws IOException {
+        return Long.reverseBytes(input.readLong(base + offset));
+    }
+
+    /**
+     * Copies {@code length} bytes of the table at {@code offset} into {@code bytes}.
+     * Moves the file pointer of the input, the reads by position do not depend on it.
+     */
+    protected final void readBytes(long offset, byte[] bytes, int length) throws IOException {
+        if (input == bytesInput) {
+            System.arraycopy(bytesInput.bytes, (int) (base + offset), bytes, 0, length);
+        } else if (input instanceof IndexInput) {
+            IndexInput indexInput = (IndexInput) input;
+            indexInput.seek(base + offset);
+            indexInput.readBytes(bytes, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                bytes[i] = input.readByte(base + offset + i);
+            }
+        }
+    }
+
+    @Override
+    public byte getByte(long offset) {
+        try {
+            return readByte(offset);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read hash table", e);
+        }
+    }
+
+    @Override
+    public short getShort(long offset) {
+        try {
+            return readShort(offset);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read hash table", e);
+        }
+    }
+
+    @Override
+    public int getInt(long offset) {
+        try {
+            return readInt(offset);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read hash table", e);
+        }
+    }
+
+    @Override
+    public long getLong(long offset) {
+        try {
+            return readLong(offset);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read hash table", e);
+        }
+    }
+
+    @Override
+    public float getFloat(long offset) {
+        return Float.intBitsToFloat(getInt(offset));
+    }
+
+    @Override
+    public double getDouble(long offset) {
+        return Double.longBitsToDouble(getLong(offset));
+    }
+
+    /**
+     * Reads the vector with a single {@link #readBytes(long, byte[], int)} into a reused buffer
+     * and decodes it through a little-endian view of the buffer.
+     */
+    @Override
+    public void getFloats(long offset, float[] values, int count) {
+        int byteCount = 4 * count;
+        if (floatBytes.length < byteCount) {
+            floatBytes = new byte[ArrayUtil.oversize(byteCount, 1)];
+            floatBuffer = ByteBuffer.wrap(floatBytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+        try {
+            readBytes(offset, floatBytes, byteCount);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read hash table", e);
+        }
+        floatBuffer.position(0);
+        floatBuffer.get(values, 0, count);
+    }
+
+    static final class BytesInput implements RandomAccessInput {
+        byte[] bytes;
+
+        @Override
+        public byte readByte(long pos) {
+            return bytes[(int) pos];
+        }
+
+        @Override
+        public short readShort(long pos) {
+            int i = (int) pos;
+            return (short) (((bytes[i] & 0xff) << 8) | (bytes[i + 1] & 0xff));
+        }
+
+        @Override
+        public int readInt(long pos) {
+            int i = (int) pos;
+            return ((bytes[i] & 0xff) << 24) | ((bytes[i + 1] & 0xff) << 16)
+                | ((bytes[i + 2] & 0xff) << 8) | (bytes[i + 3] & 0xff);
+        }
+
+        @Override
+        public long readLong(long pos) {
+            return ((long) readInt(pos) << 32) | (readInt(pos + 4) & 0xffffffffL);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.codec.htable.HtableBinaryDocValues;
+import org.elasticsearch.index.codec.htable.HtableKeyStats;
+
+
+/**
+ * Per segment access to the hash tables of a field. Not thread safe.
+ * Every table with a header, as marked by {@link HtableHeader#marks}, is read with the format of its header,
+ * so a segment can mix formats. The other tables are read with the format of the mapping.
+ * When the segment is written by the htable codec and the format of the table supports it
+ * the table is probed in place without copying it to the heap.
+ * <p>
+ * Documents are visited with {@link #advanceExact(int)} in increasing order, the contract of the iterator doc values
+ * of later Lucene versions, so only this class depends on the random access of {@link BinaryDocValues}.
+ * This is only the read path seam for a port, the plugin still targets the Elasticsearch 2.x APIs.
+ */
+public class HtableDocValues {
+    private final HtableFieldMapper.HtableFieldType fieldType;
+    private final BinaryDocValues docValues;
+    private final NumericDocValues headerMarks;
+    private final HtableBinaryDocValues directDocValues;
+    // indexed by format ordinal, null for the formats that only support heap tables
+    private final DirectHtableReader[] directReaders;
+    private long copiedBytes;
+
+    private HtableFormat format;
+    private DirectHtableReader directReader;
+    private boolean inPlace;
+    private long offset;
+    private int length;
+    private BytesRef data;
+    private int docId = -1;
+    private boolean exists;
+
+    public HtableDocValues(HtableFieldMapper.HtableFieldType fieldType, BinaryDocValues docValues,
+                           @Nullable NumericDocValues headerMarks) {
+        this.fieldType = fieldType;
+        this.docValues = docValues;
+        this.headerMarks = headerMarks;
+        HtableFormat[] formats = HtableFormat.values();
+        this.directReaders = new DirectHtableReader[formats.length];
+        for (HtableFormat format : formats) {
+            directReaders[format.ordinal()] = format.directReader(fieldType.valueSize());
+        }
+        if (docValues instanceof HtableBinaryDocValues) {
+            this.directDocValues = (HtableBinaryDocValues) docValues;
+        } else {
+            this.directDocValues = null;
+        }
+    }
+
+    /**
+     * Returns the doc values of the field in the segment or {@code null} if no table of the segment has the key:
+     * the segment has no tables or the key statistics of the segment show that the key is absent.
+     */
+    @Nullable
+    public static HtableDocValues forKey(LeafReader reader, HtableFieldMapper.HtableFieldType fieldType, long key) throws IOException {
+        String field = fieldType.names().indexName();
+        BinaryDocValues docValues = reader.getBinaryDocValues(field);
+        if (docValues == null) {
+            return null;
+        }
+        HtableKeyStats keyStats = HtableKeyStats.get(reader, field);
+        if (keyStats != null && !keyStats.mayContain(key)) {
+            return null;
+        }
+        return new HtableDocValues(fieldType, docValues, HtableHeader.marks(reader, field));
+    }
+
+    /**
+     * Returns a reader for the document's table or {@code null} if the document has no table.
+     * The reader is only valid until the next call.
+     */
+    @Nullable
+    public HtableReader reader(int docId) {
+        return advanceExact(docId) ? reader() : null;
+    }
+
+    /**
+     * Positions on the document's table. Returns {@code false} if the document has no table.
+     * The target must not be less than the {@link #docID()}, advancing to the current document again
+     * does not read the table again.
+     *
+     * @throws IllegalStateException if the target is less than the {@link #docID()}
+     */
+    public boolean advanceExact(int target) {
+        if (target < docId) {
+            throw new IllegalStateException("doc ids must not decrease; got [" + target + "] after [" + docId + "]");
+        }
+        if (target != docId) {
+            docId = target;
+            exists = locate(target);
+        }
+        return exists;
+    }
+
+    /**
+     * Returns the document of the last {@link #advanceExact(int)}, {@code -1} before the first one.
+     */
+    public int docID() {
+        return docId;
+    }
+
+    private boolean locate(int docId) {
+        boolean hasHeader = HtableHeader.hasHeader(headerMarks, docId);
+        if (directDocValues != null) {
+            length = directDocValues.length(docId);
+            if (length == 0) {
+                return false;
+            }
+            offset = directDocValues.offset(docId);
+            HtableHeader header = null;
+            if (hasHeader) {
+                try {
+                    header = HtableHeader.readRequired(directDocValues.values(), offset, length);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot read hash table", e);
+                }
+            }
+            if (header != null) {
+                offset += HtableHeader.SIZE;
+                length -= HtableHeader.SIZE;
+                format = header.format();
+            } else {
+                format = fieldType.format();
+            }
+            directReader = directReaders[format.ordinal()];
+            if (directReader != null) {
+                if (header != null) {
+                    copiedBytes += HtableHeader.SIZE;
+                }
+                inPlace = true;
+                return true;
+            }
+        }
+
+        inPlace = false;
+        data = docValues.get(docId);
+        if (data == null || data.length == 0) {
+            return false;
+        }
+        copiedBytes += data.length;
+        if (hasHeader) {
+            HtableHeader header = HtableHeader.readRequired(data);
+            data = HtableHeader.table(data);
+            format = header.format();
+        } else {
+            format = fieldType.format();
+        }
+        directReader = directReaders[format.ordinal()];
+        return true;
+    }
+
+    /**
+     * Returns a reader for the table located by the last successful {@link #advanceExact(int)}.
+     * The reader is only valid until the next call.
+     */
+    public HtableReader reader() {
+        if (inPlace) {
+            return directReader.reset(directDocValues.values(), offset, length);
+        }
+        if (directReader != null) {
+            return directReader.reset(data);
+        }
+        return format.reader(fieldType.valueSize(), data);
+    }
+
+    /**
+     * Looks up the key in the tables of a block of documents and stores the values into {@code values},
+     * {@code missing} is stored for the documents without the key. Document ids must not decrease.
+     * Returns the number of found values.
+     */
+    public int values(long key, int[] docIds, int count, float missing, float[] values) {
+        return values(key, 0, docIds, count, missing, values);
+    }
+
+    /**
+     * The same as {@link #values(long, int[], int, float, float[])} for a component of tuple values.
+     */
+    public int values(long key, int index, int[] docIds, int count, float missing, float[] values) {
+        HtableFieldMapper.ValueType valueType = fieldType.valueType(index);
+        int componentOffset = fieldType.valueOffset(index);
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            float value = missing;
+            if (advanceExact(docIds[i])) {
+                HtableReader reader = reader();
+                long valueOffset = reader.getValueOffset(key);
+                if (valueOffset != HtableReader.NOT_FOUND_OFFSET) {
+                    value = valueType.getValue(reader, valueOffset + componentOffset);
+                    found++;
+                }
+            }
+            values[i] = value;
+        }
+        return found;
+    }
+
+    /**
+     * Returns the total number of bytes of the tables read through this instance:
+     * the bytes probed in place, the headers and the bytes of the tables copied to the heap.
+     */
+    public long bytesRead() {
+        long bytesRead = copiedBytes;
+        if (directDocValues != null) {
+            // tables copied to the heap are only probed by the direct readers without the htable codec
+            for (DirectHtableReader reader : directReaders) {
+                if (reader != null) {
+                    bytesRead += reader.bytesRead();
+                }
+            }
+        }
+        return bytesRead;
+    }
+}
@@ -1,31 +1,37 @@
 package org.elasticsearch.index.mapper.htable;
 
-import net.uaprom.htable.HashTable;
-import net.uaprom.htable.ChainHashTable;
-import net.uaprom.htable.TrieHashTable;
-
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.zip.CRC32;
 
 import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.hash.MurmurHash3;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.codec.htable.HtableKeyStats;
 import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.Mapper;
 import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.mapper.MergeMappingException;
+import org.elasticsearch.index.mapper.MergeResult;
 import org.elasticsearch.index.mapper.ParseContext;
 import org.elasticsearch.index.mapper.core.NumberFieldMapper;
 
@@ -33,12 +39,18 @@ import static org.elasticsearch.index.mapper.core.TypeParsers.parseField;
 
 
 public class HtableFieldMapper extends FieldMapper {
-    private final HashTable.Writer htableWriter;
     private final ValueParser valueParser;
+    private final HtableStats.FieldMetrics metrics;
+    private final boolean keyStats;
 
     public static final String CONTENT_TYPE = "htable";
 
     public static class Defaults {
+        public static KeyType KEY_TYPE = KeyType.LONG;
+        public static ValueType VALUE_TYPE = ValueType.FLOAT;
+        public static String FORMAT = "chain";
+        public static boolean KEY_STATS = false;
+
         public static final MappedFieldType FIELD_TYPE = new HtableFieldType();
 
         static {
@@ -46,13 +58,54 @@ public class HtableFieldMapper extends FieldMapper {
             FIELD_TYPE.setHasDocValues(true);
             FIELD_TYPE.freeze();
         }
+    }
 
-        public static ValueType VALUE_TYPE = ValueType.FLOAT;
-        public static String FORMAT = "chain";
+    public static enum KeyType {
+        LONG {
+            @Override
+            public long parseKey(XContentParser parser) throws IOException {
+                return parser.longValue();
+            }
+
+            @Override
+            public long key(Object value) {
+                return XContentMapValues.nodeLongValue(value);
+            }
+        },
+        /**
+         * Strings are stored as a stable 64-bit hash of their UTF-8 bytes. Keys of a table with the same hash are rejected,
+         * a query key that collides with a key of a table cannot be detected but it is unlikely.
+         */
+        STRING {
+            @Override
+            public long parseKey(XContentParser parser) throws IOException {
+                return hash(parser.text());
+            }
+
+            @Override
+            public long key(Object value) {
+                return hash(value.toString());
+            }
+        };
+
+        /**
+         * Parses the key of a table, the token is a number or a string.
+         */
+        public abstract long parseKey(XContentParser parser) throws IOException;
+
+        /**
+         * Converts a key given in a query.
+         */
+        public abstract long key(Object value);
+
+        public static long hash(String key) {
+            BytesRef bytes = new BytesRef(key);
+            return MurmurHash3.hash128(bytes.bytes, bytes.offset, bytes.length, 0, new MurmurHash3.Hash128()).h1;
+        }
     }
 
     public static enum ValueType {
-        BYTE(HashTable.ValueSize.BYTE) {
+        BYTE(0, 1) {
             @Override
             public ValueParser parser() {
                 return new ValueParser() {
@@ -64,11 +117,27 @@ public class HtableFieldMapper extends FieldMapper {
             }
 
             @Override
-            public float getValue(HashTable.Reader htableReader, int valueOffset) {
+            public float getValue(HtableReader htableReader, long valueOffset) {
                 return htableReader.getByte(valueOffset) & 0xff;
             }
+
+            @Override
+            public float getValue(byte[] value) {
+                return value[0] & 0xff;
+            }
+
+            @Override
+            public byte[] add(byte[] value, double delta) {
+                int current = value == null ? 0 : value[0] & 0xff;
+                return new byte[]{ (byte) (current + (long) delta) };
+            }
+
+            @Override
+            public byte[] encode(Number value) {
+                return new byte[]{ value.byteValue() };
+            }
         },
-        SHORT(HashTable.ValueSize.SHORT) {
+        SHORT(1, 2) {
             @Override
             public ValueParser parser() {
                 return new ValueParser() {
@@ -81,11 +150,28 @@ public class HtableFieldMapper extends FieldMapper {
             }
 
             @Override
-            public float getValue(HashTable.Reader htableReader, int valueOffset) {
+            public float getValue(HtableReader htableReader, long valueOffset) {
                 return htableReader.getShort(valueOffset)  & 0xffff;
             }
+
+            @Override
+            public float getValue(byte[] value) {
+                return ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getShort() & 0xffff;
+            }
+
+            @Override
+            public byte[] add(byte[] value, double delta) {
+                int current = value == null ? 0 : ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getShort() & 0xffff;
+                ByteBuffer buffer = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+                return buffer.putShort((short) (current + (long) delta)).array();
+            }
+
+            @Override
+            public byte[] encode(Number value) {
+                return ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort(value.shortValue()).array();
+            }
         },
-        INT(HashTable.ValueSize.INT) {
+        INT(2, 4) {
             @Override
             public ValueParser parser() {
                 return new ValueParser() {
@@ -98,11 +184,28 @@ public class HtableFieldMapper extends FieldMapper {
             }
 
             @Override
-            public float getValue(HashTable.Reader htableReader, int valueOffset) {
+            public float getValue(HtableReader htableReader, long valueOffset) {
                 return htableReader.getInt(valueOffset);
             }
+
+            @Override
+            public float getValue(byte[] value) {
+                return ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getInt();
+            }
+
+            @Override
+            public byte[] add(byte[] value, double delta) {
+                int current = value == null ? 0 : ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                return buffer.putInt((int) (current + (long) delta)).array();
+            }
+
+            @Override
+            public byte[] encode(Number value) {
+                return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value.intValue()).array();
+            }
         },
-        LONG(HashTable.ValueSize.LONG) {
+        LONG(3, 8) {
             @Override
             public ValueParser parser() {
                 return new ValueParser() {
@@ -115,11 +218,28 @@ public class HtableFieldMapper extends FieldMapper {
             }
 
             @Override
-            public float getValue(HashTable.Reader htableReader, int valueOffset) {
+            public float getValue(HtableReader htableReader, long valueOffset) {
                 return htableReader.getLong(valueOffset);
             }
+
+            @Override
+            public float getValue(byte[] value) {
+                return ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getLong();
+            }
+
+            @Override
+            public byte[] add(byte[] value, double delta) {
+                long current = value == null ? 0 : ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getLong();
+                ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                return buffer.putLong(current + (long) delta).array();
+            }
+
+            @Override
+            public byte[] encode(Number value) {
+                return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value.longValue()).array();
+            }
         },
-        FLOAT(HashTable.ValueSize.INT) {
+        FLOAT(4, 4) {
             @Override
             public ValueParser parser() {
                 return new ValueParser() {
@@ -132,11 +252,28 @@ public class HtableFieldMapper extends FieldMapper {
             }
 
             @Override
-            public float getValue(HashTable.Reader htableReader, int valueOffset) {
+            public float getValue(HtableReader htableReader, long valueOffset) {
                 return htableReader.getFloat(valueOffset);
             }
+
+            @Override
+            public float getValue(byte[] value) {
+                return ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getFloat();
+            }
+
+            @Override
+            public byte[] add(byte[] value, double delta) {
+                float current = value == null ? 0 : ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getFloat();
+                ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                return buffer.putFloat((float) (current + delta)).array();
+            }
+
+            @Override
+            public byte[] encode(Number value) {
+                return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(value.floatValue()).array();
+            }
         },
-        DOUBLE(HashTable.ValueSize.LONG) {
+        DOUBLE(5, 8) {
             @Override
             public ValueParser parser() {
                 return new ValueParser() {
@@ -149,37 +286,114 @@ public class HtableFieldMapper extends FieldMapper {
             }
 
             @Override
-            public float getValue(HashTable.Reader htableReader, int valueOffset) {
+            public float getValue(HtableReader htableReader, long valueOffset) {
                 return (float) (htableReader.getDouble(valueOffset));
             }
+
+            @Override
+            public float getValue(byte[] value) {
+                return (float) ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getDouble();
+            }
+
+            @Override
+            public byte[] add(byte[] value, double delta) {
+                double current = value == null ? 0 : ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getDouble();
+                ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                return buffer.putDouble(current + delta).array();
+            }
+
+            @Override
+            public byte[] encode(Number value) {
+                return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putDouble(value.doubleValue()).array();
+            }
         };
 
-        public final HashTable.ValueSize valueSize;
+        /**
+         * Identifies the value type in {@link HtableHeader}, must never change.
+         */
+        public final byte id;
+        public final int size;
+
+        ValueType(int id, int size) {
+            this.id = (byte) id;
+            this.size = size;
+        }
 
-        ValueType(HashTable.ValueSize valueSize) {
-            this.valueSize = valueSize;
+        @Nullable
+        static ValueType fromId(int id) {
+            for (ValueType valueType : values()) {
+                if (valueType.id == id) {
+                    return valueType;
+                }
+            }
+            return null;
         }
 
         public abstract ValueParser parser();
 
-        public abstract float getValue(HashTable.Reader htableReader, int valueOffset);
+        public abstract float getValue(HtableReader htableReader, long valueOffset);
+
+        /**
+         * Decodes a value produced by the {@link #parser()}.
+         */
+        public abstract float getValue(byte[] value);
+
+        /**
+         * Adds the delta to a value produced by the {@link #parser()}, a missing value is zero.
+         * The delta is truncated toward zero for integer types.
+         */
+        public abstract byte[] add(@Nullable byte[] value, double delta);
+
+        /**
+         * Encodes a value the same way as the {@link #parser()} does, for tables built outside of a mapping.
+         */
+        public abstract byte[] encode(Number value);
     }
 
-    interface ValueParser {
+    public interface ValueParser {
         byte[] parseValue(XContentParser parser) throws IOException;
     }
 
     public static class Builder extends FieldMapper.Builder<Builder, HtableFieldMapper> {
+        private KeyType keyType = Defaults.KEY_TYPE;
         private ValueType valueType = ValueType.FLOAT;
+        private HtableTupleType tupleType = null;
+        private Integer dims = null;
         private Map<String, Object> dataFormatParams = null;
+        private boolean keyStats = Defaults.KEY_STATS;
+        private HtableFormat mergeFormat = null;
+        private Map<String, Object> mergeFormatParams = null;
+        private HtableStats stats = new HtableStats();
 
         public Builder(String name) {
             super(name, Defaults.FIELD_TYPE);
             this.builder = this;
         }
 
+        public Builder keyType(KeyType keyType) {
+            this.keyType = keyType;
+            return this;
+        }
+
         public Builder valueType(ValueType valueType) {
             this.valueType = valueType;
+            this.tupleType = null;
+            return this;
+        }
+
+        /**
+         * Every key has several values packed together, see {@link HtableTupleType}.
+         */
+        public Builder tupleType(HtableTupleType tupleType) {
+            this.tupleType = tupleType;
+            return this;
+        }
+
+        /**
+         * Every key has a vector of {@code dims} floats.
+         */
+        public Builder dims(int dims) {
+            this.dims = dims;
             return this;
         }
 
@@ -188,6 +402,38 @@ public class HtableFieldMapper extends FieldMapper {
             return this;
         }
 
+        /**
+         * Enables per segment statistics of the keys. The entries of the tables are indexed in a hidden field
+         * and the htable codec computes the statistics from them.
+         */
+        public Builder keyStats(boolean keyStats) {
+            this.keyStats = keyStats;
+            return this;
+        }
+
+        /**
+         * Tables are re-encoded into the format when the htable codec merges their segment.
+         */
+        public Builder mergeFormat(@Nullable HtableFormat mergeFormat) {
+            this.mergeFormat = mergeFormat;
+            this.mergeFormatParams = null;
+            return this;
+        }
+
+        /**
+         * The same as {@link #mergeFormat(HtableFormat)} with the parameters of the format as in {@code format_params}.
+         */
+        public Builder mergeFormatParams(Map<String, Object> mergeFormatParams) {
+            this.mergeFormat = HtableFormat.fromParams(mergeFormatParams);
+            this.mergeFormatParams = mergeFormatParams;
+            return this;
+        }
+
+        public Builder stats(HtableStats stats) {
+            this.stats = stats;
+            return this;
+        }
+
         @Override
         protected void setupFieldType(BuilderContext context) {
             super.setupFieldType(context);
@@ -200,33 +446,50 @@ public class HtableFieldMapper extends FieldMapper {
         @Override
         public HtableFieldMapper build(BuilderContext context) {
             setupFieldType(context);
-            ((HtableFieldType) fieldType).setValueType(valueType);
-            ((HtableFieldType) fieldType).setDataFormatParams(dataFormatParams);
-            HashTable.Writer htableWriter = null;
-            if (dataFormatParams == null) {
-                htableWriter = new ChainHashTable.Writer(valueType.valueSize);
+            HtableFieldType htableFieldType = (HtableFieldType) fieldType;
+            htableFieldType.setKeyType(keyType);
+            HtableTupleType tupleType = this.tupleType;
+            if (dims != null) {
+                if (tupleType != null || valueType != ValueType.FLOAT) {
+                    throw new MapperParsingException("[dims] can only be set for [float] values");
+                }
+                try {
+                    tupleType = HtableTupleType.vector(valueType, dims);
+                } catch (IllegalArgumentException e) {
+                    throw new MapperParsingException(e.getMessage(), e);
+                }
+            }
+            if (tupleType != null) {
+                htableFieldType.setTupleType(tupleType);
             } else {
-                String format = XContentMapValues.nodeStringValue(dataFormatParams.get("format"), Defaults.FORMAT);
-                if (format.equals("chain")) {
-                    int fillingRatio = XContentMapValues.nodeIntegerValue(dataFormatParams.get("filling_ratio"), ChainHashTable.Writer.DEFAULT_FILLING_RATIO);
-                    int minHashTableSize = XContentMapValues.nodeIntegerValue(dataFormatParams.get("min_hash_table_size"), ChainHashTable.Writer.DEFAULT_MIN_HASH_TABLE_SIZE);
-                    htableWriter = new ChainHashTable.Writer(valueType.valueSize, fillingRatio, minHashTableSize);
-                } else if (format.equals("trie")) {
-                    TrieHashTable.BitmaskSize bitmaskSize;
-                    String bitmaskSizeParam = XContentMapValues.nodeStringValue(dataFormatParams.get("bitmask_size"), null);
-                    if (bitmaskSizeParam != null) {
-                        bitmaskSize = TrieHashTable.BitmaskSize.valueOf(bitmaskSizeParam.toUpperCase());
-                    } else {
-                        bitmaskSize = TrieHashTable.BitmaskSize.SHORT;
-                    }
-                    htableWriter = new TrieHashTable.Writer(valueType.valueSize, bitmaskSize);
+                htableFieldType.setValueType(valueType);
+            }
+            htableFieldType.setDataFormatParams(dataFormatParams);
+            HtableFormat format = htableFieldType.format();
+            if (mergeFormat != null && tupleType != null) {
+                throw new MapperParsingException("[merge_format] cannot be set for tuple and vector values");
+            }
+            if (mergeFormat != null && format.directReader(valueType) == null && !keyStats) {
+                // such tables cannot be iterated, they are decoded with the keys of their statistics
+                throw new MapperParsingException("[merge_format] for tables of format [" + format.formatName()
+                                                 + "] requires [key_stats]");
+            }
+            htableFieldType.setMergeFormat(mergeFormat, mergeFormatParams);
+            htableFieldType.setKeyStats(keyStats);
+            try {
+                htableFieldType.setWriter(format.writer(htableFieldType.valueSize(), dataFormatParams));
+                if (mergeFormat != null) {
+                    htableFieldType.setMergeWriter(mergeFormat.writer(htableFieldType.valueSize(), mergeFormatParams));
                 }
+            } catch (IllegalArgumentException e) {
+                throw new MapperParsingException(e.getMessage(), e);
             }
             return new HtableFieldMapper(name,
                                          fieldType,
                                          defaultFieldType,
-                                         htableWriter,
-                                         valueType.parser(),
+                                         htableFieldType.valueParser(),
+                                         stats.field(fieldType.names().indexName()),
+                                         keyStats,
                                          context.indexSettings(),
                                          multiFieldsBuilder.build(this, context),
                                          copyTo);
@@ -234,24 +497,80 @@ public class HtableFieldMapper extends FieldMapper {
     }
 
     public static class TypeParser implements Mapper.TypeParser {
+        private final HtableStats stats;
+
+        public TypeParser() {
+            this(new HtableStats());
+        }
+
+        public TypeParser(HtableStats stats) {
+            this.stats = stats;
+        }
+
         @Override
         public Mapper.Builder parse(String name, Map<String, Object> node, ParserContext parserContext) throws MapperParsingException {
-            HtableFieldMapper.Builder builder = new HtableFieldMapper.Builder(name);
+            HtableFieldMapper.Builder builder = new HtableFieldMapper.Builder(name).stats(stats);
             parseField(builder, name, node, parserContext);
             for (Iterator<Map.Entry<String, Object>> iterator = node.entrySet().iterator(); iterator.hasNext();) {
                 Map.Entry<String, Object> entry = iterator.next();
                 final String propName = Strings.toUnderscoreCase(entry.getKey());
                 final Object propNode = entry.getValue();
-                if (propName.equals("value_type")) {
-                    builder.valueType(ValueType.valueOf(propNode.toString().toUpperCase()));
+                if (propName.equals("key_type")) {
+                    builder.keyType(KeyType.valueOf(propNode.toString().toUpperCase(Locale.ROOT)));
+                    iterator.remove();
+                } else if (propName.equals("value_type")) {
+                    if (propNode instanceof List) {
+                        try {
+                            builder.tupleType(HtableTupleType.fromNames((List<?>) propNode));
+                        } catch (IllegalArgumentException e) {
+                            throw new MapperParsingException("Invalid tuple [value_type] " + propNode + " for field [" + name + "]", e);
+                        }
+                    } else {
+                        builder.valueType(ValueType.valueOf(propNode.toString().toUpperCase()));
+                    }
+                    iterator.remove();
+                } else if (propName.equals("dims")) {
+                    builder.dims(XContentMapValues.nodeIntegerValue(propNode));
                     iterator.remove();
                 } else if (propName.equals("format_params")) {
                     @SuppressWarnings("unchecked")
                     Map<String, Object> dataFormatParams = (Map<String, Object>) propNode;
                     builder.dataFormatParams(dataFormatParams);
                     if (!dataFormatParams.containsKey("format")) {
-                        throw new MapperParsingException("[format] can be [chain] or [trie]");
+                        throw new MapperParsingException("[format] can be one of " + Arrays.toString(HtableFormat.formatNames()));
                     }
+                    try {
+                        HtableFormat.fromParams(dataFormatParams).validateParams(dataFormatParams);
+                    } catch (IllegalArgumentException e) {
+                        throw new MapperParsingException(e.getMessage(), e);
+                    }
+                    iterator.remove();
+                } else if (propName.equals("merge_format")) {
+                    if (propNode instanceof Map) {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> mergeFormatParams = (Map<String, Object>) propNode;
+                        HtableFormat mergeFormat;
+                        try {
+                            mergeFormat = HtableFormat.fromName(XContentMapValues.nodeStringValue(mergeFormatParams.get("format"), null));
+                        } catch (IllegalArgumentException e) {
+                            throw new MapperParsingException("[merge_format] can be one of " + Arrays.toString(HtableFormat.formatNames()));
+                        }
+                        try {
+                            mergeFormat.validateParams(mergeFormatParams);
+                        } catch (IllegalArgumentException e) {
+                            throw new MapperParsingException(e.getMessage(), e);
+                        }
+                        builder.mergeFormatParams(mergeFormatParams);
+                    } else {
+                        try {
+                            builder.mergeFormat(HtableFormat.fromName(propNode.toString()));
+                        } catch (IllegalArgumentException e) {
+                            throw new MapperParsingException("[merge_format] can be one of " + Arrays.toString(HtableFormat.formatNames()));
+                        }
+                    }
+                    iterator.remove();
+                } else if (propName.equals("key_stats")) {
+                    builder.keyStats(XContentMapValues.nodeBooleanValue(propNode));
                     iterator.remove();
                 } else if (propName.equals("index")) {
                     throw new MapperParsingException("Setting [index] cannot be modified for field [" + name + "]");
@@ -264,13 +583,32 @@ public class HtableFieldMapper extends FieldMapper {
     }
 
     public static final class HtableFieldType extends MappedFieldType {
+        private KeyType keyType = Defaults.KEY_TYPE;
         private ValueType valueType;
+        private HtableTupleType tupleType;
         Map<String, Object> dataFormatParams;
+        private HtableFormat format = HtableFormat.fromName(Defaults.FORMAT);
+        private HtableFormat mergeFormat;
+        private Map<String, Object> mergeFormatParams;
+        // built with the format parameters once, a merged mapping swaps the whole field type
+        private HtableWriter writer;
+        private HtableWriter mergeWriter;
+        private boolean keyStats;
 
         public HtableFieldType() {}
 
         protected HtableFieldType(HtableFieldType ref) {
             super(ref);
+            this.keyType = ref.keyType;
+            this.valueType = ref.valueType;
+            this.tupleType = ref.tupleType;
+            this.dataFormatParams = ref.dataFormatParams;
+            this.format = ref.format;
+            this.mergeFormat = ref.mergeFormat;
+            this.mergeFormatParams = ref.mergeFormatParams;
+            this.writer = ref.writer;
+            this.mergeWriter = ref.mergeWriter;
+            this.keyStats = ref.keyStats;
         }
 
         @Override
@@ -283,37 +621,226 @@ public class HtableFieldMapper extends FieldMapper {
             return CONTENT_TYPE;
         }
 
+        public void setKeyType(KeyType keyType) {
+            this.keyType = keyType;
+        }
+
+        public KeyType keyType() {
+            return keyType;
+        }
+
         public void setValueType(ValueType valueType) {
             this.valueType = valueType;
+            this.tupleType = null;
         }
 
+        /**
+         * Returns the type of the values, for tuples it is the type of the first component.
+         */
         public ValueType valueType() {
             return valueType;
         }
 
+        public void setTupleType(HtableTupleType tupleType) {
+            this.tupleType = tupleType;
+            this.valueType = tupleType.component(0);
+        }
+
+        /**
+         * Returns the type of the tuples or {@code null} if every key has a single value.
+         */
+        @Nullable
+        public HtableTupleType tupleType() {
+            return tupleType;
+        }
+
+        /**
+         * Returns the number of dimensions of vector values or {@code 0} if the values are not vectors.
+         */
+        public int dims() {
+            return tupleType != null && tupleType.isVector() ? tupleType.numComponents() : 0;
+        }
+
+        /**
+         * Returns the type of the component of the values, a single value is the component {@code 0}.
+         * Throws {@link IllegalArgumentException} if there is no such component.
+         */
+        public ValueType valueType(int index) {
+            if (tupleType != null) {
+                return tupleType.component(index);
+            }
+            if (index != 0) {
+                throw new IllegalArgumentException("[index] can only be set for tuple values; got [" + index + "]");
+            }
+            return valueType;
+        }
+
+        /**
+         * Returns the offset of the component from the start of the value.
+         */
+        public int valueOffset(int index) {
+            return tupleType != null ? tupleType.offset(index) : 0;
+        }
+
+        /**
+         * Size of a value of the table in bytes.
+         */
+        public int valueSize() {
+            return tupleType != null ? tupleType.size() : valueType.size;
+        }
+
+        public ValueParser valueParser() {
+            return tupleType != null ? tupleType.parser() : valueType.parser();
+        }
+
+        String valueTypeName() {
+            return tupleType != null ? tupleType.toString() : valueType.toString().toLowerCase(Locale.ROOT);
+        }
+
+        // value type of the header, null for tuples
+        private ValueType headerValueType() {
+            return tupleType != null ? null : valueType;
+        }
+
         public void setDataFormatParams(Map<String, Object> dataFormatParams) {
             this.dataFormatParams = dataFormatParams;
+            this.format = HtableFormat.fromParams(dataFormatParams);
         }
 
         public Map<String, Object> dataFormatParams() {
             return dataFormatParams;
         }
 
-        public HashTable.Reader hashTableReader(BytesRef data) {
-            String format = dataFormatParams == null ? Defaults.FORMAT : XContentMapValues.nodeStringValue(dataFormatParams.get("format"), Defaults.FORMAT);
-            if (format.equals("trie")) {
-                return new TrieHashTable.Reader(data.bytes, data.offset, data.length);
+        public HtableFormat format() {
+            return format;
+        }
+
+        public void setMergeFormat(@Nullable HtableFormat mergeFormat) {
+            setMergeFormat(mergeFormat, null);
+        }
+
+        public void setMergeFormat(@Nullable HtableFormat mergeFormat, @Nullable Map<String, Object> mergeFormatParams) {
+            this.mergeFormat = mergeFormat;
+            this.mergeFormatParams = mergeFormatParams;
+        }
+
+        @Nullable
+        public HtableFormat mergeFormat() {
+            return mergeFormat;
+        }
+
+        /**
+         * Returns the parameters of the merge format or {@code null} if it is written with the default ones.
+         */
+        @Nullable
+        public Map<String, Object> mergeFormatParams() {
+            return mergeFormatParams;
+        }
+
+        public void setMergeWriter(@Nullable HtableWriter mergeWriter) {
+            this.mergeWriter = mergeWriter;
+        }
+
+        /**
+         * Returns the writer of the tables re-encoded into the merge format or {@code null} if it is not built.
+         */
+        @Nullable
+        public HtableWriter mergeWriter() {
+            return mergeWriter;
+        }
+
+        public void setKeyStats(boolean keyStats) {
+            this.keyStats = keyStats;
+        }
+
+        /**
+         * Returns {@code true} if the codec keeps the statistics of the keys of the field.
+         */
+        public boolean keyStats() {
+            return keyStats;
+        }
+
+        public void setWriter(HtableWriter writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * Returns the writer of the tables of the mapping format.
+         */
+        public HtableWriter writer() {
+            return writer;
+        }
+
+        /**
+         * Puts the header of the mapping in front of a table written with the format of the mapping.
+         */
+        public byte[] withHeader(byte[] table) {
+            return withHeader(format, table);
+        }
+
+        /**
+         * Puts the header of the mapping in front of a table written with the given format.
+         */
+        public byte[] withHeader(HtableFormat tableFormat, byte[] table) {
+            return HtableHeader.write(tableFormat, headerValueType(), mergeFormat, table);
+        }
+
+        /**
+         * Returns the header of the table, a table written without a header has the format of the mapping.
+         */
+        public HtableHeader header(BytesRef data) {
+            HtableHeader header = HtableHeader.read(data);
+            return header != null ? header : HtableHeader.get(format, headerValueType());
+        }
+
+        /**
+         * Returns a reader of a serialized table given in a document, the table has a header if it starts with the magic.
+         */
+        public HtableReader hashTableReader(BytesRef data) {
+            return hashTableReader(data, HtableHeader.read(data) != null);
+        }
+
+        /**
+         * Returns a reader of a table of the doc values, see {@link HtableHeader#hasHeader}.
+         */
+        public HtableReader hashTableReader(BytesRef data, boolean hasHeader) {
+            if (!hasHeader) {
+                return format.reader(valueSize(), data);
+            }
+            return HtableHeader.readRequired(data).format().reader(valueSize(), HtableHeader.table(data));
+        }
+
+        /**
+         * Decodes all the entries of a serialized table given in a document,
+         * the table has a header if it starts with the magic.
+         */
+        public SortedMap<Long, byte[]> entries(BytesRef data) {
+            return entries(data, HtableHeader.read(data) != null);
+        }
+
+        /**
+         * Decodes all the entries of a table of the doc values, see {@link HtableHeader#hasHeader}.
+         * Throws {@link IllegalArgumentException} if the format of the table cannot be decoded or the table is malformed.
+         */
+        public SortedMap<Long, byte[]> entries(BytesRef data, boolean hasHeader) {
+            HtableHeader header = hasHeader ? HtableHeader.readRequired(data) : null;
+            HtableFormat tableFormat = header != null ? header.format() : format;
+            DirectHtableReader reader = tableFormat.directReader(valueSize());
+            if (reader == null) {
+                throw new IllegalArgumentException("Tables of format [" + tableFormat.formatName() + "] cannot be decoded");
             }
-            return new ChainHashTable.Reader(data.bytes, data.offset, data.length);
+            return reader.reset(header != null ? HtableHeader.table(data) : data).entries();
         }
     }
 
     protected HtableFieldMapper(String simpleName, MappedFieldType fieldType, MappedFieldType defaultFieldType,
-                                HashTable.Writer htableWriter, ValueParser valueParser,
+                                ValueParser valueParser, HtableStats.FieldMetrics metrics,
+                                boolean keyStats,
                                 Settings indexSettings, MultiFields multiFields, CopyTo copyTo) {
         super(simpleName, fieldType, defaultFieldType, indexSettings, multiFields, copyTo);
-        this.htableWriter = htableWriter;
         this.valueParser = valueParser;
+        this.metrics = metrics;
+        this.keyStats = keyStats;
     }
 
     @Override
@@ -326,13 +853,22 @@ public class HtableFieldMapper extends FieldMapper {
         return CONTENT_TYPE;
     }
 
-    private List<Long> parseKeys(XContentParser parser) throws IOException {
+    static List<Long> parseKeys(XContentParser parser, KeyType keyType) throws IOException {
         List<Long> keys = new ArrayList<>();
+        Map<Long, String> stringKeys = keyType == KeyType.STRING ? new HashMap<Long, String>() : null;
         XContentParser.Token token = parser.nextToken();
         if (token == XContentParser.Token.START_ARRAY) {
             while (token != XContentParser.Token.END_ARRAY) {
-                if(parser.currentToken() == XContentParser.Token.VALUE_NUMBER) {
-                    keys.add(parser.longValue());
+                if (parser.currentToken() == XContentParser.Token.VALUE_NUMBER
+                    || (stringKeys != null && parser.currentToken() == XContentParser.Token.VALUE_STRING)) {
+                    long key = keyType.parseKey(parser);
+                    if (stringKeys != null) {
+                        String previous = stringKeys.put(key, parser.text());
+                        if (previous != null && !previous.equals(parser.text())) {
+                            throw new MapperParsingException("Keys [" + previous + "] and [" + parser.text() + "] have the same hash");
+                        }
+                    }
+                    keys.add(key);
                 }
                 token = parser.nextToken();
             }
@@ -340,60 +876,241 @@ public class HtableFieldMapper extends FieldMapper {
         return keys;
     }
 
-    private List<byte[]> parseValues(XContentParser parser) throws IOException {
+    private static List<byte[]> parseValues(XContentParser parser, ValueParser valueParser) throws IOException {
         List<byte[]> values = new ArrayList<>();
         XContentParser.Token token = parser.nextToken();
         if (token == XContentParser.Token.START_ARRAY) {
-            while (token != XContentParser.Token.END_ARRAY) {
-                if(parser.currentToken() == XContentParser.Token.VALUE_NUMBER) {
-                    values.add(this.valueParser.parseValue(parser));
+            while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                // tuples are arrays
+                if (token == XContentParser.Token.VALUE_NUMBER || token == XContentParser.Token.START_ARRAY) {
+                    values.add(valueParser.parseValue(parser));
                 }
-                token = parser.nextToken();
             }
         }
         return values;
     }
 
-    @Override
-    protected void parseCreateField(ParseContext context, List<Field> fields) throws IOException {
-        byte[] value = context.parseExternalValue(byte[].class);
+    public static SortedMap<Long, byte[]> parseEntries(XContentParser parser, ValueParser valueParser) throws IOException {
+        return parseEntries(parser, KeyType.LONG, valueParser, null);
+    }
 
-        if (value == null) {
-            List<Long> keys = new ArrayList<>();
-            List<byte[]> values = new ArrayList<>();
+    public static SortedMap<Long, byte[]> parseEntries(XContentParser parser, KeyType keyType,
+                                                       ValueParser valueParser) throws IOException {
+        return parseEntries(parser, keyType, valueParser, null);
+    }
 
-            XContentParser.Token token = context.parser().currentToken();
-            // its an object of keys and values { "keys": [1, 2, 3], "values": [1.4, 1.5, 1.6] }
-            if (token == XContentParser.Token.START_OBJECT) {
-                token = context.parser().nextToken();
-                while (token != XContentParser.Token.END_OBJECT) {
-                    if (token == XContentParser.Token.FIELD_NAME) {
-                        String fieldName = context.parser().currentName();
-                        if (fieldName.equals("keys")) {
-                            keys = parseKeys(context.parser());
-                        } else if (fieldName.equals("values")) {
-                            values = parseValues(context.parser());
-                        }
+    /**
+     * Parses the keys and values of a table, a table built outside of Elasticsearch is collected
+     * into {@code serialized} if it is given.
+     */
+    static SortedMap<Long, byte[]> parseEntries(XContentParser parser, KeyType keyType, ValueParser valueParser,
+                                                @Nullable SerializedTable serialized) throws IOException {
+        List<Long> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+
+        XContentParser.Token token = parser.currentToken();
+        // its an object of keys and values { "keys": [1, 2, 3], "values": [1.4, 1.5, 1.6] }
+        if (token == XContentParser.Token.START_OBJECT) {
+            token = parser.nextToken();
+            while (token != XContentParser.Token.END_OBJECT) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    String fieldName = parser.currentName();
+                    if (fieldName.equals("keys")) {
+                        keys = parseKeys(parser, keyType);
+                    } else if (fieldName.equals("values")) {
+                        values = parseValues(parser, valueParser);
+                    } else if (serialized != null) {
+                        serialized.parseField(parser, fieldName);
                     }
-                    token = context.parser().nextToken();
                 }
+                token = parser.nextToken();
             }
-            // TODO: add support for an array of keys and values [ [1, 2, 3], [1.4, 1.5, 1.6] ]
-            // else if (token == XContentParser.Token.START_ARRAY) {
-            //     keys = parseKeys(context.parser());
-            //     values = parseValues(context.parser());
-            // }
+        }
+        // TODO: add support for an array of keys and values [ [1, 2, 3], [1.4, 1.5, 1.6] ]
+        // else if (token == XContentParser.Token.START_ARRAY) {
+        //     keys = parseKeys(parser);
+        //     values = parseValues(parser, valueParser);
+        // }
+
+        if (keys.size() != values.size()) {
+            throw new MapperParsingException("'keys' and 'length' have different size.");
+        }
+        if (serialized != null && serialized.table != null && !keys.isEmpty()) {
+            throw new MapperParsingException("Either 'table' or 'keys' and 'values' can be set");
+        }
 
-            if (keys.size() != values.size()) {
-                throw new MapperParsingException("'keys' and 'length' have different size.");
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            entries.put(keys.get(i), values.get(i));
+        }
+        return entries;
+    }
+
+    /**
+     * Table built outside of Elasticsearch:
+     * <pre>
+     * { "table": "&lt;base64&gt;", "format": "chain", "value_type": "float", "crc32": 2768625435 }
+     * </pre>
+     * The value type of tuples is an array: {@code "value_type": ["float", "int"]}.
+     * The table is binary in SMILE and CBOR. The declared format and value type are checked against the mapping
+     * and the checksum against the table.
+     */
+    static class SerializedTable {
+        byte[] table;
+        String format;
+        String valueType;
+        Long crc32;
+
+        void parseField(XContentParser parser, String fieldName) throws IOException {
+            XContentParser.Token token = parser.nextToken();
+            if (fieldName.equals("table")) {
+                table = parser.binaryValue();
+            } else if (fieldName.equals("format")) {
+                format = parser.text();
+            } else if (fieldName.equals("value_type")) {
+                if (token == XContentParser.Token.START_ARRAY) {
+                    List<String> names = new ArrayList<>();
+                    while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                        names.add(parser.text());
+                    }
+                    valueType = names.toString();
+                } else {
+                    valueType = parser.text();
+                }
+            } else if (fieldName.equals("crc32")) {
+                crc32 = parser.longValue();
+            } else if (token == XContentParser.Token.START_OBJECT || token == XContentParser.Token.START_ARRAY) {
+                parser.skipChildren();
             }
+        }
+    }
 
-            SortedMap<Long, byte[]> entries = new TreeMap<>();
-            for (int i = 0; i < keys.size(); i++) {
-                entries.put(keys.get(i), values.get(i));
+    /**
+     * Checks a table built outside of Elasticsearch and decodes it if the format allows.
+     * A table without a header has the format of the mapping. Tables of the formats that cannot be decoded
+     * must declare the format, the value type and the checksum.
+     * @return entries of the table or {@code null} if they are not known
+     */
+    @Nullable
+    SortedMap<Long, byte[]> readEntries(SerializedTable serialized) {
+        String fieldName = fieldType().names().fullName();
+        BytesRef data = new BytesRef(serialized.table);
+        HtableHeader header;
+        try {
+            header = fieldType().header(data);
+        } catch (IllegalArgumentException e) {
+            throw new MapperParsingException("Invalid serialized table for field [" + fieldName + "]", e);
+        }
+        String formatName = header.format().formatName();
+        String valueTypeName = fieldType().valueTypeName();
+        if (header.valueType() != fieldType().headerValueType()) {
+            String headerValueTypeName = header.valueType() == null ? "tuple" : header.valueType().toString().toLowerCase(Locale.ROOT);
+            throw new MapperParsingException("Serialized table of value type [" + headerValueTypeName
+                                             + "] does not match value type [" + valueTypeName + "] of field [" + fieldName + "]");
+        }
+        if (serialized.format != null && !serialized.format.equals(formatName)) {
+            // a table with a header can be of any format, a segment mixes formats
+            String formatOwner = HtableHeader.read(data) != null ? "the table header" : "field [" + fieldName + "]";
+            throw new MapperParsingException("Serialized table of format [" + serialized.format
+                                             + "] does not match format [" + formatName + "] of " + formatOwner);
+        }
+        if (serialized.valueType != null && !serialized.valueType.equals(valueTypeName)) {
+            throw new MapperParsingException("Serialized table of value type [" + serialized.valueType
+                                             + "] does not match value type [" + valueTypeName + "] of field [" + fieldName + "]");
+        }
+        if (serialized.crc32 != null) {
+            CRC32 crc32 = new CRC32();
+            crc32.update(serialized.table, 0, serialized.table.length);
+            if (crc32.getValue() != serialized.crc32) {
+                throw new MapperParsingException("Checksum of serialized table for field [" + fieldName + "] does not match");
+            }
+        }
+        if (header.format().directReader(fieldType().valueSize()) != null) {
+            try {
+                return fieldType().entries(data);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new MapperParsingException("Invalid serialized table for field [" + fieldName + "]", e);
             }
+        }
+        if (serialized.format == null || serialized.valueType == null || serialized.crc32 == null) {
+            throw new MapperParsingException("Serialized table of format [" + formatName + "] for field [" + fieldName
+                                             + "] must declare [format], [value_type] and [crc32]");
+        }
+        try {
+            fieldType().hashTableReader(data);
+        } catch (RuntimeException e) {
+            throw new MapperParsingException("Invalid serialized table for field [" + fieldName + "]", e);
+        }
+        return null;
+    }
 
-            value = this.htableWriter.dump(entries);
+    /**
+     * Puts the header of the mapping in front of a serialized table checked by {@link #readEntries}.
+     * A table that has a header keeps its format and gets the merge format of the mapping,
+     * a table without a header has the format of the mapping.
+     */
+    private byte[] withHeader(byte[] table) {
+        BytesRef data = new BytesRef(table);
+        HtableHeader header = HtableHeader.read(data);
+        if (header == null) {
+            return fieldType().withHeader(table);
+        }
+        if (header.mergeFormat() == fieldType().mergeFormat()) {
+            return table;
+        }
+        return fieldType().withHeader(header.format(), Arrays.copyOfRange(table, HtableHeader.SIZE, table.length));
+    }
+
+    // the statistics of tuples are of their first component
+    private BytesRef keyStatsEntries(SortedMap<Long, byte[]> entries) {
+        ValueType valueType = fieldType().valueType();
+        long[] keys = new long[entries.size()];
+        float[] values = new float[entries.size()];
+        int count = 0;
+        for (Map.Entry<Long, byte[]> entry : entries.entrySet()) {
+            keys[count] = entry.getKey();
+            values[count] = valueType.getValue(entry.getValue());
+            count++;
+        }
+        return HtableKeyStats.encode(keys, values, count);
+    }
+
+    @Override
+    protected void parseCreateField(ParseContext context, List<Field> fields) throws IOException {
+        byte[] value = context.parseExternalValue(byte[].class);
+        // external values are raw tables of the mapping format, parsed values are always written with a header
+        boolean hasHeader = value == null;
+        BytesRef keyStatsEntries = HtableKeyStats.UNKNOWN_ENTRIES;
+        // the codec decodes the tables of the formats with a direct reader itself, the others pass their entries
+        boolean decodedByCodec = false;
+
+        if (value == null) {
+            long startTime = System.nanoTime();
+            SortedMap<Long, byte[]> entries;
+            XContentParser.Token token = context.parser().currentToken();
+            if (token == XContentParser.Token.VALUE_STRING || token == XContentParser.Token.VALUE_EMBEDDED_OBJECT) {
+                // already serialized table, for example written back by the htable patch action
+                SerializedTable serialized = new SerializedTable();
+                serialized.table = context.parser().binaryValue();
+                entries = readEntries(serialized);
+                value = withHeader(serialized.table);
+            } else {
+                SerializedTable serialized = new SerializedTable();
+                entries = parseEntries(context.parser(), fieldType().keyType(), valueParser, serialized);
+                if (serialized.table != null) {
+                    entries = readEntries(serialized);
+                    value = withHeader(serialized.table);
+                } else {
+                    value = fieldType().withHeader(fieldType().writer().dump(entries));
+                }
+            }
+            metrics.onParse(entries != null ? entries.size() : 0, value.length, System.nanoTime() - startTime);
+            if (keyStats) {
+                decodedByCodec = HtableHeader.readRequired(new BytesRef(value)).isDecodable();
+                if (!decodedByCodec && entries != null) {
+                    keyStatsEntries = keyStatsEntries(entries);
+                }
+            }
         }
 
         if (value == null) {
@@ -406,18 +1123,63 @@ public class HtableFieldMapper extends FieldMapper {
 
         if (fieldType().hasDocValues()) {
             fields.add(new org.apache.lucene.document.BinaryDocValuesField(fieldType().names().indexName(), new BytesRef(value)));
+            if (hasHeader) {
+                fields.add(new org.apache.lucene.document.NumericDocValuesField(HtableHeader.fieldName(fieldType().names().indexName()),
+                                                                               HtableHeader.HAS_HEADER));
+            }
+            if (keyStats && !decodedByCodec) {
+                fields.add(new org.apache.lucene.document.BinaryDocValuesField(HtableKeyStats.fieldName(fieldType().names().indexName()),
+                                                                              keyStatsEntries));
+            }
+        }
+    }
+
+    @Override
+    public void merge(Mapper mergeWith, MergeResult mergeResult) throws MergeMappingException {
+        super.merge(mergeWith, mergeResult);
+        if (!(mergeWith instanceof HtableFieldMapper)) {
+            return;
+        }
+        HtableFieldMapper htableMergeWith = (HtableFieldMapper) mergeWith;
+        if (htableMergeWith.keyStats != keyStats) {
+            mergeResult.addConflict("mapper [" + fieldType().names().fullName() + "] has different [key_stats] values");
+        }
+        if (htableMergeWith.fieldType().keyType() != fieldType().keyType()) {
+            mergeResult.addConflict("mapper [" + fieldType().names().fullName() + "] has different [key_type] values");
+        }
+        if (htableMergeWith.fieldType().valueType() != fieldType().valueType()
+            || !Objects.equals(htableMergeWith.fieldType().tupleType(), fieldType().tupleType())) {
+            mergeResult.addConflict("mapper [" + fieldType().names().fullName() + "] has different [value_type] values");
         }
+        // a new format comes with the field type of the merged mapping together with its writer,
+        // tables carry their format in the header so it only applies to new tables
     }
 
     @Override
     protected void doXContentBody(XContentBuilder builder, boolean includeDefaults, Params params) throws IOException {
         super.doXContentBody(builder, includeDefaults, params);
 
-        if (includeDefaults || fieldType().valueType() != Defaults.VALUE_TYPE) {
+        if (includeDefaults || fieldType().keyType() != Defaults.KEY_TYPE) {
+            builder.field("key_type", fieldType().keyType().toString().toLowerCase(Locale.ROOT));
+        }
+        if (fieldType().tupleType() != null && !fieldType().tupleType().isVector()) {
+            builder.field("value_type", fieldType().tupleType().names());
+        } else if (includeDefaults || fieldType().valueType() != Defaults.VALUE_TYPE) {
             builder.field("value_type", fieldType().valueType().toString().toLowerCase());
         }
+        if (fieldType().dims() > 0) {
+            builder.field("dims", fieldType().dims());
+        }
         if (fieldType().dataFormatParams() != null) {
             builder.field("format_params", fieldType().dataFormatParams());
         }
+        if (fieldType().mergeFormatParams() != null) {
+            builder.field("merge_format", fieldType().mergeFormatParams());
+        } else if (fieldType().mergeFormat() != null) {
+            builder.field("merge_format", fieldType().mergeFormat().formatName());
+        }
+        if (includeDefaults || keyStats != Defaults.KEY_STATS) {
+            builder.field("key_stats", keyStats);
+        }
     }
 }
@@ -0,0 +1,269 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+
+public class HtableFieldStats implements Streamable, ToXContent {
+    private String fieldName;
+    private long lookups;
+    private long misses;
+    private long bytesRead;
+    private long timedLookups;
+    private long lookupTimeInNanos;
+    private long parsedTables;
+    private long parsedEntries;
+    private long parsedBytes;
+    private long parseTimeInNanos;
+    private ProfileStats profile;
+
+    HtableFieldStats() {
+    }
+
+    public HtableFieldStats(String fieldName,
+                            long lookups, long misses, long bytesRead, long timedLookups, long lookupTimeInNanos,
+                            long parsedTables, long parsedEntries, long parsedBytes, long parseTimeInNanos,
+                            @Nullable ProfileStats profile) {
+        this.fieldName = fieldName;
+        this.lookups = lookups;
+        this.misses = misses;
+        this.bytesRead = bytesRead;
+        this.timedLookups = timedLookups;
+        this.lookupTimeInNanos = lookupTimeInNanos;
+        this.parsedTables = parsedTables;
+        this.parsedEntries = parsedEntries;
+        this.parsedBytes = parsedBytes;
+        this.parseTimeInNanos = parseTimeInNanos;
+        this.profile = profile;
+    }
+
+    public static HtableFieldStats readFieldStats(StreamInput in) throws IOException {
+        HtableFieldStats stats = new HtableFieldStats();
+        stats.readFrom(in);
+        return stats;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * Number of lookups that returned the default value.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getTimedLookups() {
+        return timedLookups;
+    }
+
+    public long getLookupTimeInNanos() {
+        return lookupTimeInNanos;
+    }
+
+    public long getParsedTables() {
+        return parsedTables;
+    }
+
+    public long getParsedEntries() {
+        return parsedEntries;
+    }
+
+    public long getParsedBytes() {
+        return parsedBytes;
+    }
+
+    public long getParseTimeInNanos() {
+        return parseTimeInNanos;
+    }
+
+    /**
+     * Returns time spent in the phases of profiled lookups or {@code null} if there were no profiled lookups.
+     */
+    @Nullable
+    public ProfileStats getProfile() {
+        return profile;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        fieldName = in.readString();
+        lookups = in.readVLong();
+        misses = in.readVLong();
+        bytesRead = in.readVLong();
+        timedLookups = in.readVLong();
+        lookupTimeInNanos = in.readVLong();
+        parsedTables = in.readVLong();
+        parsedEntries = in.readVLong();
+        parsedBytes = in.readVLong();
+        parseTimeInNanos = in.readVLong();
+        if (in.readBoolean()) {
+            profile = new ProfileStats();
+            profile.readFrom(in);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(fieldName);
+        out.writeVLong(lookups);
+        out.writeVLong(misses);
+        out.writeVLong(bytesRead);
+        out.writeVLong(timedLookups);
+        out.writeVLong(lookupTimeInNanos);
+        out.writeVLong(parsedTables);
+        out.writeVLong(parsedEntries);
+        out.writeVLong(parsedBytes);
+        out.writeVLong(parseTimeInNanos);
+        out.writeBoolean(profile != null);
+        if (profile != null) {
+            profile.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(fieldName);
+
+        builder.startObject(Fields.SEARCH);
+        builder.field(Fields.LOOKUPS, lookups);
+        builder.field(Fields.MISSES, misses);
+        builder.byteSizeField(Fields.BYTES_READ_IN_BYTES, Fields.BYTES_READ, bytesRead);
+        if (timedLookups > 0) {
+            builder.field(Fields.TIMED_LOOKUPS, timedLookups);
+            builder.timeValueField(Fields.LOOKUP_TIME_IN_MILLIS, Fields.LOOKUP_TIME, TimeUnit.NANOSECONDS.toMillis(lookupTimeInNanos));
+            builder.field(Fields.AVG_LOOKUP_TIME_IN_NANOS, lookupTimeInNanos / timedLookups);
+        }
+        if (profile != null) {
+            profile.toXContent(builder, params);
+        }
+        builder.endObject();
+
+        builder.startObject(Fields.INDEXING);
+        builder.field(Fields.TABLES, parsedTables);
+        builder.field(Fields.ENTRIES, parsedEntries);
+        builder.byteSizeField(Fields.SIZE_IN_BYTES, Fields.SIZE, parsedBytes);
+        if (parsedTables > 0) {
+            builder.field(Fields.AVG_TABLE_ENTRIES, parsedEntries / parsedTables);
+            builder.byteSizeField(Fields.AVG_TABLE_SIZE_IN_BYTES, Fields.AVG_TABLE_SIZE, parsedBytes / parsedTables);
+        }
+        builder.timeValueField(Fields.PARSE_TIME_IN_MILLIS, Fields.PARSE_TIME, TimeUnit.NANOSECONDS.toMillis(parseTimeInNanos));
+        builder.endObject();
+
+        builder.endObject();
+        return builder;
+    }
+
+    public static class ProfileStats implements Streamable, ToXContent {
+        private long lookups;
+        private long fetchTimeInNanos;
+        private long readerTimeInNanos;
+        private long probeTimeInNanos;
+        private long decodeTimeInNanos;
+
+        ProfileStats() {
+        }
+
+        public ProfileStats(long lookups, long fetchTimeInNanos, long readerTimeInNanos, long probeTimeInNanos, long decodeTimeInNanos) {
+            this.lookups = lookups;
+            this.fetchTimeInNanos = fetchTimeInNanos;
+            this.readerTimeInNanos = readerTimeInNanos;
+            this.probeTimeInNanos = probeTimeInNanos;
+            this.decodeTimeInNanos = decodeTimeInNanos;
+        }
+
+        public long getLookups() {
+            return lookups;
+        }
+
+        public long getFetchTimeInNanos() {
+            return fetchTimeInNanos;
+        }
+
+        public long getReaderTimeInNanos() {
+            return readerTimeInNanos;
+        }
+
+        public long getProbeTimeInNanos() {
+            return probeTimeInNanos;
+        }
+
+        public long getDecodeTimeInNanos() {
+            return decodeTimeInNanos;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            lookups = in.readVLong();
+            fetchTimeInNanos = in.readVLong();
+            readerTimeInNanos = in.readVLong();
+            probeTimeInNanos = in.readVLong();
+            decodeTimeInNanos = in.readVLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(lookups);
+            out.writeVLong(fetchTimeInNanos);
+            out.writeVLong(readerTimeInNanos);
+            out.writeVLong(probeTimeInNanos);
+            out.writeVLong(decodeTimeInNanos);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject(Fields.PROFILE);
+            builder.field(Fields.LOOKUPS, lookups);
+            builder.field(Fields.AVG_FETCH_TIME_IN_NANOS, fetchTimeInNanos / lookups);
+            builder.field(Fields.AVG_READER_TIME_IN_NANOS, readerTimeInNanos / lookups);
+            builder.field(Fields.AVG_PROBE_TIME_IN_NANOS, probeTimeInNanos / lookups);
+            builder.field(Fields.AVG_DECODE_TIME_IN_NANOS, decodeTimeInNanos / lookups);
+            builder.endObject();
+            return builder;
+        }
+    }
+
+    static final class Fields {
+        static final XContentBuilderString SEARCH = new XContentBuilderString("search");
+        static final XContentBuilderString LOOKUPS = new XContentBuilderString("lookups");
+        static final XContentBuilderString MISSES = new XContentBuilderString("misses");
+        static final XContentBuilderString BYTES_READ = new XContentBuilderString("bytes_read");
+        static final XContentBuilderString BYTES_READ_IN_BYTES = new XContentBuilderString("bytes_read_in_bytes");
+        static final XContentBuilderString TIMED_LOOKUPS = new XContentBuilderString("timed_lookups");
+        static final XContentBuilderString LOOKUP_TIME = new XContentBuilderString("lookup_time");
+        static final XContentBuilderString LOOKUP_TIME_IN_MILLIS = new XContentBuilderString("lookup_time_in_millis");
+        static final XContentBuilderString AVG_LOOKUP_TIME_IN_NANOS = new XContentBuilderString("avg_lookup_time_in_nanos");
+        static final XContentBuilderString PROFILE = new XContentBuilderString("profile");
+        static final XContentBuilderString AVG_FETCH_TIME_IN_NANOS = new XContentBuilderString("avg_fetch_time_in_nanos");
+        static final XContentBuilderString AVG_READER_TIME_IN_NANOS = new XContentBuilderString("avg_reader_time_in_nanos");
+        static final XContentBuilderString AVG_PROBE_TIME_IN_NANOS = new XContentBuilderString("avg_probe_time_in_nanos");
+        static final XContentBuilderString AVG_DECODE_TIME_IN_NANOS = new XContentBuilderString("avg_decode_time_in_nanos");
+        static final XContentBuilderString INDEXING = new XContentBuilderString("indexing");
+        static final XContentBuilderString TABLES = new XContentBuilderString("tables");
+        static final XContentBuilderString ENTRIES = new XContentBuilderString("entries");
+        static final XContentBuilderString SIZE = new XContentBuilderString("size");
+        static final XContentBuilderString SIZE_IN_BYTES = new XContentBuilderString("size_in_bytes");
+        static final XContentBuilderString AVG_TABLE_ENTRIES = new XContentBuilderString("avg_table_entries");
+        static final XContentBuilderString AVG_TABLE_SIZE = new XContentBuilderString("avg_table_size");
+        static final XContentBuilderString AVG_TABLE_SIZE_IN_BYTES = new XContentBuilderString("avg_table_size_in_bytes");
+        static final XContentBuilderString PARSE_TIME = new XContentBuilderString("parse_time");
+        static final XContentBuilderString PARSE_TIME_IN_MILLIS = new XContentBuilderString("parse_time_in_millis");
+    }
+}
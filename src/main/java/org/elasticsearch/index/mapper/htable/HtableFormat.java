@@ -0,0 +1,275 @@
+package org.elasticsearch.index.mapper.htable;
+
+import net.uaprom.htable.HashTable;
+import net.uaprom.htable.ChainHashTable;
+import net.uaprom.htable.TrieHashTable;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+
+public enum HtableFormat {
+    CHAIN(0) {
+        @Override
+        public HtableWriter writer(int valueSize, @Nullable Map<String, Object> params) {
+            if (params == null) {
+                return new HashTableWriter(new ChainHashTable.Writer(hashTableValueSize(valueSize)));
+            }
+            int fillingRatio = XContentMapValues.nodeIntegerValue(params.get("filling_ratio"), ChainHashTable.Writer.DEFAULT_FILLING_RATIO);
+            int minHashTableSize = XContentMapValues.nodeIntegerValue(params.get("min_hash_table_size"), ChainHashTable.Writer.DEFAULT_MIN_HASH_TABLE_SIZE);
+            return new HashTableWriter(new ChainHashTable.Writer(hashTableValueSize(valueSize), fillingRatio, minHashTableSize));
+        }
+
+        @Override
+        public HtableReader reader(int valueSize, BytesRef data) {
+            return new HashTableReader(new ChainHashTable.Reader(data.bytes, data.offset, data.length));
+        }
+    },
+    TRIE(1) {
+        @Override
+        public HtableWriter writer(int valueSize, @Nullable Map<String, Object> params) {
+            TrieHashTable.BitmaskSize bitmaskSize;
+            String bitmaskSizeParam = params == null ? null : XContentMapValues.nodeStringValue(params.get("bitmask_size"), null);
+            if (bitmaskSizeParam != null) {
+                bitmaskSize = TrieHashTable.BitmaskSize.valueOf(bitmaskSizeParam.toUpperCase(Locale.ROOT));
+            } else {
+                bitmaskSize = TrieHashTable.BitmaskSize.SHORT;
+            }
+            return new HashTableWriter(new TrieHashTable.Writer(hashTableValueSize(valueSize), bitmaskSize));
+        }
+
+        @Override
+        public HtableReader reader(int valueSize, BytesRef data) {
+            return new HashTableReader(new TrieHashTable.Reader(data.bytes, data.offset, data.length));
+        }
+    },
+    SORTED(2) {
+        @Override
+        public HtableWriter writer(int valueSize, @Nullable Map<String, Object> params) {
+            return new SortedHtable.Writer(valueSize);
+        }
+
+        @Override
+        public DirectHtableReader directReader(int valueSize) {
+            return new SortedHtable.Reader(valueSize);
+        }
+    },
+    LAZY_CHAIN(3) {
+        @Override
+        public void validateParams(@Nullable Map<String, Object> params) {
+            writer(1, params);
+        }
+
+        @Override
+        public HtableWriter writer(int valueSize, @Nullable Map<String, Object> params) {
+            if (params == null) {
+                return new LazyChainHtable.Writer(valueSize);
+            }
+            int fillingRatio = XContentMapValues.nodeIntegerValue(params.get("filling_ratio"), LazyChainHtable.DEFAULT_FILLING_RATIO);
+            int minHashTableSize = XContentMapValues.nodeIntegerValue(params.get("min_hash_table_size"), LazyChainHtable.DEFAULT_MIN_HASH_TABLE_SIZE);
+            LazyChainHtable.Layout layout = LazyChainHtable.Layout.fromName(XContentMapValues.nodeStringValue(params.get("layout"), "interleaved"));
+            return new LazyChainHtable.Writer(valueSize, fillingRatio, minHashTableSize, layout);
+        }
+
+        @Override
+        public DirectHtableReader directReader(int valueSize) {
+            return new LazyChainHtable.Reader(valueSize);
+        }
+    },
+    BLOCKED(4) {
+        @Override
+        public void validateParams(@Nullable Map<String, Object> params) {
+            writer(1, params);
+        }
+
+        @Override
+        public HtableWriter writer(int valueSize, @Nullable Map<String, Object> params) {
+            if (params == null) {
+                return new BlockedHtable.Writer(valueSize);
+            }
+            int blockSize = XContentMapValues.nodeIntegerValue(params.get("block_size"), BlockedHtable.DEFAULT_BLOCK_SIZE);
+            return new BlockedHtable.Writer(valueSize, blockSize);
+        }
+
+        @Override
+        public DirectHtableReader directReader(int valueSize) {
+            return new BlockedHtable.Reader(valueSize);
+        }
+    };
+
+    /**
+     * Identifies the format in {@link HtableHeader}, must never change.
+     */
+    public final byte id;
+
+    HtableFormat(int id) {
+        this.id = (byte) id;
+    }
+
+    /**
+     * Throws {@link IllegalArgumentException} if the format parameters are invalid.
+     */
+    public void validateParams(@Nullable Map<String, Object> params) {
+    }
+
+    public HtableWriter writer(HtableFieldMapper.ValueType valueType, @Nullable Map<String, Object> params) {
+        return writer(valueType.size, params);
+    }
+
+    /**
+     * Returns a writer of values of {@code valueSize} bytes.
+     * Throws {@link IllegalArgumentException} if the format does not support the size.
+     */
+    public abstract HtableWriter writer(int valueSize, @Nullable Map<String, Object> params);
+
+    /**
+     * Returns a reader that can probe tables in place or {@code null} if the format only supports heap tables.
+     * {@link #CHAIN} and {@link #TRIE} are layouts of the htable library which readers only accept byte arrays,
+     * so their tables are copied to the heap. {@link #LAZY_CHAIN} is the chained layout that is probed in place.
+     */
+    @Nullable
+    public DirectHtableReader directReader(HtableFieldMapper.ValueType valueType) {
+        return directReader(valueType.size);
+    }
+
+    @Nullable
+    public DirectHtableReader directReader(int valueSize) {
+        return null;
+    }
+
+    public HtableReader reader(HtableFieldMapper.ValueType valueType, BytesRef data) {
+        return reader(valueType.size, data);
+    }
+
+    public HtableReader reader(int valueSize, BytesRef data) {
+        return directReader(valueSize).reset(data);
+    }
+
+    /**
+     * The formats of the htable library only store values of the size of a primitive.
+     */
+    private static HashTable.ValueSize hashTableValueSize(int valueSize) {
+        switch (valueSize) {
+            case 1:
+                return HashTable.ValueSize.BYTE;
+            case 2:
+                return HashTable.ValueSize.SHORT;
+            case 4:
+                return HashTable.ValueSize.INT;
+            case 8:
+                return HashTable.ValueSize.LONG;
+            default:
+                throw new IllegalArgumentException("Formats [chain] and [trie] only support values of 1, 2, 4 or 8 bytes; got ["
+                                                   + valueSize + "] bytes");
+        }
+    }
+
+    public String formatName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static HtableFormat fromName(String name) {
+        for (HtableFormat format : values()) {
+            if (format.formatName().equals(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("[format] can be one of " + Arrays.toString(formatNames()) + "; got [" + name + "]");
+    }
+
+    @Nullable
+    static HtableFormat fromId(int id) {
+        for (HtableFormat format : values()) {
+            if (format.id == id) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    public static HtableFormat fromParams(@Nullable Map<String, Object> params) {
+        if (params == null) {
+            return fromName(HtableFieldMapper.Defaults.FORMAT);
+        }
+        return fromName(XContentMapValues.nodeStringValue(params.get("format"), HtableFieldMapper.Defaults.FORMAT));
+    }
+
+    public static String[] formatNames() {
+        HtableFormat[] formats = values();
+        String[] names = new String[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            names[i] = formats[i].formatName();
+        }
+        return names;
+    }
+
+    private static class HashTableWriter implements HtableWriter {
+        private final HashTable.Writer writer;
+
+        HashTableWriter(HashTable.Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public byte[] dump(SortedMap<Long, byte[]> entries) {
+            return writer.dump(entries);
+        }
+    }
+
+    private static class HashTableReader implements HtableReader {
+        private final HashTable.Reader reader;
+
+        HashTableReader(HashTable.Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public long getValueOffset(long key) {
+            int offset = reader.getValueOffset(key);
+            return offset == HashTable.Reader.NOT_FOUND_OFFSET ? NOT_FOUND_OFFSET : offset;
+        }
+
+        @Override
+        public byte getByte(long offset) {
+            return reader.getByte((int) offset);
+        }
+
+        @Override
+        public short getShort(long offset) {
+            return reader.getShort((int) offset);
+        }
+
+        @Override
+        public int getInt(long offset) {
+            return reader.getInt((int) offset);
+        }
+
+        @Override
+        public long getLong(long offset) {
+            return reader.getLong((int) offset);
+        }
+
+        @Override
+        public float getFloat(long offset) {
+            return reader.getFloat((int) offset);
+        }
+
+        @Override
+        public double getDouble(long offset) {
+            return reader.getDouble((int) offset);
+        }
+
+        @Override
+        public void getFloats(long offset, float[] values, int count) {
+            for (int i = 0; i < count; i++) {
+                values[i] = reader.getFloat((int) offset + 4 * i);
+            }
+        }
+    }
+}
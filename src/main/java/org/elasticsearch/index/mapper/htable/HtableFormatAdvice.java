@@ -0,0 +1,253 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+
+public class HtableFormatAdvice implements Streamable, ToXContent {
+    private String fieldName;
+    private HtableFieldMapper.ValueType valueType;
+    private Map<String, Object> formatParams;
+    private Distribution entries;
+    private Distribution storedSizes;
+    private List<Candidate> candidates;
+    private int recommended;
+
+    HtableFormatAdvice() {
+    }
+
+    public HtableFormatAdvice(String fieldName, HtableFieldMapper.ValueType valueType, @Nullable Map<String, Object> formatParams,
+                              Distribution entries, Distribution storedSizes, List<Candidate> candidates, int recommended) {
+        this.fieldName = fieldName;
+        this.valueType = valueType;
+        this.formatParams = formatParams;
+        this.entries = entries;
+        this.storedSizes = storedSizes;
+        this.candidates = candidates;
+        this.recommended = recommended;
+    }
+
+    public static HtableFormatAdvice readFormatAdvice(StreamInput in) throws IOException {
+        HtableFormatAdvice advice = new HtableFormatAdvice();
+        advice.readFrom(in);
+        return advice;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public Distribution getEntries() {
+        return entries;
+    }
+
+    public Distribution getStoredSizes() {
+        return storedSizes;
+    }
+
+    public List<Candidate> getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Returns the recommended candidate or {@code null} if there were no tables to sample.
+     */
+    @Nullable
+    public Candidate getRecommended() {
+        return recommended < 0 ? null : candidates.get(recommended);
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        fieldName = in.readString();
+        valueType = HtableFieldMapper.ValueType.values()[in.readVInt()];
+        formatParams = in.readBoolean() ? in.readMap() : null;
+        entries = Distribution.readDistribution(in);
+        storedSizes = Distribution.readDistribution(in);
+        int size = in.readVInt();
+        candidates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            candidates.add(new Candidate(in.readMap(), in.readVLong(), in.readVLong()));
+        }
+        recommended = in.readInt();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(fieldName);
+        out.writeVInt(valueType.ordinal());
+        out.writeBoolean(formatParams != null);
+        if (formatParams != null) {
+            out.writeMap(formatParams);
+        }
+        entries.writeTo(out);
+        storedSizes.writeTo(out);
+        out.writeVInt(candidates.size());
+        for (Candidate candidate : candidates) {
+            out.writeMap(candidate.formatParams);
+            out.writeVLong(candidate.avgSizeInBytes);
+            out.writeVLong(candidate.avgLookupTimeInNanos);
+        }
+        out.writeInt(recommended);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("field", fieldName);
+        builder.field("value_type", valueType.name().toLowerCase(Locale.ROOT));
+        builder.field("format_params", formatParams);
+        builder.field("sampled_tables", entries.count);
+        builder.field("entries");
+        entries.toXContent(builder, params);
+        builder.field("size_in_bytes");
+        storedSizes.toXContent(builder, params);
+        builder.startArray("candidates");
+        for (Candidate candidate : candidates) {
+            candidate.toXContent(builder, params);
+        }
+        builder.endArray();
+        if (getRecommended() != null) {
+            builder.field("recommended");
+            getRecommended().toXContent(builder, params);
+        }
+        return builder;
+    }
+
+    public static class Candidate implements ToXContent {
+        private final Map<String, Object> formatParams;
+        private final long avgSizeInBytes;
+        private final long avgLookupTimeInNanos;
+
+        public Candidate(Map<String, Object> formatParams, long avgSizeInBytes, long avgLookupTimeInNanos) {
+            this.formatParams = formatParams;
+            this.avgSizeInBytes = avgSizeInBytes;
+            this.avgLookupTimeInNanos = avgLookupTimeInNanos;
+        }
+
+        public Map<String, Object> getFormatParams() {
+            return formatParams;
+        }
+
+        public long getAvgSizeInBytes() {
+            return avgSizeInBytes;
+        }
+
+        public long getAvgLookupTimeInNanos() {
+            return avgLookupTimeInNanos;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field("format_params", formatParams);
+            builder.field("avg_size_in_bytes", avgSizeInBytes);
+            builder.field("avg_lookup_time_in_nanos", avgLookupTimeInNanos);
+            builder.endObject();
+            return builder;
+        }
+    }
+
+    public static class Distribution implements Streamable, ToXContent {
+        private long count;
+        private long min;
+        private long max;
+        private double avg;
+        private long p50;
+        private long p90;
+        private long p99;
+
+        Distribution() {
+        }
+
+        public Distribution(long[] values) {
+            count = values.length;
+            if (count == 0) {
+                return;
+            }
+            long[] sorted = Arrays.copyOf(values, values.length);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long value : sorted) {
+                sum += value;
+            }
+            min = sorted[0];
+            max = sorted[sorted.length - 1];
+            avg = (double) sum / sorted.length;
+            p50 = percentile(sorted, 50);
+            p90 = percentile(sorted, 90);
+            p99 = percentile(sorted, 99);
+        }
+
+        private static long percentile(long[] sorted, int percent) {
+            return sorted[(int) Math.min(sorted.length - 1, (long) sorted.length * percent / 100)];
+        }
+
+        public static Distribution readDistribution(StreamInput in) throws IOException {
+            Distribution distribution = new Distribution();
+            distribution.readFrom(in);
+            return distribution;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getAvg() {
+            return avg;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            count = in.readVLong();
+            min = in.readVLong();
+            max = in.readVLong();
+            avg = in.readDouble();
+            p50 = in.readVLong();
+            p90 = in.readVLong();
+            p99 = in.readVLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(count);
+            out.writeVLong(min);
+            out.writeVLong(max);
+            out.writeDouble(avg);
+            out.writeVLong(p50);
+            out.writeVLong(p90);
+            out.writeVLong(p99);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field("min", min);
+            builder.field("max", max);
+            builder.field("avg", avg);
+            builder.field("p50", p50);
+            builder.field("p90", p90);
+            builder.field("p99", p99);
+            builder.endObject();
+            return builder;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+
+/**
+ * Writes sampled tables with every candidate format, measures the size and the lookup time
+ * and recommends the fastest format which size is close to the smallest one.
+ */
+public class HtableFormatAdvisor {
+    public static final double DEFAULT_SIZE_TOLERANCE = 0.25;
+
+    static final List<Map<String, Object>> CANDIDATES = Collections.unmodifiableList(Arrays.<Map<String, Object>>asList(
+        ImmutableMap.<String, Object>of("format", "chain", "filling_ratio", 2),
+        ImmutableMap.<String, Object>of("format", "chain", "filling_ratio", 5),
+        ImmutableMap.<String, Object>of("format", "chain", "filling_ratio", 10),
+        ImmutableMap.<String, Object>of("format", "chain", "filling_ratio", 20),
+        ImmutableMap.<String, Object>of("format", "trie", "bitmask_size", "byte"),
+        ImmutableMap.<String, Object>of("format", "trie", "bitmask_size", "short"),
+        ImmutableMap.<String, Object>of("format", "trie", "bitmask_size", "int"),
+        ImmutableMap.<String, Object>of("format", "trie", "bitmask_size", "long"),
+        ImmutableMap.<String, Object>of("format", "sorted"),
+        ImmutableMap.<String, Object>of("format", "lazy_chain", "filling_ratio", 2),
+        ImmutableMap.<String, Object>of("format", "lazy_chain", "filling_ratio", 5),
+        ImmutableMap.<String, Object>of("format", "lazy_chain", "filling_ratio", 10),
+        ImmutableMap.<String, Object>of("format", "blocked", "block_size", 4),
+        ImmutableMap.<String, Object>of("format", "blocked", "block_size", 8),
+        ImmutableMap.<String, Object>of("format", "blocked", "block_size", 16),
+        ImmutableMap.<String, Object>of("format", "blocked", "block_size", 32)
+    ));
+
+    private static final int MAX_PROBES_PER_TABLE = 64;
+    private static final int MEASURE_ROUNDS = 3;
+
+    private final String fieldName;
+    private final HtableFieldMapper.HtableFieldType fieldType;
+    private final HtableFieldMapper.ValueParser valueParser;
+    private final List<SortedMap<Long, byte[]>> tables = new ArrayList<>();
+    private final List<Long> storedSizes = new ArrayList<>();
+
+    public HtableFormatAdvisor(String fieldName, HtableFieldMapper.HtableFieldType fieldType) {
+        this.fieldName = fieldName;
+        this.fieldType = fieldType;
+        this.valueParser = fieldType.valueParser();
+    }
+
+    /**
+     * Adds a sampled table.
+     *
+     * @param source value of the field in the document source
+     * @param storedSize size of the table stored in the doc values
+     */
+    public void addTable(BytesReference source, int storedSize) throws IOException {
+        try (XContentParser parser = XContentHelper.createParser(source)) {
+            parser.nextToken();
+            tables.add(HtableFieldMapper.parseEntries(parser, fieldType.keyType(), valueParser));
+        }
+        storedSizes.add((long) storedSize);
+    }
+
+    /**
+     * Adds a sampled table that is kept serialized in the document source, for example after a patch.
+     *
+     * @param stored the table stored in the doc values
+     * @param hasHeader whether the document is marked as having a table with a header, see {@link HtableHeader#hasHeader}
+     */
+    public void addTable(BytesRef stored, boolean hasHeader) {
+        SortedMap<Long, byte[]> entries;
+        try {
+            entries = fieldType.entries(stored, hasHeader);
+        } catch (IllegalArgumentException e) {
+            // the format of the table cannot be decoded
+            return;
+        }
+        tables.add(entries);
+        storedSizes.add((long) stored.length);
+    }
+
+    public int numTables() {
+        return tables.size();
+    }
+
+    public HtableFormatAdvice advise(double sizeTolerance) {
+        long[] entries = new long[tables.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = tables.get(i).size();
+        }
+        long[] sizes = new long[storedSizes.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = storedSizes.get(i);
+        }
+
+        List<HtableFormatAdvice.Candidate> candidates = new ArrayList<>();
+        int recommended = -1;
+        if (!tables.isEmpty()) {
+            long[][] probes = probes();
+            for (Map<String, Object> params : CANDIDATES) {
+                HtableFormatAdvice.Candidate candidate = simulate(params, probes);
+                if (candidate != null) {
+                    candidates.add(candidate);
+                }
+            }
+            recommended = recommend(candidates, sizeTolerance);
+        }
+        return new HtableFormatAdvice(fieldName, fieldType.valueType(), fieldType.dataFormatParams(),
+                                      new HtableFormatAdvice.Distribution(entries),
+                                      new HtableFormatAdvice.Distribution(sizes),
+                                      candidates, recommended);
+    }
+
+    // existing keys of a table mixed with keys of the next table that are mostly missing
+    private long[][] probes() {
+        long[][] probes = new long[tables.size()][];
+        for (int i = 0; i < tables.size(); i++) {
+            Long[] keys = tables.get(i).keySet().toArray(new Long[0]);
+            Long[] otherKeys = tables.get((i + 1) % tables.size()).keySet().toArray(new Long[0]);
+            int numProbes = Math.min(MAX_PROBES_PER_TABLE, keys.length + otherKeys.length);
+            probes[i] = new long[numProbes];
+            for (int j = 0; j < numProbes; j++) {
+                Long[] source = (j % 2 == 0 && keys.length > 0) || otherKeys.length == 0 ? keys : otherKeys;
+                probes[i][j] = source[(int) ((long) j * source.length / numProbes)];
+            }
+        }
+        return probes;
+    }
+
+    // null if the format does not support the values of the field
+    @Nullable
+    private HtableFormatAdvice.Candidate simulate(Map<String, Object> params, long[][] probes) {
+        HtableFormat format = HtableFormat.fromParams(params);
+        int valueSize = fieldType.valueSize();
+        HtableWriter writer;
+        try {
+            writer = format.writer(valueSize, params);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        byte[][] data = new byte[tables.size()][];
+        long totalSize = 0;
+        long totalProbes = 0;
+        for (int i = 0; i < data.length; i++) {
+            data[i] = writer.dump(tables.get(i));
+            // stored tables have a header
+            totalSize += HtableHeader.SIZE + data[i].length;
+            totalProbes += probes[i].length;
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        long found = 0;
+        for (int round = 0; round < MEASURE_ROUNDS; round++) {
+            long startTime = System.nanoTime();
+            for (int i = 0; i < data.length; i++) {
+                HtableReader reader = format.reader(valueSize, new BytesRef(data[i]));
+                for (long key : probes[i]) {
+                    if (reader.getValueOffset(key) != HtableReader.NOT_FOUND_OFFSET) {
+                        found++;
+                    }
+                }
+            }
+            bestNanos = Math.min(bestNanos, System.nanoTime() - startTime);
+        }
+        assert found >= 0;
+        return new HtableFormatAdvice.Candidate(params,
+                                                totalSize / data.length,
+                                                totalProbes == 0 ? 0 : bestNanos / totalProbes);
+    }
+
+    static int recommend(List<HtableFormatAdvice.Candidate> candidates, double sizeTolerance) {
+        long minSize = Long.MAX_VALUE;
+        for (HtableFormatAdvice.Candidate candidate : candidates) {
+            minSize = Math.min(minSize, candidate.getAvgSizeInBytes());
+        }
+        int recommended = -1;
+        for (int i = 0; i < candidates.size(); i++) {
+            HtableFormatAdvice.Candidate candidate = candidates.get(i);
+            if (candidate.getAvgSizeInBytes() > minSize * (1 + sizeTolerance)) {
+                continue;
+            }
+            if (recommended < 0 || candidate.getAvgLookupTimeInNanos() < candidates.get(recommended).getAvgLookupTimeInNanos()) {
+                recommended = i;
+            }
+        }
+        return recommended;
+    }
+}
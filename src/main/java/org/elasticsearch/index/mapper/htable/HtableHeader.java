@@ -0,0 +1,246 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+
+
+/**
+ * Header written in front of every table so that a table is read with the format it was written with,
+ * whatever the mapping of the field says now:
+ * <pre>
+ * magic (4 bytes) | version (1 byte) | format id (1 byte) | value type id (1 byte) | flags (1 byte)
+ * </pre>
+ * The highest bit of the flags marks a table that the htable codec re-encodes into another format
+ * when its segment is merged, the other bits are the id of that format.
+ * Tables of {@link HtableTupleType tuples} have a reserved value type id, the layout of their values
+ * is only known to the mapping.
+ * <p>
+ * Tables written before the header was introduced are read with the format of the mapping. Their first bytes
+ * are not checked for the magic, the layouts of the {@code chain} and {@code trie} tables belong to the htable
+ * library and nothing prevents them from starting with it. The mapper marks every document which table has
+ * a header in a hidden numeric doc values field instead (see {@link #fieldName(String)}), the mark survives
+ * merges of segments with older documents. Only serialized tables given in documents are checked for the magic.
+ */
+public final class HtableHeader {
+    public static final int SIZE = 8;
+    public static final byte VERSION = 1;
+    // "HTB" and a byte with the highest bit set
+    static final int MAGIC = 0xCB425448;
+    static final int MERGE_FORMAT_FLAG = 0x80;
+    static final byte TUPLE_VALUE_TYPE_ID = 0x7f;
+    static final String FIELD_SUFFIX = "._header";
+    static final long HAS_HEADER = 1;
+
+    // by format, value type ordinal or the number of value types for tuples,
+    // and merge format shifted by one, zero is no merge format
+    private static final HtableHeader[][][] HEADERS;
+
+    static {
+        HtableFormat[] formats = HtableFormat.values();
+        HtableFieldMapper.ValueType[] valueTypes = HtableFieldMapper.ValueType.values();
+        HEADERS = new HtableHeader[formats.length][valueTypes.length + 1][formats.length + 1];
+        for (HtableFormat format : formats) {
+            for (int i = 0; i <= valueTypes.length; i++) {
+                HtableFieldMapper.ValueType valueType = i < valueTypes.length ? valueTypes[i] : null;
+                HtableHeader[] headers = HEADERS[format.ordinal()][i];
+                headers[0] = new HtableHeader(format, valueType, null);
+                for (HtableFormat mergeFormat : formats) {
+                    headers[mergeFormat.ordinal() + 1] = new HtableHeader(format, valueType, mergeFormat);
+                }
+            }
+        }
+    }
+
+    /**
+     * Name of the hidden field which value is {@link #HAS_HEADER} for the documents which tables have a header.
+     */
+    public static String fieldName(String field) {
+        return field + FIELD_SUFFIX;
+    }
+
+    public static boolean isHeaderField(String name) {
+        return name.endsWith(FIELD_SUFFIX) && name.length() > FIELD_SUFFIX.length();
+    }
+
+    public static String tableFieldName(String name) {
+        return name.substring(0, name.length() - FIELD_SUFFIX.length());
+    }
+
+    /**
+     * Returns the marks of the documents of the segment which tables have a header
+     * or {@code null} if no table of the segment has a header.
+     */
+    @Nullable
+    public static NumericDocValues marks(LeafReader reader, String field) throws IOException {
+        return reader.getNumericDocValues(fieldName(field));
+    }
+
+    public static boolean hasHeader(@Nullable NumericDocValues marks, int docId) {
+        return marks != null && marks.get(docId) != 0;
+    }
+
+    private final HtableFormat format;
+    private final HtableFieldMapper.ValueType valueType;
+    private final HtableFormat mergeFormat;
+    private final boolean decodable;
+
+    private HtableHeader(HtableFormat format, @Nullable HtableFieldMapper.ValueType valueType, @Nullable HtableFormat mergeFormat) {
+        this.format = format;
+        this.valueType = valueType;
+        this.mergeFormat = mergeFormat;
+        this.decodable = valueType != null && format.directReader(valueType) != null;
+    }
+
+    /**
+     * The value type is {@code null} for tuples.
+     */
+    public static HtableHeader get(HtableFormat format, @Nullable HtableFieldMapper.ValueType valueType) {
+        return get(format, valueType, null);
+    }
+
+    public static HtableHeader get(HtableFormat format, @Nullable HtableFieldMapper.ValueType valueType,
+                                   @Nullable HtableFormat mergeFormat) {
+        int valueTypeIndex = valueType == null ? HtableFieldMapper.ValueType.values().length : valueType.ordinal();
+        return HEADERS[format.ordinal()][valueTypeIndex][mergeFormat == null ? 0 : mergeFormat.ordinal() + 1];
+    }
+
+    public HtableFormat format() {
+        return format;
+    }
+
+    /**
+     * Returns the value type of the table or {@code null} for a table of tuples.
+     */
+    @Nullable
+    public HtableFieldMapper.ValueType valueType() {
+        return valueType;
+    }
+
+    /**
+     * Returns the format the table is re-encoded into when its segment is merged or {@code null}.
+     */
+    @Nullable
+    public HtableFormat mergeFormat() {
+        return mergeFormat;
+    }
+
+    /**
+     * Returns {@code true} if the entries of the table can be decoded with the header alone:
+     * the format has a {@link DirectHtableReader} and the values are not tuples.
+     */
+    public boolean isDecodable() {
+        return decodable;
+    }
+
+    /**
+     * Returns the table with the header in front of it.
+     */
+    public static byte[] write(HtableFormat format, @Nullable HtableFieldMapper.ValueType valueType, byte[] table) {
+        return write(format, valueType, null, table);
+    }
+
+    /**
+     * Returns the table with the header in front of it, the table is re-encoded into {@code mergeFormat}
+     * when its segment is merged.
+     */
+    public static byte[] write(HtableFormat format, @Nullable HtableFieldMapper.ValueType valueType,
+                               @Nullable HtableFormat mergeFormat, byte[] table) {
+        return ByteBuffer.allocate(SIZE + table.length).order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(MAGIC)
+            .put(VERSION)
+            .put(format.id)
+            .put(valueType == null ? TUPLE_VALUE_TYPE_ID : valueType.id)
+            .put(mergeFormat == null ? 0 : (byte) (MERGE_FORMAT_FLAG | mergeFormat.id))
+            .put(table)
+            .array();
+    }
+
+    /**
+     * Returns the header of a serialized table given in a document or {@code null} if it has no magic.
+     * Tables of the doc values are read with {@link #readRequired(BytesRef)} if their document is marked.
+     * Throws {@link IllegalArgumentException} if the header is not supported.
+     */
+    @Nullable
+    public static HtableHeader read(BytesRef data) {
+        if (!hasMagic(data)) {
+            return null;
+        }
+        byte[] bytes = data.bytes;
+        int offset = data.offset;
+        return get(bytes[offset + 4], bytes[offset + 5], bytes[offset + 6], bytes[offset + 7]);
+    }
+
+    /**
+     * Returns the header of a table that is known to have one.
+     * Throws {@link IllegalArgumentException} if the table has no header or the header is not supported.
+     */
+    public static HtableHeader readRequired(BytesRef data) {
+        if (!hasMagic(data)) {
+            throw new IllegalArgumentException("Hash table has no header");
+        }
+        return read(data);
+    }
+
+    /**
+     * The same as {@link #readRequired(BytesRef)} for a table that is read in place.
+     */
+    public static HtableHeader readRequired(RandomAccessInput input, long offset, int length) throws IOException {
+        if (length < SIZE || Integer.reverseBytes(input.readInt(offset)) != MAGIC) {
+            throw new IllegalArgumentException("Hash table has no header");
+        }
+        return get(input.readByte(offset + 4), input.readByte(offset + 5), input.readByte(offset + 6),
+                   input.readByte(offset + 7));
+    }
+
+    private static boolean hasMagic(BytesRef data) {
+        if (data.length < SIZE) {
+            return false;
+        }
+        byte[] bytes = data.bytes;
+        int offset = data.offset;
+        int magic = (bytes[offset] & 0xff)
+            | (bytes[offset + 1] & 0xff) << 8
+            | (bytes[offset + 2] & 0xff) << 16
+            | (bytes[offset + 3] & 0xff) << 24;
+        return magic == MAGIC;
+    }
+
+    private static HtableHeader get(byte version, byte formatId, byte valueTypeId, byte flags) {
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported version [" + version + "] of hash table header");
+        }
+        HtableFormat format = HtableFormat.fromId(formatId);
+        if (format == null) {
+            throw new IllegalArgumentException("Unknown hash table format id [" + formatId + "]");
+        }
+        HtableFieldMapper.ValueType valueType = HtableFieldMapper.ValueType.fromId(valueTypeId);
+        if (valueType == null && valueTypeId != TUPLE_VALUE_TYPE_ID) {
+            throw new IllegalArgumentException("Unknown hash table value type id [" + valueTypeId + "]");
+        }
+        HtableFormat mergeFormat = null;
+        if ((flags & MERGE_FORMAT_FLAG) != 0) {
+            int mergeFormatId = flags & ~MERGE_FORMAT_FLAG & 0xff;
+            mergeFormat = HtableFormat.fromId(mergeFormatId);
+            if (mergeFormat == null) {
+                throw new IllegalArgumentException("Unknown hash table merge format id [" + mergeFormatId + "]");
+            }
+        } else if (flags != 0) {
+            throw new IllegalArgumentException("Unknown hash table flags [" + flags + "]");
+        }
+        return get(format, valueType, mergeFormat);
+    }
+
+    /**
+     * Returns the table without the header, shares the bytes.
+     */
+    public static BytesRef table(BytesRef data) {
+        return new BytesRef(data.bytes, data.offset + SIZE, data.length - SIZE);
+    }
+}
@@ -0,0 +1,48 @@
+package org.elasticsearch.index.mapper.htable;
+
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+
+/**
+ * Key given to a script before the key type of the field is known. The string key is hashed once,
+ * the key of the field is picked when the script resolves the field.
+ */
+public final class HtableKey {
+    private final Object value;
+    private final Long number;
+    private final long hash;
+
+    private HtableKey(Object value) {
+        this.value = value;
+        Long number;
+        try {
+            number = XContentMapValues.nodeLongValue(value);
+        } catch (NumberFormatException e) {
+            number = null;
+        }
+        this.number = number;
+        this.hash = HtableFieldMapper.KeyType.hash(value.toString());
+    }
+
+    public static HtableKey of(Object value) {
+        return value instanceof HtableKey ? (HtableKey) value : new HtableKey(value);
+    }
+
+    /**
+     * Throws {@link IllegalArgumentException} if the field has numeric keys and the key is not a number.
+     */
+    public long key(HtableFieldMapper.KeyType keyType) {
+        if (keyType == HtableFieldMapper.KeyType.STRING) {
+            return hash;
+        }
+        if (number == null) {
+            throw new IllegalArgumentException("Key [" + value + "] is not a number");
+        }
+        return number;
+    }
+
+    @Override
+    public String toString() {
+        return value.toString();
+    }
+}
@@ -0,0 +1,165 @@
+package org.elasticsearch.index.mapper.htable;
+
+import com.google.common.base.Function;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.codec.htable.HtableKeyStats;
+
+
+/**
+ * Re-encodes the tables that have a merge format in their {@link HtableHeader} when the htable codec
+ * merges segments. Only the tables of the documents marked as having a header are given to the encoder.
+ * Fresh segments keep the format that is cheap to build and merged segments get the format that is fast to probe.
+ * The merge format is written with the parameters of the current mapping of the field if the mapping still has
+ * that merge format and with its default parameters otherwise. Tables of tuples are kept as they are since
+ * their headers do not tell the size of the values. The {@code chain} and {@code trie} tables cannot be iterated,
+ * they are decoded by probing their heap readers for the keys of the key statistics of the document.
+ * The codec also decodes the tables of the other formats with it to build the key statistics of the segment.
+ * Not thread safe.
+ */
+public final class HtableMergeEncoder {
+    // indexed by value type and format ordinals
+    private final DirectHtableReader[][] readers;
+    private final HtableWriter[][] writers;
+    private final Function<String, HtableFieldMapper.HtableFieldType> fieldTypes;
+
+    public HtableMergeEncoder() {
+        this(null);
+    }
+
+    /**
+     * @param fieldTypes returns the field type of the current mapping by the index name of the field
+     *                   or {@code null} if the field is not mapped
+     */
+    public HtableMergeEncoder(@Nullable Function<String, HtableFieldMapper.HtableFieldType> fieldTypes) {
+        this.fieldTypes = fieldTypes;
+        int numValueTypes = HtableFieldMapper.ValueType.values().length;
+        int numFormats = HtableFormat.values().length;
+        readers = new DirectHtableReader[numValueTypes][numFormats];
+        writers = new HtableWriter[numValueTypes][numFormats];
+    }
+
+    /**
+     * Returns the table with a header re-encoded into its merge format or the same table if it has no merge format
+     * or its format cannot be decoded.
+     *
+     * @param keys all the keys of the table or {@code null} if they are unknown, only used for the formats
+     *             without a {@link DirectHtableReader}
+     */
+    public BytesRef encode(String field, BytesRef data, @Nullable long[] keys) {
+        HtableHeader header;
+        try {
+            header = HtableHeader.readRequired(data);
+        } catch (IllegalArgumentException e) {
+            return data;
+        }
+        if (header.mergeFormat() == null || header.valueType() == null) {
+            return data;
+        }
+        HtableFormat mergeFormat = header.mergeFormat();
+        HtableFieldMapper.ValueType valueType = header.valueType();
+        BytesRef table = HtableHeader.table(data);
+        if (header.format() == mergeFormat) {
+            return new BytesRef(HtableHeader.write(mergeFormat, valueType,
+                                                   Arrays.copyOfRange(table.bytes, table.offset, table.offset + table.length)));
+        }
+        SortedMap<Long, byte[]> entries;
+        try {
+            entries = entries(header.format(), valueType, table, keys);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // malformed tables are kept as they are
+            return data;
+        }
+        if (entries == null) {
+            return data;
+        }
+        HtableWriter writer = writer(field, mergeFormat, valueType);
+        return new BytesRef(HtableHeader.write(mergeFormat, valueType, writer.dump(entries)));
+    }
+
+    /**
+     * Returns the entries of a table with a header encoded for the key statistics, see {@link HtableKeyStats#encode},
+     * or {@code null} if the table cannot be decoded without the entries given by the mapper.
+     */
+    @Nullable
+    public BytesRef keyStatsEntries(BytesRef data) {
+        HtableHeader header;
+        try {
+            header = HtableHeader.readRequired(data);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!header.isDecodable()) {
+            return null;
+        }
+        HtableFieldMapper.ValueType valueType = header.valueType();
+        SortedMap<Long, byte[]> entries;
+        try {
+            entries = entries(header.format(), valueType, HtableHeader.table(data), null);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+        long[] keys = new long[entries.size()];
+        float[] values = new float[entries.size()];
+        int count = 0;
+        for (Map.Entry<Long, byte[]> entry : entries.entrySet()) {
+            keys[count] = entry.getKey();
+            values[count] = valueType.getValue(entry.getValue());
+            count++;
+        }
+        return HtableKeyStats.encode(keys, values, count);
+    }
+
+    private HtableWriter writer(String field, HtableFormat mergeFormat, HtableFieldMapper.ValueType valueType) {
+        HtableFieldMapper.HtableFieldType fieldType = fieldTypes == null ? null : fieldTypes.apply(field);
+        if (fieldType != null && fieldType.mergeWriter() != null && fieldType.mergeFormat() == mergeFormat
+            && fieldType.tupleType() == null && fieldType.valueType() == valueType) {
+            return fieldType.mergeWriter();
+        }
+        HtableWriter writer = writers[valueType.ordinal()][mergeFormat.ordinal()];
+        if (writer == null) {
+            writer = mergeFormat.writer(valueType, null);
+            writers[valueType.ordinal()][mergeFormat.ordinal()] = writer;
+        }
+        return writer;
+    }
+
+    @Nullable
+    private SortedMap<Long, byte[]> entries(HtableFormat format, HtableFieldMapper.ValueType valueType, BytesRef table,
+                                            @Nullable long[] keys) {
+        DirectHtableReader reader = readers[valueType.ordinal()][format.ordinal()];
+        if (reader == null) {
+            reader = format.directReader(valueType);
+            if (reader != null) {
+                readers[valueType.ordinal()][format.ordinal()] = reader;
+            }
+        }
+        if (reader != null) {
+            return reader.reset(table).entries();
+        }
+        if (keys == null) {
+            return null;
+        }
+        HtableReader heapReader = format.reader(valueType, table);
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        for (long key : keys) {
+            long valueOffset = heapReader.getValueOffset(key);
+            if (valueOffset == HtableReader.NOT_FOUND_OFFSET) {
+                // the key statistics do not match the table
+                return null;
+            }
+            byte[] value = new byte[valueType.size];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = heapReader.getByte(valueOffset + i);
+            }
+            entries.put(key, value);
+        }
+        return entries;
+    }
+}
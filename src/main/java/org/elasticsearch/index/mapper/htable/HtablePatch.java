@@ -0,0 +1,117 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.elasticsearch.common.xcontent.XContentParser;
+
+
+/**
+ * Changes of single entries of a table:
+ * <pre>
+ * {
+ *     "delete": [3, 4],
+ *     "set": {"keys": [1, 2], "values": [1.5, 2.5]},
+ *     "increment": {"keys": [5], "values": [-1]}
+ * }
+ * </pre>
+ * The keys are deleted first, then the values are set and then the deltas are added.
+ * Incrementing a missing key adds the entry, tuples cannot be incremented. The patch is applied to the decoded entries
+ * of a serialized table so the other entries of the table never go through JSON.
+ */
+public class HtablePatch {
+    private final TreeSet<Long> deletes = new TreeSet<>();
+    private final SortedMap<Long, byte[]> values = new TreeMap<>();
+    private final SortedMap<Long, Double> deltas = new TreeMap<>();
+
+    public static HtablePatch parse(XContentParser parser, HtableFieldMapper.HtableFieldType fieldType) throws IOException {
+        HtableFieldMapper.KeyType keyType = fieldType.keyType();
+        HtablePatch patch = new HtablePatch();
+        XContentParser.Token token = parser.currentToken();
+        if (token == null) {
+            token = parser.nextToken();
+        }
+        if (token != XContentParser.Token.START_OBJECT) {
+            throw new IllegalArgumentException("Patch must be an object");
+        }
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token != XContentParser.Token.FIELD_NAME) {
+                continue;
+            }
+            String fieldName = parser.currentName();
+            if (fieldName.equals("delete")) {
+                patch.deletes.addAll(HtableFieldMapper.parseKeys(parser, keyType));
+            } else if (fieldName.equals("set")) {
+                parser.nextToken();
+                patch.values.putAll(HtableFieldMapper.parseEntries(parser, keyType, fieldType.valueParser()));
+            } else if (fieldName.equals("increment")) {
+                if (fieldType.tupleType() != null) {
+                    throw new IllegalArgumentException("[increment] is not supported for tuple values");
+                }
+                parser.nextToken();
+                patch.deltas.putAll(parseDeltas(parser, keyType));
+            } else {
+                throw new IllegalArgumentException("Unknown patch operation [" + fieldName + "]");
+            }
+        }
+        return patch;
+    }
+
+    private static SortedMap<Long, Double> parseDeltas(XContentParser parser, HtableFieldMapper.KeyType keyType) throws IOException {
+        List<Long> keys = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        XContentParser.Token token = parser.currentToken();
+        if (token == XContentParser.Token.START_OBJECT) {
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                if (token != XContentParser.Token.FIELD_NAME) {
+                    continue;
+                }
+                if (parser.currentName().equals("keys")) {
+                    keys = HtableFieldMapper.parseKeys(parser, keyType);
+                } else if (parser.currentName().equals("values")) {
+                    if (parser.nextToken() == XContentParser.Token.START_ARRAY) {
+                        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                            if (token == XContentParser.Token.VALUE_NUMBER) {
+                                values.add(parser.doubleValue());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (keys.size() != values.size()) {
+            throw new IllegalArgumentException("[increment] 'keys' and 'values' have different size");
+        }
+        SortedMap<Long, Double> deltas = new TreeMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Double previous = deltas.put(keys.get(i), values.get(i));
+            if (previous != null) {
+                deltas.put(keys.get(i), previous + values.get(i));
+            }
+        }
+        return deltas;
+    }
+
+    public boolean isEmpty() {
+        return deletes.isEmpty() && values.isEmpty() && deltas.isEmpty();
+    }
+
+    /**
+     * Applies the patch to the entries in place.
+     */
+    public SortedMap<Long, byte[]> apply(SortedMap<Long, byte[]> entries, HtableFieldMapper.ValueType valueType) {
+        for (Long key : deletes) {
+            entries.remove(key);
+        }
+        entries.putAll(values);
+        for (Map.Entry<Long, Double> delta : deltas.entrySet()) {
+            entries.put(delta.getKey(), valueType.add(entries.get(delta.getKey()), delta.getValue()));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,25 @@
+package org.elasticsearch.index.mapper.htable;
+
+
+public interface HtableReader {
+    long NOT_FOUND_OFFSET = -1;
+
+    long getValueOffset(long key);
+
+    byte getByte(long offset);
+
+    short getShort(long offset);
+
+    int getInt(long offset);
+
+    long getLong(long offset);
+
+    float getFloat(long offset);
+
+    double getDouble(long offset);
+
+    /**
+     * Reads {@code count} consecutive floats starting at the offset, for example a vector value.
+     */
+    void getFloats(long offset, float[] values, int count);
+}
@@ -0,0 +1,144 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.metrics.MeanMetric;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+
+/**
+ * Node wide statistics of htable fields collected by the mapper and the scripts.
+ * Timing of the scripts is disabled by default, enable it with {@code htable.stats.timing} setting.
+ * Scripts with {@code profile} parameter additionally time every phase of a lookup.
+ */
+public class HtableStats {
+    public static final String TIMING_SETTING = "htable.stats.timing";
+
+    private final ConcurrentMap<String, FieldMetrics> fields = ConcurrentCollections.newConcurrentMap();
+    private final boolean timing;
+
+    public HtableStats() {
+        this(Settings.EMPTY);
+    }
+
+    @Inject
+    public HtableStats(Settings settings) {
+        this.timing = settings.getAsBoolean(TIMING_SETTING, false);
+    }
+
+    public boolean timing() {
+        return timing;
+    }
+
+    public FieldMetrics field(String fieldName) {
+        FieldMetrics metrics = fields.get(fieldName);
+        if (metrics == null) {
+            metrics = new FieldMetrics();
+            FieldMetrics existing = fields.putIfAbsent(fieldName, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns statistics of the fields matching any of the patterns or of all the fields if there are no patterns.
+     */
+    public List<HtableFieldStats> stats(@Nullable String[] fieldPatterns) {
+        List<HtableFieldStats> stats = new ArrayList<>();
+        for (Map.Entry<String, FieldMetrics> entry : fields.entrySet()) {
+            if (fieldPatterns == null || fieldPatterns.length == 0 || Regex.simpleMatch(fieldPatterns, entry.getKey())) {
+                stats.add(entry.getValue().stats(entry.getKey()));
+            }
+        }
+        return stats;
+    }
+
+    public static final class FieldMetrics {
+        public final CounterMetric lookups = new CounterMetric();
+        public final CounterMetric misses = new CounterMetric();
+        public final CounterMetric bytesRead = new CounterMetric();
+        public final MeanMetric scriptTime = new MeanMetric();
+        public final CounterMetric parsedEntries = new CounterMetric();
+        public final CounterMetric parsedBytes = new CounterMetric();
+        public final MeanMetric parseTime = new MeanMetric();
+        public final ProfileMetrics profile = new ProfileMetrics();
+
+        public void onParse(int numEntries, int numBytes, long tookInNanos) {
+            parsedEntries.inc(numEntries);
+            parsedBytes.inc(numBytes);
+            parseTime.inc(tookInNanos);
+        }
+
+        HtableFieldStats stats(String fieldName) {
+            return new HtableFieldStats(fieldName,
+                                        lookups.count(), misses.count(), bytesRead.count(), scriptTime.count(), scriptTime.sum(),
+                                        parseTime.count(), parsedEntries.count(), parsedBytes.count(), parseTime.sum(),
+                                        profile.stats());
+        }
+    }
+
+    /**
+     * Time spent in the phases of profiled lookups. Every method takes the start time of the phase
+     * and returns the current time which is the start time of the next phase.
+     */
+    public static final class ProfileMetrics {
+        public final CounterMetric lookups = new CounterMetric();
+        final CounterMetric fetchTime = new CounterMetric();
+        final CounterMetric readerTime = new CounterMetric();
+        final CounterMetric probeTime = new CounterMetric();
+        final CounterMetric decodeTime = new CounterMetric();
+
+        /**
+         * Locating the table in the doc values.
+         */
+        public long fetched(long startTime) {
+            return inc(fetchTime, startTime);
+        }
+
+        /**
+         * Creating a reader of the table: parsing the header or copying the table.
+         */
+        public long readerCreated(long startTime) {
+            return inc(readerTime, startTime);
+        }
+
+        /**
+         * Searching for the key in the table.
+         */
+        public long probed(long startTime) {
+            return inc(probeTime, startTime);
+        }
+
+        /**
+         * Reading and transforming the value.
+         */
+        public long decoded(long startTime) {
+            return inc(decodeTime, startTime);
+        }
+
+        private static long inc(CounterMetric metric, long startTime) {
+            long now = System.nanoTime();
+            metric.inc(now - startTime);
+            return now;
+        }
+
+        @Nullable
+        HtableFieldStats.ProfileStats stats() {
+            long count = lookups.count();
+            if (count == 0) {
+                return null;
+            }
+            return new HtableFieldStats.ProfileStats(count, fetchTime.count(), readerTime.count(), probeTime.count(), decodeTime.count());
+        }
+    }
+}
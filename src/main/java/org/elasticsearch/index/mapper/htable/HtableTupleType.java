@@ -0,0 +1,194 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.mapper.MapperParsingException;
+
+
+/**
+ * Value of several components packed one after another without padding, for example {@code [float, float, int]},
+ * so one probe of a table returns the offset of all of them. The components are addressed by index.
+ * A table of tuples is probed as any other table, its values are just wider.
+ * A vector is a tuple of {@code dims} components of the same type.
+ */
+public final class HtableTupleType {
+    private final HtableFieldMapper.ValueType[] components;
+    private final int[] offsets;
+    private final int size;
+    private final boolean vector;
+
+    public HtableTupleType(HtableFieldMapper.ValueType... components) {
+        this(checkComponents(components).clone(), false);
+    }
+
+    private HtableTupleType(HtableFieldMapper.ValueType[] components, boolean vector) {
+        this.components = components;
+        this.vector = vector;
+        this.offsets = new int[components.length];
+        int size = 0;
+        for (int i = 0; i < components.length; i++) {
+            offsets[i] = size;
+            size += components[i].size;
+        }
+        this.size = size;
+    }
+
+    private static HtableFieldMapper.ValueType[] checkComponents(HtableFieldMapper.ValueType[] components) {
+        if (components.length < 2) {
+            throw new IllegalArgumentException("Tuple value type must have at least 2 components");
+        }
+        return components;
+    }
+
+    public static HtableTupleType vector(HtableFieldMapper.ValueType valueType, int dims) {
+        if (dims < 1) {
+            throw new IllegalArgumentException("[dims] must be positive; got [" + dims + "]");
+        }
+        HtableFieldMapper.ValueType[] components = new HtableFieldMapper.ValueType[dims];
+        Arrays.fill(components, valueType);
+        return new HtableTupleType(components, true);
+    }
+
+    /**
+     * Returns {@code true} if the tuple was created as a vector of {@link #numComponents()} dimensions.
+     */
+    public boolean isVector() {
+        return vector;
+    }
+
+    /**
+     * Parses the names of the components given in the mapping.
+     */
+    public static HtableTupleType fromNames(List<?> names) {
+        HtableFieldMapper.ValueType[] components = new HtableFieldMapper.ValueType[names.size()];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = HtableFieldMapper.ValueType.valueOf(names.get(i).toString().toUpperCase(Locale.ROOT));
+        }
+        return new HtableTupleType(components);
+    }
+
+    public List<String> names() {
+        List<String> names = new ArrayList<>(components.length);
+        for (HtableFieldMapper.ValueType component : components) {
+            names.add(component.toString().toLowerCase(Locale.ROOT));
+        }
+        return names;
+    }
+
+    /**
+     * Size of the whole value in bytes.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int numComponents() {
+        return components.length;
+    }
+
+    /**
+     * Throws {@link IllegalArgumentException} if there is no such component.
+     */
+    public HtableFieldMapper.ValueType component(int index) {
+        checkIndex(index);
+        return components[index];
+    }
+
+    /**
+     * Offset of the component from the start of the value.
+     */
+    public int offset(int index) {
+        checkIndex(index);
+        return offsets[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= components.length) {
+            throw new IllegalArgumentException("[index] must be in range [0, " + (components.length - 1) + "] for value type "
+                                               + this + "; got [" + index + "]");
+        }
+    }
+
+    /**
+     * Returns a parser of an array of the components: {@code [1.5, 0.25, 3]}.
+     */
+    public HtableFieldMapper.ValueParser parser() {
+        final HtableFieldMapper.ValueParser[] parsers = new HtableFieldMapper.ValueParser[components.length];
+        for (int i = 0; i < components.length; i++) {
+            parsers[i] = components[i].parser();
+        }
+        return new HtableFieldMapper.ValueParser() {
+            @Override
+            public byte[] parseValue(XContentParser parser) throws IOException {
+                if (parser.currentToken() != XContentParser.Token.START_ARRAY) {
+                    throw new MapperParsingException("Value of type " + HtableTupleType.this + " must be an array");
+                }
+                byte[] value = new byte[size];
+                int count = 0;
+                XContentParser.Token token;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                    if (token != XContentParser.Token.VALUE_NUMBER || count == parsers.length) {
+                        throw new MapperParsingException("Value of type " + HtableTupleType.this + " must have "
+                                                         + parsers.length + " numbers");
+                    }
+                    byte[] component = parsers[count].parseValue(parser);
+                    System.arraycopy(component, 0, value, offsets[count], component.length);
+                    count++;
+                }
+                if (count != parsers.length) {
+                    throw new MapperParsingException("Value of type " + HtableTupleType.this + " must have "
+                                                     + parsers.length + " numbers");
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Encodes the components the same way as the {@link #parser()} does, for tables built outside of a mapping.
+     */
+    public byte[] encode(Number... values) {
+        if (values.length != components.length) {
+            throw new IllegalArgumentException("Value of type " + this + " must have " + components.length + " numbers");
+        }
+        byte[] value = new byte[size];
+        for (int i = 0; i < components.length; i++) {
+            byte[] component = components[i].encode(values[i]);
+            System.arraycopy(component, 0, value, offsets[i], component.length);
+        }
+        return value;
+    }
+
+    /**
+     * Decodes a component of a value produced by the {@link #parser()}.
+     */
+    public float getValue(byte[] value, int index) {
+        int offset = offset(index);
+        return components[index].getValue(Arrays.copyOfRange(value, offset, offset + components[index].size));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof HtableTupleType
+            && vector == ((HtableTupleType) o).vector
+            && Arrays.equals(components, ((HtableTupleType) o).components);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(components) + (vector ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        if (vector) {
+            return components[0].toString().toLowerCase(Locale.ROOT) + "[" + components.length + "]";
+        }
+        return names().toString();
+    }
+}
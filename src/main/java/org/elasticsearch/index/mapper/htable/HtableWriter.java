@@ -0,0 +1,8 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.util.SortedMap;
+
+
+public interface HtableWriter {
+    byte[] dump(SortedMap<Long, byte[]> entries);
+}
@@ -0,0 +1,287 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.apache.lucene.util.ArrayUtil;
+
+
+/**
+ * Chained hash table that is laid out to be read lazily:
+ * <pre>
+ * int   number of entries
+ * int   number of buckets, the highest bit is set for split layout
+ * int[] index of the first entry of every bucket, plus the total number of entries
+ * (long key, byte[] value)[] entries grouped by bucket, sorted by key inside a bucket
+ * </pre>
+ * A lookup reads the fixed size header, two directory slots and a single bucket,
+ * so its cost does not depend on the size of the table.
+ * <p>
+ * Split layout stores all the keys in the same order before all the values. A lookup then copies
+ * the keys of a long bucket at once and compares them four at a time.
+ */
+public class LazyChainHtable {
+    public static final int DEFAULT_FILLING_RATIO = 10;
+    public static final int DEFAULT_MIN_HASH_TABLE_SIZE = 2;
+
+    static final int HEADER_SIZE = 8;
+    static final int KEY_SIZE = 8;
+    static final int SPLIT_LAYOUT_FLAG = 0x80000000;
+    // shorter buckets of split layout are compared key by key, copying does not pay off for them
+    static final int MIN_BULK_SCAN_KEYS = 16;
+
+    public enum Layout {
+        INTERLEAVED, SPLIT;
+
+        public static Layout fromName(String name) {
+            for (Layout layout : values()) {
+                if (layout.name().toLowerCase(Locale.ROOT).equals(name)) {
+                    return layout;
+                }
+            }
+            throw new IllegalArgumentException("[layout] can be one of [interleaved, split]; got [" + name + "]");
+        }
+    }
+
+    static int hash(long key) {
+        // murmur3 finalizer, the result is stored on disk so it must never change
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    public static class Writer implements HtableWriter {
+        private final int valueSize;
+        private final int fillingRatio;
+        private final int minHashTableSize;
+        private final Layout layout;
+
+        public Writer(int valueSize) {
+            this(valueSize, DEFAULT_FILLING_RATIO, DEFAULT_MIN_HASH_TABLE_SIZE);
+        }
+
+        public Writer(int valueSize, int fillingRatio, int minHashTableSize) {
+            this(valueSize, fillingRatio, minHashTableSize, Layout.INTERLEAVED);
+        }
+
+        public Writer(int valueSize, int fillingRatio, int minHashTableSize, Layout layout) {
+            this.valueSize = valueSize;
+            this.fillingRatio = Math.max(fillingRatio, 1);
+            this.minHashTableSize = minHashTableSize;
+            this.layout = layout;
+        }
+
+        int numBuckets(int size) {
+            int numBuckets = size / fillingRatio;
+            if (numBuckets < minHashTableSize || numBuckets < 2) {
+                return 1;
+            }
+            return Integer.highestOneBit(numBuckets);
+        }
+
+        @Override
+        public byte[] dump(SortedMap<Long, byte[]> entries) {
+            int size = entries.size();
+            int numBuckets = numBuckets(size);
+            int mask = numBuckets - 1;
+
+            int[] bucketStarts = new int[numBuckets + 1];
+            for (Long key : entries.keySet()) {
+                bucketStarts[(hash(key) & mask) + 1]++;
+            }
+            for (int i = 0; i < numBuckets; i++) {
+                bucketStarts[i + 1] += bucketStarts[i];
+            }
+
+            int entrySize = KEY_SIZE + valueSize;
+            int entriesOffset = HEADER_SIZE + 4 * (numBuckets + 1);
+            ByteBuffer buffer = ByteBuffer.allocate(entriesOffset + size * entrySize).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(size);
+            buffer.putInt(layout == Layout.SPLIT ? numBuckets | SPLIT_LAYOUT_FLAG : numBuckets);
+            for (int bucketStart : bucketStarts) {
+                buffer.putInt(bucketStart);
+            }
+            int[] positions = new int[numBuckets];
+            System.arraycopy(bucketStarts, 0, positions, 0, numBuckets);
+            int valuesOffset = entriesOffset + size * KEY_SIZE;
+            for (Map.Entry<Long, byte[]> entry : entries.entrySet()) {
+                int bucket = hash(entry.getKey()) & mask;
+                int position = positions[bucket]++;
+                if (layout == Layout.SPLIT) {
+                    buffer.putLong(entriesOffset + position * KEY_SIZE, entry.getKey());
+                    buffer.position(valuesOffset + position * valueSize);
+                } else {
+                    buffer.position(entriesOffset + position * entrySize);
+                    buffer.putLong(entry.getKey());
+                }
+                buffer.put(entry.getValue(), 0, valueSize);
+            }
+            return buffer.array();
+        }
+    }
+
+    public static class Reader extends DirectHtableReader {
+        private final int entrySize;
+        private int size;
+        private int mask;
+        private boolean split;
+        private long entriesOffset;
+        private long valuesOffset;
+        // keys of a bucket of split layout
+        private byte[] keyBytes = new byte[0];
+        private LongBuffer keys = LongBuffer.allocate(0);
+
+        public Reader(int valueSize) {
+            super(valueSize);
+            this.entrySize = KEY_SIZE + valueSize;
+        }
+
+        @Override
+        protected void readHeader() throws IOException {
+            int numBuckets = readInt(4);
+            split = (numBuckets & SPLIT_LAYOUT_FLAG) != 0;
+            numBuckets &= ~SPLIT_LAYOUT_FLAG;
+            mask = numBuckets - 1;
+            size = readInt(0);
+            entriesOffset = HEADER_SIZE + 4L * (numBuckets + 1);
+            valuesOffset = entriesOffset + (long) size * KEY_SIZE;
+            addBytesRead(HEADER_SIZE);
+        }
+
+        @Override
+        protected long findValueOffset(long key) throws IOException {
+            long bucketOffset = HEADER_SIZE + 4L * (hash(key) & mask);
+            int start = readInt(bucketOffset);
+            int end = readInt(bucketOffset + 4);
+            if (split) {
+                int index = scanKeys(key, start, end);
+                return index < 0 ? NOT_FOUND_OFFSET : valuesOffset + (long) index * valueSize;
+            }
+            int readKeys = 0;
+            long valueOffset = NOT_FOUND_OFFSET;
+            for (int i = start; i < end; i++) {
+                long entryOffset = entriesOffset + (long) i * entrySize;
+                long entryKey = readLong(entryOffset);
+                readKeys++;
+                if (entryKey == key) {
+                    valueOffset = entryOffset + KEY_SIZE;
+                    break;
+                }
+                if (entryKey > key) {
+                    break;
+                }
+            }
+            // two directory slots and the compared keys
+            addBytesRead(8 + (long) readKeys * KEY_SIZE);
+            return valueOffset;
+        }
+
+        /**
+         * Returns the index of the entry with the key or {@code -1}.
+         */
+        private int scanKeys(long key, int start, int end) throws IOException {
+            int count = end - start;
+            if (count <= 0 || end > size) {
+                addBytesRead(8);
+                return -1;
+            }
+            if (count < MIN_BULK_SCAN_KEYS) {
+                int index = -1;
+                int i = start;
+                for (; i < end; i++) {
+                    long k = readLong(entriesOffset + (long) i * KEY_SIZE);
+                    if (k == key) {
+                        index = i;
+                        break;
+                    }
+                    if (k > key) {
+                        break;
+                    }
+                }
+                // two directory slots and the compared keys
+                addBytesRead(8 + (long) (Math.min(i + 1, end) - start) * KEY_SIZE);
+                return index;
+            }
+            // two directory slots and the whole bucket
+            addBytesRead(8 + (long) count * KEY_SIZE);
+            if (keyBytes.length < count * KEY_SIZE) {
+                keyBytes = new byte[ArrayUtil.oversize(count * KEY_SIZE, 1)];
+                keys = ByteBuffer.wrap(keyBytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            }
+            readBytes(entriesOffset + (long) start * KEY_SIZE, keyBytes, count * KEY_SIZE);
+
+            int i = 0;
+            for (; i + 4 <= count; i += 4) {
+                long k3 = keys.get(i + 3);
+                if (k3 < key) {
+                    continue;
+                }
+                // keys are sorted so the key can only be among these four
+                if (keys.get(i) == key) {
+                    return start + i;
+                }
+                if (keys.get(i + 1) == key) {
+                    return start + i + 1;
+                }
+                if (keys.get(i + 2) == key) {
+                    return start + i + 2;
+                }
+                return k3 == key ? start + i + 3 : -1;
+            }
+            for (; i < count; i++) {
+                long k = keys.get(i);
+                if (k == key) {
+                    return start + i;
+                }
+                if (k > key) {
+                    break;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        protected void readEntries(SortedMap<Long, byte[]> entries) throws IOException {
+            int numBuckets = mask + 1;
+            if (numBuckets <= 0 || (numBuckets & mask) != 0) {
+                throw new IllegalArgumentException("Number of buckets must be a power of two; got " + numBuckets);
+            }
+            checkLength(entriesOffset + (long) size * entrySize);
+            int start = readInt(HEADER_SIZE);
+            if (start != 0 || readInt(HEADER_SIZE + 4L * numBuckets) != size) {
+                throw new IllegalArgumentException("Buckets do not cover all " + size + " entries");
+            }
+            for (int bucket = 0; bucket < numBuckets; bucket++) {
+                int end = readInt(HEADER_SIZE + 4L * (bucket + 1));
+                if (end < start || end > size) {
+                    throw new IllegalArgumentException("Bucket [" + bucket + "] ends at invalid entry [" + end + "]");
+                }
+                for (int i = start; i < end; i++) {
+                    long key;
+                    long valueOffset;
+                    if (split) {
+                        key = readLong(entriesOffset + (long) i * KEY_SIZE);
+                        valueOffset = valuesOffset + (long) i * valueSize;
+                    } else {
+                        long entryOffset = entriesOffset + (long) i * entrySize;
+                        key = readLong(entryOffset);
+                        valueOffset = entryOffset + KEY_SIZE;
+                    }
+                    if ((hash(key) & mask) != bucket) {
+                        throw new IllegalArgumentException("Key [" + key + "] is in wrong bucket [" + bucket + "]");
+                    }
+                    addEntry(entries, key, valueOffset);
+                }
+                start = end;
+            }
+        }
+    }
+}
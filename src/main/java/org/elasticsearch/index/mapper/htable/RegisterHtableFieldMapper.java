@@ -10,9 +10,10 @@ import org.elasticsearch.index.settings.IndexSettingsService;
 
 public class RegisterHtableFieldMapper extends AbstractIndexComponent {
     @Inject
-    public RegisterHtableFieldMapper(Index index, IndexSettingsService indexSettingsService, MapperService mapperService) {
+    public RegisterHtableFieldMapper(Index index, IndexSettingsService indexSettingsService, MapperService mapperService,
+                                     HtableStats htableStats) {
         super(index, indexSettingsService.getSettings());
 
-        mapperService.documentMapperParser().putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        mapperService.documentMapperParser().putTypeParser("htable", new HtableFieldMapper.TypeParser(htableStats));
     }
 }
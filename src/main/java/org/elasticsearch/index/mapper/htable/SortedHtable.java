@@ -0,0 +1,93 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.SortedMap;
+
+
+/**
+ * Keys sorted in ascending order followed by the values in the same order:
+ * <pre>
+ * int    number of entries
+ * long[] keys
+ * byte[] values
+ * </pre>
+ * Lookup is a binary search over the keys so it can be done in place.
+ */
+public class SortedHtable {
+    static final int HEADER_SIZE = 4;
+    static final int KEY_SIZE = 8;
+
+    public static class Writer implements HtableWriter {
+        private final int valueSize;
+
+        public Writer(int valueSize) {
+            this.valueSize = valueSize;
+        }
+
+        @Override
+        public byte[] dump(SortedMap<Long, byte[]> entries) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + entries.size() * (KEY_SIZE + valueSize))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(entries.size());
+            for (Long key : entries.keySet()) {
+                buffer.putLong(key);
+            }
+            for (byte[] value : entries.values()) {
+                buffer.put(value, 0, valueSize);
+            }
+            return buffer.array();
+        }
+    }
+
+    public static class Reader extends DirectHtableReader {
+        private int size;
+
+        public Reader(int valueSize) {
+            super(valueSize);
+        }
+
+        @Override
+        protected void readHeader() throws IOException {
+            size = readInt(0);
+            addBytesRead(HEADER_SIZE);
+        }
+
+        @Override
+        protected long findValueOffset(long key) throws IOException {
+            int low = 0;
+            int high = size - 1;
+            int readKeys = 0;
+            long valueOffset = NOT_FOUND_OFFSET;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midKey = readLong(HEADER_SIZE + (long) mid * KEY_SIZE);
+                readKeys++;
+                if (midKey < key) {
+                    low = mid + 1;
+                } else if (midKey > key) {
+                    high = mid - 1;
+                } else {
+                    valueOffset = HEADER_SIZE + (long) size * KEY_SIZE + (long) mid * valueSize;
+                    break;
+                }
+            }
+            addBytesRead((long) readKeys * KEY_SIZE);
+            return valueOffset;
+        }
+
+        @Override
+        protected void readEntries(SortedMap<Long, byte[]> entries) throws IOException {
+            checkLength(HEADER_SIZE + (long) size * (KEY_SIZE + valueSize));
+            long valuesOffset = HEADER_SIZE + (long) size * KEY_SIZE;
+            for (int i = 0; i < size; i++) {
+                long key = readLong(HEADER_SIZE + (long) i * KEY_SIZE);
+                if (i > 0 && key <= entries.lastKey()) {
+                    throw new IllegalArgumentException("Keys of sorted hash table are not in ascending order");
+                }
+                addEntry(entries, key, valuesOffset + (long) i * valueSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.elasticsearch.index.query.functionscore.htable;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Explanation;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.lucene.search.function.LeafScoreFunction;
+import org.elasticsearch.common.lucene.search.function.ScoreFunction;
+import org.elasticsearch.index.mapper.htable.HtableDocValues;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableReader;
+
+
+/**
+ * Scores documents by the value of the key in their hash tables transformed by {@link HtableValueTransform}.
+ * The {@code missing} value is transformed when the document has no table or there is no such key.
+ * For tuple values the component at {@code index} is scored. The key is given as in a query and converted by
+ * the key type of the field, the explanation shows a string key next to its hash.
+ */
+public class HtableValueFunction extends ScoreFunction {
+    private final HtableFieldMapper.HtableFieldType fieldType;
+    private final Object keyValue;
+    private final long key;
+    private final int index;
+    private final double missing;
+    private final HtableValueTransform transform;
+
+    public HtableValueFunction(HtableFieldMapper.HtableFieldType fieldType, Object key, double missing, HtableValueTransform transform) {
+        this(fieldType, key, 0, missing, transform);
+    }
+
+    /**
+     * Throws {@link IllegalArgumentException} if the values of the field have no component at {@code index}
+     * or the field has numeric keys and the key is not a number.
+     */
+    public HtableValueFunction(HtableFieldMapper.HtableFieldType fieldType, Object key, int index, double missing,
+                               HtableValueTransform transform) {
+        super(CombineFunction.MULT);
+        fieldType.valueType(index);
+        this.fieldType = fieldType;
+        this.keyValue = key;
+        this.key = fieldType.keyType().key(key);
+        this.index = index;
+        this.missing = missing;
+        this.transform = transform;
+    }
+
+    @Override
+    public LeafScoreFunction getLeafScoreFunction(LeafReaderContext context) throws IOException {
+        final HtableDocValues docValues = HtableDocValues.forKey(context.reader(), fieldType, key);
+        if (docValues == null) {
+            return new LeafScoreFunction() {
+                @Override
+                public double score(int docId, float subQueryScore) {
+                    return transform.apply(missing, subQueryScore);
+                }
+
+                @Override
+                public Explanation explainScore(int docId, Explanation subQueryScore) {
+                    return explain(missing, subQueryScore.getValue());
+                }
+            };
+        }
+
+        final HtableFieldMapper.ValueType valueType = fieldType.valueType(index);
+        final int componentOffset = fieldType.valueOffset(index);
+        return new LeafScoreFunction() {
+            @Override
+            public double score(int docId, float subQueryScore) {
+                return transform.apply(value(docId), subQueryScore);
+            }
+
+            @Override
+            public Explanation explainScore(int docId, Explanation subQueryScore) {
+                return explain(value(docId), subQueryScore.getValue());
+            }
+
+            private double value(int docId) {
+                if (docValues.advanceExact(docId)) {
+                    HtableReader reader = docValues.reader();
+                    long valueOffset = reader.getValueOffset(key);
+                    if (valueOffset != HtableReader.NOT_FOUND_OFFSET) {
+                        return valueType.getValue(reader, valueOffset + componentOffset);
+                    }
+                }
+                return missing;
+            }
+        };
+    }
+
+    private Explanation explain(double value, float subQueryScore) {
+        return Explanation.match((float) transform.apply(value, subQueryScore),
+                                 String.format(Locale.ROOT, "htable_value(doc['%s'][%s]%s, %s)",
+                                               fieldType.names().fullName(), explainKey(),
+                                               fieldType.tupleType() != null ? "[" + index + "]" : "", transform),
+                                 Explanation.match((float) value, "value"));
+    }
+
+    private String explainKey() {
+        if (fieldType.keyType() == HtableFieldMapper.KeyType.STRING) {
+            return String.format(Locale.ROOT, "'%s' (hash %d)", keyValue, key);
+        }
+        return Long.toString(key);
+    }
+
+    @Override
+    public boolean needsScores() {
+        return transform.needsScores();
+    }
+}
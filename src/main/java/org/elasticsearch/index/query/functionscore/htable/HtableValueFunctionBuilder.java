@@ -0,0 +1,150 @@
+package org.elasticsearch.index.query.functionscore.htable;
+
+import java.io.IOException;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilder;
+
+
+/**
+ * Builder of the {@code htable_value} score function.
+ */
+public class HtableValueFunctionBuilder extends ScoreFunctionBuilder {
+    public static final String NAME = "htable_value";
+
+    private final String field;
+    private final Object key;
+    private Integer index;
+    private Double missing;
+    private Float factor;
+    private Double offset;
+    private HtableValueTransform.Modifier modifier;
+    private Double pivot;
+    private Double exponent;
+    private Double min;
+    private Double max;
+    private HtableValueTransform.Combine combine;
+
+    public HtableValueFunctionBuilder(String field, long key) {
+        this.field = field;
+        this.key = key;
+    }
+
+    /**
+     * For a field with {@code key_type} {@code string}.
+     */
+    public HtableValueFunctionBuilder(String field, String key) {
+        this.field = field;
+        this.key = key;
+    }
+
+    public static HtableValueFunctionBuilder htableValueFunction(String field, long key) {
+        return new HtableValueFunctionBuilder(field, key);
+    }
+
+    public static HtableValueFunctionBuilder htableValueFunction(String field, String key) {
+        return new HtableValueFunctionBuilder(field, key);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Component of tuple values to score.
+     */
+    public HtableValueFunctionBuilder index(int index) {
+        this.index = index;
+        return this;
+    }
+
+    /**
+     * Value used when the document has no table or there is no such key in the table.
+     */
+    public HtableValueFunctionBuilder missing(double missing) {
+        this.missing = missing;
+        return this;
+    }
+
+    public HtableValueFunctionBuilder factor(float factor) {
+        this.factor = factor;
+        return this;
+    }
+
+    public HtableValueFunctionBuilder offset(double offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    public HtableValueFunctionBuilder modifier(HtableValueTransform.Modifier modifier) {
+        this.modifier = modifier;
+        return this;
+    }
+
+    /**
+     * Value at which {@code saturation} and {@code sigmoid} modifiers return 0.5.
+     */
+    public HtableValueFunctionBuilder pivot(double pivot) {
+        this.pivot = pivot;
+        return this;
+    }
+
+    public HtableValueFunctionBuilder exponent(double exponent) {
+        this.exponent = exponent;
+        return this;
+    }
+
+    public HtableValueFunctionBuilder min(double min) {
+        this.min = min;
+        return this;
+    }
+
+    public HtableValueFunctionBuilder max(double max) {
+        this.max = max;
+        return this;
+    }
+
+    public HtableValueFunctionBuilder combine(HtableValueTransform.Combine combine) {
+        this.combine = combine;
+        return this;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(getName());
+        builder.field("field", field);
+        builder.field("key", key);
+        if (index != null) {
+            builder.field("index", index);
+        }
+        if (missing != null) {
+            builder.field("missing", missing);
+        }
+        if (factor != null) {
+            builder.field("factor", factor);
+        }
+        if (offset != null) {
+            builder.field("offset", offset);
+        }
+        if (modifier != null) {
+            builder.field("modifier", modifier.toString());
+        }
+        if (pivot != null) {
+            builder.field("pivot", pivot);
+        }
+        if (exponent != null) {
+            builder.field("exponent", exponent);
+        }
+        if (min != null) {
+            builder.field("min", min);
+        }
+        if (max != null) {
+            builder.field("max", max);
+        }
+        if (combine != null) {
+            builder.field("combine", combine.toString());
+        }
+        builder.endObject();
+    }
+}
@@ -0,0 +1,84 @@
+package org.elasticsearch.index.query.functionscore.htable;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.elasticsearch.common.lucene.search.function.ScoreFunction;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParsingException;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionParser;
+
+
+/**
+ * Parses the {@code htable_value} function of the {@code function_score} query:
+ * <pre>
+ * "htable_value": {
+ *     "field": "ranks",
+ *     "key": 12,
+ *     "index": 0,
+ *     "missing": 0.0,
+ *     "factor": 1.0,
+ *     "offset": 0.0,
+ *     "modifier": "saturation",
+ *     "pivot": 10.0,
+ *     "min": 0.1,
+ *     "max": 1.0,
+ *     "combine": "multiply"
+ * }
+ * </pre>
+ * The {@code index} picks the component of tuple values.
+ * See {@link HtableValueTransform} for the transformation parameters.
+ */
+public class HtableValueFunctionParser implements ScoreFunctionParser {
+    public static final String[] NAMES = {HtableValueFunctionBuilder.NAME, "htableValue"};
+
+    @Override
+    public ScoreFunction parse(QueryParseContext parseContext, XContentParser parser) throws IOException, QueryParsingException {
+        Map<String, Object> params = parser.map();
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            String name = param.getKey();
+            if (!name.equals("field") && !name.equals("key") && !name.equals("index") && !name.equals("missing") && !HtableValueTransform.PARAMS.contains(name)) {
+                throw new QueryParsingException(parseContext, "[" + NAMES[0] + "] query does not support [" + name + "]");
+            }
+            if (param.getValue() instanceof Map || param.getValue() instanceof Iterable) {
+                throw new QueryParsingException(parseContext, "[" + NAMES[0] + "] [" + name + "] must be a value");
+            }
+        }
+
+        String field = XContentMapValues.nodeStringValue(params.get("field"), null);
+        if (field == null) {
+            throw new QueryParsingException(parseContext, "[" + NAMES[0] + "] required field 'field' missing");
+        }
+        Object key = params.get("key");
+        if (key == null) {
+            throw new QueryParsingException(parseContext, "[" + NAMES[0] + "] required field 'key' missing");
+        }
+
+        MappedFieldType fieldType = parseContext.fieldMapper(field);
+        if (fieldType == null) {
+            throw new QueryParsingException(parseContext, "[" + NAMES[0] + "] unable to find field [" + field + "]");
+        }
+        if (!(fieldType instanceof HtableFieldMapper.HtableFieldType)) {
+            throw new QueryParsingException(parseContext, "[" + NAMES[0] + "] field [" + field + "] is not of [htable] type");
+        }
+
+        try {
+            return new HtableValueFunction((HtableFieldMapper.HtableFieldType) fieldType,
+                                           key,
+                                           XContentMapValues.nodeIntegerValue(params.get("index"), 0),
+                                           XContentMapValues.nodeDoubleValue(params.get("missing"), 0.0),
+                                           HtableValueTransform.parse(params));
+        } catch (IllegalArgumentException e) {
+            throw new QueryParsingException(parseContext, "[" + NAMES[0] + "] " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String[] getNames() {
+        return NAMES;
+    }
+}
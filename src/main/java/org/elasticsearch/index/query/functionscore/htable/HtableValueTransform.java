@@ -0,0 +1,321 @@
+package org.elasticsearch.index.query.functionscore.htable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+
+/**
+ * Transformation of the values taken from the tables:
+ * {@code combine(clamp(modifier(factor * value + offset), min, max), score)}.
+ * Shared by the {@code htable_value} function and the htable scripts.
+ */
+public final class HtableValueTransform {
+    public static final HtableValueTransform IDENTITY = new HtableValueTransform(
+        1.0, 0.0, Modifier.NONE, 0.0, 1.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Combine.NONE);
+
+    public static final Set<String> PARAMS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "factor", "offset", "modifier", "pivot", "exponent", "min", "max", "combine")));
+
+    public enum Modifier {
+        NONE {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return value;
+            }
+        },
+        LOG {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return Math.log10(value);
+            }
+        },
+        LOG1P {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return Math.log10(value + 1);
+            }
+        },
+        LOG2P {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return Math.log10(value + 2);
+            }
+        },
+        LN {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return Math.log(value);
+            }
+        },
+        LN1P {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return Math.log1p(value);
+            }
+        },
+        LN2P {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return Math.log1p(value + 1);
+            }
+        },
+        SQUARE {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return value * value;
+            }
+        },
+        SQRT {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return Math.sqrt(value);
+            }
+        },
+        RECIPROCAL {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return 1.0 / value;
+            }
+        },
+        /**
+         * {@code value / (value + pivot)}: grows up to 1 and equals 0.5 at the pivot.
+         */
+        SATURATION {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                return value / (value + pivot);
+            }
+        },
+        /**
+         * {@code value^exponent / (value^exponent + pivot^exponent)}.
+         */
+        SIGMOID {
+            @Override
+            double apply(double value, double pivot, double exponent) {
+                double powValue = Math.pow(value, exponent);
+                return powValue / (powValue + Math.pow(pivot, exponent));
+            }
+        };
+
+        abstract double apply(double value, double pivot, double exponent);
+
+        public static Modifier fromName(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown modifier [" + name + "]");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * How the transformed value is combined with the score of the document.
+     */
+    public enum Combine {
+        NONE {
+            @Override
+            double apply(double value, float score) {
+                return value;
+            }
+        },
+        MULTIPLY {
+            @Override
+            double apply(double value, float score) {
+                return value * score;
+            }
+        },
+        SUM {
+            @Override
+            double apply(double value, float score) {
+                return value + score;
+            }
+        };
+
+        abstract double apply(double value, float score);
+
+        public static Combine fromName(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown combine [" + name + "]");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final double factor;
+    private final double offset;
+    private final Modifier modifier;
+    private final double pivot;
+    private final double exponent;
+    private final double min;
+    private final double max;
+    private final Combine combine;
+
+    public HtableValueTransform(double factor, double offset, Modifier modifier, double pivot, double exponent,
+                                double min, double max, Combine combine) {
+        if ((modifier == Modifier.SATURATION || modifier == Modifier.SIGMOID) && !(pivot > 0)) {
+            throw new IllegalArgumentException("[pivot] must be positive for [" + modifier + "] modifier; got [" + pivot + "]");
+        }
+        if (modifier == Modifier.SIGMOID && !(exponent > 0)) {
+            throw new IllegalArgumentException("[exponent] must be positive for [" + modifier + "] modifier; got [" + exponent + "]");
+        }
+        if (min > max) {
+            throw new IllegalArgumentException("[min] must not be greater than [max]; got [" + min + "] and [" + max + "]");
+        }
+        this.factor = factor;
+        this.offset = offset;
+        this.modifier = modifier;
+        this.pivot = pivot;
+        this.exponent = exponent;
+        this.min = min;
+        this.max = max;
+        this.combine = combine;
+    }
+
+    /**
+     * Parses the transformation from the script or function parameters. Unknown parameters are ignored.
+     */
+    public static HtableValueTransform parse(@Nullable Map<String, Object> params) {
+        if (params == null) {
+            return IDENTITY;
+        }
+        boolean hasParams = false;
+        for (String name : PARAMS) {
+            if (params.get(name) != null) {
+                hasParams = true;
+                break;
+            }
+        }
+        if (!hasParams) {
+            return IDENTITY;
+        }
+        Object modifier = params.get("modifier");
+        Object combine = params.get("combine");
+        return new HtableValueTransform(XContentMapValues.nodeDoubleValue(params.get("factor"), 1.0),
+                                        XContentMapValues.nodeDoubleValue(params.get("offset"), 0.0),
+                                        modifier == null ? Modifier.NONE : Modifier.fromName(modifier.toString()),
+                                        XContentMapValues.nodeDoubleValue(params.get("pivot"), 0.0),
+                                        XContentMapValues.nodeDoubleValue(params.get("exponent"), 1.0),
+                                        XContentMapValues.nodeDoubleValue(params.get("min"), Double.NEGATIVE_INFINITY),
+                                        XContentMapValues.nodeDoubleValue(params.get("max"), Double.POSITIVE_INFINITY),
+                                        combine == null ? Combine.NONE : Combine.fromName(combine.toString()));
+    }
+
+    /**
+     * Checks if the transformation described by the parameters combines the value with the score
+     * without validating the parameters.
+     */
+    public static boolean needsScores(@Nullable Map<String, Object> params) {
+        Object combine = params == null ? null : params.get("combine");
+        return combine != null && !Combine.NONE.toString().equalsIgnoreCase(combine.toString());
+    }
+
+    /**
+     * Returns the transformed value. The score is only used when {@link #needsScores()} is {@code true}.
+     */
+    public double apply(double value, float score) {
+        double result = modifier.apply(factor * value + offset, pivot, exponent);
+        if (result < min) {
+            result = min;
+        } else if (result > max) {
+            result = max;
+        }
+        return combine.apply(result, score);
+    }
+
+    public boolean needsScores() {
+        return combine != Combine.NONE;
+    }
+
+    /**
+     * Returns the upper bound of the transformed values of the range
+     * or positive infinity if the value is combined with the score or the bound is not known.
+     */
+    public double maxValue(double minValue, double maxValue) {
+        if (combine != Combine.NONE) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double from = factor * minValue + offset;
+        double to = factor * maxValue + offset;
+        double low = Math.min(from, to);
+        double high = Math.max(from, to);
+        // all the modifiers are monotonic or convex apart from the poles
+        if ((modifier == Modifier.RECIPROCAL && low <= 0 && high >= 0)
+            || (modifier == Modifier.SATURATION && low <= -pivot && high >= -pivot)
+            || (modifier == Modifier.SIGMOID && low < 0)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double bound = Math.max(modifier.apply(low, pivot, exponent), modifier.apply(high, pivot, exponent));
+        if (Double.isNaN(bound)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.max(min, Math.min(bound, max));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        HtableValueTransform other = (HtableValueTransform) o;
+        return Double.compare(factor, other.factor) == 0
+            && Double.compare(offset, other.offset) == 0
+            && modifier == other.modifier
+            && Double.compare(pivot, other.pivot) == 0
+            && Double.compare(exponent, other.exponent) == 0
+            && Double.compare(min, other.min) == 0
+            && Double.compare(max, other.max) == 0
+            && combine == other.combine;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new Object[]{factor, offset, modifier, pivot, exponent, min, max, combine});
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("factor=").append(factor);
+        if (offset != 0.0) {
+            sb.append(", offset=").append(offset);
+        }
+        sb.append(", modifier=").append(modifier);
+        if (modifier == Modifier.SATURATION || modifier == Modifier.SIGMOID) {
+            sb.append(", pivot=").append(pivot);
+        }
+        if (modifier == Modifier.SIGMOID) {
+            sb.append(", exponent=").append(exponent);
+        }
+        if (min != Double.NEGATIVE_INFINITY) {
+            sb.append(", min=").append(min);
+        }
+        if (max != Double.POSITIVE_INFINITY) {
+            sb.append(", max=").append(max);
+        }
+        if (combine != Combine.NONE) {
+            sb.append(", combine=").append(combine);
+        }
+        return sb.toString();
+    }
+}
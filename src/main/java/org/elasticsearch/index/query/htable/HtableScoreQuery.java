@@ -0,0 +1,411 @@
+package org.elasticsearch.index.query.htable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ToStringUtils;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.codec.htable.HtableKeyStats;
+import org.elasticsearch.index.mapper.htable.HtableDocValues;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueTransform;
+
+
+/**
+ * Scores the documents matching the query by the value of the key in their hash tables.
+ * When the whole segment is scored the documents are taken from the query by blocks
+ * and the values of a block are looked up in one loop over the doc values.
+ * <p>
+ * With {@code minScore} the documents scoring less are skipped, as well as the whole segments
+ * which {@link HtableKeyStats} show that no document of the segment can reach the score.
+ * For tuple values the component at {@code index} is scored.
+ */
+public class HtableScoreQuery extends Query {
+    static final int BLOCK_SIZE = 128;
+
+    private final Query query;
+    private final HtableFieldMapper.HtableFieldType fieldType;
+    private final long key;
+    private final int index;
+    private final float missing;
+    private final HtableValueTransform transform;
+    private final Float minScore;
+
+    public HtableScoreQuery(Query query, HtableFieldMapper.HtableFieldType fieldType, long key, float missing,
+                            HtableValueTransform transform, @Nullable Float minScore) {
+        this(query, fieldType, key, 0, missing, transform, minScore);
+    }
+
+    public HtableScoreQuery(Query query, HtableFieldMapper.HtableFieldType fieldType, long key, int index, float missing,
+                            HtableValueTransform transform, @Nullable Float minScore) {
+        this.query = query;
+        this.fieldType = fieldType;
+        this.key = key;
+        this.index = index;
+        this.missing = missing;
+        this.transform = transform;
+        this.minScore = minScore;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException {
+        Query rewritten = query.rewrite(reader);
+        if (rewritten != query) {
+            HtableScoreQuery rewrittenQuery = new HtableScoreQuery(rewritten, fieldType, key, index, missing, transform, minScore);
+            rewrittenQuery.setBoost(getBoost());
+            return rewrittenQuery;
+        }
+        return super.rewrite(reader);
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
+        // documents are filtered by the score even if the scores are not needed
+        needsScores |= minScore != null;
+        Weight weight = query.createWeight(searcher, needsScores && transform.needsScores());
+        return new HtableScoreWeight(weight, needsScores);
+    }
+
+    @Nullable
+    private HtableDocValues docValues(LeafReaderContext context) throws IOException {
+        return HtableDocValues.forKey(context.reader(), fieldType, key);
+    }
+
+    /**
+     * Checks if some document of the segment can reach the minimum score.
+     */
+    private boolean canReachMinScore(LeafReaderContext context) throws IOException {
+        if (minScore == null || transform.needsScores() || getBoost() < 0) {
+            return true;
+        }
+        HtableKeyStats stats = HtableKeyStats.get(context.reader(), fieldType.names().indexName());
+        if (stats == null) {
+            return true;
+        }
+        double minValue = missing;
+        double maxValue = missing;
+        if (stats.mayContain(key)) {
+            // the ranges of tuples are of their first component
+            if (!stats.hasRanges() || index != 0) {
+                return true;
+            }
+            int index = stats.find(key);
+            // the documents without the key score the missing value
+            if (stats.docCount(index) == context.reader().maxDoc()) {
+                minValue = stats.minValue(index);
+                maxValue = stats.maxValue(index);
+            } else {
+                minValue = Math.min(minValue, stats.minValue(index));
+                maxValue = Math.max(maxValue, stats.maxValue(index));
+            }
+        }
+        return (float) transform.maxValue(minValue, maxValue) * getBoost() >= minScore;
+    }
+
+    class HtableScoreWeight extends Weight {
+        private final Weight weight;
+        private final boolean needsScores;
+        private final boolean needsSubScores;
+
+        HtableScoreWeight(Weight weight, boolean needsScores) {
+            super(HtableScoreQuery.this);
+            this.weight = weight;
+            this.needsScores = needsScores;
+            this.needsSubScores = needsScores && transform.needsScores();
+        }
+
+        @Override
+        public void extractTerms(Set<Term> terms) {
+            weight.extractTerms(terms);
+        }
+
+        @Override
+        public float getValueForNormalization() throws IOException {
+            return weight.getValueForNormalization();
+        }
+
+        @Override
+        public void normalize(float norm, float topLevelBoost) {
+            weight.normalize(norm, topLevelBoost);
+        }
+
+        @Override
+        public Explanation explain(LeafReaderContext context, int docId) throws IOException {
+            Explanation subQueryExplanation = weight.explain(context, docId);
+            if (!subQueryExplanation.isMatch()) {
+                return subQueryExplanation;
+            }
+            HtableDocValues docValues = docValues(context);
+            float[] value = new float[]{missing};
+            if (docValues != null) {
+                docValues.values(key, index, new int[]{docId}, 1, missing, value);
+            }
+            float score = score(value[0], subQueryExplanation.getValue());
+            if (minScore != null && score < minScore) {
+                return Explanation.noMatch("score is less than min_score [" + minScore + "]",
+                                           Explanation.match(score, "score"));
+            }
+            return Explanation.match(score,
+                                     "htable_score(doc['" + fieldType.names().fullName() + "'][" + key + "]"
+                                     + (fieldType.tupleType() != null ? "[" + index + "]" : "") + ", " + transform + ")",
+                                     Explanation.match(value[0], "value"),
+                                     subQueryExplanation);
+        }
+
+        @Override
+        public Scorer scorer(LeafReaderContext context) throws IOException {
+            if (!canReachMinScore(context)) {
+                return null;
+            }
+            Scorer scorer = weight.scorer(context);
+            if (scorer == null) {
+                return null;
+            }
+            return new HtableScoreScorer(this, scorer, docValues(context), needsSubScores);
+        }
+
+        @Override
+        public BulkScorer bulkScorer(LeafReaderContext context) throws IOException {
+            if (!needsScores) {
+                return super.bulkScorer(context);
+            }
+            if (!canReachMinScore(context)) {
+                return null;
+            }
+            Scorer scorer = weight.scorer(context);
+            if (scorer == null) {
+                return null;
+            }
+            return new HtableBlockScorer(this, scorer, docValues(context), needsSubScores);
+        }
+    }
+
+    private float score(float value, float subQueryScore) {
+        return (float) transform.apply(value, subQueryScore) * getBoost();
+    }
+
+    /**
+     * Scores one document at a time, used when the query is a part of another query.
+     */
+    class HtableScoreScorer extends Scorer {
+        private final Scorer scorer;
+        private final HtableDocValues docValues;
+        private final boolean needsSubScores;
+        private final int[] docIds = new int[1];
+        private final float[] values = new float[1];
+        private int scoredDoc = -1;
+        private float score;
+
+        HtableScoreScorer(Weight weight, Scorer scorer, @Nullable HtableDocValues docValues, boolean needsSubScores) {
+            super(weight);
+            this.scorer = scorer;
+            this.docValues = docValues;
+            this.needsSubScores = needsSubScores;
+        }
+
+        @Override
+        public float score() throws IOException {
+            int doc = scorer.docID();
+            if (doc != scoredDoc) {
+                float value = missing;
+                if (docValues != null) {
+                    docIds[0] = doc;
+                    docValues.values(key, index, docIds, 1, missing, values);
+                    value = values[0];
+                }
+                score = HtableScoreQuery.this.score(value, needsSubScores ? scorer.score() : 0.0f);
+                scoredDoc = doc;
+            }
+            return score;
+        }
+
+        private int skipNonCompetitive(int doc) throws IOException {
+            if (minScore == null) {
+                return doc;
+            }
+            while (doc != NO_MORE_DOCS && score() < minScore) {
+                doc = scorer.nextDoc();
+            }
+            return doc;
+        }
+
+        @Override
+        public int freq() throws IOException {
+            return scorer.freq();
+        }
+
+        @Override
+        public int docID() {
+            return scorer.docID();
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            return skipNonCompetitive(scorer.nextDoc());
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            return skipNonCompetitive(scorer.advance(target));
+        }
+
+        @Override
+        public long cost() {
+            return scorer.cost();
+        }
+    }
+
+    /**
+     * Collects up to {@link #BLOCK_SIZE} matching documents, looks up their values at once
+     * and then passes the documents to the collector.
+     */
+    class HtableBlockScorer extends BulkScorer {
+        private final Scorer scorer;
+        private final HtableDocValues docValues;
+        private final boolean needsSubScores;
+        private final int[] docIds = new int[BLOCK_SIZE];
+        private final float[] subQueryScores = new float[BLOCK_SIZE];
+        private final float[] values = new float[BLOCK_SIZE];
+        private final BlockScorer blockScorer;
+
+        HtableBlockScorer(Weight weight, Scorer scorer, @Nullable HtableDocValues docValues, boolean needsSubScores) {
+            this.scorer = scorer;
+            this.docValues = docValues;
+            this.needsSubScores = needsSubScores;
+            this.blockScorer = new BlockScorer(weight);
+        }
+
+        @Override
+        public int score(LeafCollector collector, Bits acceptDocs, int min, int max) throws IOException {
+            collector.setScorer(blockScorer);
+            int doc = scorer.docID();
+            if (doc < min) {
+                doc = scorer.advance(min);
+            }
+            while (doc < max) {
+                int count = 0;
+                while (doc < max && count < BLOCK_SIZE) {
+                    if (acceptDocs == null || acceptDocs.get(doc)) {
+                        docIds[count] = doc;
+                        if (needsSubScores) {
+                            subQueryScores[count] = scorer.score();
+                        }
+                        count++;
+                    }
+                    doc = scorer.nextDoc();
+                }
+
+                if (docValues != null) {
+                    docValues.values(key, index, docIds, count, missing, values);
+                } else {
+                    Arrays.fill(values, 0, count, missing);
+                }
+                for (int i = 0; i < count; i++) {
+                    values[i] = HtableScoreQuery.this.score(values[i], subQueryScores[i]);
+                }
+
+                for (int i = 0; i < count; i++) {
+                    if (minScore != null && values[i] < minScore) {
+                        continue;
+                    }
+                    blockScorer.doc = docIds[i];
+                    blockScorer.score = values[i];
+                    collector.collect(docIds[i]);
+                }
+            }
+            return doc;
+        }
+
+        @Override
+        public long cost() {
+            return scorer.cost();
+        }
+    }
+
+    /**
+     * Exposes the precomputed score of the collected document.
+     */
+    static class BlockScorer extends Scorer {
+        int doc = -1;
+        float score;
+
+        BlockScorer(Weight weight) {
+            super(weight);
+        }
+
+        @Override
+        public float score() {
+            return score;
+        }
+
+        @Override
+        public int freq() {
+            return 1;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int advance(int target) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long cost() {
+            return 1;
+        }
+    }
+
+    @Override
+    public String toString(String field) {
+        return "htable_score(" + query.toString(field) + ", field=" + fieldType.names().fullName() + ", key=" + key
+            + (index != 0 ? ", index=" + index : "") + ", missing=" + missing + ", " + transform
+            + (minScore != null ? ", min_score=" + minScore : "") + ")"
+            + ToStringUtils.boost(getBoost());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) {
+            return false;
+        }
+        HtableScoreQuery other = (HtableScoreQuery) o;
+        return query.equals(other.query)
+            && fieldType.names().indexName().equals(other.fieldType.names().indexName())
+            && key == other.key
+            && index == other.index
+            && Float.compare(missing, other.missing) == 0
+            && transform.equals(other.transform)
+            && (minScore == null ? other.minScore == null : minScore.equals(other.minScore));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new Object[]{super.hashCode(), query, fieldType.names().indexName(), key, index, missing, transform,
+                                            minScore});
+    }
+}
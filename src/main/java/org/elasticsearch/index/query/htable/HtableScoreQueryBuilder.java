@@ -0,0 +1,189 @@
+package org.elasticsearch.index.query.htable;
+
+import java.io.IOException;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.BoostableQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueTransform;
+
+
+/**
+ * Builder of the {@code htable_score} query.
+ */
+public class HtableScoreQueryBuilder extends QueryBuilder implements BoostableQueryBuilder<HtableScoreQueryBuilder> {
+    private final QueryBuilder query;
+    private final String field;
+    private final Object key;
+    private Integer index;
+    private Float missing;
+    private Double factor;
+    private Double offset;
+    private HtableValueTransform.Modifier modifier;
+    private Double pivot;
+    private Double exponent;
+    private Double min;
+    private Double max;
+    private HtableValueTransform.Combine combine;
+    private Float minScore;
+    private float boost = -1;
+    private String queryName;
+
+    public HtableScoreQueryBuilder(QueryBuilder query, String field, long key) {
+        this.query = query;
+        this.field = field;
+        this.key = key;
+    }
+
+    /**
+     * For a field with {@code key_type} {@code string}.
+     */
+    public HtableScoreQueryBuilder(QueryBuilder query, String field, String key) {
+        this.query = query;
+        this.field = field;
+        this.key = key;
+    }
+
+    public static HtableScoreQueryBuilder htableScoreQuery(QueryBuilder query, String field, long key) {
+        return new HtableScoreQueryBuilder(query, field, key);
+    }
+
+    public static HtableScoreQueryBuilder htableScoreQuery(String field, long key) {
+        return new HtableScoreQueryBuilder(null, field, key);
+    }
+
+    public static HtableScoreQueryBuilder htableScoreQuery(QueryBuilder query, String field, String key) {
+        return new HtableScoreQueryBuilder(query, field, key);
+    }
+
+    public static HtableScoreQueryBuilder htableScoreQuery(String field, String key) {
+        return new HtableScoreQueryBuilder(null, field, key);
+    }
+
+    /**
+     * Component of tuple values to score.
+     */
+    public HtableScoreQueryBuilder index(int index) {
+        this.index = index;
+        return this;
+    }
+
+    /**
+     * Value used when the document has no table or there is no such key in the table.
+     */
+    public HtableScoreQueryBuilder missing(float missing) {
+        this.missing = missing;
+        return this;
+    }
+
+    public HtableScoreQueryBuilder factor(double factor) {
+        this.factor = factor;
+        return this;
+    }
+
+    public HtableScoreQueryBuilder offset(double offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    public HtableScoreQueryBuilder modifier(HtableValueTransform.Modifier modifier) {
+        this.modifier = modifier;
+        return this;
+    }
+
+    public HtableScoreQueryBuilder pivot(double pivot) {
+        this.pivot = pivot;
+        return this;
+    }
+
+    public HtableScoreQueryBuilder exponent(double exponent) {
+        this.exponent = exponent;
+        return this;
+    }
+
+    public HtableScoreQueryBuilder min(double min) {
+        this.min = min;
+        return this;
+    }
+
+    public HtableScoreQueryBuilder max(double max) {
+        this.max = max;
+        return this;
+    }
+
+    public HtableScoreQueryBuilder combine(HtableValueTransform.Combine combine) {
+        this.combine = combine;
+        return this;
+    }
+
+    /**
+     * Documents scoring less do not match. Segments where no document can reach the score are skipped
+     * if the field has key statistics.
+     */
+    public HtableScoreQueryBuilder minScore(float minScore) {
+        this.minScore = minScore;
+        return this;
+    }
+
+    @Override
+    public HtableScoreQueryBuilder boost(float boost) {
+        this.boost = boost;
+        return this;
+    }
+
+    public HtableScoreQueryBuilder queryName(String queryName) {
+        this.queryName = queryName;
+        return this;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(HtableScoreQueryParser.NAME);
+        if (query != null) {
+            builder.field("query");
+            query.toXContent(builder, params);
+        }
+        builder.field("field", field);
+        builder.field("key", key);
+        if (index != null) {
+            builder.field("index", index);
+        }
+        if (missing != null) {
+            builder.field("missing", missing);
+        }
+        if (factor != null) {
+            builder.field("factor", factor);
+        }
+        if (offset != null) {
+            builder.field("offset", offset);
+        }
+        if (modifier != null) {
+            builder.field("modifier", modifier.toString());
+        }
+        if (pivot != null) {
+            builder.field("pivot", pivot);
+        }
+        if (exponent != null) {
+            builder.field("exponent", exponent);
+        }
+        if (min != null) {
+            builder.field("min", min);
+        }
+        if (max != null) {
+            builder.field("max", max);
+        }
+        if (combine != null) {
+            builder.field("combine", combine.toString());
+        }
+        if (minScore != null) {
+            builder.field("min_score", minScore);
+        }
+        if (boost != -1) {
+            builder.field("boost", boost);
+        }
+        if (queryName != null) {
+            builder.field("_name", queryName);
+        }
+        builder.endObject();
+    }
+}
@@ -0,0 +1,122 @@
+package org.elasticsearch.index.query.htable;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParser;
+import org.elasticsearch.index.query.QueryParsingException;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueTransform;
+
+
+/**
+ * Parses the {@code htable_score} query:
+ * <pre>
+ * "htable_score": {
+ *     "query": {"match": {"title": "phone"}},
+ *     "field": "ranks",
+ *     "key": 12,
+ *     "index": 0,
+ *     "missing": 0.0,
+ *     "modifier": "log1p",
+ *     "min_score": 0.5
+ * }
+ * </pre>
+ * Accepts the same transformation parameters as the {@code htable_value} function.
+ * Documents scoring less than {@code min_score} do not match. The {@code index} picks the component of tuple values.
+ */
+public class HtableScoreQueryParser implements QueryParser {
+    public static final String NAME = "htable_score";
+
+    @Override
+    public String[] names() {
+        return new String[]{NAME, "htableScore"};
+    }
+
+    @Override
+    public Query parse(QueryParseContext parseContext) throws IOException, QueryParsingException {
+        XContentParser parser = parseContext.parser();
+
+        Query query = null;
+        String field = null;
+        Object key = null;
+        int index = 0;
+        float missing = 0.0f;
+        Float minScore = null;
+        float boost = 1.0f;
+        String queryName = null;
+        Map<String, Object> transformParams = new HashMap<>();
+
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT && "query".equals(currentFieldName)) {
+                query = parseContext.parseInnerQuery();
+            } else if (token.isValue()) {
+                if ("field".equals(currentFieldName)) {
+                    field = parser.text();
+                } else if ("key".equals(currentFieldName)) {
+                    key = parser.objectText();
+                } else if ("index".equals(currentFieldName)) {
+                    index = parser.intValue();
+                } else if ("missing".equals(currentFieldName)) {
+                    missing = parser.floatValue();
+                } else if ("min_score".equals(currentFieldName) || "minScore".equals(currentFieldName)) {
+                    minScore = parser.floatValue();
+                } else if ("boost".equals(currentFieldName)) {
+                    boost = parser.floatValue();
+                } else if ("_name".equals(currentFieldName)) {
+                    queryName = parser.text();
+                } else if (HtableValueTransform.PARAMS.contains(currentFieldName)) {
+                    transformParams.put(currentFieldName, parser.objectText());
+                } else {
+                    throw new QueryParsingException(parseContext, "[" + NAME + "] query does not support [" + currentFieldName + "]");
+                }
+            } else {
+                throw new QueryParsingException(parseContext, "[" + NAME + "] query does not support [" + currentFieldName + "]");
+            }
+        }
+
+        if (field == null) {
+            throw new QueryParsingException(parseContext, "[" + NAME + "] requires 'field'");
+        }
+        if (key == null) {
+            throw new QueryParsingException(parseContext, "[" + NAME + "] requires 'key'");
+        }
+        MappedFieldType fieldType = parseContext.fieldMapper(field);
+        if (fieldType == null) {
+            throw new QueryParsingException(parseContext, "[" + NAME + "] unable to find field [" + field + "]");
+        }
+        if (!(fieldType instanceof HtableFieldMapper.HtableFieldType)) {
+            throw new QueryParsingException(parseContext, "[" + NAME + "] field [" + field + "] is not of [htable] type");
+        }
+        HtableFieldMapper.HtableFieldType htableFieldType = (HtableFieldMapper.HtableFieldType) fieldType;
+        HtableValueTransform transform;
+        long fieldKey;
+        try {
+            fieldKey = htableFieldType.keyType().key(key);
+            htableFieldType.valueType(index);
+            transform = HtableValueTransform.parse(transformParams);
+        } catch (IllegalArgumentException e) {
+            throw new QueryParsingException(parseContext, "[" + NAME + "] " + e.getMessage(), e);
+        }
+        if (query == null) {
+            query = Queries.newMatchAllQuery();
+        }
+
+        Query htableQuery = new HtableScoreQuery(query, htableFieldType, fieldKey, index, missing, transform, minScore);
+        htableQuery.setBoost(boost);
+        if (queryName != null) {
+            parseContext.addNamedQuery(queryName, htableQuery);
+        }
+        return htableQuery;
+    }
+}
@@ -1,6 +1,8 @@
 package org.elasticsearch.plugin.mapper;
 
 import org.elasticsearch.common.inject.AbstractModule;
+import org.elasticsearch.index.codec.CodecService;
+import org.elasticsearch.index.codec.htable.HtableCodecService;
 import org.elasticsearch.index.mapper.htable.RegisterHtableFieldMapper;
 
 
@@ -8,5 +10,6 @@ public class MapperHtableIndexModule extends AbstractModule {
     @Override
     protected void configure() {
         bind(RegisterHtableFieldMapper.class).asEagerSingleton();
+        bind(CodecService.class).to(HtableCodecService.class).asEagerSingleton();
     }
 }
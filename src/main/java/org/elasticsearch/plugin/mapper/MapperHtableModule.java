@@ -0,0 +1,12 @@
+package org.elasticsearch.plugin.mapper;
+
+import org.elasticsearch.common.inject.AbstractModule;
+import org.elasticsearch.index.mapper.htable.HtableStats;
+
+
+public class MapperHtableModule extends AbstractModule {
+    @Override
+    protected void configure() {
+        bind(HtableStats.class).asEagerSingleton();
+    }
+}
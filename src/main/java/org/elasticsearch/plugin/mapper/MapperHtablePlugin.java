@@ -3,11 +3,30 @@ package org.elasticsearch.plugin.mapper;
 import java.util.Collection;
 import java.util.Collections;
 
+import org.elasticsearch.action.ActionModule;
+import org.elasticsearch.action.htable.advise.HtableAdviseAction;
+import org.elasticsearch.action.htable.advise.TransportHtableAdviseAction;
+import org.elasticsearch.action.htable.patch.HtableBulkPatchAction;
+import org.elasticsearch.action.htable.patch.HtablePatchAction;
+import org.elasticsearch.action.htable.patch.TransportHtableBulkPatchAction;
+import org.elasticsearch.action.htable.patch.TransportHtablePatchAction;
+import org.elasticsearch.action.htable.patch.TransportHtableShardBulkPatchAction;
+import org.elasticsearch.action.htable.stats.HtableStatsAction;
+import org.elasticsearch.action.htable.stats.TransportHtableStatsAction;
 import org.elasticsearch.common.inject.Module;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueFunctionParser;
+import org.elasticsearch.index.query.htable.HtableScoreQueryParser;
+import org.elasticsearch.indices.IndicesModule;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.rest.RestModule;
+import org.elasticsearch.rest.action.htable.RestHtableAdviseAction;
+import org.elasticsearch.rest.action.htable.RestHtableBulkPatchAction;
+import org.elasticsearch.rest.action.htable.RestHtablePatchAction;
+import org.elasticsearch.rest.action.htable.RestHtableStatsAction;
 import org.elasticsearch.script.HtableScriptEngineService;
 import org.elasticsearch.script.ScriptModule;
+import org.elasticsearch.search.SearchModule;
 
 
 public class MapperHtablePlugin extends Plugin {
@@ -21,6 +40,11 @@ public class MapperHtablePlugin extends Plugin {
         return "Adds the hash table field type to store hash maps";
     }
 
+    @Override
+    public Collection<Module> nodeModules() {
+        return Collections.<Module>singletonList(new MapperHtableModule());
+    }
+
     @Override
     public Collection<Module> indexModules(Settings indexSettings) {
         return Collections.<Module>singletonList(new MapperHtableIndexModule());
@@ -29,4 +53,27 @@ public class MapperHtablePlugin extends Plugin {
     public void onModule(ScriptModule scriptModule) {
         scriptModule.addScriptEngine(HtableScriptEngineService.class);
     }
+
+    public void onModule(IndicesModule indicesModule) {
+        indicesModule.registerQueryParser(HtableScoreQueryParser.class);
+    }
+
+    public void onModule(SearchModule searchModule) {
+        searchModule.registerFunctionScoreParser(HtableValueFunctionParser.class);
+    }
+
+    public void onModule(ActionModule actionModule) {
+        actionModule.registerAction(HtableStatsAction.INSTANCE, TransportHtableStatsAction.class);
+        actionModule.registerAction(HtableAdviseAction.INSTANCE, TransportHtableAdviseAction.class);
+        actionModule.registerAction(HtablePatchAction.INSTANCE, TransportHtablePatchAction.class);
+        actionModule.registerAction(HtableBulkPatchAction.INSTANCE, TransportHtableBulkPatchAction.class,
+                                    TransportHtableShardBulkPatchAction.class);
+    }
+
+    public void onModule(RestModule restModule) {
+        restModule.addRestAction(RestHtableStatsAction.class);
+        restModule.addRestAction(RestHtableAdviseAction.class);
+        restModule.addRestAction(RestHtablePatchAction.class);
+        restModule.addRestAction(RestHtableBulkPatchAction.class);
+    }
 }
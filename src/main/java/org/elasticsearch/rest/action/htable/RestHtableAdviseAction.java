@@ -0,0 +1,33 @@
+package org.elasticsearch.rest.action.htable;
+
+import org.elasticsearch.action.htable.advise.HtableAdviseAction;
+import org.elasticsearch.action.htable.advise.HtableAdviseRequest;
+import org.elasticsearch.action.htable.advise.HtableAdviseResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.support.RestToXContentListener;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+
+public class RestHtableAdviseAction extends BaseRestHandler {
+    @Inject
+    public RestHtableAdviseAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(GET, "/{index}/_htable/advise/{field}", this);
+    }
+
+    @Override
+    protected void handleRequest(RestRequest request, RestChannel channel, Client client) {
+        HtableAdviseRequest adviseRequest = new HtableAdviseRequest(request.param("index"), request.param("field"));
+        adviseRequest.shard(request.paramAsInt("shard", adviseRequest.shard()));
+        adviseRequest.sampleSize(request.paramAsInt("sample_size", adviseRequest.sampleSize()));
+        adviseRequest.sizeTolerance(request.paramAsFloat("size_tolerance", (float) adviseRequest.sizeTolerance()));
+        client.execute(HtableAdviseAction.INSTANCE, adviseRequest, new RestToXContentListener<HtableAdviseResponse>(channel));
+    }
+}
@@ -0,0 +1,38 @@
+package org.elasticsearch.rest.action.htable;
+
+import org.elasticsearch.action.htable.patch.HtableBulkPatchAction;
+import org.elasticsearch.action.htable.patch.HtableBulkPatchRequest;
+import org.elasticsearch.action.htable.patch.HtableBulkPatchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.support.RestToXContentListener;
+
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+
+public class RestHtableBulkPatchAction extends BaseRestHandler {
+    @Inject
+    public RestHtableBulkPatchAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(POST, "/{index}/_htable/patch/{field}", this);
+        controller.registerHandler(POST, "/{index}/{type}/_htable/patch/{field}", this);
+    }
+
+    @Override
+    protected void handleRequest(RestRequest request, RestChannel channel, Client client) throws Exception {
+        HtableBulkPatchRequest bulkPatchRequest = new HtableBulkPatchRequest(request.param("index"), request.param("field"));
+        bulkPatchRequest.retryOnConflict(request.paramAsInt("retry_on_conflict", bulkPatchRequest.retryOnConflict()));
+        bulkPatchRequest.refresh(request.paramAsBoolean("refresh", bulkPatchRequest.refresh()));
+        bulkPatchRequest.timeout(request.paramAsTime("timeout", bulkPatchRequest.timeout()));
+        if (request.hasContent()) {
+            bulkPatchRequest.add(request.param("type"), request.content());
+        }
+        client.execute(HtableBulkPatchAction.INSTANCE, bulkPatchRequest,
+                       new RestToXContentListener<HtableBulkPatchResponse>(channel));
+    }
+}
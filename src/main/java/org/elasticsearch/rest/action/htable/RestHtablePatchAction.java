@@ -0,0 +1,39 @@
+package org.elasticsearch.rest.action.htable;
+
+import org.elasticsearch.action.htable.patch.HtablePatchAction;
+import org.elasticsearch.action.htable.patch.HtablePatchRequest;
+import org.elasticsearch.action.htable.patch.HtablePatchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.support.RestToXContentListener;
+
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+
+public class RestHtablePatchAction extends BaseRestHandler {
+    @Inject
+    public RestHtablePatchAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(POST, "/{index}/{type}/{id}/_htable/patch/{field}", this);
+    }
+
+    @Override
+    protected void handleRequest(RestRequest request, RestChannel channel, Client client) {
+        HtablePatchRequest patchRequest = new HtablePatchRequest(request.param("index"), request.param("type"),
+                                                                 request.param("id"), request.param("field"));
+        patchRequest.routing(request.param("routing"));
+        patchRequest.parent(request.param("parent"));
+        patchRequest.retryOnConflict(request.paramAsInt("retry_on_conflict", patchRequest.retryOnConflict()));
+        patchRequest.refresh(request.paramAsBoolean("refresh", patchRequest.refresh()));
+        patchRequest.timeout(request.paramAsTime("timeout", patchRequest.timeout()));
+        if (request.hasContent()) {
+            patchRequest.patch(request.content());
+        }
+        client.execute(HtablePatchAction.INSTANCE, patchRequest, new RestToXContentListener<HtablePatchResponse>(channel));
+    }
+}
@@ -0,0 +1,36 @@
+package org.elasticsearch.rest.action.htable;
+
+import org.elasticsearch.action.htable.stats.HtableStatsAction;
+import org.elasticsearch.action.htable.stats.HtableStatsRequest;
+import org.elasticsearch.action.htable.stats.HtableStatsResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.support.RestToXContentListener;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+
+public class RestHtableStatsAction extends BaseRestHandler {
+    @Inject
+    public RestHtableStatsAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(GET, "/_htable/stats", this);
+        controller.registerHandler(GET, "/_htable/stats/{fields}", this);
+        controller.registerHandler(GET, "/_nodes/{nodeId}/htable/stats", this);
+        controller.registerHandler(GET, "/_nodes/{nodeId}/htable/stats/{fields}", this);
+    }
+
+    @Override
+    protected void handleRequest(RestRequest request, RestChannel channel, Client client) {
+        HtableStatsRequest statsRequest = new HtableStatsRequest(Strings.splitStringByCommaToArray(request.param("nodeId")));
+        statsRequest.fields(Strings.splitStringByCommaToArray(request.param("fields")));
+        statsRequest.timeout(request.param("timeout"));
+        client.execute(HtableStatsAction.INSTANCE, statsRequest, new RestToXContentListener<HtableStatsResponse>(channel));
+    }
+}
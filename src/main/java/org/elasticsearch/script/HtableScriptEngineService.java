@@ -1,6 +1,8 @@
 package org.elasticsearch.script;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.google.common.collect.ImmutableMap;
@@ -9,6 +11,9 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.mapper.htable.HtableKey;
+import org.elasticsearch.index.mapper.htable.HtableStats;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueTransform;
 import org.elasticsearch.script.AbstractSearchScript;
 import org.elasticsearch.script.CompiledScript;
 import org.elasticsearch.script.LeafSearchScript;
@@ -18,21 +23,46 @@ import org.elasticsearch.script.SearchScript;
 import org.elasticsearch.script.htable.AbstractHtableSearchScript;
 import org.elasticsearch.script.htable.HtableGetScript;
 import org.elasticsearch.script.htable.HtableGetScaleScript;
+import org.elasticsearch.script.htable.HtableVectorScript;
+import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.lookup.SearchLookup;
 
 
 public class HtableScriptEngineService extends NativeScriptEngineService {
     public static final String NAME = "htable";
 
-    private static final ImmutableMap<String, NativeScriptFactory> SCRIPTS =
-        ImmutableMap.of("htable_get", (NativeScriptFactory) new HtableGetScript.Factory(),
-                        "get", (NativeScriptFactory) new HtableGetScript.Factory(),
-                        "htable_get_scale", (NativeScriptFactory) new HtableGetScaleScript.Factory(),
-                        "get_scale", (NativeScriptFactory) new HtableGetScaleScript.Factory());
-
     @Inject
-    public HtableScriptEngineService(Settings settings) {
-        super(settings, SCRIPTS);
+    public HtableScriptEngineService(Settings settings, HtableStats stats) {
+        super(settings, scripts(stats));
+    }
+
+    private static ImmutableMap<String, NativeScriptFactory> scripts(HtableStats stats) {
+        return ImmutableMap.<String, NativeScriptFactory>builder()
+            .put("htable_get", new HtableGetScript.Factory(stats))
+            .put("get", new HtableGetScript.Factory(stats))
+            .put("htable_get_scale", new HtableGetScaleScript.Factory(stats))
+            .put("get_scale", new HtableGetScaleScript.Factory(stats))
+            .put("htable_vector", new HtableVectorScript.Factory(stats))
+            .put("vector", new HtableVectorScript.Factory(stats))
+            .build();
+    }
+
+    /**
+     * Scripts are created for every segment, so the key is parsed, a string key is hashed
+     * and a query vector is converted here once per query.
+     */
+    private static Map<String, Object> parseVars(@Nullable Map<String, Object> vars) {
+        if (vars == null || (vars.get("key") == null && !(vars.get("vector") instanceof List))) {
+            return vars;
+        }
+        Map<String, Object> parsedVars = new HashMap<>(vars);
+        if (vars.get("key") != null) {
+            parsedVars.put("key", HtableKey.of(vars.get("key")));
+        }
+        if (vars.get("vector") instanceof List) {
+            parsedVars.put("vector", HtableVectorScript.parseVector(vars.get("vector")));
+        }
+        return parsedVars;
     }
 
     @Override
@@ -43,19 +73,27 @@ public class HtableScriptEngineService extends NativeScriptEngineService {
     @Override
     public SearchScript search(CompiledScript compiledScript, final SearchLookup lookup, @Nullable final Map<String, Object> vars) {
         final NativeScriptFactory scriptFactory = (NativeScriptFactory) compiledScript.compiled();
+        final boolean needsScores = HtableValueTransform.needsScores(vars);
+        final Map<String, Object> scriptVars = parseVars(vars);
         return new SearchScript() {
             @Override
             public LeafSearchScript getLeafSearchScript(LeafReaderContext context) throws IOException {
-                AbstractHtableSearchScript script = (AbstractHtableSearchScript) scriptFactory.newScript(vars);
+                AbstractHtableSearchScript script = (AbstractHtableSearchScript) scriptFactory.newScript(scriptVars);
                 script.setLookup(lookup.getLeafSearchLookup(context));
                 // We need leaf reader instance to get data from lucene
                 script.setLeafReader(context.reader());
+                SearchContext searchContext = SearchContext.current();
+                if (searchContext != null) {
+                    // the statistics of the segment are added once when the phase ends
+                    script.deferMetrics();
+                    searchContext.addReleasable(script, SearchContext.Lifetime.PHASE);
+                }
                 return script;
             }
 
             @Override
             public boolean needsScores() {
-                return scriptFactory.needsScores();
+                return needsScores;
             }
         };
     }
@@ -1,39 +1,87 @@
 package org.elasticsearch.script.htable;
 
+import java.io.IOException;
 import java.util.Map;
 
 import com.google.common.collect.Maps;
 
-import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.search.Scorer;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.index.mapper.htable.HtableDocValues;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableKey;
+import org.elasticsearch.index.mapper.htable.HtableReader;
+import org.elasticsearch.index.mapper.htable.HtableStats;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueTransform;
 import org.elasticsearch.script.AbstractExecutableScript;
 import org.elasticsearch.script.LeafSearchScript;
 import org.elasticsearch.search.lookup.LeafDocLookup;
 import org.elasticsearch.search.lookup.LeafSearchLookup;
 
 
-public abstract class AbstractHtableSearchScript extends AbstractExecutableScript implements LeafSearchScript {
+/**
+ * Base of the scripts that look up a key in the table of the document. A script instance serves a single segment,
+ * its lookups are counted locally and added to the statistics of the field when it is released,
+ * or after every lookup if nothing releases it.
+ */
+public abstract class AbstractHtableSearchScript extends AbstractExecutableScript implements LeafSearchScript, Releasable {
     protected final String fieldName;
-    protected final long key;
+    protected final HtableKey key;
+    protected final float defaultValue;
+    protected final HtableStats stats;
 
     protected LeafReader reader;
     protected int docId;
 
+    private boolean profile;
+    private HtableValueTransform transform = HtableValueTransform.IDENTITY;
+
     private LeafSearchLookup lookup;
     private Scorer scorer;
-
-    protected final Map<LeafReader, BinaryDocValues> localDocValuesCache = Maps.newHashMapWithExpectedSize(1);
-
-    protected AbstractHtableSearchScript(String fieldName, long key) {
+    private HtableFieldMapper.HtableFieldType fieldType;
+    // the key of the field, known once the field is resolved
+    private long fieldKey;
+    private HtableStats.FieldMetrics metrics;
+    private boolean deferMetrics;
+    private long lookups;
+    private long misses;
+    private long flushedBytesRead;
+
+    protected final Map<LeafReader, HtableDocValues> localDocValuesCache = Maps.newHashMapWithExpectedSize(1);
+
+    protected AbstractHtableSearchScript(String fieldName, HtableKey key, float defaultValue, HtableStats stats) {
         this.fieldName = fieldName;
         this.key = key;
+        this.defaultValue = defaultValue;
+        this.stats = stats;
+    }
+
+    /**
+     * Enables timing of every phase of the lookups. Collected times are available in the statistics.
+     */
+    public void profile(boolean profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Sets the transformation applied to the found or the default value.
+     */
+    public void transform(HtableValueTransform transform) {
+        this.transform = transform;
     }
 
     public void setLeafReader(LeafReader reader) {
         this.reader = reader;
     }
 
+    /**
+     * Defers the statistics of the lookups until the script is {@link #close() released}.
+     */
+    public void deferMetrics() {
+        this.deferMetrics = true;
+    }
+
     public void setLookup(LeafSearchLookup lookup) {
         this.lookup = lookup;
     }
@@ -42,6 +90,39 @@ public abstract class AbstractHtableSearchScript extends AbstractExecutableScrip
         return lookup.doc();
     }
 
+    protected HtableFieldMapper.HtableFieldType fieldType() {
+        if (fieldType == null) {
+            fieldType = (HtableFieldMapper.HtableFieldType) (doc().mapperService().smartNameFieldType(fieldName));
+            if (fieldType == null) {
+                throw new IllegalStateException("No field found for [" + fieldName + "]; expected [htable] field type");
+            }
+            fieldKey = key.key(fieldType.keyType());
+        }
+        return fieldType;
+    }
+
+    // allows to run the script without a search lookup
+    void setFieldType(HtableFieldMapper.HtableFieldType fieldType) {
+        this.fieldType = fieldType;
+        this.fieldKey = key.key(fieldType.keyType());
+    }
+
+    /**
+     * Returns {@code null} if no table of the segment has the key.
+     */
+    protected HtableDocValues htableDocValues(HtableFieldMapper.HtableFieldType fieldType) {
+        HtableDocValues docValues = localDocValuesCache.get(reader);
+        if (docValues == null && !localDocValuesCache.containsKey(reader)) {
+            try {
+                docValues = HtableDocValues.forKey(reader, fieldType, fieldKey);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot load doc values", e);
+            }
+            localDocValuesCache.put(reader, docValues);
+        }
+        return docValues;
+    }
+
     @Override
     public void setScorer(Scorer scorer) {
         this.scorer = scorer;
@@ -58,6 +139,98 @@ public abstract class AbstractHtableSearchScript extends AbstractExecutableScrip
         lookup.source().setSource(source);
     }
 
+    @Override
+    public float runAsFloat() {
+        long startTime = stats.timing() ? System.nanoTime() : 0;
+        HtableFieldMapper.HtableFieldType fieldType = fieldType();
+        if (metrics == null) {
+            metrics = stats.field(fieldType.names().indexName());
+        }
+
+        float value = defaultValue;
+        boolean found = false;
+        HtableDocValues docValues = htableDocValues(fieldType);
+        if (docValues != null) {
+            // phases are timed only when profiling, otherwise it costs a well predicted branch
+            long time = profile ? System.nanoTime() : 0;
+            if (docValues.advanceExact(docId)) {
+                if (profile) {
+                    time = metrics.profile.fetched(time);
+                }
+                HtableReader htableReader = docValues.reader();
+                if (profile) {
+                    time = metrics.profile.readerCreated(time);
+                }
+                long valueOffset = htableReader.getValueOffset(fieldKey);
+                if (profile) {
+                    time = metrics.profile.probed(time);
+                }
+                if (valueOffset != HtableReader.NOT_FOUND_OFFSET) {
+                    value = value(fieldType, htableReader, valueOffset);
+                    found = true;
+                    if (profile) {
+                        metrics.profile.decoded(time);
+                    }
+                }
+            } else if (profile) {
+                metrics.profile.fetched(time);
+            }
+        }
+        if (transform != HtableValueTransform.IDENTITY) {
+            value = (float) transform.apply(value, transform.needsScores() ? score() : 0.0f);
+        }
+        if (profile) {
+            metrics.profile.lookups.inc();
+        }
+
+        lookups++;
+        if (!found) {
+            misses++;
+        }
+        if (!deferMetrics) {
+            flushMetrics();
+        }
+        if (startTime != 0) {
+            metrics.scriptTime.inc(System.nanoTime() - startTime);
+        }
+        return value;
+    }
+
+    /**
+     * Adds the statistics of the lookups of the segment to the statistics of the field.
+     */
+    @Override
+    public void close() {
+        if (metrics != null) {
+            flushMetrics();
+        }
+    }
+
+    private void flushMetrics() {
+        if (lookups == 0) {
+            return;
+        }
+        metrics.lookups.inc(lookups);
+        metrics.misses.inc(misses);
+        lookups = misses = 0;
+        HtableDocValues docValues = localDocValuesCache.get(reader);
+        if (docValues != null) {
+            long bytesRead = docValues.bytesRead();
+            metrics.bytesRead.inc(bytesRead - flushedBytesRead);
+            flushedBytesRead = bytesRead;
+        }
+    }
+
+    private float score() {
+        try {
+            return scorer.score();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot get the score", e);
+        }
+    }
+
+    protected abstract float value(HtableFieldMapper.HtableFieldType fieldType, HtableReader htableReader, long valueOffset);
+
     @Override
     public Object run() {
         return runAsFloat();
@@ -1,73 +1,48 @@
 package org.elasticsearch.script.htable;
 
-import java.io.IOException;
 import java.util.Map;
 
-import com.google.common.collect.Maps;
-
-import net.uaprom.htable.HashTable;
-import net.uaprom.htable.TrieHashTable;
-
-import org.apache.lucene.index.BinaryDocValues;
-import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
-import org.elasticsearch.index.fielddata.ScriptDocValues;
 import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableKey;
+import org.elasticsearch.index.mapper.htable.HtableReader;
+import org.elasticsearch.index.mapper.htable.HtableStats;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueTransform;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
 import org.elasticsearch.script.ScriptException;
 
 
 public class HtableGetScaleScript extends AbstractHtableSearchScript {
-    private final float defaultValue;
-
     private final float[] scaleTable;
 
-    private HtableGetScaleScript(String fieldName, long key, float defaultValue, float[] scaleTable) {
-        super(fieldName, key);
-        this.defaultValue = defaultValue;
+    private HtableGetScaleScript(String fieldName, HtableKey key, float defaultValue, float[] scaleTable, HtableStats stats) {
+        super(fieldName, key, defaultValue, stats);
         this.scaleTable = scaleTable;
     }
 
     @Override
-    public float runAsFloat() {
-        HtableFieldMapper.HtableFieldType fieldType = (HtableFieldMapper.HtableFieldType) (doc().mapperService().smartNameFieldType(fieldName));
-        if (fieldType == null) {
-            throw new IllegalStateException("No field found for [" + fieldName + "]; expected [htable] field type");
-        }
+    protected HtableFieldMapper.HtableFieldType fieldType() {
+        HtableFieldMapper.HtableFieldType fieldType = super.fieldType();
         if (fieldType.valueType() != HtableFieldMapper.ValueType.BYTE) {
             throw new IllegalStateException("Only [byte] value type is supported; [" + fieldType.valueType().toString().toLowerCase() +  "] found");
         }
+        return fieldType;
+    }
 
-        BinaryDocValues docValues = localDocValuesCache.get(reader);
-        if (docValues == null) {
-            try {
-                docValues = reader.getBinaryDocValues(fieldName);
-                localDocValuesCache.put(reader, docValues);
-            } catch (IOException e) {
-                throw new IllegalStateException("Cannot load doc values", e);
-            }
-        }
-
-        if (docValues == null) {
-            return this.defaultValue;
-        }
-
-        BytesRef data = docValues.get(docId);
-        if (data == null || data.length == 0) {
-            return this.defaultValue;
-        }
-
-        HashTable.Reader htableReader = fieldType.hashTableReader(data);
-        int valueOffset = htableReader.getValueOffset(key);
-        if (valueOffset == HashTable.Reader.NOT_FOUND_OFFSET) {
-            return this.defaultValue;
-        }
+    @Override
+    protected float value(HtableFieldMapper.HtableFieldType fieldType, HtableReader htableReader, long valueOffset) {
         return this.scaleTable[htableReader.getByte(valueOffset) & 0xff];
     }
 
     public static class Factory implements NativeScriptFactory {
+        private final HtableStats stats;
+
+        public Factory(HtableStats stats) {
+            this.stats = stats;
+        }
+
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
             String fieldName = params == null ? null : XContentMapValues.nodeStringValue(params.get("field"), null);
@@ -79,7 +54,8 @@ public class HtableGetScaleScript extends AbstractHtableSearchScript {
             if (keyParam == null) {
                 throw new ScriptException("Missing the [key] parameter");
             }
-            long key = params == null ? null : XContentMapValues.nodeLongValue(keyParam);
+            // the search script passes the key parsed once per query
+            HtableKey key = HtableKey.of(keyParam);
             
             float defaultValue = params == null ? null : XContentMapValues.nodeFloatValue(params.get("default"), 0.0f);
 
@@ -103,7 +79,14 @@ public class HtableGetScaleScript extends AbstractHtableSearchScript {
                 currentValue += step;
             }
 
-            return new HtableGetScaleScript(fieldName, key, defaultValue, scaleTable);
+            HtableGetScaleScript script = new HtableGetScaleScript(fieldName, key, defaultValue, scaleTable, stats);
+            script.profile(XContentMapValues.nodeBooleanValue(params.get("profile"), false));
+            try {
+                script.transform(HtableValueTransform.parse(params));
+            } catch (IllegalArgumentException e) {
+                throw new ScriptException(e.getMessage());
+            }
+            return script;
         }
 
         @Override
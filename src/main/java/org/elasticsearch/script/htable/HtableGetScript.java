@@ -1,67 +1,59 @@
 package org.elasticsearch.script.htable;
 
-import java.io.IOException;
 import java.util.Map;
 
-import com.google.common.collect.Maps;
-
-import net.uaprom.htable.HashTable;
-
-import org.apache.lucene.index.BinaryDocValues;
-import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
-import org.elasticsearch.index.fielddata.ScriptDocValues;
 import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableKey;
+import org.elasticsearch.index.mapper.htable.HtableReader;
+import org.elasticsearch.index.mapper.htable.HtableStats;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueTransform;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
 import org.elasticsearch.script.ScriptException;
 
 
+/**
+ * Returns the value of the key, for tuple values the component at {@code index}.
+ */
 public class HtableGetScript extends AbstractHtableSearchScript {
-    protected final float defaultValue;
-
-    protected HtableGetScript(String fieldName, long key, float defaultValue) {
-        super(fieldName, key);
-        this.defaultValue = defaultValue;
+    private final int index;
+    // the component of the values, known once the field is resolved
+    private HtableFieldMapper.ValueType valueType;
+    private int componentOffset;
+
+    protected HtableGetScript(String fieldName, HtableKey key, int index, float defaultValue, HtableStats stats) {
+        super(fieldName, key, defaultValue, stats);
+        this.index = index;
     }
 
     @Override
-    public float runAsFloat() {
-        HtableFieldMapper.HtableFieldType fieldType = (HtableFieldMapper.HtableFieldType) (doc().mapperService().smartNameFieldType(fieldName));
-        if (fieldType == null) {
-            throw new IllegalStateException("No field found for [" + fieldName + "]; expected [htable] field type");
-        }
-        
-        BinaryDocValues docValues = localDocValuesCache.get(reader);
-        if (docValues == null) {
+    protected HtableFieldMapper.HtableFieldType fieldType() {
+        HtableFieldMapper.HtableFieldType fieldType = super.fieldType();
+        if (valueType == null) {
             try {
-                docValues = reader.getBinaryDocValues(fieldName);
-                localDocValuesCache.put(reader, docValues);
-            } catch (IOException e) {
-                throw new IllegalStateException("Cannot load doc values", e);
+                valueType = fieldType.valueType(index);
+            } catch (IllegalArgumentException e) {
+                throw new ScriptException(e.getMessage());
             }
+            componentOffset = fieldType.valueOffset(index);
         }
+        return fieldType;
+    }
 
-        if (docValues == null) {
-            return defaultValue;
-        }
+    @Override
+    protected float value(HtableFieldMapper.HtableFieldType fieldType, HtableReader htableReader, long valueOffset) {
+        return valueType.getValue(htableReader, valueOffset + componentOffset);
+    }
 
-        BytesRef data = docValues.get(docId);
-        if (data == null || data.length == 0) {
-            return defaultValue;
-        }
+    public static class Factory implements NativeScriptFactory {
+        private final HtableStats stats;
 
-        HashTable.Reader htableReader = fieldType.hashTableReader(data);
-        int valueOffset = htableReader.getValueOffset(key);
-        if (valueOffset == HashTable.Reader.NOT_FOUND_OFFSET) {
-            return defaultValue;
+        public Factory(HtableStats stats) {
+            this.stats = stats;
         }
-        return fieldType.valueType().getValue(htableReader, valueOffset);
-    }
 
-    public static class Factory implements NativeScriptFactory {
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
             String fieldName = params == null ? null : XContentMapValues.nodeStringValue(params.get("field"), null);
@@ -73,11 +65,20 @@ public class HtableGetScript extends AbstractHtableSearchScript {
             if (keyParam == null) {
                 throw new ScriptException("Missing the [key] parameter");
             }
-            long key = params == null ? null : XContentMapValues.nodeLongValue(keyParam);
+            // the search script passes the key parsed once per query
+            HtableKey key = HtableKey.of(keyParam);
 
+            int index = XContentMapValues.nodeIntegerValue(params.get("index"), 0);
             float defaultValue = params == null ? null : XContentMapValues.nodeFloatValue(params.get("default"), 0.0f);
 
-            return new HtableGetScript(fieldName, key, defaultValue);
+            HtableGetScript script = new HtableGetScript(fieldName, key, index, defaultValue, stats);
+            script.profile(XContentMapValues.nodeBooleanValue(params.get("profile"), false));
+            try {
+                script.transform(HtableValueTransform.parse(params));
+            } catch (IllegalArgumentException e) {
+                throw new ScriptException(e.getMessage());
+            }
+            return script;
         }
 
         @Override
@@ -0,0 +1,165 @@
+package org.elasticsearch.script.htable;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableKey;
+import org.elasticsearch.index.mapper.htable.HtableReader;
+import org.elasticsearch.index.mapper.htable.HtableStats;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueTransform;
+import org.elasticsearch.script.ExecutableScript;
+import org.elasticsearch.script.NativeScriptFactory;
+import org.elasticsearch.script.ScriptException;
+
+
+/**
+ * Returns the similarity of the query vector and the vector of the key, only for fields with {@code dims}.
+ * The stored vector is copied into an array with a single read of its bytes and compared in a plain loop
+ * over two arrays.
+ */
+public class HtableVectorScript extends AbstractHtableSearchScript {
+    public enum Similarity {
+        DOT_PRODUCT,
+        COSINE;
+
+        public static Similarity fromName(String name) {
+            for (Similarity similarity : values()) {
+                if (similarity.toString().equals(name)) {
+                    return similarity;
+                }
+            }
+            throw new IllegalArgumentException("Unknown similarity [" + name + "]");
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final float[] queryVector;
+    private final Similarity similarity;
+    private final float queryNorm;
+    private final float[] vector;
+
+    private HtableVectorScript(String fieldName, HtableKey key, float defaultValue, float[] queryVector, Similarity similarity,
+                               HtableStats stats) {
+        super(fieldName, key, defaultValue, stats);
+        this.queryVector = queryVector;
+        this.similarity = similarity;
+        this.queryNorm = (float) Math.sqrt(dotProduct(queryVector, queryVector, queryVector.length));
+        this.vector = new float[queryVector.length];
+    }
+
+    @Override
+    protected HtableFieldMapper.HtableFieldType fieldType() {
+        HtableFieldMapper.HtableFieldType fieldType = super.fieldType();
+        if (fieldType.dims() != queryVector.length) {
+            throw new ScriptException("[vector] must have [" + fieldType.dims() + "] values for field [" + fieldName + "]; got ["
+                                      + queryVector.length + "]");
+        }
+        return fieldType;
+    }
+
+    @Override
+    protected float value(HtableFieldMapper.HtableFieldType fieldType, HtableReader htableReader, long valueOffset) {
+        htableReader.getFloats(valueOffset, vector, vector.length);
+        if (similarity == Similarity.DOT_PRODUCT) {
+            return dotProduct(queryVector, vector, vector.length);
+        }
+        return cosine(queryVector, queryNorm, vector, vector.length);
+    }
+
+    static float dotProduct(float[] a, float[] b, int length) {
+        float sum = 0.0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Zero vectors have no direction, their cosine is {@code 0}.
+     */
+    static float cosine(float[] a, float aNorm, float[] b, int length) {
+        float dotProduct = 0.0f;
+        float squaredNorm = 0.0f;
+        for (int i = 0; i < length; i++) {
+            dotProduct += a[i] * b[i];
+            squaredNorm += b[i] * b[i];
+        }
+        if (aNorm == 0.0f || squaredNorm == 0.0f) {
+            return 0.0f;
+        }
+        return (float) (dotProduct / (aNorm * Math.sqrt(squaredNorm)));
+    }
+
+    /**
+     * Converts the {@code vector} parameter, the search script passes it converted once per query.
+     */
+    public static float[] parseVector(Object vectorParam) {
+        if (vectorParam instanceof float[]) {
+            return (float[]) vectorParam;
+        }
+        if (!(vectorParam instanceof List)) {
+            throw new ScriptException("[vector] must be an array of numbers");
+        }
+        List<?> values = (List<?>) vectorParam;
+        float[] vector = new float[values.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = XContentMapValues.nodeFloatValue(values.get(i));
+        }
+        return vector;
+    }
+
+    public static class Factory implements NativeScriptFactory {
+        private final HtableStats stats;
+
+        public Factory(HtableStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public ExecutableScript newScript(@Nullable Map<String, Object> params) {
+            String fieldName = params == null ? null : XContentMapValues.nodeStringValue(params.get("field"), null);
+            if (fieldName == null) {
+                throw new ScriptException("Missing the [field] parameter");
+            }
+
+            Object keyParam = params.get("key");
+            if (keyParam == null) {
+                throw new ScriptException("Missing the [key] parameter");
+            }
+            // the search script passes the key parsed once per query
+            HtableKey key = HtableKey.of(keyParam);
+
+            Object vectorParam = params.get("vector");
+            if (vectorParam == null) {
+                throw new ScriptException("Missing the [vector] parameter");
+            }
+            float[] queryVector = parseVector(vectorParam);
+
+            float defaultValue = XContentMapValues.nodeFloatValue(params.get("default"), 0.0f);
+
+            HtableVectorScript script;
+            try {
+                Similarity similarity = Similarity.fromName(XContentMapValues.nodeStringValue(params.get("similarity"), "dot_product"));
+                script = new HtableVectorScript(fieldName, key, defaultValue, queryVector, similarity, stats);
+                script.transform(HtableValueTransform.parse(params));
+            } catch (IllegalArgumentException e) {
+                throw new ScriptException(e.getMessage());
+            }
+            script.profile(XContentMapValues.nodeBooleanValue(params.get("profile"), false));
+            return script;
+        }
+
+        @Override
+        public boolean needsScores() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.elasticsearch.action.htable.advise;
+
+import java.util.Collection;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.mapper.htable.HtableFormatAdvice;
+import org.elasticsearch.plugin.mapper.MapperHtablePlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+import org.elasticsearch.test.ESIntegTestCase.Scope;
+
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+
+@ClusterScope(scope = Scope.SUITE, numDataNodes = 1, numClientNodes = 0)
+public class HtableAdviseTests extends ESIntegTestCase {
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return pluginList(MapperHtablePlugin.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Collection<Class<? extends Plugin>> transportClientPlugins() {
+        return pluginList(MapperHtablePlugin.class);
+    }
+
+    public void testAdvise() throws Exception {
+        assertAcked(prepareCreate("test")
+                    .setSettings(Settings.builder()
+                                 .put(SETTING_NUMBER_OF_SHARDS, 1)
+                                 .put(SETTING_NUMBER_OF_REPLICAS, 0))
+                    .addMapping("type", XContentFactory.jsonBuilder()
+                                .startObject().startObject("type").startObject("properties")
+                                    .startObject("ranks")
+                                        .field("type", "htable")
+                                        .field("value_type", "float")
+                                        .startObject("format_params")
+                                            .field("format", randomFrom("chain", "sorted", "lazy_chain"))
+                                        .endObject()
+                                    .endObject()
+                                    .startObject("title")
+                                        .field("type", "string")
+                                    .endObject()
+                                .endObject().endObject().endObject()));
+
+        int numDocs = randomIntBetween(20, 50);
+        for (int i = 0; i < numDocs; i++) {
+            int numEntries = randomIntBetween(1, 100);
+            XContentBuilder source = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("ranks")
+                        .startArray("keys");
+            for (int j = 0; j < numEntries; j++) {
+                source.value(j * 7 + i);
+            }
+            source.endArray().startArray("values");
+            for (int j = 0; j < numEntries; j++) {
+                source.value(randomFloat());
+            }
+            source.endArray().endObject().endObject();
+            client().prepareIndex("test", "type", Integer.toString(i)).setSource(source).get();
+        }
+        client().prepareIndex("test", "type", "no_table")
+            .setSource(XContentFactory.jsonBuilder().startObject().field("title", "no table").endObject())
+            .get();
+        refresh();
+
+        HtableAdviseResponse response = client().execute(HtableAdviseAction.INSTANCE,
+                                                          new HtableAdviseRequest("test", "ranks")).actionGet();
+        HtableFormatAdvice advice = response.getAdvice();
+        assertEquals("test", response.getIndex());
+        assertEquals("ranks", advice.getFieldName());
+        assertEquals(numDocs, advice.getEntries().getCount());
+        assertThat(advice.getEntries().getMin(), greaterThan(0L));
+        assertThat(advice.getEntries().getMax(), lessThanOrEqualTo(100L));
+        assertThat(advice.getStoredSizes().getMin(), greaterThan(0L));
+        assertFalse(advice.getCandidates().isEmpty());
+        HtableFormatAdvice.Candidate recommended = advice.getRecommended();
+        assertThat(recommended, notNullValue());
+        long minSize = Long.MAX_VALUE;
+        for (HtableFormatAdvice.Candidate candidate : advice.getCandidates()) {
+            assertThat(candidate.getAvgSizeInBytes(), greaterThan(0L));
+            minSize = Math.min(minSize, candidate.getAvgSizeInBytes());
+        }
+        assertThat((double) recommended.getAvgSizeInBytes(), lessThanOrEqualTo(minSize * 1.25));
+
+        response = client().execute(HtableAdviseAction.INSTANCE,
+                                    new HtableAdviseRequest("test", "ranks").sampleSize(5)).actionGet();
+        assertEquals(5, response.getAdvice().getEntries().getCount());
+
+        try {
+            client().execute(HtableAdviseAction.INSTANCE, new HtableAdviseRequest("test", "title")).actionGet();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("is not of [htable] type"));
+        }
+    }
+}
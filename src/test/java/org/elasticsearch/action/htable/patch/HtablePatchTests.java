@@ -0,0 +1,237 @@
+package org.elasticsearch.action.htable.patch;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableFormat;
+import org.elasticsearch.plugin.mapper.MapperHtablePlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+import org.elasticsearch.test.ESIntegTestCase.Scope;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.idsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders.scriptFunction;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.containsString;
+
+
+@ClusterScope(scope = Scope.SUITE, numDataNodes = 1, numClientNodes = 0)
+public class HtablePatchTests extends ESIntegTestCase {
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return pluginList(MapperHtablePlugin.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Collection<Class<? extends Plugin>> transportClientPlugins() {
+        return pluginList(MapperHtablePlugin.class);
+    }
+
+    private float value(long key) {
+        return value("1", key);
+    }
+
+    private float value(String id, long key) {
+        Map<String, Object> params = newHashMap();
+        params.put("field", "ranks");
+        params.put("key", key);
+        params.put("default", -1.0f);
+        SearchResponse response = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(idsQuery("type").addIds(id),
+                                         scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params)))
+                      .boostMode("replace"))
+            .get();
+        assertNoFailures(response);
+        assertHitCount(response, 1);
+        return response.getHits().getAt(0).getScore();
+    }
+
+    private HtablePatchResponse patch(String field, String patch) {
+        return client().execute(HtablePatchAction.INSTANCE,
+                                new HtablePatchRequest("test", "type", "1", field).patch(new BytesArray(patch)))
+            .actionGet();
+    }
+
+    private HtableFormat createIndex(int numShards) throws Exception {
+        HtableFormat format = randomFrom(HtableFormat.SORTED, HtableFormat.LAZY_CHAIN, HtableFormat.BLOCKED);
+        assertAcked(prepareCreate("test")
+                    .setSettings(Settings.builder()
+                                 .put(SETTING_NUMBER_OF_SHARDS, numShards)
+                                 .put(SETTING_NUMBER_OF_REPLICAS, 0)
+                                 .put("index.refresh_interval", -1)
+                                 .put("index.codec", randomFrom("default", "htable")))
+                    .addMapping("type", XContentFactory.jsonBuilder()
+                                .startObject().startObject("type").startObject("properties")
+                                    .startObject("ranks")
+                                        .field("type", "htable")
+                                        .field("value_type", "float")
+                                        .field("key_stats", randomBoolean())
+                                        .startObject("format_params")
+                                            .field("format", format.formatName())
+                                        .endObject()
+                                    .endObject()
+                                    .startObject("chain_ranks")
+                                        .field("type", "htable")
+                                        .field("value_type", "float")
+                                    .endObject()
+                                    .startObject("title")
+                                        .field("type", "string")
+                                    .endObject()
+                                .endObject().endObject().endObject()));
+        return format;
+    }
+
+    public void testPatch() throws Exception {
+        createIndex(1);
+
+        client().prepareIndex("test", "type", "1")
+            .setSource(XContentFactory.jsonBuilder()
+                       .startObject()
+                           .field("title", "first")
+                           .startObject("ranks")
+                               .array("keys", 1, 2, 3)
+                               .array("values", 1.0f, 2.0f, 3.0f)
+                           .endObject()
+                       .endObject())
+            .get();
+
+        // the document is not refreshed yet, its table is decoded from the source in the translog
+        long refreshes = refreshes();
+        HtablePatchResponse response = patch("ranks", "{\"delete\": [2], \"set\": {\"keys\": [4], \"values\": [4.5]},"
+                                             + " \"increment\": {\"keys\": [1, 5], \"values\": [10, 2]}}");
+        assertEquals("1", response.getId());
+        assertEquals(2, response.getVersion());
+        assertEquals(4, response.getEntries());
+        // the serialized table of the first patch
+        response = patch("ranks", "{\"increment\": {\"keys\": [3], \"values\": [0.5]}}");
+        assertEquals(3, response.getVersion());
+        assertEquals(4, response.getEntries());
+        assertEquals(refreshes, refreshes());
+        refresh();
+        assertEquals(11.0f, value(1), 0.0f);
+        assertEquals(-1.0f, value(2), 0.0f);
+        assertEquals(3.5f, value(3), 0.0f);
+        assertEquals(4.5f, value(4), 0.0f);
+        assertEquals(2.0f, value(5), 0.0f);
+
+        // the patched table is kept serialized in the source
+        response = patch("ranks", "{\"increment\": {\"keys\": [1], \"values\": [1]}}");
+        assertEquals(4, response.getVersion());
+        refresh();
+        assertEquals(12.0f, value(1), 0.0f);
+        assertEquals(3.5f, value(3), 0.0f);
+
+        // the other fields are indexed again from the source, which keeps its content type
+        assertHitCount(client().prepareSearch("test").setQuery(matchQuery("title", "first")).get(), 1);
+        GetResponse get = client().prepareGet("test", "type", "1").get();
+        assertEquals("first", get.getSource().get("title"));
+        assertEquals(XContentType.JSON, XContentFactory.xContentType(get.getSourceAsBytesRef()));
+
+        try {
+            patch("chain_ranks", "{\"delete\": [1]}");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("does not support patches"));
+        }
+
+        try {
+            client().execute(HtablePatchAction.INSTANCE,
+                             new HtablePatchRequest("test", "type", "2", "ranks").patch(new BytesArray("{}")))
+                .actionGet();
+            fail("Expected DocumentMissingException");
+        } catch (DocumentMissingException e) {
+            // expected
+        }
+    }
+
+    private long refreshes() {
+        return client().admin().indices().prepareStats("test").setRefresh(true).get().getTotal().getRefresh().getTotal();
+    }
+
+    private static byte[] floatValue(float value) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(value).array();
+    }
+
+    public void testBulkPatch() throws Exception {
+        HtableFormat format = createIndex(between(1, 3));
+        for (int i = 1; i <= 4; i++) {
+            client().prepareIndex("test", "type", Integer.toString(i))
+                .setSource(XContentFactory.jsonBuilder()
+                           .startObject()
+                               .field("title", "doc")
+                               .startObject("ranks")
+                                   .array("keys", 1, 2)
+                                   .array("values", (float) i, (float) i)
+                               .endObject()
+                           .endObject())
+                .get();
+        }
+        refresh();
+
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        entries.put(1L, floatValue(10.0f));
+        entries.put(3L, floatValue(30.0f));
+        byte[] table = format.writer(HtableFieldMapper.ValueType.FLOAT, null).dump(entries);
+
+        HtableBulkPatchResponse response = client().prepareExecute(HtableBulkPatchAction.INSTANCE)
+            .setIndex("test")
+            .setField("ranks")
+            .addPatch("type", "1", XContentFactory.jsonBuilder()
+                      .startObject()
+                          .startObject("increment").array("keys", 1).array("values", 5).endObject()
+                      .endObject())
+            .addTable("type", "2", new BytesArray(table))
+            .addPatch("type", "missing", XContentFactory.jsonBuilder().startObject().array("delete", 1).endObject())
+            .addPatch("type", "1", XContentFactory.jsonBuilder().startObject().array("delete", 2).endObject())
+            .setRetryOnConflict(3)
+            .setRefresh(true)
+            .get();
+        assertTrue(response.hasFailures());
+        HtableBulkPatchResponse.Item[] items = response.getItems();
+        assertEquals(4, items.length);
+        assertFalse(items[0].isFailed());
+        assertEquals("1", items[0].getId());
+        assertEquals(2, items[0].getEntries());
+        assertFalse(items[1].isFailed());
+        assertEquals("2", items[1].getId());
+        assertEquals(2, items[1].getVersion());
+        assertEquals(2, items[1].getEntries());
+        assertTrue(items[2].isFailed());
+        assertEquals("missing", items[2].getId());
+        assertThat(items[2].getFailure(), containsString("document missing"));
+        // the second patch of the same document is retried after the version conflict
+        assertFalse(items[3].isFailed());
+
+        assertEquals(6.0f, value("1", 1), 0.0f);
+        assertEquals(-1.0f, value("1", 2), 0.0f);
+        assertEquals(10.0f, value("2", 1), 0.0f);
+        assertEquals(-1.0f, value("2", 2), 0.0f);
+        assertEquals(30.0f, value("2", 3), 0.0f);
+        assertEquals(3.0f, value("3", 1), 0.0f);
+        assertHitCount(client().prepareSearch("test").setQuery(matchQuery("title", "doc")).get(), 4);
+    }
+}
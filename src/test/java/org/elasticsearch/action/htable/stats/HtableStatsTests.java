@@ -0,0 +1,124 @@
+package org.elasticsearch.action.htable.stats;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.mapper.htable.HtableFieldStats;
+import org.elasticsearch.index.mapper.htable.HtableStats;
+import org.elasticsearch.plugin.mapper.MapperHtablePlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+import org.elasticsearch.test.ESIntegTestCase.Scope;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders.scriptFunction;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.greaterThan;
+
+
+@ClusterScope(scope = Scope.SUITE, numDataNodes = 1, numClientNodes = 0)
+public class HtableStatsTests extends ESIntegTestCase {
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return Settings.settingsBuilder()
+                .put(super.nodeSettings(nodeOrdinal))
+                .put(HtableStats.TIMING_SETTING, true)
+                .build();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return pluginList(MapperHtablePlugin.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Collection<Class<? extends Plugin>> transportClientPlugins() {
+        return pluginList(MapperHtablePlugin.class);
+    }
+
+    public void testFieldStats() throws Exception {
+        assertAcked(prepareCreate("test")
+                    .setSettings(Settings.builder()
+                                 .put(SETTING_NUMBER_OF_SHARDS, 1)
+                                 .put(SETTING_NUMBER_OF_REPLICAS, 0))
+                    .addMapping("type", XContentFactory.jsonBuilder()
+                                .startObject().startObject("type").startObject("properties")
+                                    .startObject("stats_ranks")
+                                        .field("type", "htable")
+                                        .startObject("format_params")
+                                            .field("format", randomFrom("chain", "sorted"))
+                                        .endObject()
+                                    .endObject()
+                                .endObject().endObject().endObject()));
+
+        for (int i = 0; i < 10; i++) {
+            client().prepareIndex("test", "type", Integer.toString(i))
+                .setSource(XContentFactory.jsonBuilder()
+                           .startObject()
+                               .startObject("stats_ranks")
+                                   .array("keys", 1, 2)
+                                   .array("values", i, i)
+                               .endObject()
+                           .endObject())
+                .get();
+        }
+        client().prepareIndex("test", "type", "10")
+            .setSource(XContentFactory.jsonBuilder().startObject().field("title", "no table").endObject())
+            .get();
+        refresh();
+
+        Map<String, Object> params = newHashMap();
+        params.put("field", "stats_ranks");
+        params.put("key", 1);
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params))))
+            .get();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, 11);
+
+        HtableStatsResponse response = client().execute(HtableStatsAction.INSTANCE, new HtableStatsRequest().fields("stats_*")).actionGet();
+        assertEquals(1, response.getNodes().length);
+        assertEquals(1, response.getAt(0).getFields().size());
+        HtableFieldStats stats = response.getAt(0).getFields().get(0);
+        assertEquals("stats_ranks", stats.getFieldName());
+        assertEquals(11, stats.getLookups());
+        assertEquals(1, stats.getMisses());
+        assertThat(stats.getBytesRead(), greaterThan(0L));
+        assertEquals(11, stats.getTimedLookups());
+        assertEquals(10, stats.getParsedTables());
+        assertEquals(20, stats.getParsedEntries());
+        assertThat(stats.getParsedBytes(), greaterThan(0L));
+        assertNull(stats.getProfile());
+
+        params.put("profile", true);
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params))))
+            .get();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, 11);
+
+        response = client().execute(HtableStatsAction.INSTANCE, new HtableStatsRequest().fields("stats_ranks")).actionGet();
+        stats = response.getAt(0).getFields().get(0);
+        assertEquals(22, stats.getLookups());
+        assertNotNull(stats.getProfile());
+        assertEquals(11, stats.getProfile().getLookups());
+        assertThat(stats.getProfile().getFetchTimeInNanos(), greaterThan(0L));
+        assertThat(stats.getProfile().getProbeTimeInNanos(), greaterThan(0L));
+
+        response = client().execute(HtableStatsAction.INSTANCE, new HtableStatsRequest().fields("unknown")).actionGet();
+        assertEquals(0, response.getAt(0).getFields().size());
+    }
+}
@@ -0,0 +1,274 @@
+package org.elasticsearch.benchmark.htable;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Maps;
+import org.HdrHistogram.Histogram;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilder;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueFunctionBuilder;
+import org.elasticsearch.node.MockNode;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.plugin.mapper.MapperHtablePlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.script.HtableScriptEngineService;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptService;
+
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders.scriptFunction;
+import static org.elasticsearch.index.query.functionscore.htable.HtableValueFunctionBuilder.htableValueFunction;
+
+
+/**
+ * Runs function score queries with htable scripts or {@code htable_value} function against an embedded node
+ * and reports throughput, latency and allocation rate for every format.
+ * <p>
+ * Options are passed as system properties with {@code htable.bench.} prefix, see {@link #option}.
+ */
+public class HtableScoringBenchmark {
+    private static final String FIELD_NAME = "ranks";
+
+    private final String[] formats = option("formats", "chain,trie,sorted,lazy_chain,blocked").split(",");
+    private final String codec = option("codec", "htable");
+    private final int numDocs = Integer.parseInt(option("docs", "20000"));
+    private final int tableSize = Integer.parseInt(option("table_size", "100"));
+    private final int keySpace = Integer.parseInt(option("key_space", "1000"));
+    private final int numWarmupQueries = Integer.parseInt(option("warmup", "500"));
+    private final int numQueries = Integer.parseInt(option("queries", "2000"));
+    private final int numClients = Integer.parseInt(option("clients", "4"));
+    private final QueryMix queryMix = new QueryMix(option("mix", "htable_get:3,htable_get_scale:1"));
+    private final long seed = Long.parseLong(option("seed", "42"));
+
+    private static String option(String name, String defaultValue) {
+        return System.getProperty("htable.bench." + name, defaultValue);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new HtableScoringBenchmark().run();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void run() throws Exception {
+        Path home = Files.createTempDirectory("htable-benchmark");
+        Settings settings = Settings.settingsBuilder()
+            .put("path.home", home.toString())
+            .put("cluster.name", "htable-benchmark")
+            .put("node.mode", "local")
+            .put("http.enabled", false)
+            .put("script.inline", "on")
+            .build();
+        Node node = new MockNode(settings, Version.CURRENT, Collections.<Class<? extends Plugin>>singletonList(MapperHtablePlugin.class));
+        try {
+            node.start();
+            Client client = node.client();
+            System.out.println(String.format(Locale.ROOT, "docs: %d, table size: %d, key space: %d, clients: %d, queries: %d, mix: %s, codec: %s",
+                                             numDocs, tableSize, keySpace, numClients, numQueries, queryMix, codec));
+            System.out.println(String.format(Locale.ROOT, "%-12s %10s %10s %10s %10s %12s %12s",
+                                             "format", "qps", "p50 ms", "p99 ms", "max ms", "alloc MB/s", "alloc KB/q"));
+            for (String format : formats) {
+                String index = "htable_" + format;
+                createIndex(client, index, format);
+                runQueries(client, index, numWarmupQueries);
+                Result result = runQueries(client, index, numQueries);
+                System.out.println(String.format(Locale.ROOT, "%-12s %10.1f %10.3f %10.3f %10.3f %12.1f %12.1f",
+                                                 format,
+                                                 result.qps(),
+                                                 result.latencies.getValueAtPercentile(50) / 1000.0,
+                                                 result.latencies.getValueAtPercentile(99) / 1000.0,
+                                                 result.latencies.getMaxValue() / 1000.0,
+                                                 result.allocatedBytes / result.seconds() / (1024 * 1024),
+                                                 result.allocatedBytes / (double) numQueries / 1024));
+                client.admin().indices().prepareDelete(index).get();
+            }
+        } finally {
+            node.close();
+        }
+    }
+
+    private void createIndex(Client client, String index, String format) throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+            .startObject().startObject("product").startObject("properties")
+                .startObject(FIELD_NAME)
+                    .field("type", "htable")
+                    .field("value_type", "byte")
+                    .startObject("format_params")
+                        .field("format", format)
+                    .endObject()
+                .endObject()
+            .endObject().endObject().endObject();
+        client.admin().indices().prepareCreate(index)
+            .setSettings(Settings.settingsBuilder()
+                         .put("index.number_of_shards", 1)
+                         .put("index.number_of_replicas", 0)
+                         .put("index.codec", codec))
+            .addMapping("product", mapping)
+            .get();
+        client.admin().cluster().prepareHealth(index).setWaitForGreenStatus().get();
+
+        Random random = new Random(seed);
+        BulkRequestBuilder bulk = client.prepareBulk();
+        for (int i = 0; i < numDocs; i++) {
+            XContentBuilder doc = XContentFactory.jsonBuilder().startObject().startObject(FIELD_NAME).startArray("keys");
+            long[] keys = new long[tableSize];
+            for (int j = 0; j < tableSize; j++) {
+                keys[j] = random.nextInt(keySpace);
+                doc.value(keys[j]);
+            }
+            doc.endArray().startArray("values");
+            for (int j = 0; j < tableSize; j++) {
+                doc.value(random.nextInt(256));
+            }
+            doc.endArray().endObject().endObject();
+            bulk.add(client.prepareIndex(index, "product", Integer.toString(i)).setSource(doc));
+            if (bulk.numberOfActions() == 1000 || i == numDocs - 1) {
+                BulkResponse response = bulk.get();
+                if (response.hasFailures()) {
+                    throw new IllegalStateException(response.buildFailureMessage());
+                }
+                bulk = client.prepareBulk();
+            }
+        }
+        client.admin().indices().prepareRefresh(index).get();
+        client.admin().indices().prepareForceMerge(index).setMaxNumSegments(1).get();
+    }
+
+    private Result runQueries(final Client client, final String index, int queries) throws Exception {
+        final Histogram latencies = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+        final CountDownLatch latch = new CountDownLatch(numClients);
+        final int queriesPerClient = queries / numClients;
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        long allocatedBefore = allocatedBytes(threadBean);
+        long start = System.nanoTime();
+        for (int c = 0; c < numClients; c++) {
+            final Random random = new Random(seed + c);
+            new Thread("htable-benchmark-client-" + c) {
+                @Override
+                public void run() {
+                    Histogram clientLatencies = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+                    try {
+                        for (int q = 0; q < queriesPerClient; q++) {
+                            ScoreFunctionBuilder function = scoreFunction(queryMix.next(random), random);
+                            long queryStart = System.nanoTime();
+                            client.prepareSearch(index)
+                                .setQuery(functionScoreQuery(function))
+                                .setSize(10)
+                                .get();
+                            clientLatencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - queryStart));
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    } finally {
+                        synchronized (latencies) {
+                            latencies.add(clientLatencies);
+                        }
+                        latch.countDown();
+                    }
+                }
+            }.start();
+        }
+        latch.await();
+        long elapsedNanos = System.nanoTime() - start;
+        long allocatedBytes = allocatedBytes(threadBean) - allocatedBefore;
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Query failed", failures.get(0));
+        }
+        return new Result(latencies, elapsedNanos, allocatedBytes, queriesPerClient * numClients);
+    }
+
+    private ScoreFunctionBuilder scoreFunction(String name, Random random) {
+        if (name.equals(HtableValueFunctionBuilder.NAME)) {
+            return htableValueFunction(FIELD_NAME, random.nextInt(keySpace));
+        }
+        return scriptFunction(new Script(name, ScriptService.ScriptType.INLINE, HtableScriptEngineService.NAME,
+                                         scriptParams(name, random)));
+    }
+
+    private Map<String, Object> scriptParams(String scriptName, Random random) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("field", FIELD_NAME);
+        params.put("key", random.nextInt(keySpace));
+        if (scriptName.equals("htable_get_scale")) {
+            params.put("min_value", 0.0);
+            params.put("max_value", 1.0);
+        }
+        return params;
+    }
+
+    // allocations of the threads that are alive at the end are counted, short living threads are missed
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threadBean) {
+        long total = 0;
+        for (long bytes : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    static class QueryMix {
+        private final List<String> scripts = new ArrayList<>();
+        private final String description;
+
+        QueryMix(String description) {
+            this.description = description;
+            for (String entry : description.split(",")) {
+                String[] scriptAndWeight = entry.split(":");
+                int weight = scriptAndWeight.length > 1 ? Integer.parseInt(scriptAndWeight[1]) : 1;
+                for (int i = 0; i < weight; i++) {
+                    scripts.add(scriptAndWeight[0]);
+                }
+            }
+        }
+
+        String next(Random random) {
+            return scripts.get(random.nextInt(scripts.size()));
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    static class Result {
+        final Histogram latencies;
+        final long elapsedNanos;
+        final long allocatedBytes;
+        final int numQueries;
+
+        Result(Histogram latencies, long elapsedNanos, long allocatedBytes, int numQueries) {
+            this.latencies = latencies;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.numQueries = numQueries;
+        }
+
+        double seconds() {
+            return elapsedNanos / 1e9;
+        }
+
+        double qps() {
+            return numQueries / seconds();
+        }
+    }
+}
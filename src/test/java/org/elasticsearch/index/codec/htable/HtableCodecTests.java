@@ -0,0 +1,184 @@
+package org.elasticsearch.index.codec.htable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.codecs.perfield.PerFieldDocValuesFormat;
+import org.apache.lucene.codecs.perfield.PerFieldPostingsFormat;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.suggest.SuggestResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableFormat;
+import org.elasticsearch.index.mapper.htable.HtableHeader;
+import org.elasticsearch.index.mapper.htable.HtableReader;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.plugin.mapper.MapperHtablePlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.search.suggest.SuggestBuilders;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+import org.elasticsearch.test.ESIntegTestCase.Scope;
+
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+
+
+@ClusterScope(scope = Scope.SUITE, numDataNodes = 1)
+public class HtableCodecTests extends ESIntegTestCase {
+    @Override
+    public Settings indexSettings() {
+        return Settings.builder()
+            .put(SETTING_NUMBER_OF_SHARDS, 1)
+            .put(SETTING_NUMBER_OF_REPLICAS, 0)
+            .build();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return pluginList(MapperHtablePlugin.class);
+    }
+
+    public void testFieldFormats() throws Exception {
+        assertAcked(prepareCreate("test")
+                    .setSettings(Settings.builder().put(indexSettings()).put("index.codec", "htable"))
+                    .addMapping("type", XContentFactory.jsonBuilder()
+                                .startObject().startObject("type").startObject("properties")
+                                    .startObject("suggest")
+                                        .field("type", "completion")
+                                    .endObject()
+                                    .startObject("price")
+                                        .field("type", "long")
+                                    .endObject()
+                                    .startObject("ranks")
+                                        .field("type", "htable")
+                                        .field("key_stats", true)
+                                    .endObject()
+                                    .startObject("sorted_ranks")
+                                        .field("type", "htable")
+                                        .field("key_stats", true)
+                                        .startObject("format_params")
+                                            .field("format", "sorted")
+                                        .endObject()
+                                    .endObject()
+                                .endObject().endObject().endObject()));
+
+        client().prepareIndex("test", "type", "1")
+            .setSource(XContentFactory.jsonBuilder()
+                       .startObject()
+                           .startObject("suggest")
+                               .array("input", "hash table")
+                           .endObject()
+                           .field("price", 10)
+                           .startObject("ranks")
+                               .array("keys", 1)
+                               .array("values", 1.5f)
+                           .endObject()
+                           .startObject("sorted_ranks")
+                               .array("keys", 1)
+                               .array("values", 1.5f)
+                           .endObject()
+                       .endObject())
+            .setRefresh(true)
+            .get();
+
+        SuggestResponse suggestResponse = client().prepareSuggest("test")
+            .addSuggestion(SuggestBuilders.completionSuggestion("names").field("suggest").text("ha"))
+            .get();
+        assertNoFailures(suggestResponse);
+        assertEquals(1, suggestResponse.getSuggest().getSuggestion("names").getEntries().get(0).getOptions().size());
+
+        IndicesService indicesService = internalCluster().getDataNodeInstance(IndicesService.class);
+        try (Engine.Searcher searcher = indicesService.indexServiceSafe("test").shardSafe(0).acquireSearcher("test")) {
+            for (LeafReaderContext context : searcher.reader().leaves()) {
+                FieldInfos fieldInfos = context.reader().getFieldInfos();
+                assertEquals("completion090",
+                             fieldInfos.fieldInfo("suggest").getAttribute(PerFieldPostingsFormat.PER_FIELD_FORMAT_KEY));
+                assertEquals(HtableDocValuesFormat.NAME,
+                             fieldInfos.fieldInfo("ranks").getAttribute(PerFieldDocValuesFormat.PER_FIELD_FORMAT_KEY));
+                assertEquals(HtableDocValuesFormat.NAME,
+                             fieldInfos.fieldInfo(HtableKeyStats.fieldName("ranks"))
+                                 .getAttribute(PerFieldDocValuesFormat.PER_FIELD_FORMAT_KEY));
+                assertEquals(HtableDocValuesFormat.NAME,
+                             fieldInfos.fieldInfo(HtableHeader.fieldName("ranks"))
+                                 .getAttribute(PerFieldDocValuesFormat.PER_FIELD_FORMAT_KEY));
+                assertEquals("Lucene50",
+                             fieldInfos.fieldInfo("price").getAttribute(PerFieldDocValuesFormat.PER_FIELD_FORMAT_KEY));
+                // the codec decodes the sorted tables itself, it knows about the statistics from the mapping
+                assertNull(fieldInfos.fieldInfo(HtableKeyStats.fieldName("sorted_ranks")));
+                HtableKeyStats stats = HtableKeyStats.get(context.reader(), "sorted_ranks");
+                assertNotNull(stats);
+                assertTrue(stats.mayContain(1));
+                assertNotNull(HtableKeyStats.get(context.reader(), "ranks"));
+            }
+        }
+    }
+
+    public void testMergeFormatOfPrebuiltTables() throws Exception {
+        assertAcked(prepareCreate("test")
+                    .setSettings(Settings.builder().put(indexSettings()).put("index.codec", "htable"))
+                    .addMapping("type", XContentFactory.jsonBuilder()
+                                .startObject().startObject("type").startObject("properties")
+                                    .startObject("ranks")
+                                        .field("type", "htable")
+                                        .field("value_type", "float")
+                                        .field("merge_format", "lazy_chain")
+                                        .startObject("format_params")
+                                            .field("format", "sorted")
+                                        .endObject()
+                                    .endObject()
+                                .endObject().endObject().endObject()));
+
+        // built outside of Elasticsearch with a header but without the merge format
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        entries.put(1L, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(1.5f).array());
+        byte[] prebuiltTable = HtableHeader.write(HtableFormat.SORTED, HtableFieldMapper.ValueType.FLOAT,
+                                                  HtableFormat.SORTED.writer(HtableFieldMapper.ValueType.FLOAT, null)
+                                                      .dump(entries));
+        client().prepareIndex("test", "type", "1")
+            .setSource(XContentFactory.jsonBuilder()
+                       .startObject()
+                           .startObject("ranks")
+                               .field("table", prebuiltTable)
+                           .endObject()
+                       .endObject())
+            .setRefresh(true)
+            .get();
+        client().prepareIndex("test", "type", "2")
+            .setSource(XContentFactory.jsonBuilder()
+                       .startObject()
+                           .startObject("ranks")
+                               .array("keys", 1)
+                               .array("values", 2.5f)
+                           .endObject()
+                       .endObject())
+            .setRefresh(true)
+            .get();
+        client().admin().indices().prepareForceMerge("test").setMaxNumSegments(1).get();
+        client().admin().indices().prepareRefresh("test").get();
+
+        IndicesService indicesService = internalCluster().getDataNodeInstance(IndicesService.class);
+        try (Engine.Searcher searcher = indicesService.indexServiceSafe("test").shardSafe(0).acquireSearcher("test")) {
+            assertEquals(1, searcher.reader().leaves().size());
+            BinaryDocValues docValues = searcher.reader().leaves().get(0).reader().getBinaryDocValues("ranks");
+            for (int docId = 0; docId < 2; docId++) {
+                BytesRef table = docValues.get(docId);
+                HtableHeader header = HtableHeader.readRequired(table);
+                assertEquals(HtableFormat.LAZY_CHAIN, header.format());
+                HtableReader reader = HtableFormat.LAZY_CHAIN.reader(HtableFieldMapper.ValueType.FLOAT, HtableHeader.table(table));
+                assertNotEquals(HtableReader.NOT_FOUND_OFFSET, reader.getValueOffset(1L));
+            }
+        }
+    }
+}
@@ -0,0 +1,573 @@
+package org.elasticsearch.index.codec.htable;
+
+import com.google.common.base.Function;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.lucene53.Lucene53Codec;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.BaseDocValuesFormatTestCase;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.TestUtil;
+import org.elasticsearch.index.mapper.htable.HtableDocValues;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.mapper.htable.HtableFormat;
+import org.elasticsearch.index.mapper.htable.HtableHeader;
+import org.elasticsearch.index.mapper.htable.HtableReader;
+
+import static org.hamcrest.Matchers.instanceOf;
+
+
+public class HtableDocValuesFormatTests extends BaseDocValuesFormatTestCase {
+    private final Codec codec = new HtableCodec();
+
+    @Override
+    protected Codec getCodec() {
+        return codec;
+    }
+
+    public void testInPlaceReads() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig config = newIndexWriterConfig(null);
+        config.setCodec(codec);
+        // documents keep their order
+        config.setMergePolicy(new LogDocMergePolicy());
+        IndexWriter writer = new IndexWriter(dir, config);
+        int numDocs = atLeast(100);
+        byte[][] values = new byte[numDocs][];
+        for (int i = 0; i < numDocs; i++) {
+            values[i] = new byte[1 + random().nextInt(HtableDocValuesFormat.PAGE_SIZE)];
+            random().nextBytes(values[i]);
+            Document doc = new Document();
+            doc.add(new BinaryDocValuesField("ranks", new BytesRef(values[i])));
+            writer.addDocument(doc);
+        }
+        writer.forceMerge(1);
+        writer.close();
+
+        DirectoryReader reader = DirectoryReader.open(dir);
+        LeafReader leafReader = getOnlySegmentReader(reader);
+        assertThat(leafReader.getBinaryDocValues("ranks"), instanceOf(HtableBinaryDocValues.class));
+        HtableBinaryDocValues docValues = (HtableBinaryDocValues) leafReader.getBinaryDocValues("ranks");
+        for (int i = 0; i < numDocs; i++) {
+            assertEquals(new BytesRef(values[i]), docValues.get(i));
+            assertEquals(values[i].length, docValues.length(i));
+            long offset = docValues.offset(i);
+            assertEquals(values[i][0], docValues.values().readByte(offset));
+        }
+        reader.close();
+        dir.close();
+    }
+
+    public void testMixedFormats() throws Exception {
+        HtableFieldMapper.HtableFieldType fieldType = new HtableFieldMapper.HtableFieldType();
+        fieldType.setValueType(HtableFieldMapper.ValueType.FLOAT);
+        fieldType.setDataFormatParams(Collections.<String, Object>singletonMap("format", "sorted"));
+        Directory dir = newDirectory();
+        IndexWriterConfig config = newIndexWriterConfig(null);
+        config.setCodec(codec);
+        // documents keep their order
+        config.setMergePolicy(new LogDocMergePolicy());
+        IndexWriter writer = new IndexWriter(dir, config);
+        HtableFormat[] formats = HtableFormat.values();
+        int numDocs = atLeast(100);
+        for (int i = 0; i < numDocs; i++) {
+            SortedMap<Long, byte[]> entries = new TreeMap<>();
+            entries.put((long) i, HtableFieldMapper.ValueType.FLOAT.encode(i));
+            entries.put((long) i + 1, HtableFieldMapper.ValueType.FLOAT.encode(i + 1));
+            Document doc = new Document();
+            if (i % (formats.length + 1) == formats.length) {
+                // written before the tables had a header
+                byte[] table = fieldType.format().writer(fieldType.valueType(), null).dump(entries);
+                doc.add(new BinaryDocValuesField("ranks", new BytesRef(table)));
+            } else {
+                HtableFormat format = formats[i % (formats.length + 1)];
+                byte[] table = HtableHeader.write(format, fieldType.valueType(), format.writer(fieldType.valueType(), null).dump(entries));
+                addTableWithHeader(doc, table);
+            }
+            writer.addDocument(doc);
+        }
+        writer.forceMerge(1);
+        writer.close();
+
+        DirectoryReader reader = DirectoryReader.open(dir);
+        HtableDocValues docValues = docValues(fieldType, getOnlySegmentReader(reader));
+        for (int i = 0; i < numDocs; i++) {
+            HtableReader htableReader = docValues.reader(i);
+            assertEquals(i + 1, htableReader.getFloat(htableReader.getValueOffset(i + 1)), 0.0f);
+            assertEquals(HtableReader.NOT_FOUND_OFFSET, htableReader.getValueOffset(i + 2));
+        }
+        assertTrue(docValues.bytesRead() > 0);
+        reader.close();
+        dir.close();
+    }
+
+    public void testAdvanceExact() throws Exception {
+        HtableFieldMapper.HtableFieldType fieldType = new HtableFieldMapper.HtableFieldType();
+        fieldType.setValueType(HtableFieldMapper.ValueType.FLOAT);
+        fieldType.setDataFormatParams(Collections.<String, Object>singletonMap("format", "sorted"));
+        Directory dir = newDirectory();
+        IndexWriterConfig config = newIndexWriterConfig(null);
+        config.setCodec(codec);
+        // documents keep their order
+        config.setMergePolicy(new LogDocMergePolicy());
+        IndexWriter writer = new IndexWriter(dir, config);
+        int numDocs = atLeast(100);
+        for (int i = 0; i < numDocs; i++) {
+            Document doc = new Document();
+            // every third document has no table
+            if (i % 3 != 0) {
+                SortedMap<Long, byte[]> entries = new TreeMap<>();
+                entries.put((long) i, HtableFieldMapper.ValueType.FLOAT.encode(i));
+                addTableWithHeader(doc, fieldType.withHeader(fieldType.format().writer(fieldType.valueType(), null).dump(entries)));
+            }
+            writer.addDocument(doc);
+        }
+        writer.forceMerge(1);
+        writer.close();
+
+        DirectoryReader reader = DirectoryReader.open(dir);
+        HtableDocValues docValues = docValues(fieldType, getOnlySegmentReader(reader));
+        assertEquals(-1, docValues.docID());
+        for (int i = 0; i < numDocs; i += 1 + random().nextInt(3)) {
+            assertEquals(i % 3 != 0, docValues.advanceExact(i));
+            assertEquals(i, docValues.docID());
+            // the current document is not read again
+            long bytesRead = docValues.bytesRead();
+            assertEquals(i % 3 != 0, docValues.advanceExact(i));
+            assertEquals(bytesRead, docValues.bytesRead());
+            if (i % 3 != 0) {
+                HtableReader htableReader = docValues.reader();
+                assertEquals(i, htableReader.getFloat(htableReader.getValueOffset(i)), 0.0f);
+            }
+        }
+        int lastDocId = docValues.docID();
+        try {
+            docValues.advanceExact(lastDocId - 1);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("doc ids must not decrease; got [" + (lastDocId - 1) + "] after [" + lastDocId + "]", e.getMessage());
+        }
+        reader.close();
+        dir.close();
+    }
+
+    public void testMergeFormat() throws Exception {
+        HtableFieldMapper.HtableFieldType fieldType = new HtableFieldMapper.HtableFieldType();
+        fieldType.setValueType(HtableFieldMapper.ValueType.FLOAT);
+        fieldType.setDataFormatParams(Collections.<String, Object>singletonMap("format", "sorted"));
+        fieldType.setMergeFormat(HtableFormat.LAZY_CHAIN);
+        Directory dir = newDirectory();
+        IndexWriterConfig config = newIndexWriterConfig(null);
+        config.setCodec(codec);
+        config.setMergePolicy(new LogDocMergePolicy());
+        IndexWriter writer = new IndexWriter(dir, config);
+        int numDocs = atLeast(100);
+        for (int i = 0; i < numDocs; i++) {
+            SortedMap<Long, byte[]> entries = new TreeMap<>();
+            entries.put((long) i, HtableFieldMapper.ValueType.FLOAT.encode(i));
+            byte[] table = fieldType.withHeader(fieldType.format().writer(fieldType.valueType(), null).dump(entries));
+            Document doc = new Document();
+            addTableWithHeader(doc, table);
+            // binary fields of other mappings are never re-encoded
+            doc.add(new BinaryDocValuesField("other", new BytesRef(table)));
+            writer.addDocument(doc);
+            if (i == numDocs / 2) {
+                writer.commit();
+            }
+        }
+        // a table written before the tables had a header is never re-encoded, even if it starts with the magic
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        entries.put(1L, HtableFieldMapper.ValueType.FLOAT.encode(1));
+        byte[] legacyTable = fieldType.withHeader(fieldType.format().writer(fieldType.valueType(), null).dump(entries));
+        Document legacyDoc = new Document();
+        legacyDoc.add(new BinaryDocValuesField("ranks", new BytesRef(legacyTable)));
+        writer.addDocument(legacyDoc);
+        writer.commit();
+
+        DirectoryReader reader = DirectoryReader.open(dir);
+        for (LeafReaderContext context : reader.leaves()) {
+            BinaryDocValues docValues = context.reader().getBinaryDocValues("ranks");
+            NumericDocValues marks = HtableHeader.marks(context.reader(), "ranks");
+            for (int i = 0; i < context.reader().maxDoc(); i++) {
+                if (!HtableHeader.hasHeader(marks, i)) {
+                    continue;
+                }
+                HtableHeader header = HtableHeader.readRequired(docValues.get(i));
+                assertEquals(HtableFormat.SORTED, header.format());
+                assertEquals(HtableFormat.LAZY_CHAIN, header.mergeFormat());
+            }
+        }
+        reader.close();
+
+        writer.forceMerge(1);
+        writer.close();
+        reader = DirectoryReader.open(dir);
+        LeafReader leafReader = getOnlySegmentReader(reader);
+        BinaryDocValues binaryDocValues = leafReader.getBinaryDocValues("ranks");
+        NumericDocValues marks = HtableHeader.marks(leafReader, "ranks");
+        assertFalse(HtableHeader.hasHeader(marks, numDocs));
+        assertEquals(new BytesRef(legacyTable), binaryDocValues.get(numDocs));
+        BinaryDocValues otherDocValues = leafReader.getBinaryDocValues("other");
+        HtableDocValues docValues = docValues(fieldType, leafReader);
+        for (int i = 0; i < numDocs; i++) {
+            assertTrue(HtableHeader.hasHeader(marks, i));
+            HtableHeader header = HtableHeader.readRequired(binaryDocValues.get(i));
+            assertEquals(HtableFormat.LAZY_CHAIN, header.format());
+            assertNull(header.mergeFormat());
+            assertEquals(HtableFormat.SORTED, HtableHeader.readRequired(otherDocValues.get(i)).format());
+            HtableReader htableReader = docValues.reader(i);
+            assertEquals(i, htableReader.getFloat(htableReader.getValueOffset(i)), 0.0f);
+            assertEquals(HtableReader.NOT_FOUND_OFFSET, htableReader.getValueOffset(i + 1));
+        }
+        reader.close();
+        dir.close();
+    }
+
+    public void testMergeFormatOfTablesWithoutDirectReader() throws Exception {
+        HtableFieldMapper.HtableFieldType fieldType = new HtableFieldMapper.HtableFieldType();
+        fieldType.setValueType(HtableFieldMapper.ValueType.FLOAT);
+        fieldType.setDataFormatParams(Collections.<String, Object>singletonMap("format", "chain"));
+        HtableFormat mergeFormat = random().nextBoolean() ? HtableFormat.LAZY_CHAIN : HtableFormat.BLOCKED;
+        fieldType.setMergeFormat(mergeFormat);
+        Directory dir = newDirectory();
+        IndexWriterConfig config = newIndexWriterConfig(null);
+        config.setCodec(codec);
+        config.setMergePolicy(new LogDocMergePolicy());
+        IndexWriter writer = new IndexWriter(dir, config);
+        int numDocs = atLeast(100);
+        for (int i = 0; i < numDocs; i++) {
+            SortedMap<Long, byte[]> entries = new TreeMap<>();
+            long[] keys = new long[]{i, i + 1000};
+            float[] values = new float[]{i, -i};
+            for (int j = 0; j < keys.length; j++) {
+                entries.put(keys[j], HtableFieldMapper.ValueType.FLOAT.encode(values[j]));
+            }
+            byte[] table = fieldType.withHeader(fieldType.format().writer(fieldType.valueType(), null).dump(entries));
+            Document doc = new Document();
+            addTableWithHeader(doc, table);
+            // the last table is indexed without its entries
+            BytesRef keyStats = i == numDocs - 1 ? HtableKeyStats.UNKNOWN_ENTRIES : HtableKeyStats.encode(keys, values, keys.length);
+            doc.add(new BinaryDocValuesField(HtableKeyStats.fieldName("ranks"), keyStats));
+            writer.addDocument(doc);
+            if (i == numDocs / 2) {
+                writer.commit();
+            }
+        }
+        writer.forceMerge(1);
+        writer.close();
+
+        DirectoryReader reader = DirectoryReader.open(dir);
+        LeafReader leafReader = getOnlySegmentReader(reader);
+        BinaryDocValues binaryDocValues = leafReader.getBinaryDocValues("ranks");
+        HtableDocValues docValues = docValues(fieldType, leafReader);
+        for (int i = 0; i < numDocs; i++) {
+            HtableHeader header = HtableHeader.readRequired(binaryDocValues.get(i));
+            if (i == numDocs - 1) {
+                assertEquals(HtableFormat.CHAIN, header.format());
+                assertEquals(mergeFormat, header.mergeFormat());
+            } else {
+                assertEquals(mergeFormat, header.format());
+                assertNull(header.mergeFormat());
+            }
+            HtableReader htableReader = docValues.reader(i);
+            assertEquals(i, htableReader.getFloat(htableReader.getValueOffset(i)), 0.0f);
+            assertEquals(-i, htableReader.getFloat(htableReader.getValueOffset(i + 1000)), 0.0f);
+            assertEquals(HtableReader.NOT_FOUND_OFFSET, htableReader.getValueOffset(i + 1));
+        }
+        reader.close();
+        dir.close();
+    }
+
+    public void testMergeFormatParams() throws Exception {
+        final HtableFieldMapper.HtableFieldType fieldType = new HtableFieldMapper.HtableFieldType();
+        fieldType.setValueType(HtableFieldMapper.ValueType.FLOAT);
+        fieldType.setDataFormatParams(Collections.<String, Object>singletonMap("format", "sorted"));
+        Map<String, Object> mergeFormatParams = new HashMap<>();
+        mergeFormatParams.put("format", "blocked");
+        mergeFormatParams.put("block_size", 16);
+        fieldType.setMergeFormat(HtableFormat.BLOCKED, mergeFormatParams);
+        fieldType.setMergeWriter(HtableFormat.BLOCKED.writer(fieldType.valueSize(), mergeFormatParams));
+        Codec codec = new HtableCodec(new Lucene53Codec(), null, new Function<String, HtableFieldMapper.HtableFieldType>() {
+            @Override
+            public HtableFieldMapper.HtableFieldType apply(String field) {
+                return "ranks".equals(field) ? fieldType : null;
+            }
+        });
+        Directory dir = newDirectory();
+        IndexWriterConfig config = newIndexWriterConfig(null);
+        config.setCodec(codec);
+        config.setMergePolicy(new LogDocMergePolicy());
+        IndexWriter writer = new IndexWriter(dir, config);
+        int numDocs = atLeast(20);
+        for (int i = 0; i < numDocs; i++) {
+            SortedMap<Long, byte[]> entries = new TreeMap<>();
+            for (int j = 0; j <= i; j++) {
+                entries.put((long) j, HtableFieldMapper.ValueType.FLOAT.encode(i + j));
+            }
+            Document doc = new Document();
+            addTableWithHeader(doc, fieldType.withHeader(fieldType.format().writer(fieldType.valueType(), null).dump(entries)));
+            writer.addDocument(doc);
+            if (i == numDocs / 2) {
+                writer.commit();
+            }
+        }
+        writer.forceMerge(1);
+        writer.close();
+
+        DirectoryReader reader = DirectoryReader.open(dir);
+        LeafReader leafReader = getOnlySegmentReader(reader);
+        BinaryDocValues binaryDocValues = leafReader.getBinaryDocValues("ranks");
+        HtableDocValues docValues = docValues(fieldType, leafReader);
+        for (int i = 0; i < numDocs; i++) {
+            BytesRef table = binaryDocValues.get(i);
+            assertEquals(HtableFormat.BLOCKED, HtableHeader.readRequired(table).format());
+            // the block size of the mapping, not the default one
+            BytesRef blockedTable = HtableHeader.table(table);
+            assertEquals(16, ByteBuffer.wrap(blockedTable.bytes, blockedTable.offset, blockedTable.length)
+                .order(ByteOrder.LITTLE_ENDIAN).getInt(blockedTable.offset + 4));
+            HtableReader htableReader = docValues.reader(i);
+            assertEquals(2 * i, htableReader.getFloat(htableReader.getValueOffset(i)), 0.0f);
+            assertEquals(HtableReader.NOT_FOUND_OFFSET, htableReader.getValueOffset(i + 1));
+        }
+        reader.close();
+        dir.close();
+    }
+
+    private static void addTableWithHeader(Document doc, byte[] table) {
+        doc.add(new BinaryDocValuesField("ranks", new BytesRef(table)));
+        doc.add(new NumericDocValuesField(HtableHeader.fieldName("ranks"), 1));
+    }
+
+    private static HtableDocValues docValues(HtableFieldMapper.HtableFieldType fieldType, LeafReader reader) throws IOException {
+        return new HtableDocValues(fieldType, reader.getBinaryDocValues("ranks"), HtableHeader.marks(reader, "ranks"));
+    }
+
+    public void testKeyStats() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig config = newIndexWriterConfig(null);
+        config.setCodec(codec);
+        // segments are only merged explicitly
+        LogDocMergePolicy mergePolicy = new LogDocMergePolicy();
+        mergePolicy.setMergeFactor(1000);
+        config.setMergePolicy(mergePolicy);
+        IndexWriter writer = new IndexWriter(dir, config);
+        String keyStatsField = HtableKeyStats.fieldName("ranks");
+        int numSegments = TestUtil.nextInt(random(), 2, 4);
+        float[] minValues = new float[]{Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        float[] maxValues = new float[]{Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        int[] docCounts = new int[2];
+        int firstSegmentDocCount = 0;
+        for (int segment = 0; segment < numSegments; segment++) {
+            int numDocs = atLeast(10);
+            for (int i = 0; i < numDocs; i++) {
+                Document doc = new Document();
+                if (i % 3 != 0) {
+                    // key 1 is in every table, key 2 in every second table of the first segment
+                    long[] keys = new long[]{1, 2};
+                    float[] values = new float[]{random().nextFloat() * 100, -random().nextFloat()};
+                    int count = segment == 0 && i % 2 == 0 ? 2 : 1;
+                    for (int j = 0; j < count; j++) {
+                        minValues[j] = Math.min(minValues[j], values[j]);
+                        maxValues[j] = Math.max(maxValues[j], values[j]);
+                        docCounts[j]++;
+                    }
+                    if (segment == 0) {
+                        firstSegmentDocCount++;
+                    }
+                    doc.add(new BinaryDocValuesField("ranks", new BytesRef(new byte[]{1})));
+                    doc.add(new BinaryDocValuesField(keyStatsField, HtableKeyStats.encode(keys, values, count)));
+                }
+                writer.addDocument(doc);
+            }
+            writer.commit();
+        }
+
+        DirectoryReader reader = DirectoryReader.open(dir);
+        assertEquals(numSegments, reader.leaves().size());
+        HtableKeyStats stats = HtableKeyStats.get(reader.leaves().get(0).reader(), "ranks");
+        assertNotNull(stats);
+        assertEquals(2, stats.size());
+        assertEquals(-1, stats.find(3));
+        assertTrue(stats.hasRanges());
+        assertTrue(stats.mayContain(1));
+        assertFalse(stats.mayContain(3));
+        assertEquals(firstSegmentDocCount, stats.docCount(stats.find(1)));
+        stats = HtableKeyStats.get(reader.leaves().get(1).reader(), "ranks");
+        assertEquals(1, stats.size());
+        assertEquals(0, stats.find(1));
+        assertEquals(-1, stats.find(2));
+        assertFalse(stats.mayContain(2));
+        reader.close();
+
+        writer.forceMerge(1);
+        reader = DirectoryReader.open(writer, true);
+        stats = HtableKeyStats.get(getOnlySegmentReader(reader), "ranks");
+        assertNotNull(stats);
+        assertEquals(2, stats.size());
+        for (int j = 0; j < 2; j++) {
+            int index = stats.find(j + 1);
+            assertEquals(minValues[j], stats.minValue(index), 0.0f);
+            assertEquals(maxValues[j], stats.maxValue(index), 0.0f);
+            assertEquals(docCounts[j], stats.docCount(index));
+        }
+        reader.close();
+
+        // statistics are not available when the entries of a table are unknown
+        Document doc = new Document();
+        doc.add(new BinaryDocValuesField("ranks", new BytesRef(new byte[]{1})));
+        doc.add(new BinaryDocValuesField(keyStatsField, HtableKeyStats.UNKNOWN_ENTRIES));
+        writer.addDocument(doc);
+        writer.commit();
+        reader = DirectoryReader.open(writer, true);
+        assertNull(HtableKeyStats.get(reader.leaves().get(1).reader(), "ranks"));
+        reader.close();
+        writer.forceMerge(1);
+        reader = DirectoryReader.open(writer, true);
+        assertNull(HtableKeyStats.get(getOnlySegmentReader(reader), "ranks"));
+        reader.close();
+
+        writer.close();
+        dir.close();
+    }
+
+    public void testKeyStatsOfDecodedTables() throws Exception {
+        final HtableFieldMapper.HtableFieldType fieldType = new HtableFieldMapper.HtableFieldType();
+        fieldType.setValueType(HtableFieldMapper.ValueType.FLOAT);
+        fieldType.setDataFormatParams(Collections.<String, Object>singletonMap("format", "sorted"));
+        fieldType.setKeyStats(true);
+        Codec codec = new HtableCodec(new Lucene53Codec(), null, new Function<String, HtableFieldMapper.HtableFieldType>() {
+            @Override
+            public HtableFieldMapper.HtableFieldType apply(String field) {
+                return "ranks".equals(field) ? fieldType : null;
+            }
+        });
+        Directory dir = newDirectory();
+        IndexWriterConfig config = newIndexWriterConfig(null);
+        config.setCodec(codec);
+        LogDocMergePolicy mergePolicy = new LogDocMergePolicy();
+        mergePolicy.setMergeFactor(1000);
+        config.setMergePolicy(mergePolicy);
+        IndexWriter writer = new IndexWriter(dir, config);
+        String keyStatsField = HtableKeyStats.fieldName("ranks");
+        int numDocs = atLeast(10);
+        for (int i = 0; i < numDocs; i++) {
+            SortedMap<Long, byte[]> entries = new TreeMap<>();
+            entries.put(1L, HtableFieldMapper.ValueType.FLOAT.encode(i));
+            Document doc = new Document();
+            // the sorted tables are decoded by the codec, the mapper gives no entries for them
+            addTableWithHeader(doc, fieldType.withHeader(fieldType.format().writer(fieldType.valueType(), null).dump(entries)));
+            writer.addDocument(doc);
+        }
+        writer.commit();
+        // tables written by older mappers with their entries and a chain table, which cannot be decoded by the codec
+        for (int i = 0; i < numDocs; i++) {
+            SortedMap<Long, byte[]> entries = new TreeMap<>();
+            entries.put(2L, HtableFieldMapper.ValueType.FLOAT.encode(-i));
+            HtableFormat format = i == 0 ? HtableFormat.CHAIN : HtableFormat.SORTED;
+            Document doc = new Document();
+            addTableWithHeader(doc, HtableHeader.write(format, HtableFieldMapper.ValueType.FLOAT,
+                                                       format.writer(HtableFieldMapper.ValueType.FLOAT, null).dump(entries)));
+            doc.add(new BinaryDocValuesField(keyStatsField, HtableKeyStats.encode(new long[]{2L}, new float[]{-i}, 1)));
+            writer.addDocument(doc);
+        }
+        writer.commit();
+
+        DirectoryReader reader = DirectoryReader.open(dir);
+        assertEquals(2, reader.leaves().size());
+        LeafReader firstSegment = reader.leaves().get(0).reader();
+        assertNull(firstSegment.getFieldInfos().fieldInfo(keyStatsField));
+        HtableKeyStats stats = HtableKeyStats.get(firstSegment, "ranks");
+        assertNotNull(stats);
+        assertEquals(1, stats.size());
+        assertEquals(numDocs, stats.docCount(stats.find(1)));
+        assertEquals(numDocs - 1, stats.maxValue(stats.find(1)), 0.0f);
+        LeafReader secondSegment = reader.leaves().get(1).reader();
+        stats = HtableKeyStats.get(secondSegment, "ranks");
+        assertEquals(1, stats.size());
+        assertEquals(numDocs, stats.docCount(stats.find(2)));
+        assertEquals(-(numDocs - 1), stats.minValue(stats.find(2)), 0.0f);
+        // only the entries of the chain table are kept
+        BinaryDocValues keyStatsDocValues = secondSegment.getBinaryDocValues(keyStatsField);
+        assertEquals(HtableKeyStats.encode(new long[]{2L}, new float[]{0}, 1), keyStatsDocValues.get(0));
+        for (int i = 1; i < numDocs; i++) {
+            assertEquals(0, keyStatsDocValues.get(i).length);
+        }
+        reader.close();
+
+        writer.forceMerge(1);
+        writer.close();
+        reader = DirectoryReader.open(dir);
+        LeafReader leafReader = getOnlySegmentReader(reader);
+        stats = HtableKeyStats.get(leafReader, "ranks");
+        assertEquals(2, stats.size());
+        assertEquals(numDocs, stats.docCount(stats.find(1)));
+        assertEquals(numDocs, stats.docCount(stats.find(2)));
+        keyStatsDocValues = leafReader.getBinaryDocValues(keyStatsField);
+        for (int i = 0; i < 2 * numDocs; i++) {
+            assertEquals(i == numDocs ? 14 : 0, keyStatsDocValues.get(i).length);
+        }
+        reader.close();
+        dir.close();
+    }
+
+    public void testKeyStatsBloomFilter() throws Exception {
+        HtableKeyStats.Builder builder = new HtableKeyStats.Builder();
+        int numKeys = atLeast(1000);
+        long[] keys = new long[numKeys];
+        float[] values = new float[numKeys];
+        for (int i = 0; i < numKeys; i++) {
+            keys[i] = random().nextLong();
+        }
+        builder.add(HtableKeyStats.encode(keys, values, numKeys));
+        HtableKeyStats stats = builder.build(numKeys - 1);
+        assertFalse(stats.hasRanges());
+        assertEquals(numKeys, stats.size());
+        for (long key : keys) {
+            assertTrue(stats.mayContain(key));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < numKeys; i++) {
+            if (stats.mayContain(random().nextLong())) {
+                falsePositives++;
+            }
+        }
+        // about 1% for 10 bits per key
+        assertTrue("too many false positives: " + falsePositives, falsePositives < numKeys / 20);
+
+        // the filter survives the round trip through the segment metadata
+        Directory dir = newDirectory();
+        IndexOutput out = dir.createOutput("stats", IOContext.DEFAULT);
+        stats.writeTo(out);
+        out.close();
+        IndexInput in = dir.openInput("stats", IOContext.DEFAULT);
+        HtableKeyStats read = HtableKeyStats.read(in, stats.size(), stats.kind(), true);
+        in.close();
+        for (long key : keys) {
+            assertTrue(read.mayContain(key));
+        }
+        dir.close();
+    }
+}
@@ -0,0 +1,268 @@
+package org.elasticsearch.index.mapper.htable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.test.ESTestCase;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+
+public class DirectHtableReaderTests extends ESTestCase {
+    private SortedMap<Long, byte[]> randomEntries(int size) {
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        while (entries.size() < size) {
+            long key = randomLong();
+            entries.put(key, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat((float) key).array());
+        }
+        return entries;
+    }
+
+    private void assertEntries(SortedMap<Long, byte[]> entries, HtableReader reader) {
+        for (Long key : entries.keySet()) {
+            long valueOffset = reader.getValueOffset(key);
+            assertTrue(valueOffset != HtableReader.NOT_FOUND_OFFSET);
+            assertEquals((float) key, reader.getFloat(valueOffset), 0.0f);
+        }
+        for (int i = 0; i < 100; i++) {
+            long key = randomLong();
+            if (!entries.containsKey(key)) {
+                assertEquals(HtableReader.NOT_FOUND_OFFSET, reader.getValueOffset(key));
+            }
+        }
+    }
+
+    private void assertHeapReader(HtableWriter writer, DirectHtableReader reader) {
+        SortedMap<Long, byte[]> entries = randomEntries(randomIntBetween(0, 1000));
+        byte[] data = writer.dump(entries);
+
+        int offset = randomIntBetween(0, 16);
+        byte[] paddedData = new byte[offset + data.length];
+        System.arraycopy(data, 0, paddedData, offset, data.length);
+
+        assertEntries(entries, reader.reset(new BytesRef(paddedData, offset, data.length)));
+    }
+
+    private void assertDirectReader(HtableWriter writer, DirectHtableReader reader) throws Exception {
+        SortedMap<Long, byte[]> entries = randomEntries(randomIntBetween(0, 1000));
+        byte[] data = writer.dump(entries);
+        int offset = randomIntBetween(0, 16);
+
+        try (Directory dir = newDirectory()) {
+            try (IndexOutput output = dir.createOutput("htable", IOContext.DEFAULT)) {
+                output.writeBytes(new byte[offset], offset);
+                output.writeBytes(data, data.length);
+            }
+            try (IndexInput input = dir.openInput("htable", IOContext.DEFAULT)) {
+                reader.reset(input.randomAccessSlice(0, input.length()), offset, data.length);
+                assertEntries(entries, reader);
+            }
+        }
+    }
+
+    public void testDirectReaderFloats() throws Exception {
+        int dims = randomIntBetween(1, 64);
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        SortedMap<Long, float[]> vectors = new TreeMap<>();
+        for (int i = randomIntBetween(1, 100); i > 0; i--) {
+            float[] vector = new float[dims];
+            ByteBuffer value = ByteBuffer.allocate(4 * dims).order(ByteOrder.LITTLE_ENDIAN);
+            for (int d = 0; d < dims; d++) {
+                vector[d] = randomFloat() - 0.5f;
+                value.putFloat(vector[d]);
+            }
+            long key = randomLong();
+            entries.put(key, value.array());
+            vectors.put(key, vector);
+        }
+        byte[] data = new SortedHtable.Writer(4 * dims).dump(entries);
+        int offset = randomIntBetween(0, 16);
+
+        try (Directory dir = newDirectory()) {
+            try (IndexOutput output = dir.createOutput("htable", IOContext.DEFAULT)) {
+                output.writeBytes(new byte[offset], offset);
+                output.writeBytes(data, data.length);
+            }
+            try (IndexInput input = dir.openInput("htable", IOContext.DEFAULT)) {
+                DirectHtableReader reader = new SortedHtable.Reader(4 * dims);
+                reader.reset(input.randomAccessSlice(0, input.length()), offset, data.length);
+                float[] vector = new float[dims];
+                for (Long key : vectors.keySet()) {
+                    reader.getFloats(reader.getValueOffset(key), vector, dims);
+                    assertArrayEquals(vectors.get(key), vector, 0.0f);
+                }
+            }
+        }
+    }
+
+    public void testSortedHeapReader() {
+        assertHeapReader(new SortedHtable.Writer(4), new SortedHtable.Reader(4));
+    }
+
+    public void testSortedDirectReader() throws Exception {
+        assertDirectReader(new SortedHtable.Writer(4), new SortedHtable.Reader(4));
+    }
+
+    private LazyChainHtable.Writer lazyChainWriter() {
+        LazyChainHtable.Layout layout = random().nextBoolean() ? LazyChainHtable.Layout.INTERLEAVED : LazyChainHtable.Layout.SPLIT;
+        return new LazyChainHtable.Writer(4, randomIntBetween(1, 64), randomIntBetween(0, 8), layout);
+    }
+
+    public void testLazyChainHeapReader() {
+        assertHeapReader(lazyChainWriter(), new LazyChainHtable.Reader(4));
+    }
+
+    public void testLazyChainDirectReader() throws Exception {
+        assertDirectReader(lazyChainWriter(), new LazyChainHtable.Reader(4));
+    }
+
+    public void testLazyChainBuckets() {
+        LazyChainHtable.Writer writer = new LazyChainHtable.Writer(4);
+        assertEquals(1, writer.numBuckets(0));
+        assertEquals(1, writer.numBuckets(19));
+        assertEquals(8, writer.numBuckets(100));
+        assertEquals(1024, writer.numBuckets(10240));
+    }
+
+    public void testBlockedHeapReader() {
+        assertHeapReader(new BlockedHtable.Writer(4, randomIntBetween(1, 64)), new BlockedHtable.Reader(4));
+    }
+
+    public void testBlockedDirectReader() throws Exception {
+        assertDirectReader(new BlockedHtable.Writer(4, randomIntBetween(1, 64)), new BlockedHtable.Reader(4));
+    }
+
+    /**
+     * Records the cache lines of the stored value touched by the reads.
+     */
+    private static class CacheLinesInput implements RandomAccessInput {
+        private final DirectHtableReader.BytesInput input = new DirectHtableReader.BytesInput();
+        private final Set<Long> lines = new HashSet<>();
+
+        CacheLinesInput(byte[] bytes) {
+            input.bytes = bytes;
+        }
+
+        private void touch(long pos, int size) {
+            lines.add(pos / BlockedHtable.CACHE_LINE_SIZE);
+            lines.add((pos + size - 1) / BlockedHtable.CACHE_LINE_SIZE);
+        }
+
+        @Override
+        public byte readByte(long pos) {
+            touch(pos, 1);
+            return input.readByte(pos);
+        }
+
+        @Override
+        public short readShort(long pos) {
+            touch(pos, 2);
+            return input.readShort(pos);
+        }
+
+        @Override
+        public int readInt(long pos) {
+            touch(pos, 4);
+            return input.readInt(pos);
+        }
+
+        @Override
+        public long readLong(long pos) {
+            touch(pos, 8);
+            return input.readLong(pos);
+        }
+    }
+
+    public void testBlockedLookupCacheLines() {
+        int blockSize = randomIntBetween(1, BlockedHtable.KEYS_PER_LINE);
+        int maxSize = BlockedHtable.MAX_TOP_INDEX_IN_LINE * BlockedHtable.KEYS_PER_LINE * blockSize;
+        SortedMap<Long, byte[]> entries = randomEntries(randomIntBetween(1, maxSize));
+        byte[] table = new BlockedHtable.Writer(4, blockSize).dump(entries);
+        // the stored value starts at a cache line and the table follows its header
+        byte[] value = new byte[HtableHeader.SIZE + table.length];
+        System.arraycopy(table, 0, value, HtableHeader.SIZE, table.length);
+        CacheLinesInput input = new CacheLinesInput(value);
+        DirectHtableReader reader = new BlockedHtable.Reader(4).reset(input, HtableHeader.SIZE, table.length);
+
+        Set<Long> keys = new HashSet<>(entries.keySet());
+        for (int i = 0; i < 100; i++) {
+            keys.add(randomLong());
+        }
+        for (Long key : keys) {
+            input.lines.clear();
+            long valueOffset = reader.getValueOffset(key);
+            // the top index shares the first line with the header, besides it a lookup reads a fence page
+            // and the keys of a block
+            input.lines.remove(0L);
+            assertThat(input.lines.size(), lessThanOrEqualTo(2));
+            if (valueOffset != HtableReader.NOT_FOUND_OFFSET) {
+                input.lines.clear();
+                assertEquals((float) key, reader.getFloat(valueOffset), 0.0f);
+                assertEquals(1, input.lines.size());
+            }
+        }
+    }
+
+    private void assertReadEntries(HtableWriter writer, DirectHtableReader reader) {
+        SortedMap<Long, byte[]> entries = randomEntries(randomIntBetween(0, 1000));
+        byte[] data = writer.dump(entries);
+        SortedMap<Long, byte[]> readEntries = reader.reset(new BytesRef(data)).entries();
+        assertEquals(entries.keySet(), readEntries.keySet());
+        for (Long key : entries.keySet()) {
+            assertArrayEquals(entries.get(key), readEntries.get(key));
+        }
+
+        // a truncated table is rejected
+        if (!entries.isEmpty()) {
+            try {
+                reader.reset(new BytesRef(data, 0, data.length - 1)).entries();
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage(), containsString("bytes"));
+            }
+        }
+    }
+
+    public void testSortedEntries() {
+        assertReadEntries(new SortedHtable.Writer(4), new SortedHtable.Reader(4));
+    }
+
+    public void testLazyChainEntries() {
+        assertReadEntries(lazyChainWriter(), new LazyChainHtable.Reader(4));
+    }
+
+    public void testBlockedEntries() {
+        assertReadEntries(new BlockedHtable.Writer(4, randomIntBetween(1, 64)), new BlockedHtable.Reader(4));
+    }
+
+    public void testLazyChainEntriesWrongBucket() {
+        SortedMap<Long, byte[]> entries = randomEntries(100);
+        byte[] data = new LazyChainHtable.Writer(4, 10, 2).dump(entries);
+        // the first key is replaced by a key of another bucket
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int entriesOffset = LazyChainHtable.HEADER_SIZE + 4 * (8 + 1);
+        int bucket = LazyChainHtable.hash(buffer.getLong(entriesOffset)) & 7;
+        long key = 0;
+        while ((LazyChainHtable.hash(key) & 7) == bucket) {
+            key++;
+        }
+        buffer.putLong(entriesOffset, key);
+        try {
+            new LazyChainHtable.Reader(4).reset(new BytesRef(data)).entries();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("wrong bucket"));
+        }
+    }
+}
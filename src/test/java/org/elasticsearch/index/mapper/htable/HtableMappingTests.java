@@ -4,10 +4,17 @@ import net.uaprom.htable.HashTable;
 import net.uaprom.htable.TrieHashTable;
 import net.uaprom.htable.ChainHashTable;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
 
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.Version;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.settings.Settings;
@@ -16,9 +23,13 @@ import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.index.mapper.DocumentMapper;
 import org.elasticsearch.index.mapper.DocumentMapperParser;
 import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.codec.htable.HtableKeyStats;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.mapper.MergeResult;
 import org.elasticsearch.index.mapper.ParseContext;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 
 
@@ -53,8 +64,9 @@ public class HtableMappingTests extends ESSingleNodeTestCase {
 
         long[] keys = new long[]{ 1L, 2L, 3L };
         byte[] values = new byte[]{ (byte) 101, (byte) 102, (byte) 103 };
-        BytesRef binaryValue = new BytesRef(new ChainHashTable.Writer(HashTable.ValueSize.BYTE)
-                                            .dumpBytes(keys, values));
+        BytesRef binaryValue = new BytesRef(HtableHeader.write(HtableFormat.CHAIN, HtableFieldMapper.ValueType.BYTE,
+                                                               new ChainHashTable.Writer(HashTable.ValueSize.BYTE)
+                                                                   .dumpBytes(keys, values)));
         BytesRef indexedValue;
         XContentBuilder fieldDataBuilder;
         ParseContext.Document doc;
@@ -113,7 +125,8 @@ public class HtableMappingTests extends ESSingleNodeTestCase {
 
         long[] keys = new long[]{ 1L, 2L, 3L };
         float[] values = new float[]{ 101.1f, 102.2f, 103.3f };
-        byte[] binaryValue = new ChainHashTable.Writer(HashTable.ValueSize.INT).dumpFloats(keys, values);
+        byte[] binaryValue = HtableHeader.write(HtableFormat.CHAIN, HtableFieldMapper.ValueType.FLOAT,
+                                                new ChainHashTable.Writer(HashTable.ValueSize.INT).dumpFloats(keys, values));
 
         XContentBuilder fieldDataBuilder = XContentFactory.jsonBuilder()
             .startObject()
@@ -162,8 +175,9 @@ public class HtableMappingTests extends ESSingleNodeTestCase {
 
         long[] keys = new long[]{ 1L, 2L, 3L };
         byte[] values = new byte[]{ (byte) 101, (byte) 102, (byte) 103 };
-        BytesRef binaryValue = new BytesRef(new TrieHashTable.Writer(HashTable.ValueSize.BYTE, TrieHashTable.BitmaskSize.SHORT)
-                                            .dumpBytes(keys, values));
+        BytesRef binaryValue = new BytesRef(HtableHeader.write(HtableFormat.TRIE, HtableFieldMapper.ValueType.BYTE,
+                                                               new TrieHashTable.Writer(HashTable.ValueSize.BYTE, TrieHashTable.BitmaskSize.SHORT)
+                                                                   .dumpBytes(keys, values)));
         BytesRef indexedValue;
         XContentBuilder fieldDataBuilder;
         ParseContext.Document doc;
@@ -225,7 +239,9 @@ public class HtableMappingTests extends ESSingleNodeTestCase {
 
         long[] keys = new long[]{ 1L, 2L, 3L };
         float[] values = new float[]{ 101.1f, 102.2f, 103.3f };
-        byte[] binaryValue = new TrieHashTable.Writer(HashTable.ValueSize.INT, TrieHashTable.BitmaskSize.SHORT).dumpFloats(keys, values);
+        byte[] binaryValue = HtableHeader.write(HtableFormat.TRIE, HtableFieldMapper.ValueType.FLOAT,
+                                                new TrieHashTable.Writer(HashTable.ValueSize.INT, TrieHashTable.BitmaskSize.SHORT)
+                                                    .dumpFloats(keys, values));
 
         XContentBuilder fieldDataBuilder = XContentFactory.jsonBuilder()
             .startObject()
@@ -241,6 +257,725 @@ public class HtableMappingTests extends ESSingleNodeTestCase {
         assertEquals(new BytesRef(binaryValue), indexedValue);
     }
 
+    public void testBlockedHtableFloatValueMapping() throws Exception {
+        Settings settings = Settings.settingsBuilder()
+            .put("path.home", createTempDir().toString())
+            .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .build();
+
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("category_ranks")
+                            .field("type", "htable")
+                            .field("value_type", "float")
+                            .startObject("format_params")
+                                .field("format", "blocked")
+                                .field("block_size", 2)
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        DocumentMapper mapper = mapperParser.parse(mapping);
+
+        FieldMapper fieldMapper = mapper.mappers().smartNameFieldMapper("category_ranks");
+        assertThat(fieldMapper, instanceOf(HtableFieldMapper.class));
+        assertEquals(HtableFormat.BLOCKED, ((HtableFieldMapper.HtableFieldType) fieldMapper.fieldType()).format());
+
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        entries.put(1L, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(101.1f).array());
+        entries.put(2L, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(102.2f).array());
+        entries.put(3L, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(103.3f).array());
+        byte[] binaryValue = HtableHeader.write(HtableFormat.BLOCKED, HtableFieldMapper.ValueType.FLOAT,
+                                                new BlockedHtable.Writer(4, 2).dump(entries));
+
+        XContentBuilder fieldDataBuilder = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("category_ranks")
+                    .array("keys", 1L, 2L, 3L)
+                    .array("values", 101.1, 102.2, 103.3)
+                .endObject()
+            .endObject();
+
+        ParseContext.Document doc = mapper.parse("test", "product", "1", fieldDataBuilder.bytes()).rootDoc();
+
+        BytesRef indexedValue = doc.getBinaryValue("category_ranks");
+        assertEquals(new BytesRef(binaryValue), indexedValue);
+    }
+
+    public void testInvalidBlockSize() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("category_ranks")
+                            .field("type", "htable")
+                            .startObject("format_params")
+                                .field("format", "blocked")
+                                .field("block_size", 0)
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        try {
+            mapperParser.parse(mapping);
+            fail("expected MapperParsingException");
+        } catch (MapperParsingException e) {
+            assertThat(e.getMessage(), containsString("[block_size] must be positive"));
+        }
+    }
+
+    public void testInvalidLazyChainLayout() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("category_ranks")
+                            .field("type", "htable")
+                            .startObject("format_params")
+                                .field("format", "lazy_chain")
+                                .field("layout", "columns")
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        try {
+            mapperParser.parse(mapping);
+            fail("expected MapperParsingException");
+        } catch (MapperParsingException e) {
+            assertThat(e.getMessage(), containsString("[layout] can be one of [interleaved, split]; got [columns]"));
+        }
+    }
+
+    public void testKeyStats() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("category_ranks")
+                            .field("type", "htable")
+                            .field("value_type", "short")
+                            .field("key_stats", true)
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        DocumentMapper mapper = mapperParser.parse(mapping);
+        assertThat(mapper.mappingSource().string(), containsString("\"key_stats\":true"));
+
+        XContentBuilder fieldDataBuilder = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("category_ranks")
+                    .array("keys", 2L, 1L)
+                    .array("values", 30000, 7)
+                .endObject()
+            .endObject();
+        ParseContext.Document doc = mapper.parse("test", "product", "1", fieldDataBuilder.bytes()).rootDoc();
+        assertEquals(HtableKeyStats.encode(new long[]{1L, 2L}, new float[]{7.0f, 30000.0f}, 2),
+                     doc.getBinaryValue(HtableKeyStats.fieldName("category_ranks")));
+
+        String updatedMapping = mapping.replace("\"key_stats\":true", "\"key_stats\":false");
+        MergeResult mergeResult = mapper.merge(mapperParser.parse(updatedMapping).mapping(), true, false);
+        assertTrue(mergeResult.hasConflicts());
+        assertThat(mergeResult.buildConflicts()[0], containsString("[key_stats]"));
+    }
+
+    public void testChangeFormat() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("category_ranks")
+                            .field("type", "htable")
+                            .field("value_type", "float")
+                            .startObject("format_params")
+                                .field("format", "sorted")
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        DocumentMapper mapper = mapperParser.parse(mapping);
+
+        XContentBuilder fieldDataBuilder = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("category_ranks")
+                    .array("keys", 1L, 2L)
+                    .array("values", 1.5f, 2.5f)
+                .endObject()
+            .endObject();
+        BytesRef sortedValue = mapper.parse("test", "product", "1", fieldDataBuilder.bytes()).rootDoc()
+            .getBinaryValue("category_ranks");
+
+        String updatedMapping = mapping.replace("\"value_type\":\"float\"", "\"value_type\":\"int\"");
+        MergeResult mergeResult = mapper.merge(mapperParser.parse(updatedMapping).mapping(), true, false);
+        assertTrue(mergeResult.hasConflicts());
+        assertThat(mergeResult.buildConflicts()[0], containsString("[value_type]"));
+
+        updatedMapping = mapping.replace("\"format\":\"sorted\"", "\"format\":\"lazy_chain\"");
+        mergeResult = mapper.merge(mapperParser.parse(updatedMapping).mapping(), false, false);
+        assertFalse(mergeResult.hasConflicts());
+
+        // new tables are written with the new format, existing tables are still read with their own format
+        HtableFieldMapper.HtableFieldType fieldType =
+            (HtableFieldMapper.HtableFieldType) mapper.mappers().smartNameFieldMapper("category_ranks").fieldType();
+        assertEquals(HtableFormat.LAZY_CHAIN, fieldType.format());
+        BytesRef lazyChainValue = mapper.parse("test", "product", "2", fieldDataBuilder.bytes()).rootDoc()
+            .getBinaryValue("category_ranks");
+        assertEquals(HtableFormat.LAZY_CHAIN, fieldType.header(lazyChainValue).format());
+        assertEquals(HtableFormat.SORTED, fieldType.header(sortedValue).format());
+        for (BytesRef value : Arrays.asList(sortedValue, lazyChainValue)) {
+            HtableReader reader = fieldType.hashTableReader(value);
+            assertEquals(2.5f, reader.getFloat(reader.getValueOffset(2L)), 0.0f);
+        }
+    }
+
+    public void testMergeFormat() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("category_ranks")
+                            .field("type", "htable")
+                            .field("value_type", "float")
+                            .field("merge_format", "lazy_chain")
+                            .startObject("format_params")
+                                .field("format", "sorted")
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        DocumentMapper mapper = mapperParser.parse(mapping);
+        assertThat(mapper.mappingSource().string(), containsString("\"merge_format\":\"lazy_chain\""));
+
+        XContentBuilder fieldDataBuilder = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("category_ranks")
+                    .array("keys", 1L, 2L)
+                    .array("values", 1.5f, 2.5f)
+                .endObject()
+            .endObject();
+        ParseContext.Document doc = mapper.parse("test", "product", "1", fieldDataBuilder.bytes()).rootDoc();
+        BytesRef indexedValue = doc.getBinaryValue("category_ranks");
+        HtableHeader header = HtableHeader.readRequired(indexedValue);
+        assertEquals(HtableFormat.SORTED, header.format());
+        assertEquals(HtableFormat.LAZY_CHAIN, header.mergeFormat());
+        // the document is marked as having a table with a header
+        assertEquals(1L, doc.getField(HtableHeader.fieldName("category_ranks")).numericValue());
+
+        // a table built with a header gets the merge format of the mapping
+        byte[] prebuiltTable = HtableHeader.write(HtableFormat.SORTED, HtableFieldMapper.ValueType.FLOAT,
+                                                  Arrays.copyOfRange(indexedValue.bytes,
+                                                                     indexedValue.offset + HtableHeader.SIZE,
+                                                                     indexedValue.offset + indexedValue.length));
+        XContentBuilder source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("category_ranks")
+                    .field("table", prebuiltTable)
+                .endObject()
+            .endObject();
+        doc = mapper.parse("test", "product", "2", source.bytes()).rootDoc();
+        assertEquals(indexedValue, doc.getBinaryValue("category_ranks"));
+
+        try {
+            mapperParser.parse(mapping.replace("\"format\":\"sorted\"", "\"format\":\"chain\""));
+            fail("expected MapperParsingException");
+        } catch (MapperParsingException e) {
+            assertThat(e.getMessage(), containsString("[merge_format] for tables of format [chain] requires [key_stats]"));
+        }
+        mapper = mapperParser.parse(mapping.replace("\"format\":\"sorted\"", "\"format\":\"chain\"")
+                                        .replace("\"merge_format\"", "\"key_stats\":true,\"merge_format\""));
+        assertThat(mapper.mappingSource().string(), containsString("\"merge_format\":\"lazy_chain\""));
+
+        // the merge format takes parameters like the format of the field
+        String mappingWithParams = mapping.replace("\"merge_format\":\"lazy_chain\"",
+                                                   "\"merge_format\":{\"format\":\"blocked\",\"block_size\":16}");
+        mapper = mapperParser.parse(mappingWithParams);
+        assertThat(mapper.mappingSource().string(), containsString("\"merge_format\":{\"format\":\"blocked\",\"block_size\":16}"));
+        HtableFieldMapper.HtableFieldType fieldType =
+            (HtableFieldMapper.HtableFieldType) mapper.mappers().smartNameFieldMapper("category_ranks").fieldType();
+        assertEquals(HtableFormat.BLOCKED, fieldType.mergeFormat());
+        assertNotNull(fieldType.mergeWriter());
+        try {
+            mapperParser.parse(mappingWithParams.replace("\"block_size\":16", "\"block_size\":0"));
+            fail("expected MapperParsingException");
+        } catch (MapperParsingException e) {
+            assertThat(e.getMessage(), containsString("[block_size] must be positive"));
+        }
+        try {
+            mapperParser.parse(mappingWithParams.replace("\"format\":\"blocked\"", "\"format\":\"unknown\""));
+            fail("expected MapperParsingException");
+        } catch (MapperParsingException e) {
+            assertThat(e.getMessage(), containsString("[merge_format] can be one of"));
+        }
+    }
+
+    public void testStringKeys() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("category_ranks")
+                            .field("type", "htable")
+                            .field("key_type", "string")
+                            .field("key_stats", true)
+                            .startObject("format_params")
+                                .field("format", "sorted")
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        DocumentMapper mapper = mapperParser.parse(mapping);
+        assertThat(mapper.mappingSource().string(), containsString("\"key_type\":\"string\""));
+        HtableFieldMapper.HtableFieldType fieldType =
+            (HtableFieldMapper.HtableFieldType) mapper.mappers().smartNameFieldMapper("category_ranks").fieldType();
+        assertEquals(HtableFieldMapper.KeyType.STRING, fieldType.keyType());
+
+        XContentBuilder fieldDataBuilder = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("category_ranks")
+                    .array("keys", "phones", "laptops", 12)
+                    .array("values", 1.5f, 2.5f, 3.5f)
+                .endObject()
+            .endObject();
+        ParseContext.Document doc = mapper.parse("test", "product", "1", fieldDataBuilder.bytes()).rootDoc();
+        HtableReader reader = fieldType.hashTableReader(doc.getBinaryValue("category_ranks"));
+        assertEquals(2.5f, reader.getFloat(reader.getValueOffset(fieldType.keyType().key("laptops"))), 0.0f);
+        assertEquals(3.5f, reader.getFloat(reader.getValueOffset(fieldType.keyType().key("12"))), 0.0f);
+        assertEquals(HtableReader.NOT_FOUND_OFFSET, reader.getValueOffset(12L));
+        assertEquals(fieldType.keyType().key("phones"), HtableKey.of("phones").key(HtableFieldMapper.KeyType.STRING));
+        // the hash must never change, tables are stored with it
+        assertEquals(2269780268950828005L, fieldType.keyType().key("phones"));
+        assertEquals(12L, HtableKey.of("12").key(HtableFieldMapper.KeyType.LONG));
+
+        try {
+            HtableKey.of("phones").key(HtableFieldMapper.KeyType.LONG);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("Key [phones] is not a number"));
+        }
+
+        String updatedMapping = mapping.replace("\"key_type\":\"string\"", "\"key_type\":\"long\"");
+        MergeResult mergeResult = mapper.merge(mapperParser.parse(updatedMapping).mapping(), true, false);
+        assertTrue(mergeResult.hasConflicts());
+        assertThat(mergeResult.buildConflicts()[0], containsString("[key_type]"));
+    }
+
+    public void testTupleValues() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("category_ranks")
+                            .field("type", "htable")
+                            .field("value_type", new String[]{"float", "int", "byte"})
+                            .startObject("format_params")
+                                .field("format", "lazy_chain")
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        DocumentMapper mapper = mapperParser.parse(mapping);
+        assertThat(mapper.mappingSource().string(), containsString("\"value_type\":[\"float\",\"int\",\"byte\"]"));
+        HtableFieldMapper.HtableFieldType fieldType =
+            (HtableFieldMapper.HtableFieldType) mapper.mappers().smartNameFieldMapper("category_ranks").fieldType();
+        assertEquals(9, fieldType.valueSize());
+        assertEquals(HtableFieldMapper.ValueType.INT, fieldType.valueType(1));
+        assertEquals(8, fieldType.valueOffset(2));
+
+        XContentBuilder fieldDataBuilder = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("category_ranks")
+                    .array("keys", 1L, 2L)
+                    .startArray("values")
+                        .startArray().value(1.5f).value(-3).value(200).endArray()
+                        .startArray().value(2.5f).value(7).value(1).endArray()
+                    .endArray()
+                .endObject()
+            .endObject();
+        BytesRef indexedValue = mapper.parse("test", "product", "1", fieldDataBuilder.bytes()).rootDoc()
+            .getBinaryValue("category_ranks");
+        assertNull(HtableHeader.read(indexedValue).valueType());
+        HtableReader reader = fieldType.hashTableReader(indexedValue);
+        long valueOffset = reader.getValueOffset(1L);
+        assertEquals(1.5f, reader.getFloat(valueOffset), 0.0f);
+        assertEquals(-3, reader.getInt(valueOffset + fieldType.valueOffset(1)));
+        assertEquals(200.0f, fieldType.valueType(2).getValue(reader, reader.getValueOffset(1L) + fieldType.valueOffset(2)), 0.0f);
+        assertEquals(7, reader.getInt(reader.getValueOffset(2L) + fieldType.valueOffset(1)));
+        assertArrayEquals(fieldType.tupleType().encode(2.5f, 7, 1), fieldType.entries(indexedValue).get(2L));
+
+        // the table of a scalar value type does not match
+        byte[] scalarTable = HtableHeader.write(HtableFormat.LAZY_CHAIN, HtableFieldMapper.ValueType.FLOAT,
+                                                HtableFormat.LAZY_CHAIN.writer(HtableFieldMapper.ValueType.FLOAT, null)
+                                                    .dump(new TreeMap<Long, byte[]>()));
+        XContentBuilder source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("category_ranks")
+                    .field("table", scalarTable)
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "value type [float] does not match value type [[float, int, byte]]");
+
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("category_ranks")
+                    .field("table", indexedValue.bytes)
+                    .field("value_type", new String[]{"float", "int", "byte"})
+                .endObject()
+            .endObject();
+        ParseContext.Document doc = mapper.parse("test", "product", "2", source.bytes()).rootDoc();
+        assertEquals(indexedValue, doc.getBinaryValue("category_ranks"));
+
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("category_ranks")
+                    .array("keys", 1L)
+                    .startArray("values")
+                        .startArray().value(1.5f).value(3).endArray()
+                    .endArray()
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "must have 3 numbers");
+
+        try {
+            mapperParser.parse(mapping.replace("\"format\":\"lazy_chain\"", "\"format\":\"chain\""));
+            fail("expected MapperParsingException");
+        } catch (MapperParsingException e) {
+            assertThat(e.getMessage(), containsString("only support values of 1, 2, 4 or 8 bytes; got [9] bytes"));
+        }
+
+        try {
+            mapperParser.parse(mapping.replace("\"format_params\"", "\"merge_format\":\"sorted\",\"format_params\""));
+            fail("expected MapperParsingException");
+        } catch (MapperParsingException e) {
+            assertThat(e.getMessage(), containsString("[merge_format] cannot be set for tuple and vector values"));
+        }
+
+        String updatedMapping = mapping.replace("[\"float\",\"int\",\"byte\"]", "[\"float\",\"int\"]");
+        MergeResult mergeResult = mapper.merge(mapperParser.parse(updatedMapping).mapping(), true, false);
+        assertTrue(mergeResult.hasConflicts());
+        assertThat(mergeResult.buildConflicts()[0], containsString("[value_type]"));
+    }
+
+    public void testVectorValues() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("embeddings")
+                            .field("type", "htable")
+                            .field("value_type", "float")
+                            .field("dims", 4)
+                            .startObject("format_params")
+                                .field("format", "sorted")
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        DocumentMapper mapper = mapperParser.parse(mapping);
+        assertThat(mapper.mappingSource().string(), containsString("\"dims\":4"));
+        HtableFieldMapper.HtableFieldType fieldType =
+            (HtableFieldMapper.HtableFieldType) mapper.mappers().smartNameFieldMapper("embeddings").fieldType();
+        assertEquals(4, fieldType.dims());
+        assertEquals(16, fieldType.valueSize());
+
+        XContentBuilder fieldDataBuilder = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("embeddings")
+                    .array("keys", 1L, 2L)
+                    .startArray("values")
+                        .startArray().value(0.5f).value(-1.0f).value(0.0f).value(2.0f).endArray()
+                        .startArray().value(1.0f).value(1.0f).value(1.0f).value(1.0f).endArray()
+                    .endArray()
+                .endObject()
+            .endObject();
+        BytesRef indexedValue = mapper.parse("test", "product", "1", fieldDataBuilder.bytes()).rootDoc()
+            .getBinaryValue("embeddings");
+        HtableReader reader = fieldType.hashTableReader(indexedValue);
+        float[] vector = new float[4];
+        reader.getFloats(reader.getValueOffset(1L), vector, vector.length);
+        assertArrayEquals(new float[]{0.5f, -1.0f, 0.0f, 2.0f}, vector, 0.0f);
+        reader.getFloats(reader.getValueOffset(2L), vector, vector.length);
+        assertArrayEquals(new float[]{1.0f, 1.0f, 1.0f, 1.0f}, vector, 0.0f);
+
+        XContentBuilder source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("embeddings")
+                    .array("keys", 1L)
+                    .startArray("values")
+                        .startArray().value(0.5f).value(-1.0f).endArray()
+                    .endArray()
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "Value of type float[4] must have 4 numbers");
+
+        try {
+            mapperParser.parse(mapping.replace("\"value_type\":\"float\"", "\"value_type\":\"int\""));
+            fail("expected MapperParsingException");
+        } catch (MapperParsingException e) {
+            assertThat(e.getMessage(), containsString("[dims] can only be set for [float] values"));
+        }
+
+        try {
+            mapperParser.parse(mapping.replace("\"dims\":4", "\"dims\":0"));
+            fail("expected MapperParsingException");
+        } catch (MapperParsingException e) {
+            assertThat(e.getMessage(), containsString("[dims] must be positive; got [0]"));
+        }
+
+        String updatedMapping = mapping.replace("\"dims\":4", "\"dims\":8");
+        MergeResult mergeResult = mapper.merge(mapperParser.parse(updatedMapping).mapping(), true, false);
+        assertTrue(mergeResult.hasConflicts());
+    }
+
+    public void testSerializedTable() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("chain_ranks")
+                            .field("type", "htable")
+                            .field("value_type", "float")
+                            .field("key_stats", true)
+                        .endObject()
+                        .startObject("sorted_ranks")
+                            .field("type", "htable")
+                            .field("value_type", "float")
+                            .field("key_stats", true)
+                            .startObject("format_params")
+                                .field("format", "sorted")
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        DocumentMapper mapper = mapperParser.parse(mapping);
+
+        long[] keys = new long[]{ 1L, 2L, 3L };
+        float[] values = new float[]{ 101.1f, 102.2f, 103.3f };
+        byte[] chainTable = new ChainHashTable.Writer(HashTable.ValueSize.INT).dumpFloats(keys, values);
+        CRC32 crc32 = new CRC32();
+        crc32.update(chainTable, 0, chainTable.length);
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            entries.put(keys[i], ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(values[i]).array());
+        }
+        byte[] sortedTable = new SortedHtable.Writer(4).dump(entries);
+
+        // binary in SMILE, the sorted table is decoded and checked without declarations
+        XContentBuilder source = XContentFactory.smileBuilder()
+            .startObject()
+                .startObject("chain_ranks")
+                    .field("table", chainTable)
+                    .field("format", "chain")
+                    .field("value_type", "float")
+                    .field("crc32", crc32.getValue())
+                .endObject()
+                .startObject("sorted_ranks")
+                    .field("table", sortedTable)
+                .endObject()
+            .endObject();
+        ParseContext.Document doc = mapper.parse("test", "product", "1", source.bytes()).rootDoc();
+        // the tables are written without a header so they get the header of the mapping
+        assertEquals(new BytesRef(HtableHeader.write(HtableFormat.CHAIN, HtableFieldMapper.ValueType.FLOAT, chainTable)),
+                     doc.getBinaryValue("chain_ranks"));
+        assertEquals(HtableKeyStats.UNKNOWN_ENTRIES, doc.getBinaryValue(HtableKeyStats.fieldName("chain_ranks")));
+        assertEquals(new BytesRef(HtableHeader.write(HtableFormat.SORTED, HtableFieldMapper.ValueType.FLOAT, sortedTable)),
+                     doc.getBinaryValue("sorted_ranks"));
+        // the codec decodes the sorted table for the key statistics itself
+        assertNull(doc.getField(HtableKeyStats.fieldName("sorted_ranks")));
+
+        // base64 in JSON
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("sorted_ranks")
+                    .field("table", sortedTable)
+                    .field("crc32", new CRC32().getValue())
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "Checksum of serialized table for field [sorted_ranks] does not match");
+
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("chain_ranks")
+                    .field("table", chainTable)
+                    .field("format", "chain")
+                    .field("value_type", "int")
+                    .field("crc32", crc32.getValue())
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "does not match value type [float]");
+
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("chain_ranks")
+                    .field("table", chainTable)
+                    .field("format", "trie")
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "does not match format [chain] of field [chain_ranks]");
+
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .field("chain_ranks", chainTable)
+            .endObject();
+        assertSerializedTableFails(mapper, source, "must declare [format], [value_type] and [crc32]");
+
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("sorted_ranks")
+                    .field("table", sortedTable)
+                    .array("keys", 1L)
+                    .array("values", 1.0f)
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "Either 'table' or 'keys' and 'values' can be set");
+
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("sorted_ranks")
+                    .field("table", Arrays.copyOf(sortedTable, sortedTable.length - 1))
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "Invalid serialized table for field [sorted_ranks]");
+    }
+
+    public void testSerializedTableHeader() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("product")
+                    .startObject("properties")
+                        .startObject("ranks")
+                            .field("type", "htable")
+                            .field("value_type", "float")
+                            .startObject("format_params")
+                                .field("format", "blocked")
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject()
+            .string();
+
+        DocumentMapperParser mapperParser = createIndex("test").mapperService().documentMapperParser();
+        mapperParser.putTypeParser("htable", new HtableFieldMapper.TypeParser());
+        DocumentMapper mapper = mapperParser.parse(mapping);
+        HtableFieldMapper.HtableFieldType fieldType =
+            (HtableFieldMapper.HtableFieldType) mapper.mappers().smartNameFieldMapper("ranks").fieldType();
+
+        SortedMap<Long, byte[]> entries = new TreeMap<>();
+        entries.put(1L, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(101.1f).array());
+        entries.put(2L, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(102.2f).array());
+        byte[] sortedTable = HtableHeader.write(HtableFormat.SORTED, HtableFieldMapper.ValueType.FLOAT,
+                                                new SortedHtable.Writer(4).dump(entries));
+
+        // a table of another format is kept as is and read with the format of its header
+        XContentBuilder source = XContentFactory.smileBuilder()
+            .startObject()
+                .startObject("ranks")
+                    .field("table", sortedTable)
+                    .field("format", "sorted")
+                .endObject()
+            .endObject();
+        BytesRef indexedValue = mapper.parse("test", "product", "1", source.bytes()).rootDoc().getBinaryValue("ranks");
+        assertEquals(new BytesRef(sortedTable), indexedValue);
+        assertEquals(HtableFormat.SORTED, fieldType.header(indexedValue).format());
+        HtableReader reader = fieldType.hashTableReader(indexedValue);
+        assertEquals(102.2f, reader.getFloat(reader.getValueOffset(2L)), 0.0f);
+        assertEquals(HtableReader.NOT_FOUND_OFFSET, reader.getValueOffset(3L));
+        assertEquals(entries.keySet(), fieldType.entries(indexedValue).keySet());
+
+        // a table without a header is read with the format of the mapping
+        byte[] blockedTable = new BlockedHtable.Writer(4).dump(entries);
+        assertEquals(HtableFormat.BLOCKED, fieldType.header(new BytesRef(blockedTable)).format());
+        assertEquals(entries.keySet(), fieldType.entries(new BytesRef(blockedTable)).keySet());
+
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("ranks")
+                    .field("table", HtableHeader.write(HtableFormat.SORTED, HtableFieldMapper.ValueType.INT,
+                                                       new SortedHtable.Writer(4).dump(entries)))
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "Serialized table of value type [int] does not match value type [float]");
+
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("ranks")
+                    .field("table", sortedTable)
+                    .field("format", "blocked")
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "Serialized table of format [blocked] does not match format [sorted] of the table header");
+
+        byte[] unknownVersion = Arrays.copyOf(sortedTable, sortedTable.length);
+        unknownVersion[4] = HtableHeader.VERSION + 1;
+        source = XContentFactory.jsonBuilder()
+            .startObject()
+                .startObject("ranks")
+                    .field("table", unknownVersion)
+                .endObject()
+            .endObject();
+        assertSerializedTableFails(mapper, source, "Unsupported version [2] of hash table header");
+    }
+
+    private void assertSerializedTableFails(DocumentMapper mapper, XContentBuilder source, String message) throws Exception {
+        try {
+            mapper.parse("test", "product", "1", source.bytes());
+            fail("expected MapperParsingException");
+        } catch (MapperParsingException e) {
+            assertThat(ExceptionsHelper.detailedMessage(e), containsString(message));
+        }
+    }
+
     // public void testListOfListValues() {
     //     XContentBuilder fieldDataBuilder = XContentFactory.jsonBuilder()
     //         .startObject()
@@ -0,0 +1,233 @@
+package org.elasticsearch.index.query.functionscore.htable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.mapper.htable.HtableFieldMapper;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.plugin.mapper.MapperHtablePlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+import org.elasticsearch.test.ESIntegTestCase.Scope;
+
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.constantScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.index.query.functionscore.htable.HtableValueFunctionBuilder.htableValueFunction;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertFailures;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertOrderedSearchHits;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchHit;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.hasScore;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.closeTo;
+
+
+@ClusterScope(scope = Scope.SUITE, numDataNodes = 1)
+public class HtableValueFunctionTests extends ESIntegTestCase {
+    @Override
+    public Settings indexSettings() {
+        return Settings.builder()
+            .put(SETTING_NUMBER_OF_SHARDS, 1)
+            .put(SETTING_NUMBER_OF_REPLICAS, 0)
+            .build();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return pluginList(MapperHtablePlugin.class);
+    }
+
+    private void createIndex(int numDocs) throws Exception {
+        assertAcked(prepareCreate("test")
+                    .setSettings(Settings.builder().put("index.codec", randomFrom("default", "htable")))
+                    .addMapping("type", XContentFactory.jsonBuilder()
+                                .startObject().startObject("type").startObject("properties")
+                                    .startObject("title")
+                                        .field("type", "string")
+                                    .endObject()
+                                    .startObject("ranks")
+                                        .field("type", "htable")
+                                        .field("value_type", "float")
+                                        .startObject("format_params")
+                                            .field("format", randomFrom("chain", "sorted", "lazy_chain", "blocked"))
+                                        .endObject()
+                                    .endObject()
+                                .endObject().endObject().endObject()));
+
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            indexBuilders.add(client()
+                              .prepareIndex("test", "type", Integer.toString(i))
+                              .setSource(XContentFactory.jsonBuilder()
+                                         .startObject()
+                                             .field("title", "rec " + i)
+                                             .startObject("ranks")
+                                                 .array("keys", 1, 2)
+                                                 .array("values", i * 10.0f, numDocs - i)
+                                             .endObject()
+                                         .endObject()));
+        }
+        indexBuilders.add(client()
+                          .prepareIndex("test", "type", Integer.toString(numDocs))
+                          .setSource(XContentFactory.jsonBuilder().startObject().field("title", "no table").endObject()));
+        indexRandom(true, indexBuilders);
+    }
+
+    public void testHtableValue() throws Exception {
+        createIndex(20);
+
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(htableValueFunction("ranks", 1)))
+            .setSize(3)
+            .get();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, 21);
+        assertOrderedSearchHits(searchResponse, "19", "18", "17");
+        assertSearchHit(searchResponse, 1, hasScore(190.0f));
+
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(htableValueFunction("ranks", 1)))
+            .setSize(21)
+            .get();
+        assertNoFailures(searchResponse);
+        assertSearchHit(searchResponse, 21, hasScore(0.0f));
+
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(htableValueFunction("ranks", 2)
+                                         .factor(4.0f)
+                                         .modifier(HtableValueTransform.Modifier.SQRT)
+                                         .missing(100.0)))
+            .setSize(3)
+            .get();
+        assertNoFailures(searchResponse);
+        assertOrderedSearchHits(searchResponse, "20", "0", "1");
+        assertSearchHit(searchResponse, 1, hasScore((float) Math.sqrt(4.0 * 100)));
+        assertSearchHit(searchResponse, 2, hasScore((float) Math.sqrt(4.0 * 20)));
+        assertSearchHit(searchResponse, 3, hasScore((float) Math.sqrt(4.0 * 19)));
+
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(htableValueFunction("ranks", 3).missing(0.5)))
+            .get();
+        assertNoFailures(searchResponse);
+        assertSearchHit(searchResponse, 1, hasScore(0.5f));
+    }
+
+    public void testTransform() throws Exception {
+        createIndex(20);
+
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(htableValueFunction("ranks", 1)
+                                         .modifier(HtableValueTransform.Modifier.SATURATION)
+                                         .pivot(100.0)
+                                         .min(0.1)))
+            .setSize(21)
+            .get();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, 21);
+        assertEquals("19", searchResponse.getHits().getAt(0).id());
+        assertSearchHit(searchResponse, 1, hasScore((float) (190.0 / 290.0)));
+        assertEquals("10", searchResponse.getHits().getAt(9).id());
+        assertSearchHit(searchResponse, 10, hasScore(0.5f));
+        // documents 0, 1 and the one without a table are clamped
+        assertSearchHit(searchResponse, 19, hasScore(0.1f));
+        assertSearchHit(searchResponse, 21, hasScore(0.1f));
+
+        QueryBuilder query = boolQuery()
+            .should(constantScoreQuery(matchAllQuery()).boost(3.0f))
+            .should(constantScoreQuery(termQuery("title", "rec")).boost(4.0f));
+        searchResponse = client().prepareSearch("test").setQuery(query).setSize(21).get();
+        assertNoFailures(searchResponse);
+        float queryScore = searchResponse.getHits().getAt(0).getScore();
+
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(query,
+                                         htableValueFunction("ranks", 2)
+                                         .factor(0.5f)
+                                         .offset(1.0)
+                                         .max(5.0)
+                                         .combine(HtableValueTransform.Combine.MULTIPLY))
+                      .boostMode(CombineFunction.REPLACE))
+            .setSize(21)
+            .get();
+        assertNoFailures(searchResponse);
+        assertThat((double) searchResponse.getHits().getAt(0).getScore(), closeTo(5.0 * queryScore, 1e-5));
+        // 0.5 * 2 + 1
+        assertThat((double) searchResponse.getHits().getAt(18).getScore(), closeTo(2.0 * queryScore, 1e-5));
+        assertEquals("18", searchResponse.getHits().getAt(18).id());
+
+        assertFailures(client().prepareSearch("test")
+                       .setQuery(functionScoreQuery(htableValueFunction("ranks", 1)
+                                                    .modifier(HtableValueTransform.Modifier.SIGMOID))),
+                       RestStatus.BAD_REQUEST,
+                       containsString("[pivot] must be positive for [sigmoid] modifier"));
+    }
+
+    public void testHtableValueExplain() throws Exception {
+        createIndex(2);
+
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(htableValueFunction("ranks", 1).factor(2.0f)))
+            .setExplain(true)
+            .setSize(1)
+            .get();
+        assertNoFailures(searchResponse);
+        assertSearchHit(searchResponse, 1, hasScore(20.0f));
+        assertThat(searchResponse.getHits().getAt(0).explanation().toString(), containsString("htable_value(doc['ranks'][1], factor=2.0, modifier=none)"));
+    }
+
+    public void testHtableValueExplainStringKey() throws Exception {
+        assertAcked(prepareCreate("test")
+                    .addMapping("type", XContentFactory.jsonBuilder()
+                                .startObject().startObject("type").startObject("properties")
+                                    .startObject("tags")
+                                        .field("type", "htable")
+                                        .field("key_type", "string")
+                                        .field("value_type", "float")
+                                    .endObject()
+                                .endObject().endObject().endObject()));
+        indexRandom(true, client().prepareIndex("test", "type", "1")
+                          .setSource(XContentFactory.jsonBuilder()
+                                     .startObject()
+                                         .startObject("tags")
+                                             .array("keys", "red", "blue")
+                                             .array("values", 3.0f, 1.0f)
+                                         .endObject()
+                                     .endObject()));
+
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(htableValueFunction("tags", "red")))
+            .setExplain(true)
+            .get();
+        assertNoFailures(searchResponse);
+        assertSearchHit(searchResponse, 1, hasScore(3.0f));
+        assertThat(searchResponse.getHits().getAt(0).explanation().toString(),
+                   containsString("htable_value(doc['tags']['red' (hash " + HtableFieldMapper.KeyType.hash("red") + ")], "));
+    }
+
+    public void testInvalidField() throws Exception {
+        createIndex(1);
+
+        assertFailures(client().prepareSearch("test").setQuery(functionScoreQuery(htableValueFunction("title", 1))),
+                       RestStatus.BAD_REQUEST,
+                       containsString("field [title] is not of [htable] type"));
+        assertFailures(client().prepareSearch("test").setQuery(functionScoreQuery(htableValueFunction("unknown", 1))),
+                       RestStatus.BAD_REQUEST,
+                       containsString("unable to find field [unknown]"));
+    }
+}
@@ -0,0 +1,145 @@
+package org.elasticsearch.index.query.functionscore.htable;
+
+import java.util.Map;
+
+import org.elasticsearch.test.ESTestCase;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+
+public class HtableValueTransformTests extends ESTestCase {
+    private static final double DELTA = 1e-9;
+
+    public void testIdentity() {
+        assertThat(HtableValueTransform.parse(null), sameInstance(HtableValueTransform.IDENTITY));
+        Map<String, Object> params = newHashMap();
+        params.put("field", "ranks");
+        params.put("key", 1);
+        assertThat(HtableValueTransform.parse(params), sameInstance(HtableValueTransform.IDENTITY));
+        double value = randomDouble();
+        assertEquals(value, HtableValueTransform.IDENTITY.apply(value, randomFloat()), 0.0);
+        assertFalse(HtableValueTransform.IDENTITY.needsScores());
+    }
+
+    public void testModifiers() {
+        assertThat(apply("log1p", 99.0), closeTo(2.0, DELTA));
+        assertThat(apply("ln1p", Math.E - 1), closeTo(1.0, DELTA));
+        assertThat(apply("sqrt", 16.0), closeTo(4.0, DELTA));
+        assertThat(apply("square", 3.0), closeTo(9.0, DELTA));
+        assertThat(apply("reciprocal", 4.0), closeTo(0.25, DELTA));
+        assertThat(apply("SQRT", 4.0), closeTo(2.0, DELTA));
+
+        Map<String, Object> params = newHashMap();
+        params.put("modifier", "saturation");
+        params.put("pivot", 10);
+        HtableValueTransform saturation = HtableValueTransform.parse(params);
+        assertThat(saturation.apply(10.0, 0.0f), closeTo(0.5, DELTA));
+        assertThat(saturation.apply(30.0, 0.0f), closeTo(0.75, DELTA));
+
+        params.put("modifier", "sigmoid");
+        params.put("exponent", 2);
+        HtableValueTransform sigmoid = HtableValueTransform.parse(params);
+        assertThat(sigmoid.apply(10.0, 0.0f), closeTo(0.5, DELTA));
+        assertThat(sigmoid.apply(30.0, 0.0f), closeTo(0.9, DELTA));
+    }
+
+    public void testScaleAndClamp() {
+        Map<String, Object> params = newHashMap();
+        params.put("factor", 0.5);
+        params.put("offset", 1.0);
+        params.put("min", 2.0);
+        params.put("max", "4.0");
+        HtableValueTransform transform = HtableValueTransform.parse(params);
+        assertThat(transform.apply(4.0, 0.0f), closeTo(3.0, DELTA));
+        assertThat(transform.apply(0.0, 0.0f), closeTo(2.0, DELTA));
+        assertThat(transform.apply(100.0, 0.0f), closeTo(4.0, DELTA));
+        assertFalse(transform.needsScores());
+    }
+
+    public void testCombine() {
+        Map<String, Object> params = newHashMap();
+        params.put("combine", "multiply");
+        HtableValueTransform transform = HtableValueTransform.parse(params);
+        assertTrue(transform.needsScores());
+        assertThat(transform.apply(3.0, 2.0f), closeTo(6.0, DELTA));
+
+        params.put("combine", "sum");
+        params.put("modifier", "sqrt");
+        transform = HtableValueTransform.parse(params);
+        assertThat(transform.apply(9.0, 2.0f), closeTo(5.0, DELTA));
+    }
+
+    public void testMaxValue() {
+        assertThat(HtableValueTransform.IDENTITY.maxValue(-1.0, 3.0), closeTo(3.0, DELTA));
+
+        Map<String, Object> params = newHashMap();
+        params.put("factor", -2.0);
+        params.put("modifier", "square");
+        params.put("max", 10.0);
+        HtableValueTransform transform = HtableValueTransform.parse(params);
+        assertThat(transform.maxValue(-1.0, 0.5), closeTo(4.0, DELTA));
+        assertThat(transform.maxValue(-1.0, 3.0), closeTo(10.0, DELTA));
+
+        params = newHashMap();
+        params.put("modifier", "reciprocal");
+        transform = HtableValueTransform.parse(params);
+        assertThat(transform.maxValue(0.5, 4.0), closeTo(2.0, DELTA));
+        assertEquals(Double.POSITIVE_INFINITY, transform.maxValue(-1.0, 4.0), 0.0);
+
+        params = newHashMap();
+        params.put("modifier", "log");
+        assertEquals(Double.POSITIVE_INFINITY, HtableValueTransform.parse(params).maxValue(-1.0, 4.0), 0.0);
+
+        params = newHashMap();
+        params.put("combine", "sum");
+        assertEquals(Double.POSITIVE_INFINITY, HtableValueTransform.parse(params).maxValue(0.0, 1.0), 0.0);
+
+        for (int i = 0; i < 100; i++) {
+            params = newHashMap();
+            params.put("factor", -10.0 + randomDouble() * 20.0);
+            params.put("modifier", randomFrom("none", "log1p", "ln2p", "sqrt", "square", "saturation", "sigmoid"));
+            params.put("pivot", 0.1 + randomDouble() * 10.0);
+            params.put("exponent", randomIntBetween(1, 3));
+            transform = HtableValueTransform.parse(params);
+            double minValue = -10.0 + randomDouble() * 20.0;
+            double maxValue = minValue + randomDouble() * 10.0;
+            double bound = transform.maxValue(minValue, maxValue);
+            double value = minValue + randomDouble() * (maxValue - minValue);
+            double transformed = transform.apply(value, 0.0f);
+            if (!Double.isNaN(transformed)) {
+                assertThat(transformed, lessThanOrEqualTo(bound + DELTA));
+            }
+        }
+    }
+
+    public void testInvalidParams() {
+        assertInvalid("Unknown modifier [cube]", "modifier", "cube");
+        assertInvalid("Unknown combine [max]", "combine", "max");
+        assertInvalid("[pivot] must be positive for [saturation] modifier", "modifier", "saturation");
+        assertInvalid("[exponent] must be positive for [sigmoid] modifier", "modifier", "sigmoid", "pivot", 1.0, "exponent", 0.0);
+        assertInvalid("[min] must not be greater than [max]", "min", 2.0, "max", 1.0);
+    }
+
+    private static double apply(String modifier, double value) {
+        Map<String, Object> params = newHashMap();
+        params.put("modifier", modifier);
+        return HtableValueTransform.parse(params).apply(value, 0.0f);
+    }
+
+    private static void assertInvalid(String message, Object... keysAndValues) {
+        Map<String, Object> params = newHashMap();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            params.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        try {
+            HtableValueTransform.parse(params);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString(message));
+        }
+    }
+}
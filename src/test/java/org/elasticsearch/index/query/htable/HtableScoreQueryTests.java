@@ -0,0 +1,288 @@
+package org.elasticsearch.index.query.htable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.functionscore.htable.HtableValueTransform;
+import org.elasticsearch.plugin.mapper.MapperHtablePlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+import org.elasticsearch.test.ESIntegTestCase.Scope;
+
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.index.query.functionscore.htable.HtableValueFunctionBuilder.htableValueFunction;
+import static org.elasticsearch.index.query.htable.HtableScoreQueryBuilder.htableScoreQuery;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertFailures;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchHit;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.hasScore;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+
+@ClusterScope(scope = Scope.SUITE, numDataNodes = 1)
+public class HtableScoreQueryTests extends ESIntegTestCase {
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return pluginList(MapperHtablePlugin.class);
+    }
+
+    private int createIndex() throws Exception {
+        assertAcked(prepareCreate("test")
+                    .setSettings(Settings.builder()
+                                 .put(SETTING_NUMBER_OF_SHARDS, 1)
+                                 .put(SETTING_NUMBER_OF_REPLICAS, 0)
+                                 .put("index.codec", randomFrom("default", "htable")))
+                    .addMapping("type", XContentFactory.jsonBuilder()
+                                .startObject().startObject("type").startObject("properties")
+                                    .startObject("title")
+                                        .field("type", "string")
+                                    .endObject()
+                                    .startObject("ranks")
+                                        .field("type", "htable")
+                                        .field("value_type", "float")
+                                        .field("key_stats", randomBoolean())
+                                        .startObject("format_params")
+                                            .field("format", randomFrom("chain", "sorted", "lazy_chain", "blocked"))
+                                        .endObject()
+                                    .endObject()
+                                .endObject().endObject().endObject()));
+
+        int numDocs = randomIntBetween(HtableScoreQuery.BLOCK_SIZE, HtableScoreQuery.BLOCK_SIZE * 4);
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            XContentBuilder source = XContentFactory.jsonBuilder()
+                .startObject()
+                    .field("title", i % 2 == 0 ? "even" : "odd");
+            if (i % 10 != 0) {
+                source.startObject("ranks")
+                    .array("keys", 1, 2)
+                    .array("values", i, i % 7)
+                    .endObject();
+            }
+            source.endObject();
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource(source));
+        }
+        indexRandom(true, indexBuilders);
+        // deleted documents must be skipped
+        client().prepareDelete("test", "type", "1").get();
+        refresh();
+        return numDocs;
+    }
+
+    public void testSameScoresAsFunction() throws Exception {
+        int numDocs = createIndex();
+
+        SearchResponse queryResponse = client().prepareSearch("test")
+            .setQuery(htableScoreQuery("ranks", 2).missing(-1.0f).modifier(HtableValueTransform.Modifier.SQUARE))
+            .setSize(numDocs)
+            .get();
+        SearchResponse functionResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(htableValueFunction("ranks", 2).missing(-1.0).modifier(HtableValueTransform.Modifier.SQUARE)))
+            .setSize(numDocs)
+            .get();
+        assertNoFailures(queryResponse);
+        assertNoFailures(functionResponse);
+        assertHitCount(queryResponse, numDocs - 1);
+        assertEquals(scores(functionResponse), scores(queryResponse));
+        assertSearchHit(queryResponse, 1, hasScore(36.0f));
+    }
+
+    public void testInnerQuery() throws Exception {
+        int numDocs = createIndex();
+
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(htableScoreQuery(termQuery("title", "even"), "ranks", 1).combine(HtableValueTransform.Combine.SUM))
+            .setSize(numDocs)
+            .get();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, (numDocs + 1) / 2);
+        float termScore = client().prepareSearch("test").setQuery(termQuery("title", "even")).get().getHits().getAt(0).getScore();
+        for (SearchHit hit : searchResponse.getHits()) {
+            int i = Integer.parseInt(hit.id());
+            assertEquals(0, i % 2);
+            float value = i % 10 == 0 ? 0.0f : i;
+            assertEquals(value + termScore, hit.getScore(), 1e-4);
+        }
+
+        // scored one document at a time
+        searchResponse = client().prepareSearch("test")
+            .setQuery(boolQuery()
+                      .must(htableScoreQuery("ranks", 1).boost(2.0f))
+                      .filter(termQuery("title", "odd")))
+            .setSize(numDocs)
+            .get();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, numDocs / 2 - 1);
+        for (SearchHit hit : searchResponse.getHits()) {
+            int i = Integer.parseInt(hit.id());
+            assertEquals(1, i % 2);
+        }
+        assertEquals(searchResponse.getHits().getAt(0).getScore(), searchResponse.getHits().getAt(1).getScore() + 4.0f, 1e-3);
+    }
+
+    public void testMinScore() throws Exception {
+        int numDocs = createIndex();
+        float minScore = numDocs / 2;
+
+        int expectedHits = 0;
+        for (int i = numDocs / 2; i < numDocs; i++) {
+            if (i % 10 != 0) {
+                expectedHits++;
+            }
+        }
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(htableScoreQuery("ranks", 1).minScore(minScore))
+            .setSize(numDocs)
+            .get();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, expectedHits);
+        for (SearchHit hit : searchResponse.getHits()) {
+            assertThat(hit.getScore(), greaterThanOrEqualTo(minScore));
+        }
+
+        // scored one document at a time
+        searchResponse = client().prepareSearch("test")
+            .setQuery(boolQuery()
+                      .must(htableScoreQuery("ranks", 1).minScore(minScore))
+                      .filter(termQuery("title", "odd")))
+            .setSize(numDocs)
+            .get();
+        assertNoFailures(searchResponse);
+        for (SearchHit hit : searchResponse.getHits()) {
+            assertThat(Integer.parseInt(hit.id()), greaterThanOrEqualTo(numDocs / 2));
+        }
+
+        // no document has such a value
+        searchResponse = client().prepareSearch("test")
+            .setQuery(htableScoreQuery("ranks", 1).modifier(HtableValueTransform.Modifier.LOG1P).minScore(numDocs))
+            .get();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, 0);
+
+        // missing key scores the missing value
+        searchResponse = client().prepareSearch("test")
+            .setQuery(htableScoreQuery("ranks", 3).missing(2.0f).minScore(1.0f))
+            .get();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, numDocs - 1);
+    }
+
+    public void testExplain() throws Exception {
+        createIndex();
+
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(htableScoreQuery("ranks", 1).factor(0.5))
+            .setExplain(true)
+            .setSize(1)
+            .get();
+        assertNoFailures(searchResponse);
+        assertThat(searchResponse.getHits().getAt(0).explanation().toString(),
+                   containsString("htable_score(doc['ranks'][1], factor=0.5, modifier=none)"));
+    }
+
+    public void testInvalidField() throws Exception {
+        createIndex();
+
+        assertFailures(client().prepareSearch("test").setQuery(htableScoreQuery("title", 1)),
+                       RestStatus.BAD_REQUEST,
+                       containsString("field [title] is not of [htable] type"));
+    }
+
+    public void testTupleValues() throws Exception {
+        assertAcked(prepareCreate("test")
+                    .setSettings(Settings.builder()
+                                 .put(SETTING_NUMBER_OF_SHARDS, 1)
+                                 .put(SETTING_NUMBER_OF_REPLICAS, 0)
+                                 .put("index.codec", randomFrom("default", "htable")))
+                    .addMapping("type", XContentFactory.jsonBuilder()
+                                .startObject().startObject("type").startObject("properties")
+                                    .startObject("ranks")
+                                        .field("type", "htable")
+                                        .field("value_type", new String[]{"float", "int", "byte"})
+                                        .field("key_stats", randomBoolean())
+                                        .startObject("format_params")
+                                            .field("format", randomFrom("sorted", "lazy_chain", "blocked"))
+                                        .endObject()
+                                    .endObject()
+                                .endObject().endObject().endObject()));
+
+        int numDocs = randomIntBetween(HtableScoreQuery.BLOCK_SIZE, HtableScoreQuery.BLOCK_SIZE * 2);
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            XContentBuilder source = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("ranks")
+                        .array("keys", 1, 2)
+                        .startArray("values")
+                            .startArray().value(0.5f).value(i).value(i % 7).endArray()
+                            .startArray().value(1.5f).value(-i).value(0).endArray()
+                        .endArray()
+                    .endObject()
+                .endObject();
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource(source));
+        }
+        indexRandom(true, indexBuilders);
+
+        // the statistics of the first component must not prune the others
+        SearchResponse queryResponse = client().prepareSearch("test")
+            .setQuery(htableScoreQuery("ranks", 1).index(1).minScore(numDocs - 1))
+            .get();
+        assertNoFailures(queryResponse);
+        assertHitCount(queryResponse, 1);
+        assertSearchHit(queryResponse, 1, hasScore(numDocs - 1));
+
+        queryResponse = client().prepareSearch("test")
+            .setQuery(htableScoreQuery("ranks", 1).index(2))
+            .setSize(numDocs)
+            .get();
+        SearchResponse functionResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(htableValueFunction("ranks", 1).index(2)))
+            .setSize(numDocs)
+            .get();
+        assertNoFailures(queryResponse);
+        assertNoFailures(functionResponse);
+        assertEquals(scores(functionResponse), scores(queryResponse));
+        assertSearchHit(queryResponse, 1, hasScore(6.0f));
+
+        queryResponse = client().prepareSearch("test")
+            .setQuery(htableScoreQuery("ranks", 2))
+            .setExplain(true)
+            .setSize(1)
+            .get();
+        assertNoFailures(queryResponse);
+        assertSearchHit(queryResponse, 1, hasScore(1.5f));
+        assertThat(queryResponse.getHits().getAt(0).explanation().toString(),
+                   containsString("htable_score(doc['ranks'][2][0], factor=1.0, modifier=none)"));
+
+        assertFailures(client().prepareSearch("test").setQuery(htableScoreQuery("ranks", 1).index(3)),
+                       RestStatus.BAD_REQUEST,
+                       containsString("[index] must be in range [0, 2]"));
+    }
+
+    private static Map<String, Float> scores(SearchResponse searchResponse) {
+        Map<String, Float> scores = new HashMap<>();
+        for (SearchHit hit : searchResponse.getHits()) {
+            scores.put(hit.id(), hit.getScore());
+        }
+        return scores;
+    }
+}
@@ -2,6 +2,7 @@ package org.elasticsearch.script.htable;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -61,6 +62,10 @@ public class HtableScriptTests extends ESIntegTestCase {
     }
 
     private String typeMapping(String valueType, String format) throws IOException {
+        return typeMapping(valueType, format, false);
+    }
+
+    private String typeMapping(String valueType, String format, boolean keyStats) throws IOException {
         XContentBuilder builder = XContentFactory.jsonBuilder();
         builder
             .startObject().startObject("type")
@@ -70,7 +75,8 @@ public class HtableScriptTests extends ESIntegTestCase {
                     .endObject()
                     .startObject("ranks")
                         .field("type", "htable")
-                        .field("value_type", valueType);
+                        .field("value_type", valueType)
+                        .field("key_stats", keyStats);
         if (format != null) {
             builder
                         .startObject("format_params")
@@ -415,6 +421,300 @@ public class HtableScriptTests extends ESIntegTestCase {
         assertSearchHit(searchResponse, 10, hasScore(1.4770588f));
     }
 
+    public void testFloatDirectHashTableGetScript() throws Exception {
+        assertAcked(prepareCreate("test")
+                    .setSettings(Settings.builder().put("index.codec", randomFrom("default", "htable")))
+                    .addMapping("type", typeMapping("float", randomFrom("sorted", "lazy_chain", "blocked"), randomBoolean())));
+
+        indexRandom(true, floatIndexBuilders(100));
+
+        Map<String, Object> params;
+        SearchResponse searchResponse;
+
+        params = newHashMap();
+        params.put("field", "ranks");
+        params.put("key", 1);
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params))))
+            .addField("name")
+            .setSize(10)
+            .execute().actionGet();
+
+        assertNoFailures(searchResponse);
+
+        assertHitCount(searchResponse, 101);
+
+        assertOrderedSearchHits(searchResponse, "99", "98", "97", "96", "95", "94", "93", "92", "91", "90");
+        assertSearchHit(searchResponse, 1, hasScore(99009.9f));
+        assertSearchHit(searchResponse, 2, hasScore(98009.8f));
+        assertSearchHit(searchResponse, 10, hasScore(90009.0f));
+
+        params = newHashMap();
+        params.put("field", "ranks");
+        params.put("key", 3);
+        params.put("default", 7.0f);
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params))))
+            .addField("name")
+            .setSize(10)
+            .execute().actionGet();
+
+        assertNoFailures(searchResponse);
+
+        assertHitCount(searchResponse, 101);
+
+        assertSearchHit(searchResponse, 1, hasScore(7.0f));
+        assertSearchHit(searchResponse, 10, hasScore(7.0f));
+    }
+
+    public void testFloatHashTableGetScriptTransform() throws Exception {
+        assertAcked(prepareCreate("test").addMapping("type", typeMapping("float", randomFrom(null, "sorted", "lazy_chain"))));
+
+        indexRandom(true, floatIndexBuilders(100));
+
+        Map<String, Object> params;
+        SearchResponse searchResponse;
+
+        params = newHashMap();
+        params.put("field", "ranks");
+        params.put("key", 2);
+        params.put("modifier", "sqrt");
+        params.put("max", 9.0);
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params))))
+            .setSize(101)
+            .execute().actionGet();
+
+        assertNoFailures(searchResponse);
+
+        assertHitCount(searchResponse, 101);
+        // values of the first 20 documents are clamped
+        assertSearchHit(searchResponse, 1, hasScore(9.0f));
+        assertSearchHit(searchResponse, 20, hasScore(9.0f));
+        assertEquals("20", searchResponse.getHits().getAt(20).id());
+        assertSearchHit(searchResponse, 21, hasScore((float) Math.sqrt(80.0)));
+        assertSearchHit(searchResponse, 100, hasScore(1.0f));
+        assertSearchHit(searchResponse, 101, hasScore(0.0f));
+
+        params = newHashMap();
+        params.put("field", "ranks");
+        params.put("key", 2);
+        params.put("factor", 2.0);
+        params.put("combine", "sum");
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params)))
+                      .boostMode("replace"))
+            .setSize(10)
+            .execute().actionGet();
+
+        assertNoFailures(searchResponse);
+
+        assertOrderedSearchHits(searchResponse, "0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+        assertSearchHit(searchResponse, 1, hasScore(201.0f));
+        assertSearchHit(searchResponse, 10, hasScore(183.0f));
+
+        params.put("modifier", "unknown");
+        assertFailures(client().prepareSearch("test")
+                       .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params)))),
+                       RestStatus.INTERNAL_SERVER_ERROR,
+                       containsString("Unknown modifier [unknown]"));
+    }
+
+    public void testStringKeysGetScript() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject().startObject("type")
+                .startObject("properties")
+                    .startObject("ranks")
+                        .field("type", "htable")
+                        .field("key_type", "string")
+                        .startObject("format_params")
+                            .field("format", "sorted")
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject().endObject()
+            .string();
+        assertAcked(prepareCreate("test").addMapping("type", mapping));
+
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < 10; i++) {
+            indexBuilders.add(client()
+                              .prepareIndex("test", "type", Integer.toString(i))
+                              .setSource(XContentFactory.jsonBuilder()
+                                         .startObject()
+                                         .startObject("ranks")
+                                         .array("keys", "phones", "laptops", 42)
+                                         .array("values", i, 10 - i, 0.5f)
+                                         .endObject()
+                                         .endObject()));
+        }
+        indexRandom(true, indexBuilders);
+
+        Map<String, Object> params = newHashMap();
+        params.put("field", "ranks");
+        params.put("key", "laptops");
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params))))
+            .setSize(3)
+            .execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertOrderedSearchHits(searchResponse, "0", "1", "2");
+        assertSearchHit(searchResponse, 1, hasScore(10.0f));
+
+        // numbers are keys of their string form
+        params.put("key", "42");
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params))))
+            .setSize(1)
+            .execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertSearchHit(searchResponse, 1, hasScore(0.5f));
+
+        params.put("key", "tablets");
+        params.put("default", 7);
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params))))
+            .setSize(1)
+            .execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertSearchHit(searchResponse, 1, hasScore(7.0f));
+    }
+
+    public void testTupleGetScript() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject().startObject("type")
+                .startObject("properties")
+                    .startObject("ranks")
+                        .field("type", "htable")
+                        .field("value_type", new String[]{"float", "float", "int"})
+                        .startObject("format_params")
+                            .field("format", randomFrom("sorted", "lazy_chain", "blocked"))
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject().endObject()
+            .string();
+        assertAcked(prepareCreate("test").addMapping("type", mapping));
+
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < 10; i++) {
+            indexBuilders.add(client()
+                              .prepareIndex("test", "type", Integer.toString(i))
+                              .setSource(XContentFactory.jsonBuilder()
+                                         .startObject()
+                                         .startObject("ranks")
+                                         .array("keys", 1)
+                                         .startArray("values")
+                                         .startArray().value(i).value(0.5f).value(100 - i).endArray()
+                                         .endArray()
+                                         .endObject()
+                                         .endObject()));
+        }
+        indexRandom(true, indexBuilders);
+
+        Map<String, Object> params = newHashMap();
+        params.put("field", "ranks");
+        params.put("key", 1);
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params))))
+            .setSize(3)
+            .execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertOrderedSearchHits(searchResponse, "9", "8", "7");
+
+        params.put("index", 2);
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params))))
+            .setSize(3)
+            .execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertOrderedSearchHits(searchResponse, "0", "1", "2");
+        assertSearchHit(searchResponse, 1, hasScore(100.0f));
+
+        params.put("index", 3);
+        assertFailures(client().prepareSearch("test")
+                       .setQuery(functionScoreQuery(scriptFunction(new Script("htable_get", ScriptService.ScriptType.INLINE, "htable", params)))),
+                       RestStatus.INTERNAL_SERVER_ERROR,
+                       containsString("[index] must be in range [0, 2]"));
+    }
+
+    public void testVectorScript() throws Exception {
+        String mapping = XContentFactory.jsonBuilder()
+            .startObject().startObject("type")
+                .startObject("properties")
+                    .startObject("embeddings")
+                        .field("type", "htable")
+                        .field("value_type", "float")
+                        .field("dims", 4)
+                        .startObject("format_params")
+                            .field("format", randomFrom("sorted", "lazy_chain", "blocked"))
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject().endObject()
+            .string();
+        assertAcked(prepareCreate("test").addMapping("type", mapping));
+
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < 10; i++) {
+            indexBuilders.add(client()
+                              .prepareIndex("test", "type", Integer.toString(i))
+                              .setSource(XContentFactory.jsonBuilder()
+                                         .startObject()
+                                         .startObject("embeddings")
+                                         .array("keys", 1)
+                                         .startArray("values")
+                                         .startArray().value(i).value(1.0f).value(0.0f).value(0.0f).endArray()
+                                         .endArray()
+                                         .endObject()
+                                         .endObject()));
+        }
+        indexRandom(true, indexBuilders);
+
+        Map<String, Object> params = newHashMap();
+        params.put("field", "embeddings");
+        params.put("key", 1);
+        params.put("vector", Arrays.asList(2.0f, 0.0f, 0.0f, 0.0f));
+        SearchResponse searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_vector", ScriptService.ScriptType.INLINE, "htable", params))))
+            .setSize(3)
+            .execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertOrderedSearchHits(searchResponse, "9", "8", "7");
+        assertSearchHit(searchResponse, 1, hasScore(18.0f));
+
+        params.put("vector", Arrays.asList(0.0f, 3.0f, 0.0f, 0.0f));
+        params.put("similarity", "cosine");
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_vector", ScriptService.ScriptType.INLINE, "htable", params))))
+            .setSize(3)
+            .execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertOrderedSearchHits(searchResponse, "0", "1", "2");
+        assertSearchHit(searchResponse, 1, hasScore(1.0f));
+
+        params.put("key", 2);
+        params.put("default", 0.5f);
+        searchResponse = client().prepareSearch("test")
+            .setQuery(functionScoreQuery(scriptFunction(new Script("htable_vector", ScriptService.ScriptType.INLINE, "htable", params))))
+            .execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertSearchHit(searchResponse, 1, hasScore(0.5f));
+
+        params.put("vector", Arrays.asList(1.0f, 0.0f));
+        assertFailures(client().prepareSearch("test")
+                       .setQuery(functionScoreQuery(scriptFunction(new Script("htable_vector", ScriptService.ScriptType.INLINE, "htable", params)))),
+                       RestStatus.INTERNAL_SERVER_ERROR,
+                       containsString("[vector] must have [4] values for field [embeddings]; got [2]"));
+
+        params.put("vector", Arrays.asList(1.0f, 0.0f, 0.0f, 0.0f));
+        params.put("similarity", "l2");
+        assertFailures(client().prepareSearch("test")
+                       .setQuery(functionScoreQuery(scriptFunction(new Script("htable_vector", ScriptService.ScriptType.INLINE, "htable", params)))),
+                       RestStatus.INTERNAL_SERVER_ERROR,
+                       containsString("Unknown similarity [l2]"));
+    }
+
     public void testHashTableGetScriptMissingParams() throws Exception {
         assertAcked(prepareCreate("test").addMapping("type", typeMapping("float", null)));
 